@@ -1,12 +1,16 @@
 package com.trading.crypto.ai;
 
 import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.data.KlineSeries;
 import com.trading.crypto.data.impl.HistoricalDataCollector;
+import com.trading.crypto.data.impl.KlineArchive;
+import com.trading.crypto.event.EventType;
+import com.trading.crypto.event.MarketEvent;
 import com.trading.crypto.model.AnalysisResult;
-import com.trading.crypto.model.KlineElement;
 import com.trading.crypto.model.Signal;
+import com.trading.crypto.model.SignalOrigin;
 import com.trading.crypto.model.TradeSignal;
-import com.trading.crypto.util.DataPreparationUtils;
+import com.trading.crypto.util.StalkerUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -16,23 +20,42 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
 import org.nd4j.linalg.activations.Activation;
-import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 //@Component
 public class AIStrategyManager  {
     private static final String MODEL_FILE = "StalkerLSTMModel.zip";
     private static final int SEQ_LENGTH = 200; // Количество баров для прогнозирования
-    private CryptoPredictionModel predictionModel; // Модель ИИ для прогнозирования
+    private static final MarketInterval INTERVAL = MarketInterval.ONE_MINUTE; // Интервал, на котором обучена модель
+    private static final int TRAIN_STRIDE = 10; // Шаг между обучающими окнами в барах
+    private static final int TRAIN_BATCH_SIZE = 64; // Окон в минибатче обучения
+    private static final int TRAIN_EPOCHS = 1; // Эпох на одно переобучение
+    private static final double HOLDOUT_FRACTION = 0.2; // Доля свежей истории для проверки модели
+    private static final long RETRAIN_PERIOD_HOURS = 24; // Период фонового переобучения
+    // Модель ИИ для прогнозирования, заменяется целиком после фонового обучения; null, пока не загружена
+    private final AtomicReference<CryptoPredictionModel> predictionModel = new AtomicReference<>();
+    private final ModelTrainer trainer = new ModelTrainer(SEQ_LENGTH, TRAIN_STRIDE, TRAIN_BATCH_SIZE, TRAIN_EPOCHS, HOLDOUT_FRACTION);
+    private volatile List<String> symbols = List.of(); // Символы, по истории которых обучается модель
     private final HistoricalDataCollector dataCollector; // Исторический сборщик данных
+    private final boolean adaptiveNormalization; // Расширять статистики нормализации новыми барами
+    private final Executor inferenceExecutor; // Пул, из которого вызываются прогнозы; null - прогрев не выполняется
+    private final int inferenceThreads; // Количество потоков пула прогнозов
+    private volatile FeatureTensor featureTensor; // Окна признаков символов, обновляются на закрытии бара
+    private final double[] barFeatures = new double[FeatureTensor.FEATURES]; // Признаки бара для нормализатора, пишет только поток шины
 
     /**
      * Конструктор класса AIStrategyManager
@@ -40,67 +63,271 @@ public class AIStrategyManager  {
      * @param dataCollector - экземпляр сборщика исторических данных
      */
     public AIStrategyManager(HistoricalDataCollector dataCollector) {
+        this(dataCollector, false);
+    }
+
+    /**
+     * Конструктор класса AIStrategyManager. Модель загружается или создается в потоке обучения,
+     * до этого прогнозов нет.
+     *
+     * @param dataCollector         - экземпляр сборщика исторических данных
+     * @param adaptiveNormalization - расширять статистики нормализации модели барами, вышедшими за их границы.
+     *                              По умолчанию выключено, и прогнозы нормализуются ровно так же, как при обучении
+     */
+    public AIStrategyManager(HistoricalDataCollector dataCollector, boolean adaptiveNormalization) {
+        this(dataCollector, adaptiveNormalization, null, 0);
+    }
+
+    /**
+     * Конструктор класса AIStrategyManager с прогревом модели в потоках прогнозов.
+     * Рабочие области ND4J привязаны к потоку, поэтому прогрев в потоке обучения не ускорил бы первый прогноз.
+     *
+     * @param dataCollector         - экземпляр сборщика исторических данных
+     * @param adaptiveNormalization - расширять статистики нормализации модели барами, вышедшими за их границы
+     * @param inferenceExecutor     - пул, из потоков которого вызывается {@link #analyzeData}, например пул анализа
+     *                              трейдера; null - модель не прогревается и платит за инициализацию первым прогнозом
+     * @param inferenceThreads      - количество потоков пула
+     */
+    public AIStrategyManager(HistoricalDataCollector dataCollector, boolean adaptiveNormalization,
+                             Executor inferenceExecutor, int inferenceThreads) {
         this.dataCollector = dataCollector;
+        this.adaptiveNormalization = adaptiveNormalization;
+        this.inferenceExecutor = inferenceExecutor;
+        this.inferenceThreads = inferenceThreads;
+        trainer.submit(this::loadModel).thenAccept(model -> {
+            if (model != null) {
+                predictionModel.compareAndSet(null, model);
+            }
+        });
+    }
+
+    /**
+     * Загрузка модели из файла или создание новой, если файла нет
+     *
+     * @return модель или null, если загрузить не удалось
+     */
+    private CryptoPredictionModel loadModel() {
         File modelFile = new File(MODEL_FILE);
         if (modelFile.exists()) {
             try {
                 // Загрузка существующей модели из файла
-                predictionModel = new CryptoPredictionModel(MODEL_FILE);
+                CryptoPredictionModel model = new CryptoPredictionModel(MODEL_FILE);
                 log.info("Loaded existing AI model from {}", MODEL_FILE);
+                return model;
             } catch (IOException e) {
                 log.error("Error loading AI model: ", e);
+                return null;
             }
-        } else {
-            // Создание новой модели и сохранение ее в файл
+        }
+        // Создание новой модели и сохранение ее в файл
+        return createAndSaveInitialModel();
+    }
+
+    /**
+     * Создает окна признаков символов, прогревает их историей и подписывает на закрытые бары из шины событий.
+     * Дальше окно символа обновляется на месте, без повторного чтения истории при прогнозе.
+     * Запускает периодическое фоновое переобучение модели по истории этих символов; модель без статистик
+     * нормализации обучается сразу.
+     *
+     * @param symbols - торговые символы
+     */
+    public void start(List<String> symbols) {
+        this.symbols = List.copyOf(symbols);
+        FeatureTensor tensor = new FeatureTensor(symbols, SEQ_LENGTH, StalkerUtils.getIntervalMillis(INTERVAL));
+        dataCollector.attach("ai-features", () -> {
+            for (String symbol : symbols) {
+                KlineSeries klineSeries = dataCollector.getKlineSeries(symbol, INTERVAL);
+                if (klineSeries == null) {
+                    continue;
+                }
+                // От самого старого бара к самому свежему
+                for (int i = Math.min(klineSeries.size(), SEQ_LENGTH) - 1; i >= 0; i--) {
+                    tensor.add(symbol, klineSeries.getTimestamp(i), klineSeries.getOpen(i), klineSeries.getHigh(i),
+                            klineSeries.getLow(i), klineSeries.getClose(i), klineSeries.getVolume(i));
+                }
+            }
+            featureTensor = tensor;
+        }, event -> {
+            if (event.getType() == EventType.BAR && event.getInterval() == INTERVAL) {
+                addBar(tensor, event);
+            }
+        });
+        // Загрузка модели стоит в той же очереди раньше, к прогреву модель уже загружена
+        trainer.submit(() -> {
+            CryptoPredictionModel model = predictionModel.get();
+            if (model == null) {
+                return null;
+            }
+            if (model.isReady()) {
+                warmUp(model);
+            } else {
+                // Без статистик нормализации модель не прогнозирует, ждать периодического обучения нельзя
+                log.info("AI model has no normalization statistics, training it now");
+                retrain();
+            }
+            return null;
+        });
+        trainer.scheduleWithFixedDelay(this::retrain, RETRAIN_PERIOD_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Обучает копию модели в фоне на архивной истории символов и, если на отложенной выборке она
+     * ошибается меньше, атомарно заменяет ею живую модель и сохраняет в файл.
+     * Прогнозы во время обучения продолжают идти по старой модели.
+     *
+     * @return future, который завершается true, если модель заменена
+     */
+    public CompletableFuture<Boolean> retrain() {
+        CryptoPredictionModel live = predictionModel.get();
+        if (live == null) {
+            log.warn("AI model is not loaded, retraining skipped");
+            return CompletableFuture.completedFuture(false);
+        }
+        List<KlineArchive> archives = symbols.stream()
+                .map(symbol -> dataCollector.getArchive(symbol, INTERVAL))
+                .filter(Objects::nonNull)
+                .toList();
+        return trainer.train(live, archives).thenApply(candidate -> {
+            if (candidate == null) {
+                return false;
+            }
+            // Прогреваем до замены, чтобы первый прогноз новой модели не платил за инициализацию
+            warmUp(candidate).join();
+            // Модель могла смениться, пока шло обучение; тогда кандидат сравнивался не с ней
+            if (!predictionModel.compareAndSet(live, candidate)) {
+                return false;
+            }
+            log.info("Replaced live AI model with the retrained one");
             try {
-                predictionModel = createAndSaveInitialModel();
+                candidate.save(MODEL_FILE);
             } catch (IOException e) {
-                log.error("Error loading AI model: ", e);
+                log.error("Error saving retrained AI model: ", e);
             }
+            return true;
+        });
+    }
+
+    /**
+     * Прогревает модель в потоках пула прогнозов.
+     *
+     * @return future, который завершается после прогрева; ошибка прогрева только пишется в лог
+     */
+    private CompletableFuture<Void> warmUp(CryptoPredictionModel model) {
+        if (inferenceExecutor == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return model.warmUp(inferenceExecutor, inferenceThreads, symbols.size(), SEQ_LENGTH)
+                .exceptionally(ex -> {
+                    log.warn("AI model warm-up failed", ex);
+                    return null;
+                });
+    }
+
+    /**
+     * @return задержки прогнозов текущей модели или null, если модель еще не загружена
+     */
+    public LatencyHistogram getInferenceLatency() {
+        CryptoPredictionModel model = predictionModel.get();
+        return model == null ? null : model.getInferenceLatency();
+    }
+
+    private void addBar(FeatureTensor tensor, MarketEvent event) {
+        CryptoPredictionModel model = predictionModel.get();
+        if (adaptiveNormalization && model != null && model.isReady() && tensor.indexOf(event.getSymbol()) >= 0) {
+            barFeatures[0] = event.getOpen();
+            barFeatures[1] = event.getHigh();
+            barFeatures[2] = event.getLow();
+            barFeatures[3] = event.getClose();
+            barFeatures[4] = event.getVolume();
+            model.updateNormalization(barFeatures);
         }
+        tensor.add(event.getSymbol(), event.getTimestamp(), event.getOpen(), event.getHigh(), event.getLow(),
+                event.getClose(), event.getVolume());
     }
 
     /**
-     * Анализ данных индикаторов и генерация торгового сигнала
+     * Анализ данных индикаторов и генерация торговых сигналов.
+     * Прогнозы ИИ по всем символам сигналов считаются одним пакетом.
      *
-     * @param indicatorsAnalysisResult - карта результатов анализа индикаторов
-     * @return торговый сигнал
+     * @param indicatorsAnalysisResult - результаты анализа индикаторов
+     * @return торговые сигналы индикаторов, направление которых подтверждает прогноз ИИ
      */
     //@Override
     public List<TradeSignal> analyzeData(List<Signal> indicatorsAnalysisResult) {
-        // Получаем прогноз цены от модели ИИ
-        double prediction = getAIPrediction("BTCUSDT", MarketInterval.ONE_MINUTE);
+        List<String> symbols = indicatorsAnalysisResult.stream().map(Signal::getAsset).distinct().toList();
+
+        // Получаем прогнозы цен от модели ИИ
+        Map<String, Double> predictions = getAIPredictions(symbols);
 
-        // Генерация торгового сигнала на основе прогнозов ИИ и результатов индикаторов
-        //TradeSignal signal = generateTradeSignal(indicatorsAnalysisResult, prediction, "BTCUSDT");
-        //log.info("Generated Trade Signal: {}", signal);
-        //return signal;
+        // Генерация торговых сигналов на основе прогнозов ИИ и результатов индикаторов
+        List<TradeSignal> tradeSignals = new ArrayList<>();
+        for (Signal signal : indicatorsAnalysisResult) {
+            Double prediction = predictions.get(signal.getAsset());
+            TradeSignal tradeSignal = prediction == null ? null : generateTradeSignal(signal, prediction);
+            if (tradeSignal != null) {
+                log.info("Generated Trade Signal: {}", tradeSignal);
+                tradeSignals.add(tradeSignal);
+            }
+        }
+        return tradeSignals;
+    }
 
+    /**
+     * Торговый сигнал по сигналу индикаторов, если прогноз цены ИИ с ним согласен.
+     *
+     * @param signal     - сигнал индикаторов
+     * @param prediction - прогноз цены
+     * @return торговый сигнал или null
+     */
+    private TradeSignal generateTradeSignal(Signal signal, double prediction) {
+        double entryPrice = signal.getPrice();
+        AnalysisResult result = signal.getAnalysisResult();
+        if ((result == AnalysisResult.BUY || result == AnalysisResult.STRONG_BUY) && prediction > entryPrice) {
+            return new TradeSignal(result, signal.getAsset(), entryPrice, entryPrice * 0.995, entryPrice * 1.015,
+                    SignalOrigin.AI, System.currentTimeMillis());
+        }
+        if ((result == AnalysisResult.SELL || result == AnalysisResult.STRONG_SELL) && prediction < entryPrice) {
+            return new TradeSignal(result, signal.getAsset(), entryPrice, entryPrice * 1.005, entryPrice * 0.985,
+                    SignalOrigin.AI, System.currentTimeMillis());
+        }
         return null;
     }
 
     /**
-     * Получение прогноза цены от модели ИИ
+     * Получение прогнозов цены от модели ИИ для всех символов одним вызовом модели по окнам признаков
      *
-     * @param symbol   - торговый символ (например, BTCUSDT)
-     * @param interval - интервал торгов (например, MarketInterval.ONE_HOUR)
-     * @return прогноз цены
+     * @param symbols - торговые символы
+     * @return прогнозы цены по символам; символы без полного окна из {@link #SEQ_LENGTH} баров пропускаются
      */
-    private double getAIPrediction(String symbol, MarketInterval interval) {
-        // Получаем список элементов Kline для заданного символа и интервала
-        List<KlineElement> klineElements = dataCollector.getKlineCache()
-                .getOrDefault(symbol, Collections.emptyMap())
-                .getOrDefault(interval, Collections.emptyList());
-
-        // Проверяем, достаточно ли данных для прогнозирования
-        if (klineElements.size() < SEQ_LENGTH) {
-            log.warn("Not enough data available for {} at interval {}", symbol, interval);
-            return 0;
+    private Map<String, Double> getAIPredictions(List<String> symbols) {
+        FeatureTensor tensor = featureTensor;
+        if (tensor == null) {
+            log.warn("AI feature windows are not started");
+            return Map.of();
+        }
+        // Одна модель на весь прогноз, даже если ее заменят посередине
+        CryptoPredictionModel model = predictionModel.get();
+        if (model == null) {
+            log.warn("AI model is not loaded yet");
+            return Map.of();
+        }
+        if (!model.isReady()) {
+            log.warn("AI model has no normalization statistics yet, train it before predicting");
+            return Map.of();
         }
 
-        // Преобразуем данные в формат, пригодный для модели ИИ
-        double[][] marketData = DataPreparationUtils.prepareMarketData(klineElements);
-        return predictionModel.predict(marketData);
+        double[] predictions = model.predict(tensor);
+
+        Map<String, Double> result = new HashMap<>();
+        for (String symbol : symbols) {
+            int index = tensor.indexOf(symbol);
+            if (index < 0 || Double.isNaN(predictions[index])) {
+                log.warn("Not enough data available for {} at interval {}", symbol, INTERVAL);
+                continue;
+            }
+            result.put(symbol, predictions[index]);
+        }
+        return result;
     }
 
     /**
@@ -108,7 +335,7 @@ public class AIStrategyManager  {
      *
      * @return экземпляр CryptoPredictionModel
      */
-    private CryptoPredictionModel createAndSaveInitialModel() throws IOException {
+    private CryptoPredictionModel createAndSaveInitialModel() {
         int numInputFeatures = 5; // Количество признаков
         int numOutput = 1; // Один выход
         int lstmLayerSize = 50; // Размер слоя LSTM
@@ -144,6 +371,6 @@ public class AIStrategyManager  {
         }
 
         // Возвращаем экземпляр CryptoPredictionModel
-        return new CryptoPredictionModel(model, new NormalizerMinMaxScaler());
+        return new CryptoPredictionModel(model, new FeatureNormalizer());
     }
 }
\ No newline at end of file
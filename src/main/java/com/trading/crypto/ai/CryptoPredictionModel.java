@@ -1,37 +1,67 @@
 package com.trading.crypto.ai;
 
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class CryptoPredictionModel {
     private MultiLayerNetwork model; // Модель глубокого обучения
-    private NormalizerMinMaxScaler scaler; // Нормализатор данных
+    private FeatureNormalizer normalizer; // Статистики нормализации, сохраняются вместе с моделью
+    private InferenceRunner runner; // Прогнозы в рабочей области ND4J с замером задержки
 
     /**
-     * Конструктор класса CryptoPredictionModel из файла
+     * Конструктор класса CryptoPredictionModel из файла.
+     * Статистики нормализации читаются из того же файла; если их там нет, модель нужно обучить перед прогнозами.
      *
      * @param modelFilePath - путь к файлу с моделью
      * @throws IOException - исключение при загрузке модели
      */
     public CryptoPredictionModel(String modelFilePath) throws IOException {
-        model = MultiLayerNetwork.load(new File(modelFilePath), true);
-        scaler = new NormalizerMinMaxScaler();
+        File modelFile = new File(modelFilePath);
+        model = MultiLayerNetwork.load(modelFile, true);
+        NormalizerMinMaxScaler scaler = ModelSerializer.restoreNormalizerFromFile(modelFile);
+        normalizer = new FeatureNormalizer(scaler);
+        runner = new InferenceRunner(model);
     }
 
     /**
      * Конструктор класса CryptoPredictionModel из существующей модели
      *
-     * @param model  - модель глубокого обучения
-     * @param scaler - нормализатор данных
+     * @param model      - модель глубокого обучения
+     * @param normalizer - статистики нормализации
      */
-    public CryptoPredictionModel(MultiLayerNetwork model, NormalizerMinMaxScaler scaler) {
+    public CryptoPredictionModel(MultiLayerNetwork model, FeatureNormalizer normalizer) {
         this.model = model;
-        this.scaler = scaler;
+        this.normalizer = normalizer;
+        this.runner = new InferenceRunner(model);
+    }
+
+    /**
+     * @return true, если статистики нормализации посчитаны и модель может прогнозировать
+     */
+    public boolean isReady() {
+        return normalizer.isFitted();
+    }
+
+    /**
+     * Расширяет статистики нормализации новым баром, если он вышел за их границы.
+     *
+     * @param bar - признаки бара (формат: [numFeatures])
+     */
+    public void updateNormalization(double[] bar) {
+        normalizer.update(bar);
     }
 
     /**
@@ -41,58 +71,173 @@ public class CryptoPredictionModel {
      * @return прогноз цены
      */
     public double predict(double[][] data) {
-        // Преобразование данных к формату, ожидаемому моделью
-        int numFeatures = data[0].length;
-        int timeSeriesLength = data.length;
-        double[][][] reshapedData = new double[1][timeSeriesLength][numFeatures];
+        return predictBatch(new double[][][]{data})[0];
+    }
 
-        for (int i = 0; i < timeSeriesLength; i++) {
-            System.arraycopy(data[i], 0, reshapedData[0][i], 0, numFeatures);
+    /**
+     * Прогнозирование цен сразу для нескольких окон одним прямым проходом модели.
+     * <p>
+     * Окна нормализуются статистиками обучения и укладываются в один плоский буфер в формате рекуррентной сети
+     * [miniBatch, numFeatures, timeSeriesLength]. Прогноз окна - выход сети на последнем шаге.
+     *
+     * @param windows - окна данных (формат: [miniBatch, timeSeriesLength, numFeatures]), одинаковой длины
+     * @return прогнозы цен в порядке окон
+     */
+    public double[] predictBatch(double[][][] windows) {
+        int batchSize = windows.length;
+        if (batchSize == 0) {
+            return new double[0];
         }
+        int timeSeriesLength = windows[0].length;
+        double[] features = normalizer.transform(windows);
+
+        // Один вызов модели на все окна
+        return runner.run(() -> Nd4j.create(features, new long[]{batchSize, normalizer.getFeatureCount(), timeSeriesLength}, 'c'),
+                output -> {
+                    double[] predictions = new double[batchSize];
+                    for (int n = 0; n < batchSize; n++) {
+                        predictions[n] = output.getDouble(n, 0, timeSeriesLength - 1);
+                    }
+                    return predictions;
+                });
+    }
+
+    /**
+     * Прогнозирование цен по окнам всех символов буфера признаков одним прямым проходом модели,
+     * прямо по представлению буфера, без копирования окон.
+     *
+     * @param tensor - буфер признаков, нормализованный статистиками этой модели
+     * @return прогнозы цен по строкам буфера, NaN для символов, окно которых не готово
+     */
+    public double[] predict(FeatureTensor tensor) {
+        return tensor.withWindow(normalizer, window -> runner.run(() -> window, output -> {
+            int lastStep = tensor.getLength() - 1;
+            double[] predictions = new double[(int) window.size(0)];
+            for (int n = 0; n < predictions.length; n++) {
+                predictions[n] = tensor.isReady(n) ? output.getDouble(n, 0, lastStep) : Double.NaN;
+            }
+            return predictions;
+        }));
+    }
 
-        // Создание датасета с метками
-        DataSet dataSet = new DataSet(Nd4j.create(reshapedData), Nd4j.create(new double[]{0}));
+    /**
+     * Прогрев модели входом формы будущих прогнозов в потоках, которые будут прогнозировать
+     *
+     * @param executor         - пул, в котором выполняются прогнозы
+     * @param threads          - количество потоков пула
+     * @param batchSize        - количество окон в прогнозе
+     * @param timeSeriesLength - длина окна в барах
+     * @return future, который завершается после прогрева всех потоков
+     */
+    public CompletableFuture<Void> warmUp(Executor executor, int threads, int batchSize, int timeSeriesLength) {
+        return runner.warmUp(executor, threads, batchSize, FeatureTensor.FEATURES, timeSeriesLength);
+    }
 
-        // Нормализуем данные
-        scaler.fit(dataSet);
-        scaler.transform(dataSet);
+    /**
+     * @return задержки прогнозов модели
+     */
+    public LatencyHistogram getInferenceLatency() {
+        return runner.getLatency();
+    }
+
+    /**
+     * @return статистики нормализации модели
+     */
+    public FeatureNormalizer getNormalizer() {
+        return normalizer;
+    }
+
+    /**
+     * Копия модели для обучения в фоне: веса сети и статистики нормализации копируются,
+     * поэтому обучение копии не затрагивает прогнозы этой модели. Копирование не пересекается с прогнозами.
+     *
+     * @param normalizer - статистики нормализации копии
+     * @return копия модели
+     */
+    public CryptoPredictionModel copy(FeatureNormalizer normalizer) {
+        synchronized (model) {
+            return new CryptoPredictionModel(model.clone(), normalizer);
+        }
+    }
+
+    /**
+     * Одна эпоха обучения по потоку минибатчей. Нормализация выполняется самим потоком.
+     *
+     * @param iterator - поток обучающих последовательностей
+     */
+    public void fit(DataSetIterator iterator) {
+        iterator.reset();
+        model.fit(iterator);
+    }
 
-        // Прогнозирование модели
-        return model.output(dataSet.getFeatures(), false).getDouble(0);
+    /**
+     * Оценка на отложенной выборке: средний квадрат ошибки прогноза на последнем шаге окна,
+     * то есть того значения, которое используется в торговле.
+     *
+     * @param iterator - поток проверочных последовательностей
+     * @return средний квадрат ошибки или NaN, если последовательностей нет
+     */
+    public double evaluate(DataSetIterator iterator) {
+        iterator.reset();
+        double sumOfSquares = 0;
+        long count = 0;
+        while (iterator.hasNext()) {
+            DataSet dataSet = iterator.next();
+            INDArray labels = dataSet.getLabels();
+            INDArray output = model.output(dataSet.getFeatures(), false);
+            long lastStep = labels.size(2) - 1;
+            for (long n = 0; n < labels.size(0); n++) {
+                double error = output.getDouble(n, 0, lastStep) - labels.getDouble(n, 0, lastStep);
+                sumOfSquares += error * error;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sumOfSquares / count;
     }
 
     /**
-     * Переобучение модели
+     * Переобучение модели. Статистики нормализации считаются по данным первого обучения
+     * и дальше не меняются, чтобы прогнозы нормализовались так же, как обучалась модель.
      *
-     * @param data   - данные для обучения (формат: [numRows, timeSeriesLength, numFeatures])
+     * @param data   - данные для обучения (формат: [numRows, numFeatures]), каждая строка - один шаг
      * @param labels - метки (labels) для обучения
      */
     public void fit(double[][] data, double[] labels) {
-        int numFeatures = data[0].length;
         int numRows = data.length;
-        double[][][] reshapedData = new double[numRows][1][numFeatures];
+        double[][][] reshapedData = new double[numRows][1][];
 
         for (int i = 0; i < numRows; i++) {
-            System.arraycopy(data[i], 0, reshapedData[i][0], 0, numFeatures);
+            reshapedData[i][0] = data[i];
         }
 
-        DataSet dataSet = new DataSet(Nd4j.create(reshapedData), Nd4j.create(labels));
+        if (!normalizer.isFitted()) {
+            normalizer.fit(reshapedData);
+        }
 
         // Нормализуем данные
-        scaler.fit(dataSet);
-        scaler.transform(dataSet);
+        INDArray features = Nd4j.create(normalizer.transform(reshapedData),
+                new long[]{numRows, normalizer.getFeatureCount(), 1}, 'c');
+        DataSet dataSet = new DataSet(features, Nd4j.create(labels, new long[]{numRows, 1, 1}, 'c'));
 
         // Обучаем модель
         model.fit(dataSet);
     }
 
     /**
-     * Сохранение модели в файл
+     * Сохранение модели в файл вместе со статистиками нормализации.
+     * Модель пишется во временный файл и переименовывается, поэтому файл никогда не бывает записан наполовину.
      *
      * @param filePath - путь к файлу
      * @throws IOException - исключение при сохранении модели
      */
     public void save(String filePath) throws IOException {
-        model.save(new File(filePath));
+        Path target = Path.of(filePath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        File modelFile = temp.toFile();
+        model.save(modelFile);
+        if (normalizer.isFitted()) {
+            ModelSerializer.addNormalizerToModel(modelFile, normalizer.toScaler());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 }
@@ -0,0 +1,209 @@
+package com.trading.crypto.ai;
+
+import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Статистики min-max нормализации признаков модели.
+ * <p>
+ * Минимумы и максимумы считаются один раз при обучении и сохраняются вместе с моделью в виде
+ * {@link NormalizerMinMaxScaler}, поэтому прогноз применяет к признакам только аффинное преобразование
+ * (x - min) * scale и не зависит от окна, по которому строится. По желанию границы расширяются
+ * новыми барами через {@link #update(double[])}.
+ * <p>
+ * Статистики неизменяемы и заменяются целиком, поэтому чтение безопасно из любого потока.
+ */
+public class FeatureNormalizer {
+
+    private volatile Stats stats;
+
+    /**
+     * Растет при каждой замене статистик, чтобы держатели нормализованных данных могли их пересчитать.
+     */
+    private volatile long version;
+
+    /**
+     * Создает ненастроенный нормализатор, до {@link #fit(double[][][])} прогнозы невозможны.
+     */
+    public FeatureNormalizer() {
+    }
+
+    /**
+     * Восстанавливает статистики из сохраненного вместе с моделью нормализатора.
+     *
+     * @param scaler нормализатор из файла модели, может быть null
+     */
+    public FeatureNormalizer(NormalizerMinMaxScaler scaler) {
+        if (scaler != null && scaler.getMin() != null && scaler.getMax() != null) {
+            this.stats = new Stats(scaler.getMin().toDoubleVector(), scaler.getMax().toDoubleVector());
+        }
+    }
+
+    /**
+     * Создает нормализатор с готовыми статистиками, например посчитанными потоково по истории.
+     *
+     * @param min минимумы признаков
+     * @param max максимумы признаков
+     */
+    public FeatureNormalizer(double[] min, double[] max) {
+        this.stats = new Stats(min.clone(), max.clone());
+    }
+
+    /**
+     * @return независимая копия с текущими статистиками, ее обновления не затрагивают этот нормализатор
+     */
+    public FeatureNormalizer copy() {
+        FeatureNormalizer copy = new FeatureNormalizer();
+        copy.stats = stats;
+        return copy;
+    }
+
+    public boolean isFitted() {
+        return stats != null;
+    }
+
+    /**
+     * @return количество признаков или 0, если статистики не посчитаны
+     */
+    public int getFeatureCount() {
+        Stats current = stats;
+        return current == null ? 0 : current.min.length;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Нормализует одно значение признака.
+     *
+     * @param feature индекс признака
+     * @param value   значение
+     * @return нормализованное значение
+     */
+    public double normalize(int feature, double value) {
+        Stats current = stats;
+        if (current == null) {
+            throw new IllegalStateException("Normalizer is not fitted");
+        }
+        return (value - current.min[feature]) * current.scale[feature];
+    }
+
+    /**
+     * Считает минимумы и максимумы признаков по обучающим данным.
+     *
+     * @param data данные (формат: [numRows, timeSeriesLength, numFeatures])
+     */
+    public synchronized void fit(double[][][] data) {
+        int numFeatures = data[0][0].length;
+        double[] min = new double[numFeatures];
+        double[] max = new double[numFeatures];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (double[][] window : data) {
+            for (double[] bar : window) {
+                for (int f = 0; f < numFeatures; f++) {
+                    min[f] = Math.min(min[f], bar[f]);
+                    max[f] = Math.max(max[f], bar[f]);
+                }
+            }
+        }
+        stats = new Stats(min, max);
+        version++;
+    }
+
+    /**
+     * Расширяет границы признаков новым баром. Статистики заменяются, только если бар вышел за границы.
+     *
+     * @param bar признаки бара
+     */
+    public synchronized void update(double[] bar) {
+        Stats current = stats;
+        if (current == null) {
+            throw new IllegalStateException("Normalizer is not fitted");
+        }
+        double[] min = null;
+        double[] max = null;
+        for (int f = 0; f < current.min.length; f++) {
+            // Границы проверяются независимо: после подгонки без баров (min = +inf, max = -inf) первый бар задает обе
+            if (bar[f] < current.min[f]) {
+                min = min == null ? current.min.clone() : min;
+                min[f] = bar[f];
+            }
+            if (bar[f] > current.max[f]) {
+                max = max == null ? current.max.clone() : max;
+                max[f] = bar[f];
+            }
+        }
+        if (min != null || max != null) {
+            stats = new Stats(min == null ? current.min : min, max == null ? current.max : max);
+            version++;
+        }
+    }
+
+    /**
+     * Нормализует окна и укладывает их в плоский буфер в формате рекуррентной сети
+     * [miniBatch, numFeatures, timeSeriesLength].
+     *
+     * @param windows окна данных (формат: [miniBatch, timeSeriesLength, numFeatures]), одинаковой длины
+     * @return плоский буфер нормализованных признаков
+     */
+    public double[] transform(double[][][] windows) {
+        Stats current = stats;
+        if (current == null) {
+            throw new IllegalStateException("Normalizer is not fitted");
+        }
+        int batchSize = windows.length;
+        int timeSeriesLength = windows[0].length;
+        int numFeatures = current.min.length;
+
+        double[] features = new double[batchSize * numFeatures * timeSeriesLength];
+        for (int n = 0; n < batchSize; n++) {
+            double[][] window = windows[n];
+            if (window.length != timeSeriesLength) {
+                throw new IllegalArgumentException("All windows must have " + timeSeriesLength + " bars, window " + n + " has " + window.length);
+            }
+            for (int f = 0; f < numFeatures; f++) {
+                double min = current.min[f];
+                double scale = current.scale[f];
+                int offset = (n * numFeatures + f) * timeSeriesLength;
+                for (int t = 0; t < timeSeriesLength; t++) {
+                    features[offset + t] = (window[t][f] - min) * scale;
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * @return нормализатор DL4J с текущими статистиками для сохранения вместе с моделью
+     */
+    public NormalizerMinMaxScaler toScaler() {
+        Stats current = stats;
+        if (current == null) {
+            throw new IllegalStateException("Normalizer is not fitted");
+        }
+        NormalizerMinMaxScaler scaler = new NormalizerMinMaxScaler();
+        scaler.setFeatureStats(Nd4j.create(current.min), Nd4j.create(current.max));
+        return scaler;
+    }
+
+    private static class Stats {
+        private final double[] min;
+        private final double[] max;
+        private final double[] scale;
+
+        private Stats(double[] min, double[] max) {
+            this.min = min;
+            this.max = max;
+            this.scale = new double[min.length];
+            for (int f = 0; f < min.length; f++) {
+                double range = max[f] - min[f];
+                // Постоянный признак переводится в 0
+                scale[f] = range > 0 ? 1 / range : 0;
+            }
+        }
+    }
+}
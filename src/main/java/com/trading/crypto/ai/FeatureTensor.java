@@ -0,0 +1,163 @@
+package com.trading.crypto.ai;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Скользящие окна признаков всех символов для пакетного прогноза в одном заранее выделенном буфере ND4J вне кучи.
+ * <p>
+ * Буфер имеет форму [symbols, features, 2 * length]: признаки бара пишутся в слот номера бара по модулю
+ * {@code length} и в слот на {@code length} дальше. Поэтому последние {@code length} баров всегда лежат
+ * в буфере подряд, и окно всех символов - это представление [symbols, features, length] без копирования.
+ * Бар стоит O(features) записей, новые массивы не создаются.
+ * <p>
+ * Слоты выбираются по номеру бара, общему для всех символов, поэтому окна символов выровнены по времени.
+ * Символ готов к прогнозу, когда у него подряд, без пропусков, набралось {@code length} баров
+ * и его последний бар - самый свежий в буфере.
+ * <p>
+ * В буфере лежат нормализованные значения. Сырые значения хранятся рядом в куче: если статистики
+ * нормализации поменялись или прогноз пришел от другой модели, буфер пересчитывается целиком.
+ */
+public class FeatureTensor {
+
+    public static final int FEATURES = 5;
+
+    private final int length;
+    private final long intervalMillis;
+    private FeatureNormalizer normalizer;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final String[] symbols;
+
+    private final INDArray buffer;
+    private final double[] raw;
+    private final long[] lastBars;
+    private final int[] filled;
+    private long headBar = Long.MIN_VALUE;
+    private long normalizerVersion = -1;
+
+    /**
+     * @param symbols        символы, строки буфера идут в этом порядке
+     * @param length         длина окна в барах
+     * @param intervalMillis длина бара в миллисекундах
+     */
+    public FeatureTensor(List<String> symbols, int length, long intervalMillis) {
+        this.symbols = symbols.toArray(new String[0]);
+        for (int i = 0; i < this.symbols.length; i++) {
+            indexes.put(this.symbols[i], i);
+        }
+        this.length = length;
+        this.intervalMillis = intervalMillis;
+        this.buffer = Nd4j.create(new long[]{this.symbols.length, FEATURES, 2L * length}, 'c');
+        this.raw = new double[this.symbols.length * FEATURES * length];
+        this.lastBars = new long[this.symbols.length];
+        this.filled = new int[this.symbols.length];
+        Arrays.fill(lastBars, Long.MIN_VALUE);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return индекс строки символа или -1, если символ не отслеживается
+     */
+    public int indexOf(String symbol) {
+        Integer index = indexes.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Добавляет закрытый бар символа. Бар не новее последнего учтенного пропускается,
+     * после пропуска баров окно символа набирается заново.
+     */
+    public synchronized void add(String symbol, long timestamp, double open, double high, double low, double close, double volume) {
+        Integer index = indexes.get(symbol);
+        if (index == null) {
+            return;
+        }
+        long bar = timestamp / intervalMillis;
+        if (bar <= lastBars[index]) {
+            return;
+        }
+        filled[index] = bar == lastBars[index] + 1 ? Math.min(length, filled[index] + 1) : 1;
+        lastBars[index] = bar;
+        headBar = Math.max(headBar, bar);
+
+        int slot = (int) Math.floorMod(bar, (long) length);
+        int base = index * FEATURES * length + slot;
+        raw[base] = open;
+        raw[base + length] = high;
+        raw[base + 2 * length] = low;
+        raw[base + 3 * length] = close;
+        raw[base + 4 * length] = volume;
+
+        if (normalizer == null || !normalizer.isFitted()) {
+            return;
+        }
+        if (normalizerVersion != normalizer.getVersion()) {
+            renormalize();
+        } else {
+            for (int f = 0; f < FEATURES; f++) {
+                write(index, f, slot, raw[base + f * length]);
+            }
+        }
+    }
+
+    /**
+     * @return true, если окно символа заполнено и заканчивается самым свежим баром буфера
+     */
+    public synchronized boolean isReady(int index) {
+        return filled[index] == length && lastBars[index] == headBar;
+    }
+
+    /**
+     * Выполняет действие над окном всех символов [symbols, features, length] от старого бара к свежему.
+     * Буфер не меняется, пока действие выполняется. Строки неготовых символов ({@link #isReady(int)}) содержат
+     * устаревшие данные, их результаты нужно отбросить.
+     *
+     * @param normalizer статистики нормализации модели, которая читает окно; после замены модели
+     *                   буфер один раз пересчитывается по статистикам новой
+     */
+    public synchronized <T> T withWindow(FeatureNormalizer normalizer, Function<INDArray, T> action) {
+        if (this.normalizer != normalizer) {
+            this.normalizer = normalizer;
+            normalizerVersion = -1;
+        }
+        if (normalizerVersion != normalizer.getVersion()) {
+            renormalize();
+        }
+        int start = (int) Math.floorMod(headBar + 1, (long) length);
+        return action.apply(buffer.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(start, start + length)));
+    }
+
+    /**
+     * Пересчитывает весь буфер по текущим статистикам нормализации. Нужен только при их смене.
+     */
+    private void renormalize() {
+        if (!normalizer.isFitted()) {
+            return;
+        }
+        normalizerVersion = normalizer.getVersion();
+        for (int n = 0; n < symbols.length; n++) {
+            for (int f = 0; f < FEATURES; f++) {
+                int base = (n * FEATURES + f) * length;
+                for (int slot = 0; slot < length; slot++) {
+                    write(n, f, slot, raw[base + slot]);
+                }
+            }
+        }
+    }
+
+    private void write(int index, int feature, int slot, double value) {
+        double normalized = normalizer.normalize(feature, value);
+        buffer.putScalar(index, feature, slot, normalized);
+        buffer.putScalar(index, feature, slot + length, normalized);
+    }
+}
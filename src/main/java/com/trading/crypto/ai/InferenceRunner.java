@@ -0,0 +1,129 @@
+package com.trading.crypto.ai;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Прямой проход сети внутри рабочей области ND4J с замером задержки.
+ * <p>
+ * Вход, промежуточные активации и выход размещаются в рабочей области, которая после первого прохода
+ * знает нужный объем и дальше переиспользует один и тот же буфер вне кучи, поэтому повторные прогнозы
+ * не выделяют и не освобождают память. Рабочие области привязаны к потоку, у каждого потока прогнозов - своя.
+ * Выход живет только до конца прохода: результат нужно прочитать в кучу внутри {@code reader}.
+ * <p>
+ * Сеть не потокобезопасна, а прогнозы идут из пула анализа, поэтому проходы выполняются по одному
+ * под блокировкой сети. Ожидание блокировки входит в задержку прогноза.
+ * <p>
+ * Задержка каждого прохода пишется в {@link LatencyHistogram}, перцентили периодически выводятся в лог.
+ */
+@Slf4j
+public class InferenceRunner {
+
+    private static final String WORKSPACE_ID = "AI_INFERENCE";
+    private static final int WARM_UP_PASSES = 3; // Проходов прогрева, в статистику задержек не входят
+    private static final long WARM_UP_GATHER_MILLIS = 1000; // Сколько задача прогрева ждет, пока остальные займут свои потоки
+    private static final long REPORT_EVERY = 1000; // Период вывода перцентилей задержки в прогнозах
+    private static final long LATENCY_BUDGET_MILLIS = 50; // Прогноз дольше этого выводится в лог сразу
+
+    private static final WorkspaceConfiguration WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .policyAllocation(AllocationPolicy.STRICT)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .build();
+
+    private final MultiLayerNetwork model;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public InferenceRunner(MultiLayerNetwork model) {
+        this.model = model;
+    }
+
+    /**
+     * Выполняет прямой проход и читает его результат.
+     *
+     * @param input  создает вход сети; массивы, созданные здесь, тоже размещаются в рабочей области
+     * @param reader читает выход сети в кучу
+     * @return результат {@code reader}
+     */
+    public <T> T run(Supplier<INDArray> input, Function<INDArray, T> reader) {
+        long started = System.nanoTime();
+        T result = forward(input, reader);
+        long elapsed = System.nanoTime() - started;
+
+        long runs = latency.record(elapsed);
+        if (elapsed > LATENCY_BUDGET_MILLIS * 1_000_000) {
+            log.warn("AI inference took {} ms, budget is {} ms", elapsed / 1_000_000, LATENCY_BUDGET_MILLIS);
+        }
+        // Номер замера у каждого вызова свой, поэтому отчет выводится ровно один раз на период
+        if (runs % REPORT_EVERY == 0) {
+            log.info("AI inference latency over {} runs: p50 {} us, p90 {} us, p99 {} us, max {} us", runs,
+                    latency.getPercentile(50), latency.getPercentile(90), latency.getPercentile(99), latency.getMax());
+        }
+        return result;
+    }
+
+    /**
+     * Прогревает сеть и рабочие области потоков прогнозов нулевым входом нужной формы,
+     * чтобы первый настоящий прогноз в каждом потоке не платил за инициализацию.
+     * <p>
+     * Рабочие области привязаны к потоку, поэтому прогрев идет в самом пуле прогнозов, по задаче на поток.
+     * Задача сначала ждет, пока остальные займут свои потоки, иначе все задачи мог бы выполнить один
+     * свободный поток. Поток, занятый дольше {@link #WARM_UP_GATHER_MILLIS}, прогреется первым прогнозом.
+     *
+     * @param executor         пул, в котором выполняются прогнозы
+     * @param threads          количество потоков пула
+     * @param batchSize        количество окон
+     * @param numFeatures      количество признаков
+     * @param timeSeriesLength длина окна в барах
+     * @return future, который завершается после прогрева всех потоков
+     */
+    public CompletableFuture<Void> warmUp(Executor executor, int threads, int batchSize, int numFeatures, int timeSeriesLength) {
+        long started = System.nanoTime();
+        CountDownLatch gathered = new CountDownLatch(threads);
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[threads];
+        for (int i = 0; i < threads; i++) {
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                gathered.countDown();
+                try {
+                    gathered.await(WARM_UP_GATHER_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+                    forward(() -> Nd4j.create(new long[]{batchSize, numFeatures, timeSeriesLength}, 'c'), output -> null);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(tasks).thenRun(() -> log.info("AI model warmed up for batch {} on {} inference threads in {} ms",
+                batchSize, threads, (System.nanoTime() - started) / 1_000_000));
+    }
+
+    /**
+     * @return задержки прогнозов этой модели
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    private <T> T forward(Supplier<INDArray> input, Function<INDArray, T> reader) {
+        synchronized (model) {
+            try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(WORKSPACE_CONFIG, WORKSPACE_ID)) {
+                return reader.apply(model.output(input.get(), false, workspace));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.trading.crypto.ai;
+
+import com.trading.crypto.data.impl.KlineArchive;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Поток обучающих последовательностей прямо из архивов баров, минибатчами.
+ * <p>
+ * Пример - окно из {@code length} баров, начинающееся с каждого {@code stride}-го бара диапазона архива.
+ * Признаки нормализуются статистиками модели, метка шага - цена закрытия следующего бара.
+ * В памяти одновременно лежит только текущий минибатч, поэтому история может быть любой длины.
+ * <p>
+ * Диапазоны задаются индексами баров архива, что позволяет отдать старую часть истории на обучение,
+ * а свежую - на проверку.
+ */
+public class KlineSequenceIterator implements DataSetIterator {
+
+    private final List<Range> ranges = new ArrayList<>();
+    private final int length;
+    private final int stride;
+    private final int batchSize;
+    private final FeatureNormalizer normalizer;
+
+    // Буферы чтения одного окна с баром метки, переиспользуются между примерами
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+
+    private DataSetPreProcessor preProcessor;
+    private int rangeIndex;
+    private long position;
+
+    /**
+     * @param length     длина окна в барах
+     * @param stride     шаг между началами соседних окон в барах
+     * @param batchSize  количество окон в минибатче
+     * @param normalizer статистики нормализации модели, должны быть посчитаны
+     */
+    public KlineSequenceIterator(int length, int stride, int batchSize, FeatureNormalizer normalizer) {
+        if (length <= 0 || stride <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Length, stride and batch size must be positive");
+        }
+        if (!normalizer.isFitted()) {
+            throw new IllegalStateException("Normalizer is not fitted");
+        }
+        this.length = length;
+        this.stride = stride;
+        this.batchSize = batchSize;
+        this.normalizer = normalizer;
+        this.open = new double[length + 1];
+        this.high = new double[length + 1];
+        this.low = new double[length + 1];
+        this.close = new double[length + 1];
+        this.volume = new double[length + 1];
+    }
+
+    /**
+     * Добавляет диапазон баров архива. Диапазон короче окна с баром метки пропускается.
+     *
+     * @param archive архив символа
+     * @param from    индекс первого бара диапазона
+     * @param to      индекс после последнего бара диапазона
+     * @return этот же итератор
+     */
+    public KlineSequenceIterator addRange(KlineArchive archive, long from, long to) {
+        if (to - from > length) {
+            ranges.add(new Range(archive, from, to));
+        }
+        return this;
+    }
+
+    /**
+     * @return количество окон во всех диапазонах
+     */
+    public long size() {
+        long size = 0;
+        for (Range range : ranges) {
+            // Окно с баром метки должно целиком лежать в диапазоне
+            size += (range.to - range.from - length - 1) / stride + 1;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return rangeIndex < ranges.size();
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int numFeatures = FeatureTensor.FEATURES;
+        double[] features = new double[num * numFeatures * length];
+        double[] labels = new double[num * length];
+
+        int examples = 0;
+        while (examples < num && hasNext()) {
+            Range range = ranges.get(rangeIndex);
+            if (position < range.from) {
+                position = range.from;
+            }
+            if (range.archive.read(position, length + 1, open, high, low, close, volume) == length + 1) {
+                int offset = examples * numFeatures * length;
+                for (int t = 0; t < length; t++) {
+                    features[offset + t] = normalizer.normalize(0, open[t]);
+                    features[offset + length + t] = normalizer.normalize(1, high[t]);
+                    features[offset + 2 * length + t] = normalizer.normalize(2, low[t]);
+                    features[offset + 3 * length + t] = normalizer.normalize(3, close[t]);
+                    features[offset + 4 * length + t] = normalizer.normalize(4, volume[t]);
+                    labels[examples * length + t] = close[t + 1];
+                }
+                examples++;
+            }
+            position += stride;
+            if (position + length >= range.to) {
+                rangeIndex++;
+                position = 0;
+            }
+        }
+
+        if (examples < num) {
+            // Последний минибатч неполный
+            double[] trimmedFeatures = new double[examples * numFeatures * length];
+            double[] trimmedLabels = new double[examples * length];
+            System.arraycopy(features, 0, trimmedFeatures, 0, trimmedFeatures.length);
+            System.arraycopy(labels, 0, trimmedLabels, 0, trimmedLabels.length);
+            features = trimmedFeatures;
+            labels = trimmedLabels;
+        }
+
+        DataSet dataSet = new DataSet(Nd4j.create(features, new long[]{examples, numFeatures, length}, 'c'),
+                Nd4j.create(labels, new long[]{examples, 1, length}, 'c'));
+        if (preProcessor != null) {
+            preProcessor.preProcess(dataSet);
+        }
+        return dataSet;
+    }
+
+    @Override
+    public int inputColumns() {
+        return FeatureTensor.FEATURES;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return 1;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        // Чтение архива остается в потоке обучения с его низким приоритетом
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        rangeIndex = 0;
+        position = 0;
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    private record Range(KlineArchive archive, long from, long to) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.trading.crypto.ai;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек в микросекундах с логарифмическими корзинами для перцентилей без хранения замеров.
+ * <p>
+ * Каждая степень двойки делится на {@link #SUB_BUCKETS} равных корзин, поэтому перцентиль отличается
+ * от точного значения не больше чем на 1/{@value #SUB_BUCKETS}. Запись - один атомарный инкремент,
+ * писать могут несколько потоков.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // Около 12 суток, больше не бывает
+    private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1; // Больше попадает в последнюю корзину
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Добавляет замер.
+     *
+     * @param nanos задержка в наносекундах
+     * @return количество замеров с учетом этого, у каждого замера свое
+     */
+    public long record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucket(micros));
+        max.accumulateAndGet(micros, Math::max);
+        return count.incrementAndGet();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return наибольшая задержка в микросекундах
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile перцентиль от 0 до 100
+     * @return верхняя граница корзины перцентиля в микросекундах или NaN, если замеров еще не было
+     */
+    public double getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long total = count.get();
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // У последней корзины верхней границы нет
+                return i == counts.length() - 1 ? max.get() : Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        long clamped = Math.min(micros, MAX_MICROS);
+        int exponent = 63 - Long.numberOfLeadingZeros(clamped);
+        int sub = (int) (clamped >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
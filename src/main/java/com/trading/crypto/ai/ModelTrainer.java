@@ -0,0 +1,225 @@
+package com.trading.crypto.ai;
+
+import com.trading.crypto.data.impl.KlineArchive;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Фоновое обучение модели на отдельном потоке с минимальным приоритетом.
+ * <p>
+ * Обучается копия живой модели, живая модель продолжает прогнозировать. История читается потоком
+ * из архивов баров через {@link KlineSequenceIterator}: старая часть каждого архива идет на обучение,
+ * свежая - на проверку. Копия возвращается, только если на проверке она ошиблась меньше живой модели,
+ * заменять ли ею живую - решает вызывающий.
+ * <p>
+ * Все задачи выполняются одним потоком по очереди, поэтому два обучения никогда не идут одновременно.
+ * <p>
+ * Дозагрузка истории ({@link KlineArchive#prepend}) сдвигает индексы баров архива. Обучение, во время которого
+ * сдвинулся хоть один архив, отбрасывается и запускается заново с новыми границами.
+ */
+@Slf4j
+public class ModelTrainer {
+
+    private static final int READ_CHUNK = 4096; // Баров за одно чтение архива при подсчете статистик
+    private static final int MAX_ATTEMPTS = 3; // Запусков обучения, если дозагрузка истории сдвигает архивы
+
+    private final int length;
+    private final int stride;
+    private final int batchSize;
+    private final int epochs;
+    private final double holdoutFraction;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param length          длина окна в барах
+     * @param stride          шаг между началами соседних окон в барах
+     * @param batchSize       количество окон в минибатче
+     * @param epochs          количество эпох обучения
+     * @param holdoutFraction доля самых свежих баров каждого архива для проверки
+     */
+    public ModelTrainer(int length, int stride, int batchSize, int epochs, double holdoutFraction) {
+        if (holdoutFraction <= 0 || holdoutFraction >= 1) {
+            throw new IllegalArgumentException("Holdout fraction must be between 0 and 1: " + holdoutFraction);
+        }
+        this.length = length;
+        this.stride = stride;
+        this.batchSize = batchSize;
+        this.epochs = epochs;
+        this.holdoutFraction = holdoutFraction;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-trainer");
+            thread.setDaemon(true);
+            // Обучение не должно отнимать процессор у торговых потоков
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Выполняет задачу в потоке обучения, например загрузку модели из файла.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * Запускает задачу в потоке обучения каждые {@code period} после завершения предыдущего запуска,
+     * первый раз - через {@code period}.
+     */
+    public void scheduleWithFixedDelay(Runnable task, long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                // Исключение отменило бы все следующие запуски
+                log.error("Scheduled model training task failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Обучает копию модели на истории архивов и сравнивает ее с моделью на отложенной выборке.
+     *
+     * @param live     живая модель, сама не меняется
+     * @param archives архивы баров символов на интервале модели
+     * @return future с обученной копией, если она лучше живой модели на проверке, иначе с null
+     */
+    public CompletableFuture<CryptoPredictionModel> train(CryptoPredictionModel live, List<KlineArchive> archives) {
+        return submit(() -> doTrain(live, archives));
+    }
+
+    private CryptoPredictionModel doTrain(CryptoPredictionModel live, List<KlineArchive> archives) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            TrainingRun run = doTrainOnce(live, archives);
+            if (!run.historyShifted()) {
+                return run.candidate();
+            }
+            log.warn("Archived history was extended during AI model training, restarting it (attempt {} of {})",
+                    attempt, MAX_ATTEMPTS);
+        }
+        log.warn("Archived history kept changing, AI model training skipped until the next run");
+        return null;
+    }
+
+    private TrainingRun doTrainOnce(CryptoPredictionModel live, List<KlineArchive> archives) {
+        long started = System.currentTimeMillis();
+        // Границы фиксируются в начале, бары, пришедшие во время обучения, в него не попадают.
+        // Первый бар - якорь индексов: если он сменился, в начало архива дописана история и индексы сдвинулись
+        long[] sizes = new long[archives.size()];
+        long[] splits = new long[archives.size()];
+        long[] firstTimestamps = new long[archives.size()];
+        for (int i = 0; i < archives.size(); i++) {
+            KlineArchive archive = archives.get(i);
+            synchronized (archive) {
+                sizes[i] = archive.size();
+                firstTimestamps[i] = sizes[i] > 0 ? archive.getFirstTimestamp() : Long.MIN_VALUE;
+            }
+            splits[i] = sizes[i] - (long) Math.ceil(sizes[i] * holdoutFraction);
+        }
+
+        // Статистики живой модели сохраняются, иначе ее веса перестанут соответствовать входам
+        FeatureNormalizer normalizer = live.isReady() ? live.getNormalizer().copy() : fitNormalizer(archives, splits);
+        if (historyShifted(archives, sizes, firstTimestamps)) {
+            return TrainingRun.SHIFTED;
+        }
+        if (normalizer == null) {
+            log.warn("Not enough archived history to train the AI model");
+            return TrainingRun.NONE;
+        }
+
+        KlineSequenceIterator training = new KlineSequenceIterator(length, stride, batchSize, normalizer);
+        KlineSequenceIterator holdout = new KlineSequenceIterator(length, stride, batchSize, normalizer);
+        for (int i = 0; i < archives.size(); i++) {
+            training.addRange(archives.get(i), 0, splits[i]);
+            holdout.addRange(archives.get(i), splits[i], sizes[i]);
+        }
+        if (training.size() == 0 || holdout.size() == 0) {
+            log.warn("Not enough archived history to train the AI model: {} training and {} holdout sequences",
+                    training.size(), holdout.size());
+            return TrainingRun.NONE;
+        }
+
+        CryptoPredictionModel candidate = live.copy(normalizer);
+        // Копия до обучения совпадает с живой моделью, ее ошибка - ошибка живой модели
+        double liveError = live.isReady() ? candidate.evaluate(holdout) : Double.POSITIVE_INFINITY;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            candidate.fit(training);
+            if (historyShifted(archives, sizes, firstTimestamps)) {
+                return TrainingRun.SHIFTED;
+            }
+        }
+        double candidateError = candidate.evaluate(holdout);
+        if (historyShifted(archives, sizes, firstTimestamps)) {
+            return TrainingRun.SHIFTED;
+        }
+
+        log.info("AI model trained on {} sequences in {} ms, holdout MSE {} against live {}",
+                training.size(), System.currentTimeMillis() - started, candidateError, liveError);
+        return new TrainingRun(candidateError < liveError ? candidate : null, false);
+    }
+
+    /**
+     * @return true, если в начало хоть одного архива дописана история после фиксации границ
+     */
+    private static boolean historyShifted(List<KlineArchive> archives, long[] sizes, long[] firstTimestamps) {
+        for (int i = 0; i < archives.size(); i++) {
+            if (sizes[i] > 0 && archives.get(i).getFirstTimestamp() != firstTimestamps[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Минимумы и максимумы признаков по обучающей части архивов, читаются кусками.
+     *
+     * @return нормализатор или null, если обучающих баров нет
+     */
+    private FeatureNormalizer fitNormalizer(List<KlineArchive> archives, long[] splits) {
+        double[][] columns = new double[FeatureTensor.FEATURES][READ_CHUNK];
+        double[] min = new double[FeatureTensor.FEATURES];
+        double[] max = new double[FeatureTensor.FEATURES];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        long bars = 0;
+        for (int i = 0; i < archives.size(); i++) {
+            for (long from = 0; from < splits[i]; from += READ_CHUNK) {
+                int read = archives.get(i).read(from, (int) Math.min(READ_CHUNK, splits[i] - from),
+                        columns[0], columns[1], columns[2], columns[3], columns[4]);
+                for (int f = 0; f < FeatureTensor.FEATURES; f++) {
+                    for (int t = 0; t < read; t++) {
+                        min[f] = Math.min(min[f], columns[f][t]);
+                        max[f] = Math.max(max[f], columns[f][t]);
+                    }
+                }
+                bars += read;
+            }
+        }
+        return bars == 0 ? null : new FeatureNormalizer(min, max);
+    }
+
+    /**
+     * Останавливает поток обучения, текущее обучение прерывается.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Результат одного запуска обучения.
+     *
+     * @param candidate      обученная копия, если она лучше живой модели, иначе null
+     * @param historyShifted индексы баров архива сдвинулись во время обучения, результат недействителен
+     */
+    private record TrainingRun(CryptoPredictionModel candidate, boolean historyShifted) {
+        private static final TrainingRun NONE = new TrainingRun(null, false);
+        private static final TrainingRun SHIFTED = new TrainingRun(null, true);
+    }
+}
@@ -4,9 +4,35 @@ import com.bybit.api.client.domain.market.MarketInterval;
 import com.trading.crypto.model.KlineElement;
 import com.trading.crypto.model.Signal;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 public interface Analyser  {
     void update(String symbol, MarketInterval interval, KlineElement klineElement);
+
+    /**
+     * Обновление закрытым баром в примитивах. Анализаторы с потоковыми индикаторами переопределяют его,
+     * чтобы не создавать {@link KlineElement} на каждый бар.
+     */
+    default void update(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                        double close, double volume) {
+        update(symbol, interval, new KlineElement(timestamp, BigDecimal.valueOf(open), BigDecimal.valueOf(high),
+                BigDecimal.valueOf(low), BigDecimal.valueOf(close), BigDecimal.valueOf(volume), BigDecimal.ZERO));
+    }
+
+    /**
+     * Предварительный пересчет по незакрытому бару. Закрытая история не меняется.
+     * По умолчанию анализатор незакрытые бары игнорирует.
+     */
+    default void preview(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                         double close, double volume) {
+    }
+
+    /**
+     * @return предварительные сигналы по незакрытым барам; пусто, если анализатор их не поддерживает
+     */
+    default List<Signal> analyzeIntrabar(String symbol, List<MarketInterval> intervals) {
+        return List.of();
+    }
     List<Signal> analyze(String symbol, List<MarketInterval> intervals);
 }
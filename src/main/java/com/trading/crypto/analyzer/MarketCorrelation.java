@@ -0,0 +1,29 @@
+package com.trading.crypto.analyzer;
+
+/**
+ * Скользящие корреляции доходностей между символами и их бета к эталонному символу рынка.
+ * Все методы не блокируются, работают за O(1) и возвращают NaN, если символ не отслеживается
+ * или общих баров в окне пока недостаточно.
+ */
+public interface MarketCorrelation {
+
+    /**
+     * @return эталонный символ рынка, к которому считается {@link #getBeta(String)}
+     */
+    String getBenchmark();
+
+    /**
+     * @return корреляция Пирсона доходностей пары символов от -1 до 1
+     */
+    double getCorrelation(String first, String second);
+
+    /**
+     * @return выборочная ковариация доходностей пары символов
+     */
+    double getCovariance(String first, String second);
+
+    /**
+     * @return бета символа к эталонному символу рынка
+     */
+    double getBeta(String symbol);
+}
@@ -0,0 +1,37 @@
+package com.trading.crypto.analyzer;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+
+/**
+ * Скользящие статистики объема закрытых баров по символу, интервалу и окну в барах.
+ * Запросы не блокируются и возвращают NaN, если по символу и интервалу баров еще не было.
+ * Окно должно быть одним из настроенных, иначе бросается {@link IllegalArgumentException}.
+ */
+public interface MarketVolume {
+
+    /**
+     * @return максимальный объем бара в окне
+     */
+    double getMax(String symbol, MarketInterval interval, int window);
+
+    /**
+     * @return средний объем бара в окне
+     */
+    double getMean(String symbol, MarketInterval interval, int window);
+
+    /**
+     * @return стандартное отклонение объема бара в окне
+     */
+    double getStandardDeviation(String symbol, MarketInterval interval, int window);
+
+    /**
+     * @param percentile перцентиль от 0 до 100
+     * @return объем бара, соответствующий перцентилю окна
+     */
+    double getPercentile(String symbol, MarketInterval interval, int window, double percentile);
+
+    /**
+     * @return доля баров окна с объемом не больше {@code volume} от 0 до 1
+     */
+    double getPercentileRank(String symbol, MarketInterval interval, int window, double volume);
+}
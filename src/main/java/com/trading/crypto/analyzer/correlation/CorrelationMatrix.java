@@ -0,0 +1,259 @@
+package com.trading.crypto.analyzer.correlation;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Скользящая ковариационная матрица доходностей N символов за последние {@code window} баров.
+ * <p>
+ * Доходности хранятся в кольцевом буфере, слот выбирается по номеру бара, поэтому бары разных символов
+ * с одним временем открытия попадают в один слот независимо от порядка прихода. Для каждой пары символов
+ * копятся суммы только по общим барам: Σx, Σx², Σxy и их количество. Вклад бара в пару добавляет тот символ,
+ * который пришел вторым, а убирает тот, который первым перезаписал слот, поэтому обновление символа - O(N),
+ * а ковариация, корреляция и бета любой пары считаются из сумм за O(1).
+ * <p>
+ * Чтобы ошибка округления от вычитаний не накапливалась, суммы строки символа пересчитываются заново
+ * каждый раз, когда его записи проходят полный круг буфера, что в среднем тоже O(N) на бар.
+ * <p>
+ * Писатель один. Читатели не берут блокировок: запись обрамляется счетчиком версии (seqlock),
+ * и чтение повторяется, если во время него матрица менялась.
+ */
+public class CorrelationMatrix {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int size;
+    private final int window;
+    private final int minObservations;
+
+    /**
+     * Доходности и номера их баров, слот за слотом: элемент {@code slot * size + symbol}.
+     */
+    private final double[] returns;
+    private final long[] bars;
+
+    /**
+     * Суммы по общим барам пары, элемент {@code i * size + j}: сумма и сумма квадратов доходностей символа i
+     * по барам, общим с символом j. Произведения и количества симметричны.
+     */
+    private final double[] sums;
+    private final double[] squares;
+    private final double[] products;
+    private final int[] counts;
+
+    /**
+     * Сколько раз писал каждый символ, по нему определяется момент пересчета строки.
+     */
+    private final long[] writes;
+
+    /**
+     * Нечетная версия означает, что писатель сейчас меняет матрицу.
+     */
+    private volatile long version;
+
+    /**
+     * @param size            количество символов
+     * @param window          окно в барах
+     * @param minObservations минимальное число общих баров пары, с которого считаются ее статистики
+     */
+    public CorrelationMatrix(int size, int window, int minObservations) {
+        if (size <= 0 || window <= 1) {
+            throw new IllegalArgumentException("Invalid correlation matrix size " + size + " or window " + window);
+        }
+        this.size = size;
+        this.window = window;
+        this.minObservations = Math.max(2, minObservations);
+        this.returns = new double[window * size];
+        this.bars = new long[window * size];
+        this.sums = new double[size * size];
+        this.squares = new double[size * size];
+        this.products = new double[size * size];
+        this.counts = new int[size * size];
+        this.writes = new long[size];
+        Arrays.fill(bars, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет доходность символа за бар. Бары одного символа должны идти по возрастанию.
+     *
+     * @param symbol индекс символа
+     * @param bar    номер бара, общий для всех символов (время открытия, деленное на длину интервала)
+     * @param value  доходность за бар
+     */
+    public void update(int symbol, long bar, double value) {
+        int base = (int) Math.floorMod(bar, (long) window) * size;
+        beginWrite();
+        try {
+            // Старый бар слота уходит из окна: убираем его вклад из пар, где второй символ еще не перезаписал слот
+            long oldBar = bars[base + symbol];
+            if (oldBar != EMPTY) {
+                double oldValue = returns[base + symbol];
+                for (int j = 0; j < size; j++) {
+                    if (bars[base + j] == oldBar) {
+                        accumulate(symbol, j, oldValue, returns[base + j], -1);
+                    }
+                }
+            }
+
+            bars[base + symbol] = bar;
+            returns[base + symbol] = value;
+            for (int j = 0; j < size; j++) {
+                if (bars[base + j] == bar) {
+                    accumulate(symbol, j, value, returns[base + j], 1);
+                }
+            }
+
+            if (++writes[symbol] % window == 0) {
+                recalculate(symbol);
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Добавляет (sign = 1) или убирает (sign = -1) вклад одного общего бара пары.
+     */
+    private void accumulate(int i, int j, double x, double y, int sign) {
+        int ij = i * size + j;
+        if (i == j) {
+            sums[ij] += sign * x;
+            squares[ij] += sign * x * x;
+            products[ij] += sign * x * x;
+            counts[ij] += sign;
+            return;
+        }
+        int ji = j * size + i;
+        sums[ij] += sign * x;
+        sums[ji] += sign * y;
+        squares[ij] += sign * x * x;
+        squares[ji] += sign * y * y;
+        products[ij] += sign * x * y;
+        products[ji] = products[ij];
+        counts[ij] += sign;
+        counts[ji] = counts[ij];
+    }
+
+    /**
+     * Пересчитывает суммы всех пар символа по буферу.
+     */
+    private void recalculate(int symbol) {
+        for (int j = 0; j < size; j++) {
+            int ij = symbol * size + j;
+            int ji = j * size + symbol;
+            sums[ij] = sums[ji] = 0;
+            squares[ij] = squares[ji] = 0;
+            products[ij] = products[ji] = 0;
+            counts[ij] = counts[ji] = 0;
+        }
+        for (int base = 0; base < bars.length; base += size) {
+            long bar = bars[base + symbol];
+            if (bar == EMPTY) {
+                continue;
+            }
+            for (int j = 0; j < size; j++) {
+                if (bars[base + j] == bar) {
+                    accumulate(symbol, j, returns[base + symbol], returns[base + j], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return выборочная ковариация доходностей пары по общим барам или NaN, если их меньше минимума
+     */
+    public double getCovariance(int i, int j) {
+        while (true) {
+            long readVersion = beginRead();
+            double result = covariance(i, j);
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return корреляция Пирсона доходностей пары от -1 до 1 или NaN, если данных недостаточно
+     */
+    public double getCorrelation(int i, int j) {
+        while (true) {
+            long readVersion = beginRead();
+            double result = covariance(i, j) / Math.sqrt(variance(i, j) * variance(j, i));
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return бета символа i к символу j: cov(i, j) / var(j) или NaN, если данных недостаточно
+     */
+    public double getBeta(int i, int j) {
+        while (true) {
+            long readVersion = beginRead();
+            double result = covariance(i, j) / variance(j, i);
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return количество общих баров пары в окне
+     */
+    public int getObservations(int i, int j) {
+        return counts[i * size + j];
+    }
+
+    private double covariance(int i, int j) {
+        int ij = i * size + j;
+        int n = counts[ij];
+        if (n < minObservations) {
+            return Double.NaN;
+        }
+        return (products[ij] - sums[ij] * sums[j * size + i] / n) / (n - 1);
+    }
+
+    /**
+     * Дисперсия доходностей символа i по барам, общим с символом j.
+     */
+    private double variance(int i, int j) {
+        int ij = i * size + j;
+        int n = counts[ij];
+        if (n < minObservations) {
+            return Double.NaN;
+        }
+        double variance = (squares[ij] - sums[ij] * sums[ij] / n) / (n - 1);
+        // Постоянная цена или ошибка округления дают неположительную дисперсию, статистики по ней не имеют смысла
+        return variance > 0 ? variance : Double.NaN;
+    }
+
+    private void beginWrite() {
+        version = version + 1;
+        // Изменения сумм не должны стать видны раньше нечетной версии
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        version = version + 1;
+    }
+
+    private long beginRead() {
+        long readVersion = version;
+        while ((readVersion & 1) != 0) {
+            Thread.onSpinWait();
+            readVersion = version;
+        }
+        return readVersion;
+    }
+
+    private boolean endRead(long readVersion) {
+        // Чтение сумм должно завершиться до повторной проверки версии
+        VarHandle.loadLoadFence();
+        return version == readVersion;
+    }
+}
@@ -0,0 +1,157 @@
+package com.trading.crypto.analyzer.correlation;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.analyzer.MarketCorrelation;
+import com.trading.crypto.data.KlineSeries;
+import com.trading.crypto.data.impl.HistoricalDataCollector;
+import com.trading.crypto.event.EventType;
+import com.trading.crypto.event.MarketEvent;
+import com.trading.crypto.util.StalkerUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поддерживает {@link CorrelationMatrix} логарифмических доходностей символов на закрытых барах одного интервала.
+ * <p>
+ * Матрица прогревается историей из {@link HistoricalDataCollector} и дальше обновляется подписчиком шины событий:
+ * закрытый бар символа - O(N) работы, запрос корреляции или беты - O(1) из любого потока.
+ * Доходность считается только между соседними барами, после пропуска баров символ начинает заново.
+ */
+@Slf4j
+@Service
+public class CorrelationTracker implements MarketCorrelation {
+
+    public static final String CONSUMER_NAME = "correlation";
+
+    private final HistoricalDataCollector dataCollector;
+    private final int window;
+    private final MarketInterval interval;
+    private final String benchmark;
+    private final long intervalMillis;
+
+    private volatile Map<String, Integer> indexes = Map.of();
+    private volatile CorrelationMatrix matrix;
+
+    // Последний учтенный бар по индексу символа, меняются только в потоке подписчика
+    private long[] lastTimestamps;
+    private double[] lastCloses;
+
+    public CorrelationTracker(HistoricalDataCollector dataCollector,
+                              @Value("${stalker.correlation.window:100}") int window,
+                              @Value("${stalker.correlation.interval:1}") String interval,
+                              @Value("${stalker.correlation.benchmark:BTCUSDT}") String benchmark) {
+        this.dataCollector = dataCollector;
+        this.window = window;
+        this.interval = StalkerUtils.toMarketInterval(interval);
+        this.benchmark = benchmark;
+        this.intervalMillis = StalkerUtils.getIntervalMillis(this.interval);
+    }
+
+    /**
+     * @return интервал, по барам которого считаются доходности
+     */
+    public MarketInterval getInterval() {
+        return interval;
+    }
+
+    @Override
+    public String getBenchmark() {
+        return benchmark;
+    }
+
+    /**
+     * Строит матрицу для символов и эталона, прогревает ее историей и подписывает на шину событий
+     * под именем {@link #CONSUMER_NAME}. Бары эталона должны загружаться коллектором вместе с символами.
+     *
+     * @param symbols торговые символы
+     */
+    public synchronized void start(List<String> symbols) {
+        if (matrix != null) {
+            throw new IllegalStateException("Correlation tracker is already started");
+        }
+        Map<String, Integer> symbolIndexes = new HashMap<>();
+        for (String symbol : symbols) {
+            symbolIndexes.putIfAbsent(symbol, symbolIndexes.size());
+        }
+        symbolIndexes.putIfAbsent(benchmark, symbolIndexes.size());
+
+        int size = symbolIndexes.size();
+        lastTimestamps = new long[size];
+        lastCloses = new double[size];
+        Arrays.fill(lastTimestamps, Long.MIN_VALUE);
+        CorrelationMatrix created = new CorrelationMatrix(size, window, window / 2);
+
+        dataCollector.attach(CONSUMER_NAME, () -> {
+            symbolIndexes.forEach((symbol, index) -> warmUp(created, symbol, index));
+            matrix = created;
+            indexes = Map.copyOf(symbolIndexes);
+        }, this::onEvent);
+        log.info("Correlation tracker started for {} symbols on interval {} with window {}", size, interval, window);
+    }
+
+    private void warmUp(CorrelationMatrix created, String symbol, int index) {
+        KlineSeries series = dataCollector.getKlineSeries(symbol, interval);
+        if (series == null) {
+            log.warn("No {} klines for {}, correlations will be available after {} bars", interval, symbol, window / 2);
+            return;
+        }
+        // От самого старого бара к самому свежему
+        for (int i = series.size() - 1; i >= 0; i--) {
+            add(created, index, series.getTimestamp(i), series.getClose(i));
+        }
+    }
+
+    private void onEvent(MarketEvent event) {
+        if (event.getType() != EventType.BAR || event.getInterval() != interval) {
+            return;
+        }
+        Integer index = indexes.get(event.getSymbol());
+        if (index != null) {
+            add(matrix, index, event.getTimestamp(), event.getClose());
+        }
+    }
+
+    private void add(CorrelationMatrix target, int index, long timestamp, double close) {
+        long lastTimestamp = lastTimestamps[index];
+        if (timestamp <= lastTimestamp) {
+            return;
+        }
+        double lastClose = lastCloses[index];
+        if (lastTimestamp != Long.MIN_VALUE && StalkerUtils.getBarCloseTime(interval, lastTimestamp) == timestamp
+                && lastClose > 0 && close > 0) {
+            target.update(index, timestamp / intervalMillis, Math.log(close / lastClose));
+        }
+        lastTimestamps[index] = timestamp;
+        lastCloses[index] = close;
+    }
+
+    @Override
+    public double getCorrelation(String first, String second) {
+        CorrelationMatrix current = matrix;
+        Integer i = indexes.get(first);
+        Integer j = indexes.get(second);
+        return current == null || i == null || j == null ? Double.NaN : current.getCorrelation(i, j);
+    }
+
+    @Override
+    public double getCovariance(String first, String second) {
+        CorrelationMatrix current = matrix;
+        Integer i = indexes.get(first);
+        Integer j = indexes.get(second);
+        return current == null || i == null || j == null ? Double.NaN : current.getCovariance(i, j);
+    }
+
+    @Override
+    public double getBeta(String symbol) {
+        CorrelationMatrix current = matrix;
+        Integer i = indexes.get(symbol);
+        Integer j = indexes.get(benchmark);
+        return current == null || i == null || j == null ? Double.NaN : current.getBeta(i, j);
+    }
+}
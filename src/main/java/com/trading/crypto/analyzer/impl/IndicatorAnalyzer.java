@@ -2,35 +2,41 @@ package com.trading.crypto.analyzer.impl;
 
 import com.bybit.api.client.domain.market.MarketInterval;
 import com.trading.crypto.analyzer.Analyser;
+import com.trading.crypto.analyzer.indicator.DivergenceDetector;
+import com.trading.crypto.analyzer.indicator.IndicatorGraph;
+import com.trading.crypto.analyzer.indicator.IndicatorRegistry;
+import com.trading.crypto.data.DataCollector;
+import com.trading.crypto.data.KlineSeries;
 import com.trading.crypto.model.AnalysisResult;
+import com.trading.crypto.model.FeatureVector;
 import com.trading.crypto.model.KlineElement;
 import com.trading.crypto.model.Signal;
 import com.trading.crypto.util.LogUtils;
-import com.trading.crypto.util.StalkerUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.ta4j.core.Bar;
-import org.ta4j.core.BaseTimeSeries;
-import org.ta4j.core.TimeSeries;
-import org.ta4j.core.indicators.CCIIndicator;
-import org.ta4j.core.indicators.RSIIndicator;
-import org.ta4j.core.indicators.SMAIndicator;
-import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
-import org.ta4j.core.indicators.helpers.ConvergenceDivergenceIndicator;
-import org.ta4j.core.indicators.helpers.ConvergenceDivergenceIndicator.ConvergenceDivergenceType;
-import org.ta4j.core.num.Num;
-import org.ta4j.core.num.PrecisionNum;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
- * Класс для анализа индикаторов с использованием библиотеки Ta4j.
+ * Класс для анализа индикаторов.
  * Поддерживает расчет и обновление индикаторов для различных символов и временных интервалов.
  * Также включает логику определения дивергенций и генерации торговых сигналов.
+ * <p>
+ * Индикаторы каждого символа и интервала - граф из {@link IndicatorRegistry}: настроенные в конфигурации
+ * индикаторы плюс SMA, RSI и CCI, по которым строится сигнал. Индикаторы считаются потоково на примитивных
+ * double, история баров для пересчета не хранится. Сигнал несет значения всех индикаторов графа в {@link FeatureVector}.
+ * <p>
+ * Состояние индикаторов меняется только в потоке подписчика шины событий ({@link #update}), там же пересчитывается
+ * сигнал по символу и интервалу. {@link #analyze} отдает последние рассчитанные сигналы и безопасен
+ * для вызова из любого потока.
+ * <p>
+ * Незакрытый бар ({@link #preview}) пересчитывает индикаторы предварительно за O(1), не меняя закрытую историю.
+ * Если по нему уже есть сигнал на покупку или продажу, он доступен через {@link #analyzeIntrabar}
+ * до закрытия бара.
  */
 @Slf4j
 public class IndicatorAnalyzer implements Analyser {
@@ -41,98 +47,184 @@ public class IndicatorAnalyzer implements Analyser {
     public static final int RSI_LOW = 22;
     public static final int RSI_HIGH = 78;
 
+    // Периоды индикаторов
+    private static final int SMA_PERIOD = 100;
+    private static final int RSI_PERIOD = 14;
+    private static final int CCI_PERIOD = 7;
+
     // Период для проверки дивергенций
     private static final int CHECK_PERIOD = 7;
 
-    // Карты для хранения временных рядов и индикаторов для каждого символа и временного интервала
-    private final Map<String, Map<MarketInterval, TimeSeries>> seriesMap = new HashMap<>();
-    private final Map<String, Map<MarketInterval, SMAIndicator>> smaMap = new HashMap<>();
-    private final Map<String, Map<MarketInterval, RSIIndicator>> rsiMap = new HashMap<>();
-    private final Map<String, Map<MarketInterval, CCIIndicator>> cciMap = new HashMap<>();
+    /**
+     * Сколько баров нужно при старте, чтобы прогреть все индикаторы и окна дивергенций.
+     * Окно баров в памяти должно быть не меньше, иначе индикаторы прогреются уже по стриму.
+     */
+    public static final int WARMUP_BARS = SMA_PERIOD + CHECK_PERIOD;
+
+    // Индикаторы, по которым строится сигнал
+    private static final String SMA_FEATURE = "sma(" + SMA_PERIOD + ")";
+    private static final String RSI_FEATURE = "rsi(" + RSI_PERIOD + ")";
+    private static final String CCI_FEATURE = "cci(" + CCI_PERIOD + ")";
+    private static final List<String> REQUIRED_INDICATORS = List.of(SMA_FEATURE, RSI_FEATURE, CCI_FEATURE);
+
+    // Состояние индикаторов для каждого символа и временного интервала
+    private final Map<String, Map<MarketInterval, SeriesIndicators>> indicatorsMap = new HashMap<>();
+
+    /**
+     * Последние рассчитанные сигналы по символу и интервалу.
+     */
+    private final Map<String, Map<MarketInterval, Signal>> latestSignals = new ConcurrentHashMap<>();
+
+    /**
+     * Предварительные сигналы по незакрытым барам, только BUY и SELL.
+     */
+    private final Map<String, Map<MarketInterval, Signal>> intrabarSignals = new ConcurrentHashMap<>();
 
     /**
-     * Конструктор класса, инициализирует временные ряды и индикаторы для заданных символов и временных интервалов.
+     * Конструктор класса, прогревает индикаторы историей для заданных символов и временных интервалов.
      *
-     * @param cache   Кэш исторических данных для каждого символа и временного интервала
-     * @param symbols Список символов для анализа
+     * @param dataCollector     Источник исторических данных для каждого символа и временного интервала
+     * @param indicatorRegistry Реестр, по конфигурации которого строятся индикаторы символа и интервала
+     * @param symbols           Список символов для анализа
+     * @param intervals         Список временных интервалов для анализа
      */
-    public IndicatorAnalyzer(Map<String, Map<MarketInterval, List<KlineElement>>> cache, List<String> symbols) {
+    public IndicatorAnalyzer(DataCollector dataCollector, IndicatorRegistry indicatorRegistry, List<String> symbols, List<MarketInterval> intervals) {
         for (String symbol : symbols) {
-            if (cache.containsKey(symbol)) {
-                Map<MarketInterval, List<KlineElement>> intervals = cache.get(symbol);
-                for (MarketInterval interval : intervals.keySet()) {
-                    List<KlineElement> klineElements = intervals.get(interval);
-                    TimeSeries series = new BaseTimeSeries.SeriesBuilder().withName(symbol + "_" + interval.toString()).build();
-
-                    // Добавляем каждый бар
-                    IntStream.range(0, klineElements.size())
-                            .mapToObj(i -> klineElements.get(klineElements.size() - 1 - i))
-                            .forEach(kline -> {
-                                Bar newBar = StalkerUtils.convertToBaseBar(kline);
-                                if (series.isEmpty() || newBar.getEndTime().isAfter(series.getBar(series.getBarCount() - 1).getEndTime())) {
-                                    series.addBar(newBar);
-                                } else {
-                                    log.warn("Skipped bar with end time " + newBar.getEndTime() + " as it is not after the series last bar end time.");
-                                }
-                            });
-
-                    // Сохранение TimeSeries в map
-                    seriesMap.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, series);
-
-                    // Инициализация индикаторов
-                    ClosePriceIndicator cpi = new ClosePriceIndicator(series);
-                    smaMap.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, new SMAIndicator(cpi, 100)); // Пример: SMA на 100 периодов
-                    rsiMap.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, new RSIIndicator(cpi, 14)); // Пример: RSI на 14 периодов
-                    cciMap.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, new CCIIndicator(series, 7)); // Пример: CCI на 20 периодов
+            for (MarketInterval interval : intervals) {
+                KlineSeries klineSeries = dataCollector.getKlineSeries(symbol, interval);
+                if (klineSeries == null) {
+                    continue;
+                }
+                if (klineSeries.capacity() < WARMUP_BARS) {
+                    log.warn("Kline window {} of interval {} is shorter than indicator warm-up of {} bars", klineSeries.capacity(), interval, WARMUP_BARS);
+                }
+                SeriesIndicators indicators = new SeriesIndicators(indicatorRegistry.createGraph(symbol, interval, REQUIRED_INDICATORS));
+
+                // Добавляем каждый бар, от самого старого к самому свежему
+                for (int i = klineSeries.size() - 1; i >= 0; i--) {
+                    if (!indicators.add(klineSeries.getTimestamp(i), klineSeries.getOpen(i), klineSeries.getHigh(i),
+                            klineSeries.getLow(i), klineSeries.getClose(i), klineSeries.getVolume(i))) {
+                        log.warn("Skipped bar with time " + klineSeries.getTimestamp(i) + " as it is not after the series last bar time.");
+                    }
                 }
+
+                indicatorsMap.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, indicators);
+                refreshSignal(symbol, interval);
             }
         }
     }
 
     /**
-     * Обновляет временной ряд для заданного символа и временного интервала новым элементом Kline.
+     * Обновляет индикаторы для заданного символа и временного интервала новым элементом Kline
+     * и пересчитывает сигнал по нему.
      *
-     * @param symbol       Символ, для которого обновляется временной ряд
+     * @param symbol       Символ, для которого обновляются индикаторы
      * @param interval     Временной интервал
      * @param klineElement Новый элемент Kline для добавления
      */
     public void update(String symbol, MarketInterval interval, KlineElement klineElement) {
-        if (seriesMap.containsKey(symbol)) {
-            TimeSeries series = seriesMap.get(symbol).get(interval);
-            if (series != null) {
-                // Преобразование KlineElement в BaseBar
-                Bar newBar = StalkerUtils.convertToBaseBar(klineElement);
-
-                // Проверка на наличие баров в серии и на то, что новый бар идёт после последнего
-                if (series.isEmpty() || newBar.getEndTime().isAfter(series.getLastBar().getEndTime())) {
-                    series.addBar(newBar);
-                    log.trace("Added new bar to the series for interval " + interval + ": " + newBar);
-                } else {
-                    log.trace("Attempted to add bar with end time " + newBar.getEndTime() + " that is not after series end time " + series.getLastBar().getEndTime());
-                }
-            } else {
-                log.error("No series found for interval " + interval);
-            }
-        } else {
+        update(symbol, interval, klineElement.getTimestamp(), klineElement.getOpenPrice().doubleValue(),
+                klineElement.getHighPrice().doubleValue(), klineElement.getLowPrice().doubleValue(),
+                klineElement.getClosePrice().doubleValue(), klineElement.getVolume().doubleValue());
+    }
+
+    @Override
+    public void update(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                       double close, double volume) {
+        Map<MarketInterval, SeriesIndicators> symbolIndicators = indicatorsMap.get(symbol);
+        if (symbolIndicators == null) {
             log.error("No series found for symbol " + symbol);
+            return;
+        }
+        SeriesIndicators indicators = symbolIndicators.get(interval);
+        if (indicators == null) {
+            log.error("No series found for interval " + interval);
+            return;
+        }
+
+        // Бар должен идти после последнего учтенного
+        if (indicators.add(timestamp, open, high, low, close, volume)) {
+            log.trace("Added new bar to the series for interval {}: {}", interval, timestamp);
+            removeIntrabarSignal(symbol, interval);
+            refreshSignal(symbol, interval);
+        } else {
+            log.trace("Attempted to add bar with time {} that is not after series last bar time {}", timestamp, indicators.lastTimestamp);
+        }
+    }
+
+    @Override
+    public void preview(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                        double close, double volume) {
+        Map<MarketInterval, SeriesIndicators> symbolIndicators = indicatorsMap.get(symbol);
+        SeriesIndicators indicators = symbolIndicators == null ? null : symbolIndicators.get(interval);
+        if (indicators == null || timestamp <= indicators.lastTimestamp) {
+            return;
         }
+
+        indicators.graph.preview(open, high, low, close, volume);
+        double rsi = indicators.graph.getPreviewFeature(indicators.rsiIndex);
+        double cci = indicators.graph.getPreviewFeature(indicators.cciIndex);
+        AnalysisResult result = classify(rsi, cci,
+                indicators.rsiDivergence.previewBullish(close, rsi) || indicators.cciDivergence.previewBullish(close, cci),
+                indicators.rsiDivergence.previewBearish(close, rsi) || indicators.cciDivergence.previewBearish(close, cci));
+
+        if (result == AnalysisResult.HOLD) {
+            removeIntrabarSignal(symbol, interval);
+            return;
+        }
+        FeatureVector features = indicators.graph.previewSnapshot(symbol, interval, timestamp);
+        intrabarSignals.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>())
+                .put(interval, new Signal(result, symbol, close, System.currentTimeMillis(), interval, features, true));
     }
 
     /**
-     * Анализирует данные для заданного символа и списка временных интервалов.
+     * Возвращает предварительные сигналы по незакрытым барам заданного символа.
+     * Сигналы HOLD не хранятся, поэтому пустой список означает, что внутри баров сигналов нет.
+     *
+     * @param symbol    Символ для анализа
+     * @param intervals Список временных интервалов
+     * @return Список предварительных сигналов
+     */
+    @Override
+    public List<Signal> analyzeIntrabar(String symbol, List<MarketInterval> intervals) {
+        Map<MarketInterval, Signal> signals = intrabarSignals.getOrDefault(symbol, Map.of());
+        return intervals.stream()
+                .distinct()
+                .map(signals::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private void removeIntrabarSignal(String symbol, MarketInterval interval) {
+        Map<MarketInterval, Signal> signals = intrabarSignals.get(symbol);
+        if (signals != null) {
+            signals.remove(interval);
+        }
+    }
+
+    /**
+     * Возвращает последние сигналы для заданного символа и списка временных интервалов.
      *
      * @param symbol    Символ для анализа
      * @param intervals Список временных интервалов
      * @return Список сигналов, сгенерированных на основе анализа индикаторов
      */
     public List<Signal> analyze(String symbol, List<MarketInterval> intervals) {
+        Map<MarketInterval, Signal> signals = latestSignals.getOrDefault(symbol, Map.of());
         return intervals.stream()
                 .distinct()
-                .map(interval -> calculateIndicators(symbol, interval))
+                .map(signals::get)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
+    private void refreshSignal(String symbol, MarketInterval interval) {
+        Signal signal = calculateIndicators(symbol, interval);
+        if (signal != null) {
+            latestSignals.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>()).put(interval, signal);
+        }
+    }
+
     /**
      * Вычисляет индикаторы для заданного символа и временного интервала.
      *
@@ -141,61 +233,85 @@ public class IndicatorAnalyzer implements Analyser {
      * @return Сигнал, сгенерированный на основе анализа индикаторов
      */
     public Signal calculateIndicators(String symbol, MarketInterval interval) {
-        if (seriesMap.containsKey(symbol)) {
-            TimeSeries series = seriesMap.get(symbol).get(interval);
-            if (series == null || series.getBarCount() == 0) {
-                log.error("No data available for {} at interval {}", symbol, interval);
-                return null;
-            }
+        Map<MarketInterval, SeriesIndicators> symbolIndicators = indicatorsMap.get(symbol);
+        if (symbolIndicators == null) {
+            return null;
+        }
+        SeriesIndicators indicators = symbolIndicators.get(interval);
+        if (indicators == null || indicators.lastTimestamp == Long.MIN_VALUE) {
+            log.error("No data available for {} at interval {}", symbol, interval);
+            return null;
+        }
 
-            SMAIndicator sma = smaMap.get(symbol).get(interval);
-            RSIIndicator rsi = rsiMap.get(symbol).get(interval);
-            CCIIndicator cci = cciMap.get(symbol).get(interval);
-
-            int lastIndex = series.getEndIndex();
-            Num lastPrice = series.getBar(lastIndex).getClosePrice();
-            Num lastRSI = rsi.getValue(lastIndex);
-            Num lastCCI = cci.getValue(lastIndex);
-            Num lastSMA = sma.getValue(lastIndex);
-
-            boolean isPriceAboveSMA = lastPrice.isGreaterThan(lastSMA);
-
-            ClosePriceIndicator closePrice = new ClosePriceIndicator(series);
-
-            // Использование ConvergenceDivergenceIndicator для определения дивергенций
-            ConvergenceDivergenceIndicator cciPositiveDivergent = new ConvergenceDivergenceIndicator(closePrice, cci, CHECK_PERIOD, ConvergenceDivergenceType.positiveDivergent);
-            ConvergenceDivergenceIndicator cciNegativeDivergent = new ConvergenceDivergenceIndicator(closePrice, cci, CHECK_PERIOD, ConvergenceDivergenceType.negativeDivergent);
-            ConvergenceDivergenceIndicator rsiPositiveDivergent = new ConvergenceDivergenceIndicator(closePrice, rsi, CHECK_PERIOD, ConvergenceDivergenceType.positiveDivergent);
-            ConvergenceDivergenceIndicator rsiNegativeDivergent = new ConvergenceDivergenceIndicator(closePrice, rsi, CHECK_PERIOD, ConvergenceDivergenceType.negativeDivergent);
-
-            boolean bullishCciDivergence = cciPositiveDivergent.getValue(lastIndex);
-            boolean bearishCciDivergence = cciNegativeDivergent.getValue(lastIndex);
-            boolean bullishRsiDivergence = rsiPositiveDivergent.getValue(lastIndex);
-            boolean bearishRsiDivergence = rsiNegativeDivergent.getValue(lastIndex);
-
-            // Логирование анализа перед принятием решений
-            LogUtils.logAnalysis(symbol, interval, lastPrice, lastRSI, lastCCI, lastSMA, isPriceAboveSMA, bullishRsiDivergence,
-                    bearishRsiDivergence, bullishCciDivergence, bearishCciDivergence);
-
-            AnalysisResult signal;
-            if (lastCCI.isLessThan(PrecisionNum.valueOf(CCI_LOW)) && lastRSI.isLessThan(PrecisionNum.valueOf(RSI_LOW))) {
-                if (bullishCciDivergence || bullishRsiDivergence) {
-                    signal = AnalysisResult.STRONG_BUY;
-                } else {
-                    signal = AnalysisResult.BUY;
-                }
-            } else if (lastCCI.isGreaterThan(PrecisionNum.valueOf(CCI_HIGH)) && lastRSI.isGreaterThan(PrecisionNum.valueOf(RSI_HIGH))) {
-                if (bearishCciDivergence || bearishRsiDivergence) {
-                    signal = AnalysisResult.STRONG_SELL;
-                } else {
-                    signal = AnalysisResult.SELL;
-                }
-            } else {
-                signal = AnalysisResult.HOLD;
-            }
+        double lastPrice = indicators.lastClose;
+        double lastRSI = indicators.graph.getFeature(indicators.rsiIndex);
+        double lastCCI = indicators.graph.getFeature(indicators.cciIndex);
+        double lastSMA = indicators.graph.getFeature(indicators.smaIndex);
+
+        boolean isPriceAboveSMA = lastPrice > lastSMA;
 
-            return new Signal(signal, symbol, lastPrice, System.currentTimeMillis(), interval);
+        boolean bullishCciDivergence = indicators.cciDivergence.isBullish();
+        boolean bearishCciDivergence = indicators.cciDivergence.isBearish();
+        boolean bullishRsiDivergence = indicators.rsiDivergence.isBullish();
+        boolean bearishRsiDivergence = indicators.rsiDivergence.isBearish();
+
+        // Логирование анализа перед принятием решений
+        LogUtils.logAnalysis(symbol, interval, lastPrice, lastRSI, lastCCI, lastSMA, isPriceAboveSMA, bullishRsiDivergence,
+                bearishRsiDivergence, bullishCciDivergence, bearishCciDivergence);
+
+        AnalysisResult signal = classify(lastRSI, lastCCI,
+                bullishCciDivergence || bullishRsiDivergence, bearishCciDivergence || bearishRsiDivergence);
+
+        FeatureVector features = indicators.graph.snapshot(symbol, interval, indicators.lastTimestamp);
+        return new Signal(signal, symbol, lastPrice, System.currentTimeMillis(), interval, features, false);
+    }
+
+    private static AnalysisResult classify(double rsi, double cci, boolean bullishDivergence, boolean bearishDivergence) {
+        // Сравнения с NaN ложны, поэтому пока индикаторы не прогреты, сигнал - HOLD
+        if (cci < CCI_LOW && rsi < RSI_LOW) {
+            return bullishDivergence ? AnalysisResult.STRONG_BUY : AnalysisResult.BUY;
+        }
+        if (cci > CCI_HIGH && rsi > RSI_HIGH) {
+            return bearishDivergence ? AnalysisResult.STRONG_SELL : AnalysisResult.SELL;
+        }
+        return AnalysisResult.HOLD;
+    }
+
+    /**
+     * Потоковое состояние индикаторов одного символа и интервала.
+     */
+    private static class SeriesIndicators {
+        private final IndicatorGraph graph;
+        private final int smaIndex;
+        private final int rsiIndex;
+        private final int cciIndex;
+
+        private final DivergenceDetector rsiDivergence = new DivergenceDetector(CHECK_PERIOD);
+        private final DivergenceDetector cciDivergence = new DivergenceDetector(CHECK_PERIOD);
+
+        private long lastTimestamp = Long.MIN_VALUE;
+        private double lastClose = Double.NaN;
+
+        private SeriesIndicators(IndicatorGraph graph) {
+            this.graph = graph;
+            this.smaIndex = graph.indexOf(SMA_FEATURE);
+            this.rsiIndex = graph.indexOf(RSI_FEATURE);
+            this.cciIndex = graph.indexOf(CCI_FEATURE);
+        }
+
+        /**
+         * @return false, если бар не новее последнего учтенного и был пропущен
+         */
+        private boolean add(long timestamp, double open, double high, double low, double close, double volume) {
+            if (timestamp <= lastTimestamp) {
+                return false;
+            }
+            lastTimestamp = timestamp;
+            lastClose = close;
+            graph.update(open, high, low, close, volume);
+            rsiDivergence.update(close, graph.getFeature(rsiIndex));
+            cciDivergence.update(close, graph.getFeature(cciIndex));
+            return true;
         }
-        return null;
     }
 }
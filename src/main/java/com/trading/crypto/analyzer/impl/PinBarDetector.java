@@ -1,45 +1,55 @@
 package com.trading.crypto.analyzer.impl;
 
 import com.bybit.api.client.domain.market.MarketInterval;
-import com.trading.crypto.model.KlineElement;
+import com.trading.crypto.analyzer.pattern.CandlestickPattern;
+import com.trading.crypto.analyzer.pattern.PatternHits;
+import com.trading.crypto.analyzer.pattern.PatternScanner;
+import com.trading.crypto.data.DataCollector;
+import com.trading.crypto.data.KlineSeries;
 import com.trading.crypto.model.PinBarAnalysisResult;
 import com.trading.crypto.model.PinBarSignal;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Определяет пин-бар на самом свежем баре через {@link PatternScanner}.
+ */
 public class PinBarDetector {
 
-    public static List<PinBarSignal> analyze(String symbol, List<MarketInterval> intervals, Map<String, Map<MarketInterval, List<KlineElement>>> klineCache) {
+    /**
+     * Пин-бар определяется по последнему бару и предыдущему.
+     */
+    private static final int SCAN_BARS = 2;
+
+    private static final ThreadLocal<PatternHits> hits = ThreadLocal.withInitial(PatternHits::new);
+
+    public static List<PinBarSignal> analyze(String symbol, List<MarketInterval> intervals, DataCollector dataCollector) {
         List<PinBarSignal> signals = new ArrayList<>();
 
-            Map<MarketInterval, List<KlineElement>> intervalMap = klineCache.get(symbol);
-
-            if (intervalMap != null) {
-                for (MarketInterval interval : intervals) {
-                    List<KlineElement> klines = intervalMap.get(interval);
-                    if (klines != null && !klines.isEmpty()) {
-                        PinBarAnalysisResult result = getPinBarAnalysisResult(klines);
-                        KlineElement klineElement = klines.get(0);
-                        signals.add(new PinBarSignal(symbol, klineElement.getClosePrice().doubleValue(), interval, result, klineElement.getVolume()));
-                    }
-                }
+        for (MarketInterval interval : intervals) {
+            KlineSeries klines = dataCollector.getKlineSeries(symbol, interval);
+            if (klines != null && klines.size() > 1) {
+                PinBarAnalysisResult result = getPinBarAnalysisResult(klines);
+                signals.add(new PinBarSignal(symbol, klines.getClose(0), interval, result, BigDecimal.valueOf(klines.getVolume(0))));
+            }
         }
 
         return signals;
     }
 
-    private static PinBarAnalysisResult getPinBarAnalysisResult(List<KlineElement> klines) {
-        KlineElement firstKline = klines.get(0); // Первый элемент в списке
+    private static PinBarAnalysisResult getPinBarAnalysisResult(KlineSeries klines) {
+        PatternHits patternHits = hits.get();
+        PatternScanner.scan(klines, SCAN_BARS, patternHits);
         PinBarAnalysisResult result;
-        if (firstKline.isBullishPinBar(klines.get(1))) {
+        if (patternHits.isHit(CandlestickPattern.BULLISH_PIN_BAR, 0)) {
             result = PinBarAnalysisResult.BULLISH_PIN_BAR;
-        } else if (firstKline.isBearishPinBar(klines.get(1))) {
+        } else if (patternHits.isHit(CandlestickPattern.BEARISH_PIN_BAR, 0)) {
             result = PinBarAnalysisResult.BEARISH_PIN_BAR;
         } else {
             result = PinBarAnalysisResult.NO_PIN_BAR;
         }
         return result;
     }
-}
\ No newline at end of file
+}
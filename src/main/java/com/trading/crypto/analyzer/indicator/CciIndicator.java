@@ -0,0 +1,86 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * CCI: (TP - SMA(TP)) / (0.015 * MD), где TP = (high + low + close) / 3, а MD - среднее абсолютное
+ * отклонение TP от SMA(TP) за период.
+ * <p>
+ * Типичные цены хранятся в кольцевом буфере, SMA ведется накопленной суммой. Среднее отклонение
+ * зависит от текущей средней и пересчитывается по окну, поэтому обновление стоит O(period),
+ * что для коротких периодов CCI (7-20 баров) на практике константа. Объекты не создаются.
+ */
+public class CciIndicator {
+
+    private static final double CCI_FACTOR = 0.015;
+
+    private final SmaIndicator typicalPriceSma;
+    private final double[] typicalPrices;
+    private int position;
+    private int count;
+    private double value = Double.NaN;
+
+    /**
+     * @param period период CCI
+     */
+    public CciIndicator(int period) {
+        this.typicalPriceSma = new SmaIndicator(period);
+        this.typicalPrices = new double[period];
+    }
+
+    /**
+     * Добавляет новый бар.
+     *
+     * @return значение CCI после добавления
+     */
+    public double update(double high, double low, double close) {
+        double typicalPrice = (high + low + close) / 3;
+        double mean = typicalPriceSma.update(typicalPrice);
+        typicalPrices[position] = typicalPrice;
+        if (++position == typicalPrices.length) {
+            position = 0;
+        }
+        if (count < typicalPrices.length) {
+            count++;
+        }
+
+        if (count < typicalPrices.length) {
+            value = Double.NaN;
+            return value;
+        }
+        double deviation = 0;
+        for (double price : typicalPrices) {
+            deviation += Math.abs(price - mean);
+        }
+        deviation /= count;
+        value = deviation == 0 ? 0 : (typicalPrice - mean) / (CCI_FACTOR * deviation);
+        return value;
+    }
+
+    /**
+     * Значение CCI, если бы следующим пришел такой бар. Новая типичная цена подставляется в слот,
+     * который заняла бы при обновлении. Состояние не меняется.
+     */
+    public double preview(double high, double low, double close) {
+        if (count + 1 < typicalPrices.length) {
+            return Double.NaN;
+        }
+        double typicalPrice = (high + low + close) / 3;
+        double mean = typicalPriceSma.preview(typicalPrice);
+        double deviation = 0;
+        for (int i = 0; i < typicalPrices.length; i++) {
+            deviation += Math.abs((i == position ? typicalPrice : typicalPrices[i]) - mean);
+        }
+        deviation /= typicalPrices.length;
+        return deviation == 0 ? 0 : (typicalPrice - mean) / (CCI_FACTOR * deviation);
+    }
+
+    /**
+     * @return значение CCI или NaN, пока не накоплен полный период
+     */
+    public double getValue() {
+        return value;
+    }
+
+    public boolean isReady() {
+        return count == typicalPrices.length;
+    }
+}
@@ -0,0 +1,81 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Дивергенция цены и осциллятора за последние {@code period} баров.
+ * <p>
+ * Бычья дивергенция - цена закрытия обновила минимум окна, а осциллятор остался выше своего минимума
+ * (у цены более низкий минимум, у осциллятора более высокий). Медвежья - цена обновила максимум окна,
+ * а осциллятор остался ниже своего максимума. Экстремумы окна ведутся монотонными очередями
+ * {@link RollingExtremum}, поэтому {@link #update} стоит O(1) в среднем, а результат готов сразу после него.
+ */
+public class DivergenceDetector {
+
+    private final RollingExtremum priceLow;
+    private final RollingExtremum priceHigh;
+    private final RollingExtremum oscillatorLow;
+    private final RollingExtremum oscillatorHigh;
+
+    private boolean bullish;
+    private boolean bearish;
+
+    /**
+     * @param period количество предыдущих баров, с которыми сравнивается текущий
+     */
+    public DivergenceDetector(int period) {
+        this.priceLow = new RollingExtremum(period, false);
+        this.priceHigh = new RollingExtremum(period, true);
+        this.oscillatorLow = new RollingExtremum(period, false);
+        this.oscillatorHigh = new RollingExtremum(period, true);
+    }
+
+    /**
+     * Сравнивает новый бар с экстремумами предыдущих {@code period} баров и добавляет его в окно.
+     *
+     * @param price      цена закрытия
+     * @param oscillator значение осциллятора; NaN, пока осциллятор не прогрет, такие бары пропускаются
+     */
+    public void update(double price, double oscillator) {
+        if (Double.isNaN(oscillator)) {
+            bullish = false;
+            bearish = false;
+            return;
+        }
+
+        boolean ready = priceLow.isReady();
+        bullish = ready && price < priceLow.getValue() && oscillator > oscillatorLow.getValue();
+        bearish = ready && price > priceHigh.getValue() && oscillator < oscillatorHigh.getValue();
+
+        priceLow.add(price);
+        priceHigh.add(price);
+        oscillatorLow.add(oscillator);
+        oscillatorHigh.add(oscillator);
+    }
+
+    /**
+     * @return true, если бар с такими значениями дал бы бычью дивергенцию; состояние не меняется
+     */
+    public boolean previewBullish(double price, double oscillator) {
+        return priceLow.isReady() && price < priceLow.getValue() && oscillator > oscillatorLow.getValue();
+    }
+
+    /**
+     * @return true, если бар с такими значениями дал бы медвежью дивергенцию; состояние не меняется
+     */
+    public boolean previewBearish(double price, double oscillator) {
+        return priceHigh.isReady() && price > priceHigh.getValue() && oscillator < oscillatorHigh.getValue();
+    }
+
+    /**
+     * @return true, если на последнем баре бычья дивергенция
+     */
+    public boolean isBullish() {
+        return bullish;
+    }
+
+    /**
+     * @return true, если на последнем баре медвежья дивергенция
+     */
+    public boolean isBearish() {
+        return bearish;
+    }
+}
@@ -0,0 +1,65 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Экспоненциальная скользящая средняя с коэффициентом 2 / (period + 1).
+ * Первое значение - простая средняя первых {@code period} значений. Обновление за O(1).
+ */
+public class EmaIndicator {
+
+    private final int period;
+    private final double alpha;
+    private int count;
+    private double value;
+
+    /**
+     * @param period период средней
+     */
+    public EmaIndicator(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.period = period;
+        this.alpha = 2.0 / (period + 1);
+    }
+
+    /**
+     * Добавляет новое значение.
+     *
+     * @return значение средней после добавления
+     */
+    public double update(double input) {
+        if (count < period) {
+            value += input;
+            if (++count == period) {
+                value /= period;
+            }
+        } else {
+            value += alpha * (input - value);
+        }
+        return getValue();
+    }
+
+    /**
+     * Значение средней, если бы следующим пришло {@code input}. Состояние не меняется.
+     */
+    public double preview(double input) {
+        if (count < period - 1) {
+            return Double.NaN;
+        }
+        if (count == period - 1) {
+            return (value + input) / period;
+        }
+        return value + alpha * (input - value);
+    }
+
+    /**
+     * @return значение средней или NaN, пока не накоплен период
+     */
+    public double getValue() {
+        return count < period ? Double.NaN : value;
+    }
+
+    public boolean isReady() {
+        return count >= period;
+    }
+}
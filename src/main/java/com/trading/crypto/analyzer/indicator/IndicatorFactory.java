@@ -0,0 +1,16 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Создает узлы индикатора в графе и регистрирует его выходы как признаки.
+ */
+@FunctionalInterface
+public interface IndicatorFactory {
+
+    /**
+     * @param graph  граф индикаторов символа и интервала
+     * @param name   имя индикатора из конфигурации, например "macd(12,26,9)"; дополнительные выходы
+     *               регистрируются как name + "." + выход
+     * @param params параметры из скобок
+     */
+    void create(IndicatorGraph graph, String name, double[] params);
+}
@@ -0,0 +1,138 @@
+package com.trading.crypto.analyzer.indicator;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.model.FeatureVector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Граф потоковых индикаторов одного символа и интервала.
+ * <p>
+ * Узлы создаются через {@link #node(String, Supplier)} и дедуплицируются по ключу выражения, поэтому общее
+ * подвыражение (например, EMA цены закрытия, нужная и самой EMA, и MACD) считается один раз. Фабрика узла
+ * сначала получает узлы-зависимости, поэтому порядок создания - топологический, и {@link #update}
+ * обновляет узлы в нем же. Выходы индикаторов регистрируются как именованные признаки.
+ * <p>
+ * Граф обновляется из одного потока.
+ */
+public class IndicatorGraph {
+
+    private final List<IndicatorNode> nodes = new ArrayList<>();
+    private final Map<String, IndicatorNode> nodesByKey = new HashMap<>();
+    private final Map<String, Integer> featureIndex = new LinkedHashMap<>();
+    private final Map<String, Integer> featureSchema = Collections.unmodifiableMap(featureIndex);
+    private final List<IndicatorNode> featureNodes = new ArrayList<>();
+
+    /**
+     * Узел цены закрытия - источник для индикаторов по close.
+     */
+    public IndicatorNode close() {
+        return node("close", IndicatorNodes.ClosePrice::new);
+    }
+
+    /**
+     * Возвращает узел по ключу выражения или создает его.
+     *
+     * @param key     ключ выражения, например "ema(close,12)"
+     * @param factory создает узел; зависимости нужно получить через этот же граф до создания узла
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IndicatorNode> T node(String key, Supplier<T> factory) {
+        IndicatorNode existing = nodesByKey.get(key);
+        if (existing != null) {
+            return (T) existing;
+        }
+        T created = factory.get();
+        nodesByKey.put(key, created);
+        nodes.add(created);
+        return created;
+    }
+
+    /**
+     * Регистрирует выход узла как признак. Повторная регистрация того же имени игнорируется.
+     */
+    public void feature(String name, IndicatorNode node) {
+        if (!featureIndex.containsKey(name)) {
+            featureIndex.put(name, featureNodes.size());
+            featureNodes.add(node);
+        }
+    }
+
+    public boolean hasFeature(String name) {
+        return featureIndex.containsKey(name);
+    }
+
+    /**
+     * @return индекс признака или -1, если такого нет
+     */
+    public int indexOf(String name) {
+        return featureIndex.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return текущее значение признака по индексу из {@link #indexOf(String)}
+     */
+    public double getFeature(int index) {
+        return featureNodes.get(index).getValue();
+    }
+
+    /**
+     * @return количество узлов, включая общие подвыражения
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Обновляет все узлы новым закрытым баром.
+     */
+    public void update(double open, double high, double low, double close, double volume) {
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).update(open, high, low, close, volume);
+        }
+    }
+
+    /**
+     * Считает предварительные значения всех узлов по незакрытому бару, не меняя их состояния.
+     */
+    public void preview(double open, double high, double low, double close, double volume) {
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).preview(open, high, low, close, volume);
+        }
+    }
+
+    /**
+     * @return предварительное значение признака после {@link #preview}
+     */
+    public double getPreviewFeature(int index) {
+        return featureNodes.get(index).getPreviewValue();
+    }
+
+    /**
+     * @return неизменяемый снимок предварительных значений признаков после {@link #preview}
+     */
+    public FeatureVector previewSnapshot(String symbol, MarketInterval interval, long timestamp) {
+        double[] values = new double[featureNodes.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = featureNodes.get(i).getPreviewValue();
+        }
+        return new FeatureVector(symbol, interval, timestamp, featureSchema, values);
+    }
+
+    /**
+     * @return неизменяемый снимок текущих значений признаков
+     */
+    public FeatureVector snapshot(String symbol, MarketInterval interval, long timestamp) {
+        double[] values = new double[featureNodes.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = featureNodes.get(i).getValue();
+        }
+        return new FeatureVector(symbol, interval, timestamp, featureSchema, values);
+    }
+}
@@ -0,0 +1,36 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Узел графа индикаторов {@link IndicatorGraph}: потоковый индикатор или промежуточное выражение.
+ * <p>
+ * Узел может читать значения узлов, от которых зависит: граф обновляет их раньше, в порядке создания.
+ * Пока узел не прогрет, его значение - NaN.
+ * <p>
+ * Кроме значения по закрытым барам узел умеет считать предварительное значение по незакрытому бару
+ * ({@link #preview}) за O(1) и не меняя основного состояния. Предварительные значения зависимостей
+ * к этому моменту уже посчитаны.
+ */
+public abstract class IndicatorNode {
+
+    protected double value = Double.NaN;
+
+    /**
+     * Обновляет узел новым закрытым баром.
+     */
+    public abstract void update(double open, double high, double low, double close, double volume);
+
+    protected double previewValue = Double.NaN;
+
+    /**
+     * Считает предварительное значение по незакрытому бару, не меняя состояния по закрытым барам.
+     */
+    public abstract void preview(double open, double high, double low, double close, double volume);
+
+    public double getValue() {
+        return value;
+    }
+
+    public double getPreviewValue() {
+        return previewValue;
+    }
+}
@@ -0,0 +1,271 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Встроенные узлы графа индикаторов. Все обновляются и считают предварительное значение за O(1)
+ * (CCI - за O(period)) и не создают объектов.
+ */
+final class IndicatorNodes {
+
+    private IndicatorNodes() {
+    }
+
+    static class ClosePrice extends IndicatorNode {
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            value = close;
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            previewValue = close;
+        }
+    }
+
+    static class Ema extends IndicatorNode {
+        private final IndicatorNode source;
+        private final EmaIndicator ema;
+
+        Ema(IndicatorNode source, int period) {
+            this.source = source;
+            this.ema = new EmaIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            double input = source.getValue();
+            if (!Double.isNaN(input)) {
+                value = ema.update(input);
+            }
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            double input = source.getPreviewValue();
+            previewValue = Double.isNaN(input) ? value : ema.preview(input);
+        }
+    }
+
+    static class Sma extends IndicatorNode {
+        private final IndicatorNode source;
+        private final SmaIndicator sma;
+
+        Sma(IndicatorNode source, int period) {
+            this.source = source;
+            this.sma = new SmaIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            double input = source.getValue();
+            if (!Double.isNaN(input)) {
+                value = sma.update(input);
+            }
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            double input = source.getPreviewValue();
+            previewValue = Double.isNaN(input) ? value : sma.preview(input);
+        }
+    }
+
+    /**
+     * Стандартное отклонение по генеральной совокупности за период: sqrt(E[x^2] - E[x]^2).
+     */
+    static class StandardDeviation extends IndicatorNode {
+        private final IndicatorNode source;
+        private final SmaIndicator mean;
+        private final SmaIndicator meanOfSquares;
+        private final int period;
+        private int count;
+
+        StandardDeviation(IndicatorNode source, int period) {
+            this.source = source;
+            this.period = period;
+            this.mean = new SmaIndicator(period);
+            this.meanOfSquares = new SmaIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            double input = source.getValue();
+            if (Double.isNaN(input)) {
+                return;
+            }
+            count++;
+            double m = mean.update(input);
+            double m2 = meanOfSquares.update(input * input);
+            value = mean.isReady() ? Math.sqrt(Math.max(0, m2 - m * m)) : Double.NaN;
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            double input = source.getPreviewValue();
+            if (Double.isNaN(input) || count + 1 < period) {
+                previewValue = value;
+                return;
+            }
+            double m = mean.preview(input);
+            previewValue = Math.sqrt(Math.max(0, meanOfSquares.preview(input * input) - m * m));
+        }
+    }
+
+    static class Rsi extends IndicatorNode {
+        private final RsiIndicator rsi;
+
+        Rsi(int period) {
+            this.rsi = new RsiIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            value = rsi.update(close);
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            previewValue = rsi.preview(close);
+        }
+    }
+
+    static class Cci extends IndicatorNode {
+        private final CciIndicator cci;
+
+        Cci(int period) {
+            this.cci = new CciIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            value = cci.update(high, low, close);
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            previewValue = cci.preview(high, low, close);
+        }
+    }
+
+    /**
+     * ATR со сглаживанием Уайлдера. Первое значение - среднее первых {@code period} истинных диапазонов.
+     */
+    static class Atr extends IndicatorNode {
+        private final int period;
+        private double previousClose = Double.NaN;
+        private int count;
+        private double average;
+
+        Atr(int period) {
+            this.period = period;
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            double trueRange = trueRange(high, low);
+            previousClose = close;
+            if (count < period) {
+                average += trueRange;
+                if (++count == period) {
+                    average /= period;
+                    value = average;
+                }
+            } else {
+                average = (average * (period - 1) + trueRange) / period;
+                value = average;
+            }
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            double trueRange = trueRange(high, low);
+            if (count < period - 1) {
+                previewValue = Double.NaN;
+            } else if (count == period - 1) {
+                previewValue = (average + trueRange) / period;
+            } else {
+                previewValue = (average * (period - 1) + trueRange) / period;
+            }
+        }
+
+        private double trueRange(double high, double low) {
+            if (Double.isNaN(previousClose)) {
+                return high - low;
+            }
+            return Math.max(high - low, Math.max(Math.abs(high - previousClose), Math.abs(low - previousClose)));
+        }
+    }
+
+    /**
+     * Скользящий VWAP за {@code period} баров по типичной цене: сумма(TP * V) / сумма(V).
+     * Пока окно объемов не заполнено, значение - NaN.
+     */
+    static class Vwap extends IndicatorNode {
+        private final SmaIndicator priceVolume;
+        private final SmaIndicator volumes;
+
+        Vwap(int period) {
+            this.priceVolume = new SmaIndicator(period);
+            this.volumes = new SmaIndicator(period);
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            double typicalPrice = (high + low + close) / 3;
+            double meanPriceVolume = priceVolume.update(typicalPrice * volume);
+            double meanVolume = volumes.update(volume);
+            value = meanVolume > 0 ? meanPriceVolume / meanVolume : Double.NaN;
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            double typicalPrice = (high + low + close) / 3;
+            double meanVolume = volumes.preview(volume);
+            previewValue = meanVolume > 0 ? priceVolume.preview(typicalPrice * volume) / meanVolume : Double.NaN;
+        }
+    }
+
+    static class Difference extends IndicatorNode {
+        private final IndicatorNode minuend;
+        private final IndicatorNode subtrahend;
+
+        Difference(IndicatorNode minuend, IndicatorNode subtrahend) {
+            this.minuend = minuend;
+            this.subtrahend = subtrahend;
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            value = minuend.getValue() - subtrahend.getValue();
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            previewValue = minuend.getPreviewValue() - subtrahend.getPreviewValue();
+        }
+    }
+
+    /**
+     * Полоса middle + multiplier * deviation.
+     */
+    static class Band extends IndicatorNode {
+        private final IndicatorNode middle;
+        private final IndicatorNode deviation;
+        private final double multiplier;
+
+        Band(IndicatorNode middle, IndicatorNode deviation, double multiplier) {
+            this.middle = middle;
+            this.deviation = deviation;
+            this.multiplier = multiplier;
+        }
+
+        @Override
+        public void update(double open, double high, double low, double close, double volume) {
+            value = middle.getValue() + multiplier * deviation.getValue();
+        }
+
+        @Override
+        public void preview(double open, double high, double low, double close, double volume) {
+            previewValue = middle.getPreviewValue() + multiplier * deviation.getPreviewValue();
+        }
+    }
+}
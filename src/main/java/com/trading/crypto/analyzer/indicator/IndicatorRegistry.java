@@ -0,0 +1,175 @@
+package com.trading.crypto.analyzer.indicator;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Реестр индикаторов: по конфигурации строит {@link IndicatorGraph} для символа и интервала.
+ * <p>
+ * Набор индикаторов задается списком вида {@code sma(100),rsi(14),macd(12,26,9),bollinger(20,2)}.
+ * Список ищется по свойствам в порядке {@code stalker.indicators.<символ>.<id интервала>},
+ * {@code stalker.indicators.<id интервала>}, {@code stalker.indicators.default}.
+ * <p>
+ * Встроенные индикаторы и их признаки:
+ * <ul>
+ *     <li>{@code sma(n)}, {@code ema(n)}, {@code rsi(n)}, {@code cci(n)}, {@code atr(n)}, {@code vwap(n)} - один признак с именем индикатора;</li>
+ *     <li>{@code macd(fast,slow,signal)} - линия MACD, {@code .signal} и {@code .histogram};</li>
+ *     <li>{@code bollinger(n,k)} - {@code .middle}, {@code .upper} и {@code .lower}.</li>
+ * </ul>
+ * Новые типы подключаются через {@link #register(String, IndicatorFactory)}.
+ */
+@Slf4j
+@Component
+public class IndicatorRegistry {
+
+    private static final String INDICATORS_PROPERTY_PREFIX = "stalker.indicators.";
+    private static final Pattern INDICATOR_PATTERN = Pattern.compile("(\\w+)\\(([^)]*)\\)");
+
+    private final Environment environment;
+    private final String defaultIndicators;
+    private final Map<String, IndicatorFactory> factories = new ConcurrentHashMap<>();
+
+    public IndicatorRegistry(Environment environment,
+                             @Value("${stalker.indicators.default:sma(100),rsi(14),cci(7)}") String defaultIndicators) {
+        this.environment = environment;
+        this.defaultIndicators = defaultIndicators;
+        registerBuiltIn();
+    }
+
+    /**
+     * Подключает тип индикатора.
+     *
+     * @param type    имя типа в конфигурации, например "sma"
+     * @param factory фабрика узлов индикатора
+     */
+    public void register(String type, IndicatorFactory factory) {
+        factories.put(type, factory);
+    }
+
+    /**
+     * Строит граф индикаторов, настроенных для символа и интервала.
+     *
+     * @param symbol   торговый символ
+     * @param interval временной интервал
+     * @param required индикаторы, без которых не может работать вызывающий анализатор; добавляются к настроенным
+     * @return новый граф
+     */
+    public IndicatorGraph createGraph(String symbol, MarketInterval interval, List<String> required) {
+        String configured = environment.getProperty(INDICATORS_PROPERTY_PREFIX + symbol + "." + interval.getIntervalId(),
+                environment.getProperty(INDICATORS_PROPERTY_PREFIX + interval.getIntervalId(), defaultIndicators));
+
+        IndicatorGraph graph = new IndicatorGraph();
+        List<String> declarations = new ArrayList<>(parse(configured));
+        declarations.addAll(required);
+        for (String declaration : declarations) {
+            add(graph, declaration);
+        }
+        log.debug("Indicator graph for {} {}: {} declarations, {} nodes", symbol, interval, declarations.size(), graph.getNodeCount());
+        return graph;
+    }
+
+    private void add(IndicatorGraph graph, String declaration) {
+        Matcher matcher = INDICATOR_PATTERN.matcher(declaration);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid indicator declaration: " + declaration);
+        }
+        if (graph.hasFeature(declaration)) {
+            return;
+        }
+        IndicatorFactory factory = factories.get(matcher.group(1));
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown indicator type: " + matcher.group(1));
+        }
+        String[] parts = matcher.group(2).isEmpty() ? new String[0] : matcher.group(2).split(",");
+        double[] params = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            params[i] = Double.parseDouble(parts[i]);
+        }
+        factory.create(graph, declaration, params);
+    }
+
+    /**
+     * Разбивает список объявлений, не разрывая запятые внутри скобок, и удаляет пробелы.
+     */
+    private static List<String> parse(String indicators) {
+        List<String> declarations = new ArrayList<>();
+        Matcher matcher = INDICATOR_PATTERN.matcher(indicators.replace(" ", ""));
+        while (matcher.find()) {
+            declarations.add(matcher.group());
+        }
+        return declarations;
+    }
+
+    private void registerBuiltIn() {
+        register("sma", (graph, name, params) -> graph.feature(name, sma(graph, graph.close(), "close", period(params, 0))));
+        register("ema", (graph, name, params) -> graph.feature(name, ema(graph, graph.close(), "close", period(params, 0))));
+        register("rsi", (graph, name, params) -> {
+            int period = period(params, 0);
+            graph.feature(name, graph.node("rsi(" + period + ")", () -> new IndicatorNodes.Rsi(period)));
+        });
+        register("cci", (graph, name, params) -> {
+            int period = period(params, 0);
+            graph.feature(name, graph.node("cci(" + period + ")", () -> new IndicatorNodes.Cci(period)));
+        });
+        register("atr", (graph, name, params) -> {
+            int period = period(params, 0);
+            graph.feature(name, graph.node("atr(" + period + ")", () -> new IndicatorNodes.Atr(period)));
+        });
+        register("vwap", (graph, name, params) -> {
+            int period = period(params, 0);
+            graph.feature(name, graph.node("vwap(" + period + ")", () -> new IndicatorNodes.Vwap(period)));
+        });
+        register("macd", (graph, name, params) -> {
+            int fast = period(params, 0);
+            int slow = period(params, 1);
+            int signal = period(params, 2);
+            IndicatorNode fastEma = ema(graph, graph.close(), "close", fast);
+            IndicatorNode slowEma = ema(graph, graph.close(), "close", slow);
+            String lineKey = "macd(" + fast + "," + slow + ")";
+            IndicatorNode line = graph.node(lineKey, () -> new IndicatorNodes.Difference(fastEma, slowEma));
+            IndicatorNode signalLine = ema(graph, line, lineKey, signal);
+            IndicatorNode histogram = graph.node(lineKey + "-ema(" + lineKey + "," + signal + ")",
+                    () -> new IndicatorNodes.Difference(line, signalLine));
+            graph.feature(name, line);
+            graph.feature(name + ".signal", signalLine);
+            graph.feature(name + ".histogram", histogram);
+        });
+        register("bollinger", (graph, name, params) -> {
+            int period = period(params, 0);
+            double multiplier = params.length > 1 ? params[1] : 2;
+            IndicatorNode middle = sma(graph, graph.close(), "close", period);
+            IndicatorNode deviation = graph.node("stddev(close," + period + ")",
+                    () -> new IndicatorNodes.StandardDeviation(graph.close(), period));
+            graph.feature(name + ".middle", middle);
+            graph.feature(name + ".upper", graph.node("band(close," + period + "," + multiplier + ")",
+                    () -> new IndicatorNodes.Band(middle, deviation, multiplier)));
+            graph.feature(name + ".lower", graph.node("band(close," + period + "," + -multiplier + ")",
+                    () -> new IndicatorNodes.Band(middle, deviation, -multiplier)));
+        });
+    }
+
+    private static IndicatorNode sma(IndicatorGraph graph, IndicatorNode source, String sourceKey, int period) {
+        return graph.node("sma(" + sourceKey + "," + period + ")", () -> new IndicatorNodes.Sma(source, period));
+    }
+
+    private static IndicatorNode ema(IndicatorGraph graph, IndicatorNode source, String sourceKey, int period) {
+        return graph.node("ema(" + sourceKey + "," + period + ")", () -> new IndicatorNodes.Ema(source, period));
+    }
+
+    private static int period(double[] params, int index) {
+        if (index >= params.length || params[index] < 1) {
+            throw new IllegalArgumentException("Indicator period #" + (index + 1) + " is missing or invalid");
+        }
+        return (int) params[index];
+    }
+}
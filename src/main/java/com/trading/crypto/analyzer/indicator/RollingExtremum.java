@@ -0,0 +1,73 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Минимум или максимум последних {@code period} значений на монотонной очереди.
+ * <p>
+ * Очередь хранит только значения, которые еще могут стать экстремумом окна: новое значение вытесняет
+ * с конца все, что не лучше него, а с начала уходят значения, вышедшие за окно. Каждое значение
+ * добавляется и удаляется один раз, поэтому обновление стоит O(1) в среднем, а запрос - O(1).
+ * Очередь лежит в примитивных массивах фиксированного размера.
+ */
+public class RollingExtremum {
+
+    private final int period;
+    private final boolean maximum;
+    private final long[] indices;
+    private final double[] values;
+    private int head;
+    private int size;
+    private long count;
+
+    /**
+     * @param period  размер окна
+     * @param maximum true - максимум, false - минимум
+     */
+    public RollingExtremum(int period, boolean maximum) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.period = period;
+        this.maximum = maximum;
+        this.indices = new long[period + 1];
+        this.values = new double[period + 1];
+    }
+
+    public void add(double value) {
+        while (size > 0) {
+            double last = values[slot(size - 1)];
+            if (maximum ? last > value : last < value) {
+                break;
+            }
+            size--;
+        }
+        int tail = slot(size);
+        indices[tail] = count;
+        values[tail] = value;
+        size++;
+        count++;
+
+        while (indices[head] <= count - 1 - period) {
+            head = slot(1);
+            size--;
+        }
+    }
+
+    /**
+     * @return экстремум окна или NaN, если значений еще не было
+     */
+    public double getValue() {
+        return size == 0 ? Double.NaN : values[head];
+    }
+
+    /**
+     * @return true, если в окне уже {@code period} значений
+     */
+    public boolean isReady() {
+        return count >= period;
+    }
+
+    private int slot(int offset) {
+        int slot = head + offset;
+        return slot >= values.length ? slot - values.length : slot;
+    }
+}
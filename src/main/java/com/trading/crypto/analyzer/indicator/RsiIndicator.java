@@ -0,0 +1,88 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * RSI со сглаживанием Уайлдера. Первые средние прироста и падения считаются как простые средние
+ * за {@code period} изменений цены, дальше avg = (avg * (period - 1) + value) / period.
+ * Обновление за O(1), состояние - несколько примитивных полей.
+ */
+public class RsiIndicator {
+
+    private final int period;
+    private double previousClose = Double.NaN;
+    private int changes;
+    private double averageGain;
+    private double averageLoss;
+
+    /**
+     * @param period период RSI
+     */
+    public RsiIndicator(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.period = period;
+    }
+
+    /**
+     * Добавляет цену закрытия нового бара.
+     *
+     * @return значение RSI после добавления
+     */
+    public double update(double close) {
+        if (!Double.isNaN(previousClose)) {
+            double change = close - previousClose;
+            double gain = change > 0 ? change : 0;
+            double loss = change < 0 ? -change : 0;
+            if (changes < period) {
+                averageGain += gain;
+                averageLoss += loss;
+                if (++changes == period) {
+                    averageGain /= period;
+                    averageLoss /= period;
+                }
+            } else {
+                averageGain = (averageGain * (period - 1) + gain) / period;
+                averageLoss = (averageLoss * (period - 1) + loss) / period;
+            }
+        }
+        previousClose = close;
+        return getValue();
+    }
+
+    /**
+     * Значение RSI, если бы следующей пришла цена {@code close}. Состояние не меняется.
+     */
+    public double preview(double close) {
+        if (Double.isNaN(previousClose) || changes < period - 1) {
+            return Double.NaN;
+        }
+        double change = close - previousClose;
+        double gain = change > 0 ? change : 0;
+        double loss = change < 0 ? -change : 0;
+        if (changes == period - 1) {
+            return rsi((averageGain + gain) / period, (averageLoss + loss) / period);
+        }
+        return rsi((averageGain * (period - 1) + gain) / period, (averageLoss * (period - 1) + loss) / period);
+    }
+
+    /**
+     * @return RSI от 0 до 100 или NaN, пока не накоплено {@code period} изменений цены
+     */
+    public double getValue() {
+        if (changes < period) {
+            return Double.NaN;
+        }
+        return rsi(averageGain, averageLoss);
+    }
+
+    private static double rsi(double gain, double loss) {
+        if (loss == 0) {
+            return gain == 0 ? 50 : 100;
+        }
+        return 100 - 100 / (1 + gain / loss);
+    }
+
+    public boolean isReady() {
+        return changes >= period;
+    }
+}
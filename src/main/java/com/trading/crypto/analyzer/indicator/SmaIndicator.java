@@ -0,0 +1,78 @@
+package com.trading.crypto.analyzer.indicator;
+
+/**
+ * Простая скользящая средняя на кольцевом буфере с накопленной суммой.
+ * Обновление за O(1) без создания объектов.
+ * <p>
+ * Чтобы ошибка округления от вычитаний не накапливалась, сумма пересчитывается заново
+ * каждый раз, когда буфер проходит полный круг, что в среднем тоже O(1) на бар.
+ */
+public class SmaIndicator {
+
+    private final double[] values;
+    private int position;
+    private int count;
+    private double sum;
+
+    /**
+     * @param period период средней
+     */
+    public SmaIndicator(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.values = new double[period];
+    }
+
+    /**
+     * Добавляет новое значение.
+     *
+     * @return значение средней после добавления
+     */
+    public double update(double value) {
+        if (count == values.length) {
+            sum -= values[position];
+        } else {
+            count++;
+        }
+        values[position] = value;
+        sum += value;
+        if (++position == values.length) {
+            position = 0;
+            resum();
+        }
+        return getValue();
+    }
+
+    /**
+     * Значение средней, если бы следующим пришло {@code value}. Состояние не меняется.
+     */
+    public double preview(double value) {
+        if (count == values.length) {
+            return (sum - values[position] + value) / count;
+        }
+        return count == values.length - 1 ? (sum + value) / values.length : Double.NaN;
+    }
+
+    /**
+     * @return среднее по последним {@code period} значениям или NaN, пока не накоплен период
+     */
+    public double getValue() {
+        return count < values.length ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return true, если накоплен полный период
+     */
+    public boolean isReady() {
+        return count == values.length;
+    }
+
+    private void resum() {
+        double exact = 0;
+        for (int i = 0; i < count; i++) {
+            exact += values[i];
+        }
+        sum = exact;
+    }
+}
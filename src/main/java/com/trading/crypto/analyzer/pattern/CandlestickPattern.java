@@ -0,0 +1,35 @@
+package com.trading.crypto.analyzer.pattern;
+
+/**
+ * Свечные паттерны, которые ищет {@link PatternScanner}.
+ */
+public enum CandlestickPattern {
+    /**
+     * Бычья свеча после медвежьей, нижняя тень больше двух тел, верхняя меньше половины тела.
+     */
+    BULLISH_PIN_BAR,
+    /**
+     * Медвежья свеча после бычьей, верхняя тень больше двух тел, нижняя меньше половины тела.
+     */
+    BEARISH_PIN_BAR,
+    /**
+     * Бычья свеча, тело которой перекрывает тело предыдущей медвежьей.
+     */
+    BULLISH_ENGULFING,
+    /**
+     * Медвежья свеча, тело которой перекрывает тело предыдущей бычьей.
+     */
+    BEARISH_ENGULFING,
+    /**
+     * Максимум ниже, а минимум выше, чем у предыдущей свечи.
+     */
+    INSIDE_BAR,
+    /**
+     * Тело не больше 10% диапазона свечи.
+     */
+    DOJI,
+    /**
+     * Нижняя тень не меньше двух тел, верхняя не больше 10% диапазона. Только форма свечи, без учета тренда.
+     */
+    HAMMER
+}
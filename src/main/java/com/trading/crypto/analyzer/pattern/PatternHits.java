@@ -0,0 +1,93 @@
+package com.trading.crypto.analyzer.pattern;
+
+import java.util.Arrays;
+
+/**
+ * Результат {@link PatternScanner}: битовая маска совпадений для каждого паттерна.
+ * Бит {@code i} соответствует бару с индексом {@code i} в {@link com.trading.crypto.data.KlineSeries},
+ * то есть 0 - самый свежий бар.
+ * <p>
+ * Объект переиспользуется между сканированиями: маски и буферы столбцов растут до размера
+ * самого большого окна и дальше не пересоздаются. Не потокобезопасен.
+ */
+public class PatternHits {
+
+    private static final CandlestickPattern[] PATTERNS = CandlestickPattern.values();
+
+    private final long[][] bits = new long[PATTERNS.length][0];
+    private int size;
+
+    // Столбцы окна, которое сканируется из KlineSeries
+    double[] open = new double[0];
+    double[] high = new double[0];
+    double[] low = new double[0];
+    double[] close = new double[0];
+
+    /**
+     * @return количество просканированных баров
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param pattern паттерн
+     * @param index   индекс бара, 0 - самый свежий
+     * @return true, если бар образует паттерн
+     */
+    public boolean isHit(CandlestickPattern pattern, int index) {
+        if (index < 0 || index >= size) {
+            return false;
+        }
+        return (bits[pattern.ordinal()][index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return количество баров окна с паттерном
+     */
+    public int count(CandlestickPattern pattern) {
+        int count = 0;
+        for (long word : bits[pattern.ordinal()]) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return индекс самого свежего бара с паттерном или -1, если его нет
+     */
+    public int latest(CandlestickPattern pattern) {
+        long[] words = bits[pattern.ordinal()];
+        for (int w = 0; w < words.length; w++) {
+            if (words[w] != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(words[w]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Готовит маски к сканированию окна из {@code size} баров и обнуляет их.
+     */
+    long[][] reset(int size) {
+        this.size = size;
+        int words = (size + 63) >>> 6;
+        for (int p = 0; p < bits.length; p++) {
+            if (bits[p].length < words) {
+                bits[p] = new long[words];
+            } else {
+                Arrays.fill(bits[p], 0);
+            }
+        }
+        return bits;
+    }
+
+    void ensureColumns(int size) {
+        if (open.length < size) {
+            open = new double[size];
+            high = new double[size];
+            low = new double[size];
+            close = new double[size];
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.trading.crypto.analyzer.pattern;
+
+import com.trading.crypto.data.KlineSeries;
+
+/**
+ * Поиск свечных паттернов {@link CandlestickPattern} по окну баров за один проход.
+ * <p>
+ * Работает по примитивным столбцам OHLC: для каждого бара считаются тело и тени, все паттерны
+ * проверяются сравнениями без ветвлений, а результат записывается в биты {@link PatternHits}.
+ * Объекты не создаются, поэтому сканирование тысяч баров на символ дешево и в живом контуре, и в бэктестах.
+ * Паттерны из двух свечей для самого старого бара окна не определяются.
+ */
+public final class PatternScanner {
+
+    private static final int BULLISH_PIN_BAR = CandlestickPattern.BULLISH_PIN_BAR.ordinal();
+    private static final int BEARISH_PIN_BAR = CandlestickPattern.BEARISH_PIN_BAR.ordinal();
+    private static final int BULLISH_ENGULFING = CandlestickPattern.BULLISH_ENGULFING.ordinal();
+    private static final int BEARISH_ENGULFING = CandlestickPattern.BEARISH_ENGULFING.ordinal();
+    private static final int INSIDE_BAR = CandlestickPattern.INSIDE_BAR.ordinal();
+    private static final int DOJI = CandlestickPattern.DOJI.ordinal();
+    private static final int HAMMER = CandlestickPattern.HAMMER.ordinal();
+
+    private static final double DOJI_BODY_RATIO = 0.1;
+    private static final double HAMMER_UPPER_SHADOW_RATIO = 0.1;
+
+    private PatternScanner() {
+    }
+
+    /**
+     * Сканирует последние {@code bars} баров серии.
+     *
+     * @param series бары символа и интервала
+     * @param bars   сколько последних баров сканировать
+     * @param hits   переиспользуемый результат
+     */
+    public static void scan(KlineSeries series, int bars, PatternHits hits) {
+        int size = Math.min(bars, series.size());
+        hits.ensureColumns(size);
+        for (int i = 0; i < size; i++) {
+            hits.open[i] = series.getOpen(i);
+            hits.high[i] = series.getHigh(i);
+            hits.low[i] = series.getLow(i);
+            hits.close[i] = series.getClose(i);
+        }
+        scan(hits.open, hits.high, hits.low, hits.close, size, hits);
+    }
+
+    /**
+     * Сканирует столбцы OHLC, в которых индекс 0 - самый свежий бар, как в {@link KlineSeries}.
+     *
+     * @param size количество баров в столбцах
+     * @param hits переиспользуемый результат
+     */
+    public static void scan(double[] open, double[] high, double[] low, double[] close, int size, PatternHits hits) {
+        long[][] bits = hits.reset(size);
+        for (int i = 0; i < size; i++) {
+            double o = open[i];
+            double h = high[i];
+            double l = low[i];
+            double c = close[i];
+            double bodyTop = Math.max(o, c);
+            double bodyBottom = Math.min(o, c);
+            double body = bodyTop - bodyBottom;
+            double range = h - l;
+            double upperShadow = h - bodyTop;
+            double lowerShadow = bodyBottom - l;
+            boolean bullish = c > o;
+            boolean bearish = c < o;
+
+            int word = i >>> 6;
+            long bit = 1L << i;
+
+            set(bits[DOJI], word, bit, range > 0 & body <= DOJI_BODY_RATIO * range);
+            set(bits[HAMMER], word, bit, body > 0 & lowerShadow >= 2 * body & upperShadow <= HAMMER_UPPER_SHADOW_RATIO * range);
+
+            // Паттерны из двух свечей, предыдущая свеча - следующий индекс
+            if (i + 1 == size) {
+                break;
+            }
+            double previousOpen = open[i + 1];
+            double previousClose = close[i + 1];
+            boolean previousBullish = previousClose > previousOpen;
+            boolean previousBearish = previousClose < previousOpen;
+
+            set(bits[BULLISH_PIN_BAR], word, bit, previousBearish & bullish & lowerShadow > 2 * body & upperShadow < 0.5 * body);
+            set(bits[BEARISH_PIN_BAR], word, bit, previousBullish & bearish & upperShadow > 2 * body & lowerShadow < 0.5 * body);
+            set(bits[BULLISH_ENGULFING], word, bit, previousBearish & bullish & o <= previousClose & c >= previousOpen);
+            set(bits[BEARISH_ENGULFING], word, bit, previousBullish & bearish & o >= previousClose & c <= previousOpen);
+            set(bits[INSIDE_BAR], word, bit, h < high[i + 1] & l > low[i + 1]);
+        }
+    }
+
+    private static void set(long[] words, int word, long bit, boolean hit) {
+        words[word] |= hit ? bit : 0;
+    }
+}
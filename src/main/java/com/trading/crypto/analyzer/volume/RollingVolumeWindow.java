@@ -0,0 +1,221 @@
+package com.trading.crypto.analyzer.volume;
+
+import com.trading.crypto.analyzer.indicator.RollingExtremum;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Статистики объема за последние {@code period} баров на примитивных массивах.
+ * <p>
+ * Максимум окна - монотонная очередь {@link RollingExtremum}, среднее и стандартное отклонение -
+ * накопленные сумма и сумма квадратов в кольцевом буфере, перевычисляемые на каждом полном круге.
+ * Для перцентилей рядом с кольцом хранится отсортированная копия окна: новое значение вставляется
+ * бинарным поиском и сдвигом через {@link System#arraycopy}, ушедшее из окна так же удаляется.
+ * Все запросы, кроме {@link #getPercentileRank}, - O(1).
+ * <p>
+ * Писатель один. Читатели не берут блокировок: запись обрамляется счетчиком версии (seqlock),
+ * и чтение повторяется, если во время него окно менялось.
+ */
+public class RollingVolumeWindow {
+
+    private final int period;
+    private final double[] values;
+    private final double[] sorted;
+    private final RollingExtremum maximum;
+    private int position;
+    private int count;
+    private double sum;
+    private double sumOfSquares;
+
+    /**
+     * Нечетная версия означает, что писатель сейчас меняет окно.
+     */
+    private volatile long version;
+
+    /**
+     * @param period размер окна в барах
+     */
+    public RollingVolumeWindow(int period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        this.period = period;
+        this.values = new double[period];
+        this.sorted = new double[period];
+        this.maximum = new RollingExtremum(period, true);
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Добавляет объем закрытого бара.
+     */
+    public void add(double volume) {
+        beginWrite();
+        try {
+            if (count == period) {
+                double removed = values[position];
+                sum -= removed;
+                sumOfSquares -= removed * removed;
+                int index = Arrays.binarySearch(sorted, 0, count, removed);
+                System.arraycopy(sorted, index + 1, sorted, index, count - index - 1);
+                count--;
+            }
+
+            int insertAt = Arrays.binarySearch(sorted, 0, count, volume);
+            if (insertAt < 0) {
+                insertAt = -insertAt - 1;
+            }
+            System.arraycopy(sorted, insertAt, sorted, insertAt + 1, count - insertAt);
+            sorted[insertAt] = volume;
+            count++;
+
+            values[position] = volume;
+            sum += volume;
+            sumOfSquares += volume * volume;
+            maximum.add(volume);
+
+            if (++position == period) {
+                position = 0;
+                // Полный круг: пересчитываем суммы, чтобы не копить ошибку округления
+                sum = 0;
+                sumOfSquares = 0;
+                for (double value : values) {
+                    sum += value;
+                    sumOfSquares += value * value;
+                }
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return true, если в окне уже {@code period} баров
+     */
+    public boolean isReady() {
+        return count == period;
+    }
+
+    /**
+     * @return максимальный объем окна или NaN, если баров еще не было
+     */
+    public double getMax() {
+        while (true) {
+            long readVersion = beginRead();
+            double result = maximum.getValue();
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return средний объем окна или NaN, если баров еще не было
+     */
+    public double getMean() {
+        while (true) {
+            long readVersion = beginRead();
+            double result = count == 0 ? Double.NaN : sum / count;
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return стандартное отклонение объема по окну или NaN, если баров еще не было
+     */
+    public double getStandardDeviation() {
+        while (true) {
+            long readVersion = beginRead();
+            double result = Double.NaN;
+            if (count > 0) {
+                double mean = sum / count;
+                result = Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+            }
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param percentile перцентиль от 0 до 100
+     * @return объем, не меньше которого {@code percentile} процентов баров окна (nearest-rank), или NaN, если баров еще не было
+     */
+    public double getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        while (true) {
+            long readVersion = beginRead();
+            double result = Double.NaN;
+            int n = count;
+            if (n > 0) {
+                int rank = (int) Math.ceil(percentile / 100 * n);
+                result = sorted[Math.min(n - 1, Math.max(0, rank - 1))];
+            }
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Бинарный поиск по отсортированному окну, O(log period).
+     *
+     * @return доля баров окна с объемом не больше {@code volume} от 0 до 1 или NaN, если баров еще не было
+     */
+    public double getPercentileRank(double volume) {
+        while (true) {
+            long readVersion = beginRead();
+            double result = Double.NaN;
+            int n = count;
+            if (n > 0) {
+                int low = 0;
+                int high = n;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (sorted[mid] <= volume) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                result = (double) low / n;
+            }
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    private void beginWrite() {
+        version = version + 1;
+        // Изменения окна не должны стать видны раньше нечетной версии
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        version = version + 1;
+    }
+
+    private long beginRead() {
+        long readVersion = version;
+        while ((readVersion & 1) != 0) {
+            Thread.onSpinWait();
+            readVersion = version;
+        }
+        return readVersion;
+    }
+
+    private boolean endRead(long readVersion) {
+        // Чтение окна должно завершиться до повторной проверки версии
+        VarHandle.loadLoadFence();
+        return version == readVersion;
+    }
+}
@@ -0,0 +1,164 @@
+package com.trading.crypto.analyzer.volume;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.analyzer.MarketVolume;
+import com.trading.crypto.data.KlineSeries;
+import com.trading.crypto.data.impl.HistoricalDataCollector;
+import com.trading.crypto.event.EventType;
+import com.trading.crypto.event.MarketEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поддерживает {@link RollingVolumeWindow} по символам и интервалам для каждого окна из {@code stalker.volume.windows}.
+ * <p>
+ * Окна прогреваются историей из {@link HistoricalDataCollector} и дальше обновляются подписчиком шины событий
+ * на закрытых барах, поэтому стратегии получают статистики объема за O(1) без просмотра баров.
+ */
+@Slf4j
+@Service
+public class VolumeTracker implements MarketVolume {
+
+    public static final String CONSUMER_NAME = "volume";
+
+    private final HistoricalDataCollector dataCollector;
+    private final int[] windows;
+
+    private volatile Map<String, Map<MarketInterval, SeriesVolume>> series = Map.of();
+
+    public VolumeTracker(HistoricalDataCollector dataCollector,
+                         @Value("${stalker.volume.windows:20,100,500}") int[] windows) {
+        this.dataCollector = dataCollector;
+        this.windows = Arrays.stream(windows).distinct().toArray();
+    }
+
+    /**
+     * Создает окна для символов и интервалов, прогревает их историей и подписывает на шину событий
+     * под именем {@link #CONSUMER_NAME}.
+     *
+     * @param symbols   торговые символы
+     * @param intervals временные интервалы
+     */
+    public synchronized void start(List<String> symbols, List<MarketInterval> intervals) {
+        if (!series.isEmpty()) {
+            throw new IllegalStateException("Volume tracker is already started");
+        }
+        Map<String, Map<MarketInterval, SeriesVolume>> created = new HashMap<>();
+        for (String symbol : symbols) {
+            Map<MarketInterval, SeriesVolume> symbolSeries = new EnumMap<>(MarketInterval.class);
+            for (MarketInterval interval : intervals) {
+                symbolSeries.put(interval, new SeriesVolume(windows));
+            }
+            created.put(symbol, symbolSeries);
+        }
+
+        dataCollector.attach(CONSUMER_NAME, () -> {
+            created.forEach((symbol, symbolSeries) -> symbolSeries.forEach((interval, volume) -> warmUp(symbol, interval, volume)));
+            series = created;
+        }, this::onEvent);
+        log.info("Volume tracker started for {} symbols with windows {}", symbols.size(), Arrays.toString(windows));
+    }
+
+    private void warmUp(String symbol, MarketInterval interval, SeriesVolume volume) {
+        KlineSeries klineSeries = dataCollector.getKlineSeries(symbol, interval);
+        if (klineSeries == null) {
+            return;
+        }
+        // От самого старого бара к самому свежему
+        for (int i = klineSeries.size() - 1; i >= 0; i--) {
+            volume.add(klineSeries.getTimestamp(i), klineSeries.getVolume(i));
+        }
+    }
+
+    private void onEvent(MarketEvent event) {
+        if (event.getType() != EventType.BAR) {
+            return;
+        }
+        SeriesVolume volume = find(event.getSymbol(), event.getInterval());
+        if (volume != null) {
+            volume.add(event.getTimestamp(), event.getVolume());
+        }
+    }
+
+    @Override
+    public double getMax(String symbol, MarketInterval interval, int window) {
+        RollingVolumeWindow volumeWindow = window(symbol, interval, window);
+        return volumeWindow == null ? Double.NaN : volumeWindow.getMax();
+    }
+
+    @Override
+    public double getMean(String symbol, MarketInterval interval, int window) {
+        RollingVolumeWindow volumeWindow = window(symbol, interval, window);
+        return volumeWindow == null ? Double.NaN : volumeWindow.getMean();
+    }
+
+    @Override
+    public double getStandardDeviation(String symbol, MarketInterval interval, int window) {
+        RollingVolumeWindow volumeWindow = window(symbol, interval, window);
+        return volumeWindow == null ? Double.NaN : volumeWindow.getStandardDeviation();
+    }
+
+    @Override
+    public double getPercentile(String symbol, MarketInterval interval, int window, double percentile) {
+        RollingVolumeWindow volumeWindow = window(symbol, interval, window);
+        return volumeWindow == null ? Double.NaN : volumeWindow.getPercentile(percentile);
+    }
+
+    @Override
+    public double getPercentileRank(String symbol, MarketInterval interval, int window, double volume) {
+        RollingVolumeWindow volumeWindow = window(symbol, interval, window);
+        return volumeWindow == null ? Double.NaN : volumeWindow.getPercentileRank(volume);
+    }
+
+    private SeriesVolume find(String symbol, MarketInterval interval) {
+        Map<MarketInterval, SeriesVolume> symbolSeries = series.get(symbol);
+        return symbolSeries == null ? null : symbolSeries.get(interval);
+    }
+
+    private RollingVolumeWindow window(String symbol, MarketInterval interval, int window) {
+        int index = -1;
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i] == window) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("Volume window " + window + " is not configured, available: " + Arrays.toString(windows));
+        }
+        SeriesVolume volume = find(symbol, interval);
+        return volume == null ? null : volume.windows[index];
+    }
+
+    /**
+     * Окна объема одного символа и интервала. Пишет только поток подписчика шины.
+     */
+    private static class SeriesVolume {
+        private final RollingVolumeWindow[] windows;
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        private SeriesVolume(int[] periods) {
+            this.windows = new RollingVolumeWindow[periods.length];
+            for (int i = 0; i < periods.length; i++) {
+                windows[i] = new RollingVolumeWindow(periods[i]);
+            }
+        }
+
+        private void add(long timestamp, double volume) {
+            if (timestamp <= lastTimestamp) {
+                return;
+            }
+            lastTimestamp = timestamp;
+            for (RollingVolumeWindow window : windows) {
+                window.add(volume);
+            }
+        }
+    }
+}
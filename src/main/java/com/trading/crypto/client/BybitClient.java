@@ -12,6 +12,7 @@ import com.bybit.api.client.domain.trade.request.TradeOrderRequest;
 import com.bybit.api.client.exception.BybitApiException;
 import com.bybit.api.client.restApi.*;
 import com.bybit.api.client.service.BybitApiClientFactory;
+import com.trading.crypto.data.impl.PriceCache;
 import com.trading.crypto.model.PositionInfo;
 import com.trading.crypto.model.Trade;
 import com.trading.crypto.util.StalkerUtils;
@@ -36,14 +37,25 @@ public class BybitClient {
     private final BybitApiAsyncTradeRestClient tradeRestClient;
     private final BybitApiMarketRestClient marketRestClient;
     private final BybitApiPositionRestClient positionRestClient;
+    private final PriceCache priceCache;
+
+    /**
+     * Максимальный возраст цены из {@link PriceCache}, после которого цена запрашивается через REST.
+     */
+    private final long priceMaxAgeMillis;
 
     /**
      * Конструктор BybitClient. Инициализирует API клиент Bybit.
      *
      * @param apiKey    API ключ для доступа к Bybit API.
      * @param apiSecret Секретный ключ для доступа к Bybit API.
+     * @param priceCache Кэш цен из WebSocket стрима тикеров.
+     * @param priceMaxAgeMillis Максимальный возраст цены из кэша в миллисекундах.
      */
-    public BybitClient(@Value("${bybit.api.key}") String apiKey, @Value("${bybit.api.secret}") String apiSecret) {
+    public BybitClient(@Value("${bybit.api.key}") String apiKey, @Value("${bybit.api.secret}") String apiSecret,
+                       PriceCache priceCache, @Value("${stalker.price.max-age-ms:5000}") long priceMaxAgeMillis) {
+        this.priceCache = priceCache;
+        this.priceMaxAgeMillis = priceMaxAgeMillis;
         if (apiKey == null || apiKey.isEmpty() || apiSecret == null || apiSecret.isEmpty()) {
             this.apiRestClient = null;
             this.tradeRestClient = null;
@@ -99,11 +111,17 @@ public class BybitClient {
 
     /**
      * Получает текущую цену для указанного символа.
+     * Цена берется из {@link PriceCache}, REST запрос выполняется, только если цены в кэше нет или она устарела.
      *
      * @param symbol Символ для которого нужно получить текущую цену.
      * @return Текущая цена символа.
      */
     public BigDecimal getCurrentPrice(String symbol) {
+        double cachedPrice = priceCache.getMarkPrice(symbol, priceMaxAgeMillis);
+        if (!Double.isNaN(cachedPrice)) {
+            return BigDecimal.valueOf(cachedPrice);
+        }
+
         if (marketRestClient == null) {
             log.error("MarketRestClient is not initialized.");
             return BigDecimal.valueOf(-1);
@@ -111,10 +129,11 @@ public class BybitClient {
 
         try {
             MarketDataRequest request = MarketDataRequest.builder()
-                    .baseCoin(symbol)
+                    .symbol(symbol)
                     .category(CategoryType.LINEAR)
                     .build();
 
+            log.debug("Price for symbol {} is not cached, requesting tickers", symbol);
             Object response = marketRestClient.getMarketTickers(request);
             if (response instanceof Map) {
                 Map<String, Object> responseMap = (Map<String, Object>) response;
@@ -0,0 +1,111 @@
+package com.trading.crypto.client;
+
+import com.bybit.api.client.config.BybitApiConfig;
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.data.impl.KlineBatch;
+import com.trading.crypto.data.impl.KlineDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Клиент REST /v5/market/kline, который отдает бары сразу в примитивных столбцах {@link KlineBatch}.
+ * bybit-java-api возвращает ответ уже разобранным в Map, поэтому здесь запрос выполняется напрямую
+ * через {@link HttpClient}, а тело ответа читается потоково через {@link KlineDecoder}.
+ * <p>
+ * Все запросы проходят через общий {@link RequestBudget}, поэтому параллельные загрузки
+ * по разным символам не превышают лимит Bybit.
+ */
+@Slf4j
+@Component
+public class BybitKlineRestClient {
+
+    private static final String KLINE_PATH = "/v5/market/kline";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final String LIMIT_STATUS_HEADER = "X-Bapi-Limit-Status";
+    private static final String LIMIT_RESET_HEADER = "X-Bapi-Limit-Reset-Timestamp";
+
+    /**
+     * Буфер баров переиспользуется в каждом потоке, который обрабатывает ответы.
+     */
+    private static final ThreadLocal<KlineBatch> batches = ThreadLocal.withInitial(KlineBatch::new);
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+
+    private final RequestBudget requestBudget;
+
+    public BybitKlineRestClient(@Value("${stalker.bybit.kline-requests-per-second:10}") double requestsPerSecond) {
+        this.requestBudget = new RequestBudget(requestsPerSecond);
+    }
+
+    /**
+     * Запрашивает бары линейного контракта за период [start, end].
+     * Обработчик вызывается в потоке HTTP клиента, переданный {@link KlineBatch} действителен только во время вызова.
+     * Бары в нем идут в порядке ответа Bybit - от новых к старым.
+     *
+     * @param symbol        торговый символ
+     * @param interval      временной интервал
+     * @param start         время открытия первого бара
+     * @param end           время окончания периода
+     * @param limit         максимальное количество баров (не больше 1000)
+     * @param batchConsumer обработчик разобранных баров
+     * @return future, который завершается после обработки ответа
+     */
+    public CompletableFuture<Void> getKlines(String symbol, MarketInterval interval, long start, long end, int limit,
+                                             Consumer<KlineBatch> batchConsumer) {
+        URI uri = URI.create(BybitApiConfig.MAINNET_DOMAIN + KLINE_PATH
+                + "?category=linear"
+                + "&symbol=" + symbol
+                + "&interval=" + interval.getIntervalId()
+                + "&start=" + start
+                + "&end=" + end
+                + "&limit=" + limit);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+
+        long delay = requestBudget.reserve();
+        return CompletableFuture.supplyAsync(() -> request, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+                .thenCompose(r -> httpClient.sendAsync(r, HttpResponse.BodyHandlers.ofInputStream()))
+                .thenAccept(response -> {
+                    updateBudget(response);
+                    try (InputStream body = response.body()) {
+                        if (response.statusCode() != 200) {
+                            throw new IOException("Bybit kline request failed, status: " + response.statusCode() + ", uri: " + uri);
+                        }
+                        KlineBatch batch = batches.get();
+                        KlineDecoder.decodeRestKlines(body, batch);
+                        batchConsumer.accept(batch);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private void updateBudget(HttpResponse<?> response) {
+        var remaining = response.headers().firstValue(LIMIT_STATUS_HEADER);
+        var reset = response.headers().firstValue(LIMIT_RESET_HEADER);
+        if (remaining.isPresent() && reset.isPresent()) {
+            try {
+                requestBudget.onLimitStatus(Integer.parseInt(remaining.get()), Long.parseLong(reset.get()));
+            } catch (NumberFormatException e) {
+                log.warn("Unexpected rate limit headers: {}={}, {}={}", LIMIT_STATUS_HEADER, remaining.get(), LIMIT_RESET_HEADER, reset.get());
+            }
+        }
+    }
+}
@@ -14,7 +14,6 @@ import com.bybit.api.client.domain.trade.request.TradeOrderRequest;
 import com.bybit.api.client.domain.websocket_message.public_channel.KlineData;
 import com.bybit.api.client.domain.websocket_message.public_channel.WebSocketKlineMessage;
 import com.bybit.api.client.domain.websocket_message.public_channel.WebSocketTickerMessage;
-import com.bybit.api.client.domain.websocket_message.public_channel.WebsocketOrderbookMessage;
 import com.bybit.api.client.service.BybitApiClientFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -120,44 +119,6 @@ public class BybitWebSocketClient {
         client.getPublicChannelStream(List.of("kline." + interval + "." + symbol), BybitApiConfig.V5_PUBLIC_LINEAR);
     }
 
-    /**
-     * Linear & inverse:
-     * Level 1 data, push frequency: 10ms
-     * Level 50 data, push frequency: 20ms
-     * Level 200 data, push frequency: 100ms
-     * Level 500 data, push frequency: 100ms
-     * <p>
-     * Spot:
-     * Level 1 data, push frequency: 10ms
-     * Level 50 data, push frequency: 20ms
-     * Level 200 data, push frequency: 200ms
-     * <p>
-     * Option:
-     * Level 25 data, push frequency: 20ms
-     * Level 100 data, push frequency: 100ms
-     * <p>
-     * Topic:
-     * orderbook.{depth}.{symbol} e.g., orderbook.1.BTCUSDT
-     *
-     * @param symbol
-     */
-    public void subscribeOrderBook(String symbol, String level) {
-        var client = BybitApiClientFactory.newInstance(BybitApiConfig.STREAM_TESTNET_DOMAIN, true, "okhttp3").newWebsocketClient(20);
-
-        client.setMessageHandler(message -> {
-            var orderBookMessage = (new ObjectMapper()).readValue(message, WebsocketOrderbookMessage.class);
-
-            // Process message data here
-            log.info("Order book {}: {}", symbol, orderBookMessage.getData().toString());
-        });
-
-        // Orderbook
-        client.getPublicChannelStream(List.of("orderbook." + level + "." + symbol), BybitApiConfig.V5_PUBLIC_LINEAR);
-
-        // Subscribe Orderbook more than one args
-        //client.getPublicChannelStream(List.of("orderbook.50.BTCUSDT","orderbook.1.ETHUSDT"), BybitApiConfig.V5_PUBLIC_LINEAR);
-    }
-
     public void subscribeMarketData(String symbol) {
         log.info("subscribeMarketData, symbol: {}", symbol);
         var client = BybitApiClientFactory.newInstance(BybitApiConfig.TESTNET_DOMAIN, true).newMarketDataRestClient();
@@ -0,0 +1,64 @@
+package com.trading.crypto.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий бюджет запросов к REST API Bybit.
+ * Запросы равномерно распределяются во времени с заданной частотой, а когда Bybit сообщает
+ * в заголовках X-Bapi-Limit-Status / X-Bapi-Limit-Reset-Timestamp, что лимит почти исчерпан,
+ * следующие запросы откладываются до сброса окна.
+ * <p>
+ * Бюджет не блокирует потоки: {@link #reserve()} возвращает задержку, через которую можно отправить запрос.
+ */
+@Slf4j
+public class RequestBudget {
+
+    /**
+     * При таком остатке лимита запросы приостанавливаются до сброса окна.
+     */
+    private static final int MIN_REMAINING = 2;
+
+    private final long intervalNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    /**
+     * @param requestsPerSecond допустимое количество запросов в секунду
+     */
+    public RequestBudget(double requestsPerSecond) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive: " + requestsPerSecond);
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    /**
+     * Резервирует слот под один запрос.
+     *
+     * @return задержка в наносекундах, после которой запрос можно отправить
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        long start = Math.max(now, nextFreeNanos);
+        nextFreeNanos = start + intervalNanos;
+        return start - now;
+    }
+
+    /**
+     * Учитывает состояние лимита, которое Bybit вернул в заголовках ответа.
+     *
+     * @param remaining      оставшееся количество запросов в текущем окне
+     * @param resetTimestamp время сброса окна в миллисекундах
+     */
+    public synchronized void onLimitStatus(int remaining, long resetTimestamp) {
+        if (remaining > MIN_REMAINING) {
+            return;
+        }
+        long waitMillis = resetTimestamp - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            log.warn("Bybit request limit almost exhausted ({} left), pausing requests for {} ms", remaining, waitMillis);
+            nextFreeNanos = Math.max(nextFreeNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        }
+    }
+}
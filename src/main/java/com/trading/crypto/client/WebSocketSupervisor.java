@@ -0,0 +1,251 @@
+package com.trading.crypto.client;
+
+import com.bybit.api.client.config.BybitApiConfig;
+import com.bybit.api.client.service.BybitApiClientFactory;
+import com.bybit.api.client.websocket.WebsocketStreamClient;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.WebSocket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Пул WebSocket соединений к публичному линейному каналу Bybit.
+ * <p>
+ * Топики всех подписок упаковываются в соединения до {@code stalker.ws.max-topics-per-connection} штук.
+ * Сообщения маршрутизируются обработчику подписки по полю topic. Клиент библиотеки пингует сервер
+ * каждые 20 секунд, поэтому даже при отсутствии данных по соединению приходят pong. Если соединение
+ * молчит дольше {@code stalker.ws.silence-timeout-ms}, оно пересоздается с экспоненциальной задержкой
+ * между попытками, все его топики переподписываются, а подписчики получают список переподключенных
+ * топиков, чтобы дозагрузить пропущенные за время обрыва данные.
+ */
+@Slf4j
+@Component
+public class WebSocketSupervisor {
+
+    private static final int PING_INTERVAL_SECONDS = 20;
+    private static final long WATCHDOG_PERIOD_MILLIS = 5000;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+
+    /**
+     * Bybit принимает не больше 10 топиков в одном запросе подписки.
+     */
+    private static final int SUBSCRIBE_BATCH_SIZE = 10;
+    private static final String TOPIC_FIELD = "\"topic\":\"";
+
+    private final int maxTopicsPerConnection;
+    private final long silenceTimeoutMillis;
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ws-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebSocketSupervisor(@Value("${stalker.ws.max-topics-per-connection:200}") int maxTopicsPerConnection,
+                               @Value("${stalker.ws.silence-timeout-ms:30000}") long silenceTimeoutMillis) {
+        this.maxTopicsPerConnection = maxTopicsPerConnection;
+        this.silenceTimeoutMillis = silenceTimeoutMillis;
+        scheduler.scheduleWithFixedDelay(this::checkConnections, WATCHDOG_PERIOD_MILLIS, WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Подписывает топики. Обработчик может вызываться из разных потоков, если топики попали в разные соединения,
+     * но сообщения одного топика всегда приходят в одном потоке и по порядку.
+     *
+     * @param topics         публичные топики
+     * @param messageHandler обработчик сырых сообщений этих топиков
+     * @param onReconnect    вызывается с топиками подписки после переподключения их соединения, может быть null
+     */
+    public synchronized void subscribe(List<String> topics, Consumer<String> messageHandler, Consumer<List<String>> onReconnect) {
+        Subscription subscription = new Subscription(messageHandler, onReconnect);
+        List<String> pending = new ArrayList<>();
+        for (String topic : topics) {
+            if (subscriptions.putIfAbsent(topic, subscription) == null) {
+                pending.add(topic);
+            } else {
+                log.warn("Topic {} is already subscribed", topic);
+            }
+        }
+
+        // Сначала заполняем свободные места в открытых соединениях
+        for (Connection connection : connections) {
+            int free = maxTopicsPerConnection - connection.topics.size();
+            if (free <= 0 || pending.isEmpty()) {
+                continue;
+            }
+            List<String> added = new ArrayList<>(pending.subList(0, Math.min(free, pending.size())));
+            connection.topics.addAll(added);
+            send(connection.webSocket, "subscribe", added);
+            pending.removeAll(added);
+        }
+
+        while (!pending.isEmpty()) {
+            List<String> chunk = new ArrayList<>(pending.subList(0, Math.min(maxTopicsPerConnection, pending.size())));
+            pending.removeAll(chunk);
+            Connection connection = new Connection(connections.size() + 1, chunk);
+            connections.add(connection);
+            connect(connection);
+        }
+        log.info("Subscribed to {} topics, {} connections open", topics.size(), connections.size());
+    }
+
+    /**
+     * Переподписка на топик в его соединении. Bybit отвечает на подписку новым снимком,
+     * что используется для восстановления локального состояния после разрыва последовательности.
+     *
+     * @param topic подписанный ранее топик
+     */
+    public void resubscribe(String topic) {
+        for (Connection connection : connections) {
+            if (connection.topics.contains(topic)) {
+                send(connection.webSocket, "unsubscribe", List.of(topic));
+                send(connection.webSocket, "subscribe", List.of(topic));
+                return;
+            }
+        }
+        log.warn("Can't resubscribe to {}: topic is not subscribed", topic);
+    }
+
+    /**
+     * Открывает сокет соединения. Клиент библиотеки создается один раз на соединение и переиспользуется
+     * при переподключениях, иначе каждое переподключение оставляло бы за собой клиент с его потоком пинга.
+     */
+    private void connect(Connection connection) {
+        if (connection.client == null) {
+            connection.client = BybitApiClientFactory.newInstance(BybitApiConfig.STREAM_MAINNET_DOMAIN, false)
+                    .newWebsocketClient(PING_INTERVAL_SECONDS);
+            connection.client.setMessageHandler(message -> onMessage(connection, message));
+        }
+
+        connection.lastMessageTime = System.currentTimeMillis();
+        connection.webSocket = connection.client.getPublicChannelStream(new ArrayList<>(connection.topics), BybitApiConfig.V5_PUBLIC_LINEAR);
+        log.info("Connection #{} opened with {} topics", connection.id, connection.topics.size());
+    }
+
+    private void onMessage(Connection connection, String message) {
+        connection.lastMessageTime = System.currentTimeMillis();
+        connection.failedAttempts = 0;
+
+        // Топик стоит в начале сообщения, поэтому поиск не просматривает тело с данными
+        int start = message.indexOf(TOPIC_FIELD);
+        if (start < 0) {
+            // Ответы на подписку и pong
+            return;
+        }
+        start += TOPIC_FIELD.length();
+        int end = message.indexOf('"', start);
+        Subscription subscription = end < 0 ? null : subscriptions.get(message.substring(start, end));
+        if (subscription != null) {
+            subscription.messageHandler.accept(message);
+        }
+    }
+
+    /**
+     * Проверка соединений по расписанию: пересоздает соединения, которые молчат дольше допустимого.
+     */
+    private void checkConnections() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections) {
+            try {
+                if (now - connection.lastMessageTime > silenceTimeoutMillis && now >= connection.nextAttemptTime) {
+                    reconnect(connection, now);
+                }
+            } catch (Exception e) {
+                log.error("Failed to reconnect connection #{}", connection.id, e);
+            }
+        }
+    }
+
+    private synchronized void reconnect(Connection connection, long now) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(connection.failedAttempts, 16));
+        connection.failedAttempts++;
+        connection.nextAttemptTime = now + silenceTimeoutMillis + backoff;
+        log.warn("Connection #{} is silent for {} ms, reconnecting (attempt {})",
+                connection.id, now - connection.lastMessageTime, connection.failedAttempts);
+
+        // Старый сокет закрывается до открытия нового в том же клиенте
+        if (connection.webSocket != null) {
+            connection.webSocket.cancel();
+            connection.webSocket = null;
+        }
+        connect(connection);
+        notifyReconnected(connection);
+    }
+
+    private void notifyReconnected(Connection connection) {
+        Map<Subscription, List<String>> topicsBySubscription = new IdentityHashMap<>();
+        for (String topic : connection.topics) {
+            Subscription subscription = subscriptions.get(topic);
+            if (subscription != null && subscription.onReconnect != null) {
+                topicsBySubscription.computeIfAbsent(subscription, s -> new ArrayList<>()).add(topic);
+            }
+        }
+        topicsBySubscription.forEach((subscription, topics) -> {
+            try {
+                subscription.onReconnect.accept(topics);
+            } catch (Exception e) {
+                log.error("Reconnect handler failed for topics {}", topics, e);
+            }
+        });
+    }
+
+    private void send(WebSocket webSocket, String operation, List<String> topics) {
+        if (webSocket == null) {
+            return;
+        }
+        for (int from = 0; from < topics.size(); from += SUBSCRIBE_BATCH_SIZE) {
+            List<String> batch = topics.subList(from, Math.min(from + SUBSCRIBE_BATCH_SIZE, topics.size()));
+            StringBuilder request = new StringBuilder("{\"op\":\"").append(operation).append("\",\"args\":[");
+            for (int i = 0; i < batch.size(); i++) {
+                request.append(i == 0 ? "\"" : ",\"").append(batch.get(i)).append('"');
+            }
+            webSocket.send(request.append("]}").toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        connections.forEach(connection -> {
+            if (connection.webSocket != null) {
+                connection.webSocket.close(1000, "Shutdown");
+            }
+        });
+    }
+
+    private record Subscription(Consumer<String> messageHandler, Consumer<List<String>> onReconnect) {
+    }
+
+    /**
+     * Одно WebSocket соединение и его топики.
+     */
+    private static class Connection {
+        private final int id;
+        private final List<String> topics;
+        private WebsocketStreamClient client; // Создается и используется под блокировкой супервизора
+        private volatile WebSocket webSocket;
+        private volatile long lastMessageTime;
+        private volatile int failedAttempts;
+        private volatile long nextAttemptTime;
+
+        private Connection(int id, List<String> topics) {
+            this.id = id;
+            this.topics = new CopyOnWriteArrayList<>(topics);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.trading.crypto.data;
 
 import com.bybit.api.client.domain.market.MarketInterval;
-import com.trading.crypto.model.KlineElement;
-
-import java.util.List;
-import java.util.Map;
 
 public interface DataCollector {
-    Map<String, Map<MarketInterval, List<KlineElement>>> getKlineCache();
+
+    /**
+     * Возвращает зафиксированное read-only представление баров для символа и интервала.
+     * Индексы представления не сдвигаются при поступлении новых баров.
+     *
+     * @param symbol   торговый символ
+     * @param interval временной интервал
+     * @return представление баров или null, если данных по символу и интервалу нет
+     */
+    KlineSeries getKlineSeries(String symbol, MarketInterval interval);
 }
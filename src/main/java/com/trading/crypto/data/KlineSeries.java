@@ -0,0 +1,61 @@
+package com.trading.crypto.data;
+
+import com.trading.crypto.model.KlineElement;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only представление последних баров одного символа и интервала.
+ * Индекс 0 - самый свежий закрытый бар, индекс size() - 1 - самый старый.
+ * <p>
+ * Все геттеры работают за O(1) и не создают объектов, кроме {@link #get(int)},
+ * который оставлен для кода, работающего с {@link KlineElement}.
+ */
+public interface KlineSeries {
+
+    int size();
+
+    int capacity();
+
+    long getTimestamp(int index);
+
+    double getOpen(int index);
+
+    double getHigh(int index);
+
+    double getLow(int index);
+
+    double getClose(int index);
+
+    double getVolume(int index);
+
+    double getTurnover(int index);
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return время открытия самого свежего бара
+     */
+    default long getLastTimestamp() {
+        return getTimestamp(0);
+    }
+
+    /**
+     * Создает {@link KlineElement} для бара по индексу.
+     *
+     * @param index индекс бара, 0 - самый свежий
+     * @return копия бара
+     */
+    default KlineElement get(int index) {
+        return new KlineElement(
+                getTimestamp(index),
+                BigDecimal.valueOf(getOpen(index)),
+                BigDecimal.valueOf(getHigh(index)),
+                BigDecimal.valueOf(getLow(index)),
+                BigDecimal.valueOf(getClose(index)),
+                BigDecimal.valueOf(getVolume(index)),
+                BigDecimal.valueOf(getTurnover(index)));
+    }
+}
@@ -0,0 +1,39 @@
+package com.trading.crypto.data;
+
+/**
+ * Данные L2 стакана по символам. Все методы не блокируются и возвращают NaN,
+ * если стакан по символу еще не получен или ожидает пересинхронизации.
+ */
+public interface MarketDepth {
+
+    double getBestBid(String symbol);
+
+    double getBestAsk(String symbol);
+
+    /**
+     * @param symbol торговый символ
+     * @param levels количество лучших уровней
+     * @return суммарный объем бидов на первых {@code levels} уровнях
+     */
+    double getBidDepth(String symbol, int levels);
+
+    /**
+     * @param symbol торговый символ
+     * @param levels количество лучших уровней
+     * @return суммарный объем асков на первых {@code levels} уровнях
+     */
+    double getAskDepth(String symbol, int levels);
+
+    /**
+     * @param symbol торговый символ
+     * @param levels количество лучших уровней
+     * @return (bidVolume - askVolume) / (bidVolume + askVolume), от -1 до 1
+     */
+    double getImbalance(String symbol, int levels);
+
+    /**
+     * @param symbol торговый символ
+     * @return время последнего обновления стакана в миллисекундах или 0, если данных нет
+     */
+    long getUpdateTime(String symbol);
+}
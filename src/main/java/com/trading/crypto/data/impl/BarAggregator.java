@@ -0,0 +1,122 @@
+package com.trading.crypto.data.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.util.StalkerUtils;
+
+import java.time.Duration;
+
+/**
+ * Инкрементальная сборка бара старшего таймфрейма из минутных баров одного символа.
+ * <p>
+ * Границы баров совпадают с Bybit: отсчет от начала эпохи в UTC, недельные бары начинаются в понедельник.
+ * Бар считается закрытым, когда приходит его последняя минута. Если внутри бара не хватает хотя бы одной
+ * минуты (например, приложение запущено посреди бара), такой бар не отдается - его дозагрузит
+ * {@link HistoricalDataCollector} через REST по разрыву.
+ * <p>
+ * Экземпляр не потокобезопасен, вызывается под блокировкой записи коллектора.
+ */
+public class BarAggregator {
+
+    private static final long MINUTE_MILLIS = Duration.ofMinutes(1).toMillis();
+
+    /**
+     * 1 января 1970 года - четверг, недельные бары Bybit начинаются с понедельника 5 января.
+     */
+    private static final long WEEK_OFFSET_MILLIS = Duration.ofDays(4).toMillis();
+
+    private final MarketInterval interval;
+    private final long intervalMillis;
+    private final long offsetMillis;
+
+    private long barStart = Long.MIN_VALUE;
+    private long nextMinute;
+    private boolean complete;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private double volume;
+    private double turnover;
+
+    /**
+     * @param interval старший интервал, кратный минуте и фиксированной длительности (месячный не поддерживается)
+     */
+    public BarAggregator(MarketInterval interval) {
+        if (!isSupported(interval)) {
+            throw new IllegalArgumentException("Interval can't be aggregated from minute bars: " + interval);
+        }
+        this.interval = interval;
+        this.intervalMillis = StalkerUtils.getIntervalMillis(interval);
+        this.offsetMillis = "W".equals(interval.getIntervalId()) ? WEEK_OFFSET_MILLIS : 0;
+    }
+
+    /**
+     * @return true, если интервал можно собрать из минутных баров
+     */
+    public static boolean isSupported(MarketInterval interval) {
+        return interval != MarketInterval.ONE_MINUTE && !"M".equals(interval.getIntervalId());
+    }
+
+    /**
+     * Добавляет закрытый минутный бар. Минуты должны приходить по возрастанию времени.
+     *
+     * @return true, если этой минутой закрылся полный бар старшего таймфрейма, его значения доступны через геттеры
+     */
+    public boolean add(long timestamp, double openPrice, double highPrice, double lowPrice, double closePrice,
+                       double barVolume, double barTurnover) {
+        long start = timestamp - Math.floorMod(timestamp - offsetMillis, intervalMillis);
+        if (start != barStart) {
+            barStart = start;
+            complete = timestamp == start;
+            open = openPrice;
+            high = highPrice;
+            low = lowPrice;
+            volume = 0;
+            turnover = 0;
+        } else if (timestamp != nextMinute) {
+            // Внутри бара пропущена минута
+            complete = false;
+        }
+
+        high = Math.max(high, highPrice);
+        low = Math.min(low, lowPrice);
+        close = closePrice;
+        volume += barVolume;
+        turnover += barTurnover;
+        nextMinute = timestamp + MINUTE_MILLIS;
+
+        return complete && nextMinute == barStart + intervalMillis;
+    }
+
+    public MarketInterval getInterval() {
+        return interval;
+    }
+
+    public long getTimestamp() {
+        return barStart;
+    }
+
+    public double getOpen() {
+        return open;
+    }
+
+    public double getHigh() {
+        return high;
+    }
+
+    public double getLow() {
+        return low;
+    }
+
+    public double getClose() {
+        return close;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    public double getTurnover() {
+        return turnover;
+    }
+}
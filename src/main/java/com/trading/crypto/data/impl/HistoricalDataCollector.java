@@ -1,180 +1,577 @@
 package com.trading.crypto.data.impl;
 
-import com.bybit.api.client.domain.CategoryType;
 import com.bybit.api.client.domain.market.MarketInterval;
-import com.bybit.api.client.domain.market.request.MarketDataRequest;
-import com.bybit.api.client.service.BybitApiClientFactory;
 import com.trading.crypto.analyzer.Analyser;
+import com.trading.crypto.client.BybitKlineRestClient;
 import com.trading.crypto.data.DataCollector;
-import com.trading.crypto.model.KlineElement;
+import com.trading.crypto.data.KlineSeries;
+import com.trading.crypto.event.EventBus;
+import com.trading.crypto.event.EventType;
+import com.trading.crypto.event.MarketEvent;
+import com.trading.crypto.event.MarketEventHandler;
 import com.trading.crypto.util.StalkerUtils;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
- * Для сбора и хранения исторических данных
+ * Для сбора и хранения исторических данных.
+ * При старте бары загружаются из архива на диске ({@link KlineArchive}), через REST дозагружается
+ * только недостающий хвост, дальше новые бары приходят из {@link RealTimeDataStreamer}.
+ * <p>
+ * Если среди интервалов есть минутный, старшие интервалы после начальной загрузки не стримятся,
+ * а собираются локально из закрытых минутных баров через {@link BarAggregator}.
  */
 @Slf4j
 @Service
 public class HistoricalDataCollector implements DataCollector {
 
+    /**
+     * Максимальное количество баров в одном REST запросе Bybit.
+     */
+    private static final int PAGE_LIMIT = 1000;
+
+    /**
+     * Пауза перед повторным открытием архива после ошибки, удваивается с каждой неудачей.
+     */
+    private static final long MIN_ARCHIVE_RETRY_MILLIS = 1000;
+    private static final long MAX_ARCHIVE_RETRY_MILLIS = 60000;
+
     public List<String> symbols;
+    @Getter
     private List<MarketInterval> intervals;
 
-    @Setter
-    private Analyser analyser;
+    /**
+     * Интервалы, на которые нужно подписаться в WebSocket. Интервалы, собираемые из минутных баров, сюда не входят.
+     */
+    @Getter
+    private List<MarketInterval> streamIntervals;
 
     /**
-     * Карта, содержащая исторические данные торгов для различных торговых символов и интервалов.
-     * Ключ верхнего уровня Map представляет собой строку, обозначающую торговый символ (например, "BTCUSDT").
-     * Значение для каждого символа - это другой Map, где ключ - это перечисление {@link MarketInterval},
-     * обозначающее интервал времени (например, ONE_MINUTE, FIVE_MINUTES и т.д.).
-     * <p>
-     * Вложенный список {@link KlineElement} содержит элементы данных Kline, которые представляют собой
-     * информацию о торгах за определённый интервал. Эти списки упорядочены по времени в убывающем порядке,
-     * то есть более ранние торговые данные расположены ближе к началу списка, а более поздние - к концу.
-     * Это обеспечивает быстрый доступ к последним данным торгов.
+     * REST клиент используется только для начальной загрузки и дозагрузки пропущенных баров,
+     * новые бары приходят через {@link RealTimeDataStreamer}.
+     */
+    private final BybitKlineRestClient klineRestClient;
+
+    private final Path archiveDir;
+
+    private final EventBus eventBus;
+
+    /**
+     * Емкость кольцевого буфера баров для каждого интервала.
+     * Старые бары вытесняются автоматически, отдельная очистка кэша не нужна.
+     */
+    private final KlineWindowPolicy windowPolicy;
+
+    /**
+     * Исторические данные торгов по символу (например, "BTCUSDT") и интервалу {@link MarketInterval}.
+     * Бары каждого символа и интервала хранятся в {@link KlineRingBuffer} по столбцам в примитивных массивах,
+     * наружу отдаются только read-only представления через {@link #getKlineSeries(String, MarketInterval)}.
      * <p>
-     * Структура данных обеспечивает эффективное хранение и управление историческими данными для множественных
-     * торговых символов и временных интервалов, что позволяет проводить анализ торгов на разных уровнях детализации.
+     * Запись в буферы выполняется под блокировкой {@code klineCache}, чтение - без блокировок.
+     * Новые бары публикуются в {@link EventBus}, анализ выполняется подписчиками в их собственных потоках.
      */
-    @Getter
-    private final Map<String, Map<MarketInterval, List<KlineElement>>> klineCache = new HashMap<>();
+    private final Map<String, Map<MarketInterval, KlineRingBuffer>> klineCache = new ConcurrentHashMap<>();
 
-    public void init(List<String> symbols, List<MarketInterval> intervals) {
+    /**
+     * Бары, уже добавленные в кэш, но еще не опубликованные в {@link EventBus}. Пополняется под блокировкой
+     * {@code klineCache} и публикуется после ее освобождения в порядке добавления: публикация может ждать
+     * отставших подписчиков, и под блокировкой она остановила бы прием баров из всех потоков.
+     */
+    private final ArrayDeque<PendingBar> pendingBars = new ArrayDeque<>();
+
+    /**
+     * Идущие дозагрузки через REST по символу и интервалу. Меняется под блокировкой {@code klineCache}.
+     * Одновременно по символу и интервалу идет не больше одной дозагрузки, повторные запросы присоединяются к ней.
+     */
+    private final Map<String, Map<MarketInterval, Backfill>> backfills = new ConcurrentHashMap<>();
+
+    /**
+     * Очередь {@link #pendingBars} публикует один поток за раз, остальные не ждут его.
+     */
+    private final AtomicBoolean publishing = new AtomicBoolean();
+
+    /**
+     * Архивы баров на диске по символу и интервалу, содержат всю накопленную историю.
+     */
+    private final Map<String, Map<MarketInterval, KlineArchive>> archives = new ConcurrentHashMap<>();
+
+    /**
+     * Архивы, которые не удалось открыть, по пути файла. До срока повторной попытки открытие не повторяется,
+     * иначе каждый бар снова открывал бы файл и писал ошибку в лог.
+     */
+    private final Map<Path, ArchiveFailure> archiveFailures = new ConcurrentHashMap<>();
+
+    /**
+     * Сборщики старших таймфреймов из минутных баров по символу.
+     */
+    private final Map<String, List<BarAggregator>> aggregators = new ConcurrentHashMap<>();
+
+    public HistoricalDataCollector(BybitKlineRestClient klineRestClient, EventBus eventBus, KlineWindowPolicy windowPolicy,
+                                   @Value("${stalker.archive.dir:data/klines}") String archiveDir) {
+        this.klineRestClient = klineRestClient;
+        this.eventBus = eventBus;
+        this.windowPolicy = windowPolicy;
+        this.archiveDir = Path.of(archiveDir);
+    }
+
+    /**
+     * Загружает последние бары из архива на диске и дозагружает через REST только недостающий хвост.
+     * Если архива еще нет, загружается окно баров интервала из {@link KlineWindowPolicy}.
+     *
+     * @param symbols   торговые символы
+     * @param intervals временные интервалы
+     * @return future, который завершается, когда хвост загружен по всем символам и интервалам
+     */
+    public CompletableFuture<Void> init(List<String> symbols, List<MarketInterval> intervals) {
         this.symbols = symbols;
         this.intervals = intervals;
+        initAggregators(symbols, intervals);
+
+        List<CompletableFuture<Void>> tails = new ArrayList<>();
+        for (MarketInterval interval : intervals) {
+            long intervalMillis = StalkerUtils.getIntervalMillis(interval);
+            int window = windowPolicy.getWindow(interval);
+            for (String symbol : symbols) {
+                synchronized (klineCache) {
+                    KlineRingBuffer buffer = getOrCreateBuffer(symbol, interval);
+                    KlineArchive archive = getArchive(symbol, interval);
+                    int loaded = archive != null && buffer.isEmpty() ? archive.loadTail(buffer, window) : 0;
+                    log.info("Loaded {} bars for symbol {} and interval {} from archive", loaded, symbol, interval);
 
-        intervals.forEach(interval -> symbols.forEach(symbol -> pullKline(symbol, interval)));
+                    long start = buffer.isEmpty()
+                            ? System.currentTimeMillis() - window * intervalMillis
+                            : buffer.getLastTimestamp() + intervalMillis;
+                    tails.add(backfill(symbol, interval, start));
+                }
+            }
+        }
+
+        return CompletableFuture.allOf(tails.toArray(new CompletableFuture[0]));
     }
 
-    @Scheduled(fixedDelay = 60000)
-    private void streamKline() {
-        if (klineCache.isEmpty()) {
+    private void initAggregators(List<String> symbols, List<MarketInterval> intervals) {
+        if (!intervals.contains(MarketInterval.ONE_MINUTE)) {
+            streamIntervals = intervals;
             return;
         }
 
-        // подтягивание значений по каждому символу и интервалу
-        intervals.forEach(interval -> symbols.forEach(symbol -> {
-            Map<MarketInterval, List<KlineElement>> marketIntervalListMap = klineCache.get(symbol);
-            if (marketIntervalListMap != null) {
-                List<KlineElement> elements = marketIntervalListMap.get(interval);
-                if (elements != null && !elements.isEmpty()) {
-                    pullKline(symbol, interval, elements.get(0).getTimestamp());
-                } else {
-                    log.error("No data available for symbol {} and interval {}", symbol, interval);
+        List<MarketInterval> aggregated = intervals.stream().filter(BarAggregator::isSupported).toList();
+        streamIntervals = intervals.stream().filter(interval -> !aggregated.contains(interval)).toList();
+        for (String symbol : symbols) {
+            aggregators.put(symbol, aggregated.stream().map(BarAggregator::new).toList());
+        }
+        log.info("Intervals {} are aggregated from minute bars", aggregated);
+    }
+
+    /**
+     * Создает анализатор и подписывает его на закрытые бары из {@link EventBus}.
+     * Оба шага выполняются под блокировкой записи, поэтому анализатор, построенный по текущим данным,
+     * получит все бары, добавленные после него, и ни одного бара дважды: бары, которые уже были в кэше,
+     * но еще ждали публикации, отсекаются по времени.
+     *
+     * @param analyserFactory фабрика анализатора
+     * @return подключенный анализатор
+     */
+    public <T extends Analyser> T attachAnalyser(Supplier<T> analyserFactory) {
+        synchronized (klineCache) {
+            T created = analyserFactory.get();
+            eventBus.subscribe(created.getClass().getSimpleName(), skipCachedBars(event -> {
+                if (event.getType() == EventType.BAR) {
+                    created.update(event.getSymbol(), event.getInterval(), event.getTimestamp(), event.getOpen(),
+                            event.getHigh(), event.getLow(), event.getClose(), event.getVolume());
+                } else if (event.getType() == EventType.INTRABAR) {
+                    created.preview(event.getSymbol(), event.getInterval(), event.getTimestamp(), event.getOpen(),
+                            event.getHigh(), event.getLow(), event.getClose(), event.getVolume());
                 }
+            }));
+            return created;
+        }
+    }
+
+    /**
+     * Прогревает подписчика текущими данными кэша и подписывает его на {@link EventBus} под той же
+     * блокировкой записи, что и {@link #attachAnalyser}: подписчик увидит каждый бар ровно один раз.
+     *
+     * @param name    имя подписчика шины
+     * @param warmUp  прогрев по {@link #getKlineSeries}
+     * @param handler обработчик событий шины
+     */
+    public void attach(String name, Runnable warmUp, MarketEventHandler handler) {
+        synchronized (klineCache) {
+            warmUp.run();
+            eventBus.subscribe(name, skipCachedBars(handler));
+        }
+    }
+
+    /**
+     * Оборачивает обработчик так, чтобы он пропускал закрытые бары не новее последних баров кэша на момент вызова:
+     * они уже учтены при прогреве по кэшу, но еще могут стоять в очереди публикации.
+     * Вызывается под блокировкой {@code klineCache}.
+     */
+    private MarketEventHandler skipCachedBars(MarketEventHandler handler) {
+        Map<String, Map<MarketInterval, Long>> lastTimestamps = new HashMap<>();
+        klineCache.forEach((symbol, intervalMap) -> intervalMap.forEach((interval, buffer) -> {
+            if (!buffer.isEmpty()) {
+                lastTimestamps.computeIfAbsent(symbol, k -> new HashMap<>()).put(interval, buffer.getLastTimestamp());
             }
         }));
+        return event -> {
+            if (event.getType() == EventType.BAR && isCached(lastTimestamps, event)) {
+                return;
+            }
+            handler.onEvent(event);
+        };
+    }
+
+    private static boolean isCached(Map<String, Map<MarketInterval, Long>> lastTimestamps, MarketEvent event) {
+        Map<MarketInterval, Long> intervalMap = lastTimestamps.get(event.getSymbol());
+        Long lastTimestamp = intervalMap == null ? null : intervalMap.get(event.getInterval());
+        return lastTimestamp != null && event.getTimestamp() <= lastTimestamp;
+    }
+
+    /**
+     * Обработка незакрытого бара из WebSocket стрима: бар только публикуется в {@link EventBus}
+     * для предварительного анализа, кэш и архив не меняются.
+     */
+    public void onIntrabarKline(String symbol, MarketInterval interval, long timestamp, double open, double high,
+                                double low, double close, double volume, double turnover) {
+        eventBus.publishIntrabar(symbol, interval, timestamp, open, high, low, close, volume, turnover);
     }
 
     /**
-     * Метод для очистки и сортировки кэша Kline.
-     * Срабатывает раз в 30 минут.
+     * Обработка закрытого бара, пришедшего из WebSocket стрима.
+     * Если между последним баром в кэше и новым баром есть разрыв (например, после переподключения),
+     * недостающие бары дозагружаются через REST, начиная со следующего после последнего известного бара.
+     *
+     * @param symbol    торговый символ
+     * @param interval  временной интервал
+     * @param timestamp время открытия бара
      */
-    @Scheduled(fixedRate = 1800000) // 1800000 миллисекунд = 30 минут
-    public void cleanAndSortKlineCache() {
-        // Проходим по каждому символу
-        for (Map.Entry<String, Map<MarketInterval, List<KlineElement>>> symbolEntry : klineCache.entrySet()) {
-            String symbol = symbolEntry.getKey();
-            Map<MarketInterval, List<KlineElement>> intervalMap = symbolEntry.getValue();
+    public void onConfirmedKline(String symbol, MarketInterval interval, long timestamp, double open, double high,
+                                 double low, double close, double volume, double turnover) {
+        synchronized (klineCache) {
+            acceptBar(symbol, interval, timestamp, open, high, low, close, volume, turnover);
+        }
+        publishPendingBars();
+    }
 
-            // Для каждого интервала обрабатываем список KlineElements
-            for (Map.Entry<MarketInterval, List<KlineElement>> intervalEntry : intervalMap.entrySet()) {
-                MarketInterval interval = intervalEntry.getKey();
-                List<KlineElement> intervalKlineCache = intervalEntry.getValue();
+    /**
+     * Добавляет следующий закрытый бар, пришедший из стрима или собранный из минутных баров.
+     * При разрыве запускает дозагрузку через REST. Вызывается под блокировкой {@code klineCache}.
+     */
+    private void acceptBar(String symbol, MarketInterval interval, long timestamp, double open, double high,
+                           double low, double close, double volume, double turnover) {
+        KlineRingBuffer buffer = getOrCreateBuffer(symbol, interval);
+        if (buffer.isEmpty()) {
+            // Начальная история еще не загружена, бар придет вместе с ней или будет дозагружен по разрыву
+            return;
+        }
 
-                if (intervalKlineCache.size() > 250) {
-                    synchronized (intervalKlineCache) {
-                        // Ограничение размера списка до 250 элементов, если необходимо
-                        int originalSize = intervalKlineCache.size();
-                        intervalKlineCache.subList(250, intervalKlineCache.size()).clear();
-                        int newSize = intervalKlineCache.size();
-                        log.info("Cleared {} old Kline elements for symbol: {}, interval: {}. Original size: {}, new size: {}",
-                                originalSize - newSize, symbol, interval, originalSize, newSize);
-                    }
+        long intervalMillis = StalkerUtils.getIntervalMillis(interval);
+        long lastTimestamp = buffer.getLastTimestamp();
+        if (timestamp == lastTimestamp + intervalMillis) {
+            appendBar(symbol, interval, buffer, timestamp, open, high, low, close, volume, turnover);
+        } else if (timestamp > lastTimestamp) {
+            log.warn("Gap detected for symbol {} and interval {}: last bar {}, received {}. Backfilling over REST",
+                    symbol, interval, lastTimestamp, timestamp);
+            backfill(symbol, interval, lastTimestamp + intervalMillis);
+        }
+    }
+
+    /**
+     * Запускает дозагрузку через REST с {@code startTimestamp} или, если по символу и интервалу она уже идет,
+     * присоединяется к ней: после ее завершения будет еще одна дозагрузка с последнего бара кэша,
+     * которая заберет бары, закрывшиеся за время первой. Вызывается под блокировкой {@code klineCache}.
+     *
+     * @return future, который завершается после всех дозагрузок, присоединенных к этой
+     */
+    private CompletableFuture<Void> backfill(String symbol, MarketInterval interval, long startTimestamp) {
+        Map<MarketInterval, Backfill> intervalMap = backfills.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>());
+        Backfill running = intervalMap.get(interval);
+        if (running != null) {
+            running.repeat = true;
+            return running.done;
+        }
+        Backfill started = new Backfill();
+        intervalMap.put(interval, started);
+        pullKlines(symbol, interval, startTimestamp)
+                .whenComplete((ignored, throwable) -> finishBackfill(symbol, interval, started, throwable));
+        return started.done;
+    }
+
+    private void finishBackfill(String symbol, MarketInterval interval, Backfill finished, Throwable throwable) {
+        CompletableFuture<Void> next = null;
+        synchronized (klineCache) {
+            backfills.get(symbol).remove(interval, finished);
+            if (throwable == null && finished.repeat) {
+                KlineRingBuffer buffer = getOrCreateBuffer(symbol, interval);
+                long start = buffer.isEmpty()
+                        ? System.currentTimeMillis() - windowPolicy.getWindow(interval) * StalkerUtils.getIntervalMillis(interval)
+                        : buffer.getLastTimestamp() + StalkerUtils.getIntervalMillis(interval);
+                next = backfill(symbol, interval, start);
+            }
+        }
+        if (throwable != null) {
+            finished.done.completeExceptionally(throwable);
+        } else if (next != null) {
+            next.whenComplete((ignored, nextThrowable) -> {
+                if (nextThrowable != null) {
+                    finished.done.completeExceptionally(nextThrowable);
+                } else {
+                    finished.done.complete(null);
                 }
+            });
+        } else {
+            finished.done.complete(null);
+        }
+    }
+
+    /**
+     * Дозагружает через REST бары, закрывшиеся после последнего бара в кэше, например после обрыва стрима.
+     * Если дозагрузка по символу и интервалу уже идет, присоединяется к ней.
+     *
+     * @param symbol   торговый символ
+     * @param interval временной интервал
+     */
+    public void backfillGap(String symbol, MarketInterval interval) {
+        synchronized (klineCache) {
+            KlineRingBuffer buffer = getOrCreateBuffer(symbol, interval);
+            if (buffer.isEmpty()) {
+                return;
             }
+            backfill(symbol, interval, buffer.getLastTimestamp() + StalkerUtils.getIntervalMillis(interval));
         }
     }
 
-    private void pullKline(String symbol, MarketInterval interval, Long startTimestamp) {
-        var client = BybitApiClientFactory.newInstance().newAsyncMarketDataRestClient();
-        var marketKLineRequest = MarketDataRequest.builder()
-                .category(CategoryType.LINEAR)
-                .symbol(symbol)
-                .marketInterval(interval)
-                .start(startTimestamp)
-                .build();
+    @Override
+    public KlineSeries getKlineSeries(String symbol, MarketInterval interval) {
+        Map<MarketInterval, KlineRingBuffer> intervalMap = klineCache.get(symbol);
+        if (intervalMap == null) {
+            return null;
+        }
+        KlineRingBuffer buffer = intervalMap.get(interval);
+        return buffer == null || buffer.isEmpty() ? null : buffer.view();
+    }
 
-        client.getMarketLinesData(marketKLineRequest, response -> processSingeKlineElement(response, symbol, interval));
+    /**
+     * @return true, если хотя бы для одного символа и интервала загружены бары
+     */
+    public boolean hasData() {
+        return klineCache.values().stream()
+                .flatMap(intervalMap -> intervalMap.values().stream())
+                .anyMatch(buffer -> !buffer.isEmpty());
     }
 
-    private void pullKline(String symbol, MarketInterval interval) {
-        var client = BybitApiClientFactory.newInstance().newAsyncMarketDataRestClient();
-        var marketKLineRequest = MarketDataRequest.builder()
-                .category(CategoryType.LINEAR)
-                .symbol(symbol)
-                .marketInterval(interval)
-                .build();
+    /**
+     * Загружает через REST все закрытые бары, начиная с {@code startTimestamp}, страницами по {@link #PAGE_LIMIT}.
+     *
+     * @param symbol         торговый символ
+     * @param interval       временной интервал
+     * @param startTimestamp время открытия первого нужного бара
+     * @return future, который завершается после обработки последней страницы
+     */
+    private CompletableFuture<Void> pullKlines(String symbol, MarketInterval interval, long startTimestamp) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pullKlinePage(symbol, interval, startTimestamp, done);
+        return done;
+    }
+
+    private void pullKlinePage(String symbol, MarketInterval interval, long startTimestamp, CompletableFuture<Void> done) {
+        long endTimestamp = startTimestamp + PAGE_LIMIT * StalkerUtils.getIntervalMillis(interval) - 1;
+        klineRestClient.getKlines(symbol, interval, startTimestamp, endTimestamp, PAGE_LIMIT,
+                        batch -> processKlineBatch(batch, symbol, interval))
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        log.error("Failed to pull klines for symbol {} and interval {}", symbol, interval, throwable);
+                        done.completeExceptionally(throwable);
+                    } else if (endTimestamp < System.currentTimeMillis()) {
+                        pullKlinePage(symbol, interval, endTimestamp + 1, done);
+                    } else {
+                        done.complete(null);
+                    }
+                });
+    }
+
+    private void processKlineBatch(KlineBatch batch, String symbol, MarketInterval interval) {
+        // REST всегда отдает и текущий, еще не закрытый бар - его не сохраняем
+        long closedBefore = System.currentTimeMillis() - StalkerUtils.getIntervalMillis(interval);
+
+        synchronized (klineCache) {
+            KlineRingBuffer buffer = getOrCreateBuffer(symbol, interval);
+            // Bybit отдает бары от новых к старым, добавляем от старых к новым
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                long timestamp = batch.getTimestamp(i);
 
-        client.getMarketLinesData(marketKLineRequest, (response) -> processSingeKlineElement(response, symbol, interval));
+                if (timestamp > closedBefore) {
+                    continue;
+                }
+
+                // Предотвратить добавление дубликатов и баров старше последнего
+                if (!buffer.isEmpty() && buffer.getLastTimestamp() >= timestamp) {
+                    continue;
+                }
+
+                appendBar(symbol, interval, buffer, timestamp,
+                        batch.getOpen(i),
+                        batch.getHigh(i),
+                        batch.getLow(i),
+                        batch.getClose(i),
+                        batch.getVolume(i),
+                        batch.getTurnover(i));
+            }
+        }
+        publishPendingBars();
     }
 
-    private void processSingeKlineElement(Object response, String symbol, MarketInterval interval) {
-        Optional.ofNullable(response).ifPresent(data -> {
-            // Преобразуем JSON в LinkedHashMap
-            Map<String, Object> map = StalkerUtils.getMapFromResponse(data);
+    /**
+     * Добавляет закрытый бар в кольцевой буфер и архив и ставит его в очередь публикации в {@link EventBus}.
+     * Вызывается под блокировкой {@code klineCache}, после ее освобождения нужно вызвать {@link #publishPendingBars()}.
+     */
+    private void appendBar(String symbol, MarketInterval interval, KlineRingBuffer buffer, long timestamp,
+                           double open, double high, double low, double close, double volume, double turnover) {
+        buffer.append(timestamp, open, high, low, close, volume, turnover);
+
+        KlineArchive archive = getArchive(symbol, interval);
+        if (archive != null) {
+            try {
+                archive.append(timestamp, open, high, low, close, volume, turnover);
+            } catch (IOException e) {
+                log.error("Failed to archive bar for symbol {} and interval {}", symbol, interval, e);
+            }
+        }
+
+        pendingBars.add(new PendingBar(symbol, interval, timestamp, open, high, low, close, volume, turnover));
 
-            LinkedHashMap<Object, Object> result = (LinkedHashMap<Object, Object>) map.get("result");
-            List<List<Object>> list = (List<List<Object>>) result.get("list");
+        if (interval == MarketInterval.ONE_MINUTE) {
+            for (BarAggregator aggregator : aggregators.getOrDefault(symbol, List.of())) {
+                if (aggregator.add(timestamp, open, high, low, close, volume, turnover)) {
+                    acceptBar(symbol, aggregator.getInterval(), aggregator.getTimestamp(),
+                            aggregator.getOpen(), aggregator.getHigh(), aggregator.getLow(), aggregator.getClose(),
+                            aggregator.getVolume(), aggregator.getTurnover());
+                }
+            }
+        }
+    }
 
+    /**
+     * Публикует бары из очереди в порядке добавления. Вызывается без блокировки {@code klineCache}.
+     * Если очередь уже публикует другой поток, вызов сразу возвращается: тот поток опубликует и новые бары.
+     */
+    private void publishPendingBars() {
+        while (publishing.compareAndSet(false, true)) {
+            try {
+                PendingBar bar;
+                while ((bar = pollPendingBar()) != null) {
+                    eventBus.publishBar(bar.symbol(), bar.interval(), bar.timestamp(), bar.open(), bar.high(),
+                            bar.low(), bar.close(), bar.volume(), bar.turnover());
+                }
+            } finally {
+                publishing.set(false);
+            }
+            // Бар мог встать в очередь после последней проверки, но до снятия флага
             synchronized (klineCache) {
-                // Убедиться, что существует соответствующий список для symbol и interval
-                klineCache.computeIfAbsent(symbol, k -> new HashMap<>())
-                        .computeIfAbsent(interval, k -> new LinkedList<>());
-
-                List<KlineElement> symbolKlineCache = klineCache.get(symbol).get(interval);
-                Optional.ofNullable(list).ifPresent(klineSingleData -> {
-                    for (int i = klineSingleData.size() - 1; i >= 0; i--) {
-                        KlineElement klineElement = toKlineElement(klineSingleData.get(i));
-
-                        // Предотвратить добавление дубликатов
-                        if (!symbolKlineCache.isEmpty() && symbolKlineCache.get(0).getTimestamp().equals(klineElement.getTimestamp())) {
-                            continue;
-                        }
-
-                        symbolKlineCache.add(0, klineElement);
-                        if (analyser != null) {
-                            analyser.update(symbol, interval, klineElement);
-                        }
-                    }
-                });
+                if (pendingBars.isEmpty()) {
+                    return;
+                }
             }
-        });
+        }
+    }
+
+    private PendingBar pollPendingBar() {
+        synchronized (klineCache) {
+            return pendingBars.poll();
+        }
+    }
+
+    private KlineRingBuffer getOrCreateBuffer(String symbol, MarketInterval interval) {
+        return klineCache.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(interval, k -> new KlineRingBuffer(windowPolicy.getWindow(k)));
     }
 
     /**
-     * Convert Object to Kline element
+     * Возвращает архив символа и интервала, открывая его при первом обращении.
+     * Через архив читается вся накопленная история, например для обучения модели.
      *
-     * @param objects list of Object data per bar
-     * @return KlineElement
+     * После ошибки открытия повторная попытка делается не раньше, чем через паузу с экспоненциальным ростом.
+     *
+     * @return архив или null, если файл не удалось открыть
      */
-    private KlineElement toKlineElement(List<Object> objects) {
-        return new KlineElement(Long.parseLong(
-                objects.get(0).toString()), // startTime
-                new BigDecimal(objects.get(1).toString()), // openPrice
-                new BigDecimal(objects.get(2).toString()), // highPrice
-                new BigDecimal(objects.get(3).toString()), // lowPrice
-                new BigDecimal(objects.get(4).toString()),  // closePrice
-                new BigDecimal(objects.get(5).toString()), // volume
-                new BigDecimal(objects.get(6).toString())); // turnover
+    public KlineArchive getArchive(String symbol, MarketInterval interval) {
+        return archives.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(interval, k -> openArchive(getArchivePath(symbol, interval), interval));
     }
 
+    private KlineArchive openArchive(Path path, MarketInterval interval) {
+        long now = System.currentTimeMillis();
+        ArchiveFailure failure = archiveFailures.get(path);
+        if (failure != null && now < failure.nextAttemptTime()) {
+            return null;
+        }
+        try {
+            KlineArchive archive = KlineArchive.open(path, StalkerUtils.getIntervalMillis(interval));
+            if (failure != null) {
+                archiveFailures.remove(path);
+                log.info("Kline archive {} opened after {} failed attempts", path, failure.failedAttempts());
+            }
+            return archive;
+        } catch (IOException e) {
+            int failedAttempts = failure == null ? 1 : failure.failedAttempts() + 1;
+            long backoff = Math.min(MAX_ARCHIVE_RETRY_MILLIS, MIN_ARCHIVE_RETRY_MILLIS << Math.min(failedAttempts - 1, 16));
+            archiveFailures.put(path, new ArchiveFailure(failedAttempts, now + backoff));
+            if (failure == null) {
+                log.error("Failed to open kline archive {}, bars are not archived until it opens", path, e);
+            } else {
+                log.debug("Failed to open kline archive {} (attempt {}): {}", path, failedAttempts, e.toString());
+            }
+            return null;
+        }
+    }
+
+    Path getArchivePath(String symbol, MarketInterval interval) {
+        return archiveDir.resolve(symbol + "_" + interval.getIntervalId() + ".bin");
+    }
+
+    @PreDestroy
+    public void closeArchives() {
+        archives.values().forEach(intervalMap -> intervalMap.values().forEach(archive -> {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                log.error("Failed to close kline archive", e);
+            }
+        }));
+    }
+
+    /**
+     * Идущая дозагрузка. Поля меняются под блокировкой {@code klineCache}.
+     */
+    private static class Backfill {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private boolean repeat;
+    }
+
+    /**
+     * Неудачные попытки открыть архив и время следующей попытки.
+     */
+    private record ArchiveFailure(int failedAttempts, long nextAttemptTime) {
+    }
+
+    private record PendingBar(String symbol, MarketInterval interval, long timestamp, double open, double high,
+                              double low, double close, double volume, double turnover) {
+    }
 }
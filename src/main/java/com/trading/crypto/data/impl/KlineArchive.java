@@ -0,0 +1,273 @@
+package com.trading.crypto.data.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Архив баров одного символа и интервала на диске: append-only бинарный файл с записями фиксированной длины,
+ * отображенный в память через {@link MappedByteBuffer}.
+ * <p>
+ * Формат файла:
+ * <pre>
+ * header (64 байта): int magic, int version, long intervalMillis, long recordCount, резерв
+ * record (56 байт):  long startTime, double open, high, low, close, volume, turnover
+ * </pre>
+ * Записи упорядочены по времени от старых к новым. Количество записей в заголовке обновляется
+ * после записи самого бара, поэтому при аварийном завершении недописанная запись просто игнорируется.
+ */
+@Slf4j
+public class KlineArchive implements Closeable {
+
+    private static final int MAGIC = 0x53544B4C; // "STKL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 56;
+    private static final int COUNT_OFFSET = 16;
+
+    /**
+     * Файл растет блоками по столько записей (~900 КБ), чтобы не переотображать его на каждом баре.
+     */
+    private static final int GROWTH_RECORDS = 16 * 1024;
+
+    private final Path path;
+    private final long intervalMillis;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedRecords;
+    private long count;
+
+    private KlineArchive(Path path, long intervalMillis, FileChannel channel) {
+        this.path = path;
+        this.intervalMillis = intervalMillis;
+        this.channel = channel;
+    }
+
+    /**
+     * Открывает архив или создает новый. Файл с поврежденным заголовком переименовывается в *.corrupt
+     * и заменяется пустым архивом.
+     *
+     * @param path           путь к файлу архива
+     * @param intervalMillis длительность интервала баров в миллисекундах
+     * @return открытый архив
+     */
+    public static KlineArchive open(Path path, long intervalMillis) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        if (Files.exists(path) && !hasValidHeader(path, intervalMillis)) {
+            Path corrupt = path.resolveSibling(path.getFileName() + ".corrupt");
+            log.warn("Kline archive {} has invalid header, moving it to {}", path, corrupt);
+            Files.move(path, corrupt, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        KlineArchive archive = new KlineArchive(path, intervalMillis, channel);
+        archive.init();
+        return archive;
+    }
+
+    private static boolean hasValidHeader(Path path, long intervalMillis) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            long recordCount = header.getLong(COUNT_OFFSET);
+            return header.getInt(0) == MAGIC
+                    && header.getInt(4) == VERSION
+                    && header.getLong(8) == intervalMillis
+                    && recordCount >= 0
+                    // Деление вместо умножения: огромное количество из битого заголовка не должно переполниться
+                    && recordCount <= (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        }
+    }
+
+    private void init() throws IOException {
+        long fileRecords = Math.max(0, (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        remap(Math.max(fileRecords, GROWTH_RECORDS));
+        if (mapped.getInt(0) != MAGIC) {
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putLong(8, intervalMillis);
+            mapped.putLong(COUNT_OFFSET, 0);
+        }
+        count = mapped.getLong(COUNT_OFFSET);
+    }
+
+    private void remap(long records) throws IOException {
+        long size = HEADER_SIZE + records * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Kline archive " + path + " exceeds maximum mapped size");
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mappedRecords = records;
+    }
+
+    /**
+     * @return количество баров в архиве
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return время открытия первого (самого старого) бара в архиве
+     */
+    public synchronized long getFirstTimestamp() {
+        if (count == 0) {
+            throw new IllegalStateException("Kline archive " + path + " is empty");
+        }
+        return mapped.getLong(recordOffset(0));
+    }
+
+    /**
+     * @return время открытия последнего бара в архиве
+     */
+    public synchronized long getLastTimestamp() {
+        if (count == 0) {
+            throw new IllegalStateException("Kline archive " + path + " is empty");
+        }
+        return mapped.getLong(recordOffset(count - 1));
+    }
+
+    /**
+     * Добавляет бар в конец архива. Бары не новее последнего сохраненного пропускаются.
+     *
+     * @return true, если бар был записан
+     */
+    public synchronized boolean append(long timestamp, double open, double high, double low, double close,
+                                       double volume, double turnover) throws IOException {
+        if (count > 0 && mapped.getLong(recordOffset(count - 1)) >= timestamp) {
+            return false;
+        }
+        if (count == mappedRecords) {
+            remap(mappedRecords + GROWTH_RECORDS);
+        }
+
+        int offset = recordOffset(count);
+        mapped.putLong(offset, timestamp);
+        mapped.putDouble(offset + 8, open);
+        mapped.putDouble(offset + 16, high);
+        mapped.putDouble(offset + 24, low);
+        mapped.putDouble(offset + 32, close);
+        mapped.putDouble(offset + 40, volume);
+        mapped.putDouble(offset + 48, turnover);
+
+        count++;
+        mapped.putLong(COUNT_OFFSET, count);
+        return true;
+    }
+
+    /**
+     * Загружает в буфер последние {@code maxBars} баров архива, от старых к новым.
+     *
+     * @param buffer  кольцевой буфер для заполнения
+     * @param maxBars максимальное количество баров
+     * @return количество загруженных баров
+     */
+    public synchronized int loadTail(KlineRingBuffer buffer, int maxBars) {
+        long from = Math.max(0, count - maxBars);
+        for (long i = from; i < count; i++) {
+            int offset = recordOffset(i);
+            buffer.append(mapped.getLong(offset),
+                    mapped.getDouble(offset + 8),
+                    mapped.getDouble(offset + 16),
+                    mapped.getDouble(offset + 24),
+                    mapped.getDouble(offset + 32),
+                    mapped.getDouble(offset + 40),
+                    mapped.getDouble(offset + 48));
+        }
+        return (int) (count - from);
+    }
+
+    /**
+     * Читает бары архива начиная с индекса {@code from}, от старых к новым, в переданные массивы.
+     *
+     * @param from индекс первого бара
+     * @param bars максимальное количество баров, не больше длины массивов
+     * @return количество прочитанных баров
+     */
+    public synchronized int read(long from, int bars, double[] open, double[] high, double[] low, double[] close, double[] volume) {
+        int read = (int) Math.max(0, Math.min(bars, count - from));
+        for (int i = 0; i < read; i++) {
+            int offset = recordOffset(from + i);
+            open[i] = mapped.getDouble(offset + 8);
+            high[i] = mapped.getDouble(offset + 16);
+            low[i] = mapped.getDouble(offset + 24);
+            close[i] = mapped.getDouble(offset + 32);
+            volume[i] = mapped.getDouble(offset + 40);
+        }
+        return read;
+    }
+
+    /**
+     * Добавляет в начало архива бары из {@code older}, которые старше первого бара этого архива.
+     * Объединенный файл собирается рядом во временном файле и атомарно заменяет текущий,
+     * поэтому при сбое в процессе слияния архив остается в прежнем состоянии.
+     *
+     * @param older архив с более ранней историей того же символа и интервала
+     * @return количество добавленных баров
+     */
+    public synchronized long prepend(KlineArchive older) throws IOException {
+        synchronized (older) {
+            long first = count > 0 ? mapped.getLong(recordOffset(0)) : Long.MAX_VALUE;
+            long olderCount = older.count;
+            while (olderCount > 0 && older.mapped.getLong(older.recordOffset(olderCount - 1)) >= first) {
+                olderCount--;
+            }
+            if (olderCount == 0) {
+                return 0;
+            }
+
+            Path merged = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(merged, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putLong(8, intervalMillis);
+                header.putLong(COUNT_OFFSET, olderCount + count);
+                writeFully(out, header);
+                writeFully(out, older.mapped.slice(HEADER_SIZE, (int) (olderCount * RECORD_SIZE)));
+                writeFully(out, mapped.slice(HEADER_SIZE, (int) (count * RECORD_SIZE)));
+                out.force(true);
+            }
+
+            channel.close();
+            Files.move(merged, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            init();
+            return olderCount;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private int recordOffset(long index) {
+        return (int) (HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файл.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mapped.force();
+        channel.close();
+    }
+}
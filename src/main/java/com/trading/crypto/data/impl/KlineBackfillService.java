@@ -0,0 +1,197 @@
+package com.trading.crypto.data.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.client.BybitKlineRestClient;
+import com.trading.crypto.util.StalkerUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Загрузка глубокой истории баров в архивы {@link KlineArchive}.
+ * <p>
+ * Для каждого символа и интервала загружается диапазон от заданной глубины до первого бара в архиве.
+ * Страницы по {@link #PAGE_LIMIT} баров пишутся по порядку во временный архив *.backfill, который
+ * служит контрольной точкой: после перезапуска загрузка продолжается с последнего сохраненного бара.
+ * Когда диапазон загружен полностью, временный архив сливается в начало основного.
+ * <p>
+ * Символы загружаются параллельно, общий лимит запросов соблюдает {@link BybitKlineRestClient}.
+ */
+@Slf4j
+@Service
+public class KlineBackfillService {
+
+    /**
+     * Максимальное количество баров в одном REST запросе Bybit.
+     */
+    private static final int PAGE_LIMIT = 1000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final HistoricalDataCollector dataCollector;
+    private final BybitKlineRestClient klineRestClient;
+
+    /**
+     * Глубина истории в днях, 0 - загрузка отключена.
+     */
+    private final int depthDays;
+    private final ExecutorService executor;
+
+    public KlineBackfillService(HistoricalDataCollector dataCollector,
+                                BybitKlineRestClient klineRestClient,
+                                @Value("${stalker.backfill.days:0}") int depthDays,
+                                @Value("${stalker.backfill.parallelism:4}") int parallelism) {
+        this.dataCollector = dataCollector;
+        this.klineRestClient = klineRestClient;
+        this.depthDays = depthDays;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "kline-backfill-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Загружает историю на настроенную глубину stalker.backfill.days.
+     *
+     * @param symbols   торговые символы
+     * @param intervals временные интервалы
+     * @return future, который завершается после загрузки по всем символам и интервалам
+     */
+    public CompletableFuture<Void> backfill(List<String> symbols, List<MarketInterval> intervals) {
+        if (depthDays <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return backfill(symbols, intervals, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(depthDays));
+    }
+
+    /**
+     * Загружает историю, начиная с {@code fromTimestamp}.
+     * Ошибка по одному символу не останавливает загрузку остальных.
+     *
+     * @param symbols       торговые символы
+     * @param intervals     временные интервалы
+     * @param fromTimestamp начало загружаемого диапазона
+     * @return future, который завершается после загрузки по всем символам и интервалам
+     */
+    public CompletableFuture<Void> backfill(List<String> symbols, List<MarketInterval> intervals, long fromTimestamp) {
+        log.info("Starting kline backfill for {} symbols and {} intervals", symbols.size(), intervals.size());
+        long started = System.currentTimeMillis();
+
+        List<CompletableFuture<Void>> jobs = new ArrayList<>();
+        for (MarketInterval interval : intervals) {
+            for (String symbol : symbols) {
+                jobs.add(CompletableFuture.runAsync(() -> backfillSymbol(symbol, interval, fromTimestamp), executor));
+            }
+        }
+
+        return CompletableFuture.allOf(jobs.toArray(new CompletableFuture[0]))
+                .whenComplete((ignored, ex) -> log.info("Kline backfill finished in {} ms", System.currentTimeMillis() - started));
+    }
+
+    private void backfillSymbol(String symbol, MarketInterval interval, long fromTimestamp) {
+        KlineArchive archive = dataCollector.getArchive(symbol, interval);
+        if (archive == null || archive.isEmpty()) {
+            log.warn("No kline archive for symbol {} and interval {}, skipping backfill", symbol, interval);
+            return;
+        }
+
+        long intervalMillis = StalkerUtils.getIntervalMillis(interval);
+        long endTimestamp = archive.getFirstTimestamp();
+        if (fromTimestamp >= endTimestamp) {
+            log.info("History for symbol {} and interval {} is already loaded", symbol, interval);
+            return;
+        }
+
+        Path archivePath = dataCollector.getArchivePath(symbol, interval);
+        Path stagingPath = archivePath.resolveSibling(archivePath.getFileName() + ".backfill");
+        try {
+            try (KlineArchive staging = KlineArchive.open(stagingPath, intervalMillis)) {
+                long cursor = fromTimestamp;
+                if (!staging.isEmpty()) {
+                    // Продолжаем прерванную загрузку со следующего бара после контрольной точки
+                    cursor = staging.getLastTimestamp() + intervalMillis;
+                    log.info("Resuming backfill for symbol {} and interval {} from {}", symbol, interval, cursor);
+                }
+
+                while (cursor < endTimestamp) {
+                    long pageEnd = Math.min(cursor + PAGE_LIMIT * intervalMillis, endTimestamp) - 1;
+                    pullPage(symbol, interval, staging, cursor, pageEnd);
+                    cursor = pageEnd + 1;
+                }
+
+                long merged = archive.prepend(staging);
+                log.info("Backfilled {} bars for symbol {} and interval {}", merged, symbol, interval);
+            }
+            Files.deleteIfExists(stagingPath);
+        } catch (IOException e) {
+            log.error("Failed to backfill klines for symbol {} and interval {}", symbol, interval, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Backfill for symbol {} and interval {} interrupted", symbol, interval);
+        }
+    }
+
+    /**
+     * Загружает одну страницу баров [start, end] во временный архив, повторяя запрос при ошибках.
+     */
+    private void pullPage(String symbol, MarketInterval interval, KlineArchive staging, long start, long end)
+            throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                klineRestClient.getKlines(symbol, interval, start, end, PAGE_LIMIT,
+                        batch -> appendPage(batch, staging, start, end)).join();
+                return;
+            } catch (CompletionException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new IOException("Failed to pull klines page [" + start + ", " + end + "] after " + attempt + " attempts", e.getCause());
+                }
+                log.warn("Failed to pull klines page for symbol {} and interval {}, attempt {}: {}",
+                        symbol, interval, attempt, e.getCause().getMessage());
+                Thread.sleep(RETRY_DELAY_MILLIS * attempt);
+            }
+        }
+    }
+
+    private void appendPage(KlineBatch batch, KlineArchive staging, long start, long end) {
+        try {
+            // Bybit отдает бары от новых к старым, пишем от старых к новым
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                long timestamp = batch.getTimestamp(i);
+                if (timestamp < start || timestamp > end) {
+                    continue;
+                }
+                staging.append(timestamp,
+                        batch.getOpen(i),
+                        batch.getHigh(i),
+                        batch.getLow(i),
+                        batch.getClose(i),
+                        batch.getVolume(i),
+                        batch.getTurnover(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
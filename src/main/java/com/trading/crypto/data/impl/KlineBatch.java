@@ -0,0 +1,133 @@
+package com.trading.crypto.data.impl;
+
+import java.util.Arrays;
+
+/**
+ * Переиспользуемый буфер баров, разобранных из одного ответа REST или сообщения WebSocket.
+ * Бары хранятся в порядке получения по столбцам в примитивных массивах.
+ * Экземпляр не потокобезопасен и рассчитан на повторное использование одним потоком.
+ */
+public class KlineBatch {
+
+    private static final int INITIAL_CAPACITY = 1000;
+
+    private int size;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] open = new double[INITIAL_CAPACITY];
+    private double[] high = new double[INITIAL_CAPACITY];
+    private double[] low = new double[INITIAL_CAPACITY];
+    private double[] close = new double[INITIAL_CAPACITY];
+    private double[] volume = new double[INITIAL_CAPACITY];
+    private double[] turnover = new double[INITIAL_CAPACITY];
+    private boolean[] confirm = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * Топик WebSocket сообщения (например, kline.1.BTCUSDT), для ответов REST - null.
+     */
+    private String topic;
+
+    public void clear() {
+        size = 0;
+        topic = null;
+    }
+
+    /**
+     * Резервирует место под следующий бар и возвращает его индекс.
+     * Поля бара заполняются сеттерами по этому индексу.
+     */
+    int add() {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+            turnover = Arrays.copyOf(turnover, capacity);
+            confirm = Arrays.copyOf(confirm, capacity);
+        }
+        int index = size++;
+        timestamps[index] = 0;
+        open[index] = high[index] = low[index] = close[index] = volume[index] = turnover[index] = 0;
+        // Бары из REST приходят без флага confirm, закрытость проверяет получатель по времени
+        confirm[index] = true;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getOpen(int index) {
+        return open[index];
+    }
+
+    public double getHigh(int index) {
+        return high[index];
+    }
+
+    public double getLow(int index) {
+        return low[index];
+    }
+
+    public double getClose(int index) {
+        return close[index];
+    }
+
+    public double getVolume(int index) {
+        return volume[index];
+    }
+
+    public double getTurnover(int index) {
+        return turnover[index];
+    }
+
+    public boolean isConfirmed(int index) {
+        return confirm[index];
+    }
+
+    void setTimestamp(int index, long value) {
+        timestamps[index] = value;
+    }
+
+    void setOpen(int index, double value) {
+        open[index] = value;
+    }
+
+    void setHigh(int index, double value) {
+        high[index] = value;
+    }
+
+    void setLow(int index, double value) {
+        low[index] = value;
+    }
+
+    void setClose(int index, double value) {
+        close[index] = value;
+    }
+
+    void setVolume(int index, double value) {
+        volume[index] = value;
+    }
+
+    void setTurnover(int index, double value) {
+        turnover[index] = value;
+    }
+
+    void setConfirm(int index, boolean value) {
+        confirm[index] = value;
+    }
+}
@@ -0,0 +1,233 @@
+package com.trading.crypto.data.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Потоковый разбор kline ответов Bybit через Jackson {@link JsonParser} прямо в примитивные столбцы {@link KlineBatch}.
+ * Не создает промежуточных Map, строк для чисел и BigDecimal: числа в кавычках разбираются
+ * непосредственно из буфера символов парсера.
+ */
+public class KlineDecoder {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Степени 10, точно представимые в double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Максимальная мантисса, которая точно представима в double (2^53).
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Количество цифр, которое гарантированно помещается в long без переполнения.
+     */
+    private static final int MAX_SAFE_LONG_DIGITS = 18;
+
+    /**
+     * Разбирает ответ REST /v5/market/kline:
+     * {"retCode":0,"retMsg":"OK","result":{"symbol":"BTCUSDT","list":[["start","open","high","low","close","volume","turnover"],...]}}
+     * Бары записываются в порядке ответа, то есть от новых к старым.
+     *
+     * @param in    тело ответа
+     * @param batch буфер для баров, предварительно очищается
+     */
+    public static void decodeRestKlines(InputStream in, KlineBatch batch) throws IOException {
+        batch.clear();
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            int retCode = 0;
+            String retMsg = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "retCode" -> retCode = parser.getIntValue();
+                    case "retMsg" -> retMsg = parser.getText();
+                    case "result" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            readResult(parser, batch);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (retCode != 0) {
+                throw new IOException("Bybit kline request failed, retCode: " + retCode + ", retMsg: " + retMsg);
+            }
+        }
+    }
+
+    private static void readResult(JsonParser parser, KlineBatch batch) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("list".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    int index = batch.add();
+                    parser.nextToken();
+                    batch.setTimestamp(index, readLong(parser));
+                    parser.nextToken();
+                    batch.setOpen(index, readDouble(parser));
+                    parser.nextToken();
+                    batch.setHigh(index, readDouble(parser));
+                    parser.nextToken();
+                    batch.setLow(index, readDouble(parser));
+                    parser.nextToken();
+                    batch.setClose(index, readDouble(parser));
+                    parser.nextToken();
+                    batch.setVolume(index, readDouble(parser));
+                    parser.nextToken();
+                    batch.setTurnover(index, readDouble(parser));
+                    // Пропускаем возможные дополнительные поля до конца бара
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Разбирает сообщение kline стрима WebSocket:
+     * {"topic":"kline.1.BTCUSDT","data":[{"start":...,"open":"...","confirm":true,...}],"ts":...,"type":"snapshot"}
+     * Для служебных сообщений (ответ на подписку, pong) топик остается null, а буфер пустым.
+     *
+     * @param message сообщение WebSocket
+     * @param batch   буфер для баров, предварительно очищается
+     */
+    public static void decodeStreamKlines(String message, KlineBatch batch) throws IOException {
+        batch.clear();
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("topic".equals(field)) {
+                    batch.setTopic(parser.getText());
+                } else if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readStreamBar(parser, batch);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readStreamBar(JsonParser parser, KlineBatch batch) throws IOException {
+        int index = batch.add();
+        batch.setConfirm(index, false);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "start" -> batch.setTimestamp(index, readLong(parser));
+                case "open" -> batch.setOpen(index, readDouble(parser));
+                case "high" -> batch.setHigh(index, readDouble(parser));
+                case "low" -> batch.setLow(index, readDouble(parser));
+                case "close" -> batch.setClose(index, readDouble(parser));
+                case "volume" -> batch.setVolume(index, readDouble(parser));
+                case "turnover" -> batch.setTurnover(index, readDouble(parser));
+                case "confirm" -> batch.setConfirm(index, parser.getCurrentToken() == JsonToken.VALUE_TRUE);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected token " + actual + ", expected " + expected);
+        }
+    }
+
+    private static long readLong(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return parser.getLongValue();
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int end = offset + parser.getTextLength();
+        if (offset == end) {
+            throw new NumberFormatException("Empty number");
+        }
+        if (end - offset > MAX_SAFE_LONG_DIGITS) {
+            // Длинное число могло бы молча переполниться, Long.parseLong его проверит
+            return Long.parseLong(new String(chars, offset, end - offset));
+        }
+        long value = 0;
+        for (int i = offset; i < end; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return Long.parseLong(new String(chars, offset, end - offset));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Читает число, переданное строкой или числом JSON.
+     * Десятичная строка вида "-123.456" разбирается без создания String: мантисса копится в long,
+     * а результат получается одним делением на точную степень 10, что дает корректно округленный double.
+     * Все остальные формы (экспонента, слишком длинная мантисса) передаются в {@link Double#parseDouble}.
+     */
+    static double readDouble(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return parser.getDoubleValue();
+        }
+        return parseDouble(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    static double parseDouble(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        boolean negative = i < end && chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        boolean digits = false;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits = true;
+                if (dot) {
+                    scale++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length) {
+                    return Double.parseDouble(new String(chars, offset, length));
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                return Double.parseDouble(new String(chars, offset, length));
+            }
+        }
+        if (!digits) {
+            return Double.parseDouble(new String(chars, offset, length));
+        }
+
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+}
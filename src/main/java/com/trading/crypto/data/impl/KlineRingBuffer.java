@@ -0,0 +1,194 @@
+package com.trading.crypto.data.impl;
+
+import com.trading.crypto.data.KlineSeries;
+
+/**
+ * Кольцевой буфер фиксированной емкости для баров одного символа и интервала.
+ * Данные хранятся по столбцам в примитивных массивах (время, OHLC, объем, оборот),
+ * поэтому чтение по индексу работает за O(1) и не создает объектов, а старые бары
+ * вытесняются автоматически без отдельной очистки.
+ * <p>
+ * Запись допускается только из одного потока за раз. Счетчик {@code count} объявлен volatile
+ * и увеличивается после записи всех столбцов, поэтому читатели видят только полностью записанные бары.
+ * Для согласованного чтения нескольких баров используйте {@link #view()}.
+ * <p>
+ * Массивы на один слот длиннее окна {@code capacity}: следующий бар пишется в слот, который не виден
+ * ни в одном представлении, поэтому представление полного окна переживает одно добавление без рваных баров.
+ */
+public class KlineRingBuffer implements KlineSeries {
+
+    private final int capacity;
+    private final int slots;
+    private final long[] timestamps;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final double[] turnover;
+
+    /**
+     * Общее количество добавленных баров за все время жизни буфера.
+     */
+    private volatile long count;
+
+    public KlineRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+        this.timestamps = new long[slots];
+        this.open = new double[slots];
+        this.high = new double[slots];
+        this.low = new double[slots];
+        this.close = new double[slots];
+        this.volume = new double[slots];
+        this.turnover = new double[slots];
+    }
+
+    /**
+     * Добавляет новый бар, вытесняя самый старый при заполненном буфере.
+     */
+    public void append(long timestamp, double openPrice, double highPrice, double lowPrice, double closePrice,
+                       double barVolume, double barTurnover) {
+        long next = count;
+        int slot = (int) (next % slots);
+        timestamps[slot] = timestamp;
+        open[slot] = openPrice;
+        high[slot] = highPrice;
+        low[slot] = lowPrice;
+        close[slot] = closePrice;
+        volume[slot] = barVolume;
+        turnover[slot] = barTurnover;
+        count = next + 1;
+    }
+
+    /**
+     * @return количество баров, добавленных за все время
+     */
+    public long getAppendedCount() {
+        return count;
+    }
+
+    /**
+     * Возвращает представление, зафиксированное на текущем последнем баре:
+     * индекс 0 в нем не сдвигается при добавлении новых баров.
+     * <p>
+     * Бар с индексом {@code i} остается корректным, пока после создания представления добавлено
+     * не больше {@code capacity - i} баров: затем писатель перезаписывает его слот. Представление полного окна
+     * целиком корректно после одного добавления, но не после двух, поэтому обход всего окна во время
+     * пакетной дозагрузки нужно выполнять под блокировкой писателя или сверять {@link #getAppendedCount()}.
+     */
+    public KlineSeries view() {
+        return new PinnedView(count);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        return timestamps[slot(count, index)];
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return open[slot(count, index)];
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return high[slot(count, index)];
+    }
+
+    @Override
+    public double getLow(int index) {
+        return low[slot(count, index)];
+    }
+
+    @Override
+    public double getClose(int index) {
+        return close[slot(count, index)];
+    }
+
+    @Override
+    public double getVolume(int index) {
+        return volume[slot(count, index)];
+    }
+
+    @Override
+    public double getTurnover(int index) {
+        return turnover[slot(count, index)];
+    }
+
+    private int slot(long end, int index) {
+        if (index < 0 || index >= Math.min(end, capacity)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + Math.min(end, capacity));
+        }
+        return (int) ((end - 1 - index) % slots);
+    }
+
+    /**
+     * Представление буфера, зафиксированное на заданном количестве баров.
+     */
+    private class PinnedView implements KlineSeries {
+        private final long end;
+
+        private PinnedView(long end) {
+            this.end = end;
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(end, capacity);
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public long getTimestamp(int index) {
+            return timestamps[slot(end, index)];
+        }
+
+        @Override
+        public double getOpen(int index) {
+            return open[slot(end, index)];
+        }
+
+        @Override
+        public double getHigh(int index) {
+            return high[slot(end, index)];
+        }
+
+        @Override
+        public double getLow(int index) {
+            return low[slot(end, index)];
+        }
+
+        @Override
+        public double getClose(int index) {
+            return close[slot(end, index)];
+        }
+
+        @Override
+        public double getVolume(int index) {
+            return volume[slot(end, index)];
+        }
+
+        @Override
+        public double getTurnover(int index) {
+            return turnover[slot(end, index)];
+        }
+    }
+}
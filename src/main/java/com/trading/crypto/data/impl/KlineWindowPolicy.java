@@ -0,0 +1,49 @@
+package com.trading.crypto.data.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Размер окна баров в памяти для каждого интервала - единственное место, где он задается.
+ * <p>
+ * Окно ограничивает кольцевые буферы {@link HistoricalDataCollector} и количество баров, которыми
+ * прогреваются анализаторы. Состояние потоковых индикаторов не зависит от вытеснения старых баров
+ * из буфера, поэтому память не растет, сколько бы процесс ни работал. Полная история остается
+ * в архиве на диске.
+ * <p>
+ * По умолчанию используется {@code stalker.kline.window.default}, для отдельного интервала его можно
+ * переопределить свойством {@code stalker.kline.window.<id интервала Bybit>}, например
+ * {@code stalker.kline.window.60=1000}.
+ */
+@Slf4j
+@Component
+public class KlineWindowPolicy {
+
+    private static final String WINDOW_PROPERTY_PREFIX = "stalker.kline.window.";
+
+    private final Map<MarketInterval, Integer> windows = new EnumMap<>(MarketInterval.class);
+
+    public KlineWindowPolicy(Environment environment, @Value("${stalker.kline.window.default:500}") int defaultWindow) {
+        for (MarketInterval interval : MarketInterval.values()) {
+            int window = environment.getProperty(WINDOW_PROPERTY_PREFIX + interval.getIntervalId(), Integer.class, defaultWindow);
+            if (window <= 0) {
+                throw new IllegalArgumentException("Kline window must be positive for interval " + interval + ": " + window);
+            }
+            windows.put(interval, window);
+        }
+    }
+
+    /**
+     * @param interval временной интервал
+     * @return количество баров интервала, которое хранится в памяти
+     */
+    public int getWindow(MarketInterval interval) {
+        return windows.get(interval);
+    }
+}
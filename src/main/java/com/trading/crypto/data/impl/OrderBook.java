@@ -0,0 +1,297 @@
+package com.trading.crypto.data.impl;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Локальный L2 стакан одного символа, который поддерживается снимками и дельтами orderbook стрима.
+ * <p>
+ * Уровни каждой стороны хранятся в отсортированных примитивных массивах: биды по убыванию цены,
+ * аски по возрастанию, поэтому лучшая цена всегда в индексе 0. Обновление уровня - бинарный поиск
+ * и сдвиг через {@link System#arraycopy}.
+ * <p>
+ * Писатель один (поток WebSocket). Читатели не берут блокировок: запись обрамляется счетчиком версии
+ * (seqlock), и чтение повторяется, если во время него стакан менялся.
+ */
+public class OrderBook {
+
+    private final String symbol;
+    private final int maxDepth;
+    private final Side bids;
+    private final Side asks;
+
+    /**
+     * Нечетная версия означает, что писатель сейчас меняет стакан.
+     */
+    private volatile long version;
+    private volatile boolean valid;
+    private volatile long updateTime;
+    private long lastUpdateId;
+
+    /**
+     * @param symbol   торговый символ
+     * @param maxDepth глубина подписки, уровни за ее пределами отбрасываются
+     */
+    public OrderBook(String symbol, int maxDepth) {
+        this.symbol = symbol;
+        this.maxDepth = maxDepth;
+        this.bids = new Side(true, maxDepth);
+        this.asks = new Side(false, maxDepth);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return true, если стакан синхронизирован с биржей
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * @return время последнего примененного обновления на стороне Bybit в миллисекундах
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * Помечает стакан несинхронизированным до следующего снимка.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Заменяет содержимое стакана снимком.
+     */
+    public void applySnapshot(OrderBookUpdate update) {
+        beginWrite();
+        try {
+            bids.clear();
+            asks.clear();
+            applyLevels(update);
+            lastUpdateId = update.getUpdateId();
+            updateTime = update.getTimestamp();
+            valid = true;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Применяет дельту. Идентификатор обновления дельты должен быть следующим после последнего примененного,
+     * иначе стакан помечается несинхронизированным до следующего снимка.
+     *
+     * @return false, если обнаружен разрыв последовательности и нужен новый снимок
+     */
+    public boolean applyDelta(OrderBookUpdate update) {
+        if (!valid) {
+            return false;
+        }
+        if (update.getUpdateId() != lastUpdateId + 1) {
+            valid = false;
+            return false;
+        }
+
+        beginWrite();
+        try {
+            applyLevels(update);
+            lastUpdateId = update.getUpdateId();
+            updateTime = update.getTimestamp();
+        } finally {
+            endWrite();
+        }
+        return true;
+    }
+
+    private void applyLevels(OrderBookUpdate update) {
+        for (int i = 0; i < update.getBidCount(); i++) {
+            bids.set(update.getBidPrice(i), update.getBidSize(i));
+        }
+        for (int i = 0; i < update.getAskCount(); i++) {
+            asks.set(update.getAskPrice(i), update.getAskSize(i));
+        }
+        bids.trim(maxDepth);
+        asks.trim(maxDepth);
+    }
+
+    /**
+     * @return лучшая цена покупки или NaN, если стакан не синхронизирован
+     */
+    public double getBestBid() {
+        while (true) {
+            long readVersion = beginRead();
+            double result = valid ? bids.price(0) : Double.NaN;
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return лучшая цена продажи или NaN, если стакан не синхронизирован
+     */
+    public double getBestAsk() {
+        while (true) {
+            long readVersion = beginRead();
+            double result = valid ? asks.price(0) : Double.NaN;
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param bidSide true - биды, false - аски
+     * @param levels  количество лучших уровней
+     * @return суммарный объем на первых {@code levels} уровнях стороны или NaN, если стакан не синхронизирован
+     */
+    public double getDepth(boolean bidSide, int levels) {
+        Side side = bidSide ? bids : asks;
+        while (true) {
+            long readVersion = beginRead();
+            double result = valid ? side.volume(levels) : Double.NaN;
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Дисбаланс стакана (bidVolume - askVolume) / (bidVolume + askVolume) на первых {@code levels} уровнях.
+     *
+     * @return значение от -1 (только продавцы) до 1 (только покупатели) или NaN, если данных нет
+     */
+    public double getImbalance(int levels) {
+        while (true) {
+            long readVersion = beginRead();
+            double result = Double.NaN;
+            if (valid) {
+                double bidVolume = bids.volume(levels);
+                double askVolume = asks.volume(levels);
+                double total = bidVolume + askVolume;
+                result = total > 0 ? (bidVolume - askVolume) / total : Double.NaN;
+            }
+            if (endRead(readVersion)) {
+                return result;
+            }
+        }
+    }
+
+    private void beginWrite() {
+        version = version + 1;
+        // Изменения уровней не должны стать видны раньше нечетной версии
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        version = version + 1;
+    }
+
+    private long beginRead() {
+        long readVersion = version;
+        while ((readVersion & 1) != 0) {
+            Thread.onSpinWait();
+            readVersion = version;
+        }
+        return readVersion;
+    }
+
+    private boolean endRead(long readVersion) {
+        // Чтение уровней должно завершиться до повторной проверки версии
+        VarHandle.loadLoadFence();
+        return version == readVersion;
+    }
+
+    /**
+     * Одна сторона стакана: цены и объемы уровней в порядке от лучшей цены.
+     */
+    private static class Side {
+        private final boolean descending;
+        private double[] prices;
+        private double[] sizes;
+        private int count;
+
+        private Side(boolean descending, int capacity) {
+            this.descending = descending;
+            this.prices = new double[capacity * 2];
+            this.sizes = new double[capacity * 2];
+        }
+
+        private void clear() {
+            count = 0;
+        }
+
+        /**
+         * Устанавливает объем уровня, нулевой объем удаляет уровень.
+         */
+        private void set(double price, double size) {
+            int index = find(price);
+            if (index >= 0) {
+                if (size == 0) {
+                    System.arraycopy(prices, index + 1, prices, index, count - index - 1);
+                    System.arraycopy(sizes, index + 1, sizes, index, count - index - 1);
+                    count--;
+                } else {
+                    sizes[index] = size;
+                }
+                return;
+            }
+            if (size == 0) {
+                return;
+            }
+
+            int insertAt = -index - 1;
+            if (count == prices.length) {
+                // Массивы только растут, поэтому читатель со старой ссылкой не выйдет за их границы
+                prices = Arrays.copyOf(prices, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            System.arraycopy(prices, insertAt, prices, insertAt + 1, count - insertAt);
+            System.arraycopy(sizes, insertAt, sizes, insertAt + 1, count - insertAt);
+            prices[insertAt] = price;
+            sizes[insertAt] = size;
+            count++;
+        }
+
+        private int find(double price) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                double midPrice = prices[mid];
+                if (midPrice == price) {
+                    return mid;
+                }
+                if (descending ? midPrice > price : midPrice < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void trim(int maxDepth) {
+            count = Math.min(count, maxDepth);
+        }
+
+        private double price(int index) {
+            double[] levelPrices = prices;
+            return index < Math.min(count, levelPrices.length) ? levelPrices[index] : Double.NaN;
+        }
+
+        private double volume(int levels) {
+            double[] levelSizes = sizes;
+            int n = Math.min(Math.min(levels, count), levelSizes.length);
+            double volume = 0;
+            for (int i = 0; i < n; i++) {
+                volume += levelSizes[i];
+            }
+            return volume;
+        }
+    }
+}
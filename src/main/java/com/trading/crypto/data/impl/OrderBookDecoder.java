@@ -0,0 +1,82 @@
+package com.trading.crypto.data.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Потоковый разбор сообщений orderbook стрима Bybit в {@link OrderBookUpdate} без промежуточных объектов.
+ */
+public class OrderBookDecoder {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Разбирает сообщение orderbook стрима:
+     * {"topic":"orderbook.50.BTCUSDT","type":"snapshot","ts":...,"data":{"s":"BTCUSDT","b":[["price","size"],...],"a":[...],"u":...,"seq":...}}
+     * Для служебных сообщений (ответ на подписку, pong) топик остается null.
+     *
+     * @param message сообщение WebSocket
+     * @param update  буфер обновления, предварительно очищается
+     */
+    public static void decode(String message, OrderBookUpdate update) throws IOException {
+        update.clear();
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected order book message start: " + parser.getCurrentToken());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "topic" -> update.setTopic(parser.getText());
+                    case "type" -> update.setSnapshot("snapshot".equals(parser.getText()));
+                    case "ts" -> update.setTimestamp(parser.getLongValue());
+                    case "data" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            readData(parser, update);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readData(JsonParser parser, OrderBookUpdate update) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "s" -> update.setSymbol(parser.getText());
+                case "u" -> update.setUpdateId(parser.getLongValue());
+                case "b", "a" -> {
+                    if (value != JsonToken.START_ARRAY) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    boolean bids = "b".equals(field);
+                    while (parser.nextToken() == JsonToken.START_ARRAY) {
+                        parser.nextToken();
+                        double price = KlineDecoder.readDouble(parser);
+                        parser.nextToken();
+                        double size = KlineDecoder.readDouble(parser);
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                        }
+                        if (bids) {
+                            update.addBid(price, size);
+                        } else {
+                            update.addAsk(price, size);
+                        }
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+}
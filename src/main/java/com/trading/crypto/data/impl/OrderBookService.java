@@ -0,0 +1,132 @@
+package com.trading.crypto.data.impl;
+
+import com.trading.crypto.client.WebSocketSupervisor;
+import com.trading.crypto.data.MarketDepth;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Локальные L2 стаканы по символам, которые поддерживаются из orderbook.{depth}.{symbol} стрима.
+ * Снимок заменяет стакан, дельты применяются инкрементально. При разрыве последовательности
+ * идентификаторов обновлений топик переподписывается, и стакан восстанавливается по новому снимку.
+ */
+@Slf4j
+@Service
+public class OrderBookService implements MarketDepth {
+
+    private static final String ORDERBOOK_TOPIC_PREFIX = "orderbook.";
+
+    /**
+     * Буфер разбора переиспользуется в каждом потоке WebSocket соединения.
+     * Топик одного символа всегда обслуживает одно соединение, поэтому у каждого стакана один писатель.
+     */
+    private static final ThreadLocal<OrderBookUpdate> updates = ThreadLocal.withInitial(OrderBookUpdate::new);
+
+    private final WebSocketSupervisor webSocketSupervisor;
+    private final int depth;
+    private final Map<String, OrderBook> books = new ConcurrentHashMap<>();
+
+    public OrderBookService(WebSocketSupervisor webSocketSupervisor, @Value("${stalker.orderbook.depth:50}") int depth) {
+        this.webSocketSupervisor = webSocketSupervisor;
+        this.depth = depth;
+    }
+
+    /**
+     * Подписывается на стаканы символов через {@link WebSocketSupervisor}.
+     *
+     * @param symbols торговые символы
+     */
+    public void subscribe(List<String> symbols) {
+        List<String> topics = new ArrayList<>();
+        for (String symbol : symbols) {
+            books.computeIfAbsent(symbol, s -> new OrderBook(s, depth));
+            topics.add(topic(symbol));
+        }
+        webSocketSupervisor.subscribe(topics, this::onMessage, this::onReconnect);
+    }
+
+    /**
+     * После переподключения стаканы недействительны до прихода нового снимка.
+     */
+    private void onReconnect(List<String> topics) {
+        for (String topic : topics) {
+            OrderBook book = books.get(topic.substring(topic.lastIndexOf('.') + 1));
+            if (book != null) {
+                book.invalidate();
+            }
+        }
+    }
+
+    private void onMessage(String message) {
+        OrderBookUpdate update = updates.get();
+        try {
+            OrderBookDecoder.decode(message, update);
+            String topic = update.getTopic();
+            if (topic == null || !topic.startsWith(ORDERBOOK_TOPIC_PREFIX)) {
+                // Ответы на подписку и pong
+                log.trace("Skipped non orderbook message: {}", message);
+                return;
+            }
+
+            OrderBook book = books.get(update.getSymbol());
+            if (book == null) {
+                return;
+            }
+
+            if (update.isSnapshot()) {
+                book.applySnapshot(update);
+            } else if (book.isValid() && !book.applyDelta(update)) {
+                log.warn("Order book gap for symbol {} at update {}, resubscribing", book.getSymbol(), update.getUpdateId());
+                webSocketSupervisor.resubscribe(topic);
+            }
+        } catch (Exception e) {
+            log.error("Failed to process orderbook message: {}", message, e);
+        }
+    }
+
+    private String topic(String symbol) {
+        return ORDERBOOK_TOPIC_PREFIX + depth + "." + symbol;
+    }
+
+    @Override
+    public double getBestBid(String symbol) {
+        OrderBook book = books.get(symbol);
+        return book == null ? Double.NaN : book.getBestBid();
+    }
+
+    @Override
+    public double getBestAsk(String symbol) {
+        OrderBook book = books.get(symbol);
+        return book == null ? Double.NaN : book.getBestAsk();
+    }
+
+    @Override
+    public double getBidDepth(String symbol, int levels) {
+        OrderBook book = books.get(symbol);
+        return book == null ? Double.NaN : book.getDepth(true, levels);
+    }
+
+    @Override
+    public double getAskDepth(String symbol, int levels) {
+        OrderBook book = books.get(symbol);
+        return book == null ? Double.NaN : book.getDepth(false, levels);
+    }
+
+    @Override
+    public double getImbalance(String symbol, int levels) {
+        OrderBook book = books.get(symbol);
+        return book == null ? Double.NaN : book.getImbalance(levels);
+    }
+
+    @Override
+    public long getUpdateTime(String symbol) {
+        OrderBook book = books.get(symbol);
+        return book == null ? 0 : book.getUpdateTime();
+    }
+}
@@ -0,0 +1,127 @@
+package com.trading.crypto.data.impl;
+
+import java.util.Arrays;
+
+/**
+ * Переиспользуемый буфер одного сообщения orderbook стрима: снимок или дельта уровней стакана.
+ * Уровни хранятся в примитивных массивах в порядке сообщения, размер 0 в дельте означает удаление уровня.
+ * Экземпляр не потокобезопасен и рассчитан на повторное использование одним потоком.
+ */
+public class OrderBookUpdate {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String topic;
+    private String symbol;
+    private boolean snapshot;
+    private long updateId;
+    private long timestamp;
+
+    private int bidCount;
+    private double[] bidPrices = new double[INITIAL_CAPACITY];
+    private double[] bidSizes = new double[INITIAL_CAPACITY];
+
+    private int askCount;
+    private double[] askPrices = new double[INITIAL_CAPACITY];
+    private double[] askSizes = new double[INITIAL_CAPACITY];
+
+    public void clear() {
+        topic = null;
+        symbol = null;
+        snapshot = false;
+        updateId = 0;
+        timestamp = 0;
+        bidCount = 0;
+        askCount = 0;
+    }
+
+    void addBid(double price, double size) {
+        if (bidCount == bidPrices.length) {
+            bidPrices = Arrays.copyOf(bidPrices, bidCount * 2);
+            bidSizes = Arrays.copyOf(bidSizes, bidCount * 2);
+        }
+        bidPrices[bidCount] = price;
+        bidSizes[bidCount] = size;
+        bidCount++;
+    }
+
+    void addAsk(double price, double size) {
+        if (askCount == askPrices.length) {
+            askPrices = Arrays.copyOf(askPrices, askCount * 2);
+            askSizes = Arrays.copyOf(askSizes, askCount * 2);
+        }
+        askPrices[askCount] = price;
+        askSizes[askCount] = size;
+        askCount++;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return идентификатор обновления u, у последовательных дельт растет на 1
+     */
+    public long getUpdateId() {
+        return updateId;
+    }
+
+    void setUpdateId(long updateId) {
+        this.updateId = updateId;
+    }
+
+    /**
+     * @return время формирования данных на стороне Bybit в миллисекундах
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public int getBidCount() {
+        return bidCount;
+    }
+
+    public double getBidPrice(int index) {
+        return bidPrices[index];
+    }
+
+    public double getBidSize(int index) {
+        return bidSizes[index];
+    }
+
+    public int getAskCount() {
+        return askCount;
+    }
+
+    public double getAskPrice(int index) {
+        return askPrices[index];
+    }
+
+    public double getAskSize(int index) {
+        return askSizes[index];
+    }
+}
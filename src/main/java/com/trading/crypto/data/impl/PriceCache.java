@@ -0,0 +1,145 @@
+package com.trading.crypto.data.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.trading.crypto.client.WebSocketSupervisor;
+import com.trading.crypto.event.EventBus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Последние цены по символам из tickers.{symbol} стрима: mark, last, лучший бид и аск.
+ * <p>
+ * Bybit присылает снимок при подписке и дальше только изменившиеся поля, поэтому каждое сообщение
+ * обновляет лишь те цены, которые в нем есть. Цены хранятся в volatile полях, чтение не блокируется.
+ * <p>
+ * Обновления тикеров в {@link EventBus} не публикуются: подписчиков на них нет, а каждое событие будило бы
+ * всех подписчиков шины и занимало ее емкость. Когда тикеры понадобятся в шине, публикацию нужно включить
+ * вместе с первым подписчиком.
+ */
+@Slf4j
+@Service
+public class PriceCache {
+
+    private static final String TICKER_TOPIC_PREFIX = "tickers.";
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final WebSocketSupervisor webSocketSupervisor;
+    private final Map<String, Ticker> tickers = new ConcurrentHashMap<>();
+
+    public PriceCache(WebSocketSupervisor webSocketSupervisor) {
+        this.webSocketSupervisor = webSocketSupervisor;
+    }
+
+    /**
+     * Подписывается на тикеры символов через {@link WebSocketSupervisor}.
+     * После переподключения Bybit сам присылает снимок тикера, дополнительная обработка не нужна.
+     *
+     * @param symbols торговые символы
+     */
+    public void subscribe(List<String> symbols) {
+        List<String> topics = new ArrayList<>();
+        for (String symbol : symbols) {
+            tickers.computeIfAbsent(symbol, s -> new Ticker());
+            topics.add(TICKER_TOPIC_PREFIX + symbol);
+        }
+        webSocketSupervisor.subscribe(topics, this::onMessage, null);
+    }
+
+    /**
+     * Возвращает mark цену, если сообщения по символу приходили не раньше {@code maxAgeMillis} назад.
+     * Неизменившиеся поля Bybit в дельтах не присылает, поэтому свежесть считается по последнему сообщению тикера.
+     *
+     * @param symbol       торговый символ
+     * @param maxAgeMillis максимально допустимый возраст цены
+     * @return mark цена или NaN, если цены нет или она устарела
+     */
+    public double getMarkPrice(String symbol, long maxAgeMillis) {
+        Ticker ticker = tickers.get(symbol);
+        if (ticker == null || System.currentTimeMillis() - ticker.updateTime > maxAgeMillis) {
+            return Double.NaN;
+        }
+        return ticker.markPrice;
+    }
+
+    public double getLastPrice(String symbol) {
+        Ticker ticker = tickers.get(symbol);
+        return ticker == null ? Double.NaN : ticker.lastPrice;
+    }
+
+    public double getBidPrice(String symbol) {
+        Ticker ticker = tickers.get(symbol);
+        return ticker == null ? Double.NaN : ticker.bidPrice;
+    }
+
+    public double getAskPrice(String symbol) {
+        Ticker ticker = tickers.get(symbol);
+        return ticker == null ? Double.NaN : ticker.askPrice;
+    }
+
+    /**
+     * Обработка сообщения тикера.
+     * Пример: {"topic":"tickers.BTCUSDT","type":"delta","data":{"symbol":"BTCUSDT","markPrice":"...","bid1Price":"...",...},"ts":...}
+     */
+    private void onMessage(String message) {
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            String topic = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("topic".equals(field)) {
+                    topic = parser.getText();
+                } else if ("data".equals(field) && value == JsonToken.START_OBJECT
+                        && topic != null && topic.startsWith(TICKER_TOPIC_PREFIX)) {
+                    String symbol = topic.substring(TICKER_TOPIC_PREFIX.length());
+                    Ticker ticker = tickers.get(symbol);
+                    if (ticker == null) {
+                        parser.skipChildren();
+                    } else {
+                        readTicker(parser, ticker);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to process ticker message: {}", message, e);
+        }
+    }
+
+    private void readTicker(JsonParser parser, Ticker ticker) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "markPrice" -> ticker.markPrice = KlineDecoder.readDouble(parser);
+                case "lastPrice" -> ticker.lastPrice = KlineDecoder.readDouble(parser);
+                case "bid1Price" -> ticker.bidPrice = KlineDecoder.readDouble(parser);
+                case "ask1Price" -> ticker.askPrice = KlineDecoder.readDouble(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        ticker.updateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Последние цены одного символа. Пишет только поток WebSocket.
+     */
+    private static class Ticker {
+        private volatile double markPrice = Double.NaN;
+        private volatile double lastPrice = Double.NaN;
+        private volatile double bidPrice = Double.NaN;
+        private volatile double askPrice = Double.NaN;
+        private volatile long updateTime;
+    }
+}
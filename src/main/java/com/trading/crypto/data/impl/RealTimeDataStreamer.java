@@ -1,14 +1,121 @@
 package com.trading.crypto.data.impl;
 
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.client.WebSocketSupervisor;
 import com.trading.crypto.data.DataStreamer;
+import com.trading.crypto.util.StalkerUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Для получения данных в реальном времени
+ * Для получения данных в реальном времени.
+ * Подписывается через {@link WebSocketSupervisor} на kline.{interval}.{symbol} для всех символов и стримовых интервалов
+ * {@link HistoricalDataCollector}, и передает в него закрытые (confirm = true) бары.
+ * Незакрытые бары передаются только при {@code stalker.intrabar.enabled=true}, для предварительного анализа.
  */
+@Slf4j
 @Service
 public class RealTimeDataStreamer implements DataStreamer {
+
+    private static final String KLINE_TOPIC_PREFIX = "kline.";
+
+    /**
+     * Буфер разбора переиспользуется в каждом потоке WebSocket соединения.
+     */
+    private static final ThreadLocal<KlineBatch> batches = ThreadLocal.withInitial(KlineBatch::new);
+
+    private final WebSocketSupervisor webSocketSupervisor;
+    private final HistoricalDataCollector dataCollector;
+    private final boolean intrabarEnabled;
+
+    @Autowired
+    public RealTimeDataStreamer(WebSocketSupervisor webSocketSupervisor, HistoricalDataCollector dataCollector,
+                                @Value("${stalker.intrabar.enabled:false}") boolean intrabarEnabled) {
+        this.webSocketSupervisor = webSocketSupervisor;
+        this.dataCollector = dataCollector;
+        this.intrabarEnabled = intrabarEnabled;
+    }
+
+    /**
+     * Подписывается на kline топики для всех символов и интервалов {@link HistoricalDataCollector#getStreamIntervals()}.
+     */
     public void streamData() {
+        List<String> topics = new ArrayList<>();
+        for (MarketInterval interval : dataCollector.getStreamIntervals()) {
+            for (String symbol : dataCollector.symbols) {
+                topics.add(KLINE_TOPIC_PREFIX + interval.getIntervalId() + "." + symbol);
+            }
+        }
+
+        webSocketSupervisor.subscribe(topics, this::onMessage, this::onReconnect);
+    }
+
+    /**
+     * После переподключения дозагружает через REST бары, закрывшиеся за время обрыва.
+     *
+     * @param topics переподписанные kline топики
+     */
+    private void onReconnect(List<String> topics) {
+        for (String topic : topics) {
+            int intervalEnd = topic.indexOf('.', KLINE_TOPIC_PREFIX.length());
+            MarketInterval interval = StalkerUtils.toMarketInterval(topic.substring(KLINE_TOPIC_PREFIX.length(), intervalEnd));
+            dataCollector.backfillGap(topic.substring(intervalEnd + 1), interval);
+        }
+    }
+
+    /**
+     * Обработка сообщения kline стрима.
+     * Пример: {"topic":"kline.1.BTCUSDT","data":[{"start":...,"open":"...","confirm":true,...}],"ts":...,"type":"snapshot"}
+     *
+     * @param message сырое сообщение WebSocket
+     */
+    private void onMessage(String message) {
+        KlineBatch batch = batches.get();
+        try {
+            KlineDecoder.decodeStreamKlines(message, batch);
+            String topic = batch.getTopic();
+            if (topic == null || !topic.startsWith(KLINE_TOPIC_PREFIX)) {
+                // Ответы на подписку и pong
+                log.trace("Skipped non kline message: {}", message);
+                return;
+            }
+
+            // kline.{interval}.{symbol}
+            int intervalEnd = topic.indexOf('.', KLINE_TOPIC_PREFIX.length());
+            MarketInterval interval = StalkerUtils.toMarketInterval(topic.substring(KLINE_TOPIC_PREFIX.length(), intervalEnd));
+            String symbol = topic.substring(intervalEnd + 1);
 
+            for (int i = 0; i < batch.size(); i++) {
+                // Незакрытый бар приходит каждые 1-60 секунд
+                if (!batch.isConfirmed(i)) {
+                    if (intrabarEnabled) {
+                        dataCollector.onIntrabarKline(symbol, interval,
+                                batch.getTimestamp(i),
+                                batch.getOpen(i),
+                                batch.getHigh(i),
+                                batch.getLow(i),
+                                batch.getClose(i),
+                                batch.getVolume(i),
+                                batch.getTurnover(i));
+                    }
+                    continue;
+                }
+                dataCollector.onConfirmedKline(symbol, interval,
+                        batch.getTimestamp(i),
+                        batch.getOpen(i),
+                        batch.getHigh(i),
+                        batch.getLow(i),
+                        batch.getClose(i),
+                        batch.getVolume(i),
+                        batch.getTurnover(i));
+            }
+        } catch (Exception e) {
+            log.error("Failed to process kline message: {}", message, e);
+        }
     }
 }
@@ -0,0 +1,32 @@
+package com.trading.crypto.event;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+
+/**
+ * Шина рыночных событий между приемом данных и анализом.
+ * Публикация не ждет обработки, каждый подписчик читает события в своем потоке.
+ */
+public interface EventBus {
+
+    /**
+     * Публикует закрытый бар. Бары не теряются: если подписчики отстали на всю емкость шины,
+     * вызов ждет их, поэтому его нельзя делать под блокировками, нужными другим производителям.
+     */
+    void publishBar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                    double close, double volume, double turnover);
+
+    /**
+     * Публикует текущее состояние незакрытого бара. Не ждет: если шина полна, событие отбрасывается.
+     */
+    void publishIntrabar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                         double close, double volume, double turnover);
+
+    /**
+     * Подписывает обработчик на события, опубликованные после подписки.
+     *
+     * @param name      имя подписчика, используется в имени потока
+     * @param handler   обработчик событий
+     * @param dependsOn имена подписчиков, которые должны обработать событие раньше этого обработчика
+     */
+    void subscribe(String name, MarketEventHandler handler, String... dependsOn);
+}
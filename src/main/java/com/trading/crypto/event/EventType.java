@@ -0,0 +1,12 @@
+package com.trading.crypto.event;
+
+public enum EventType {
+    /**
+     * Закрытый бар.
+     */
+    BAR,
+    /**
+     * Текущее состояние незакрытого бара.
+     */
+    INTRABAR
+}
@@ -0,0 +1,101 @@
+package com.trading.crypto.event;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.model.KlineElement;
+
+import java.math.BigDecimal;
+
+/**
+ * Переиспользуемое событие шины: закрытый или незакрытый бар.
+ * Экземпляры создаются один раз при создании шины и перезаписываются при каждой публикации.
+ */
+public class MarketEvent {
+
+    private EventType type;
+    private String symbol;
+
+    private MarketInterval interval;
+    private long timestamp;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private double volume;
+    private double turnover;
+
+    public void setBar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                       double close, double volume, double turnover) {
+        this.type = EventType.BAR;
+        this.symbol = symbol;
+        this.interval = interval;
+        this.timestamp = timestamp;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.turnover = turnover;
+    }
+
+    public void setIntrabar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                            double close, double volume, double turnover) {
+        setBar(symbol, interval, timestamp, open, high, low, close, volume, turnover);
+        this.type = EventType.INTRABAR;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public MarketInterval getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return время открытия бара
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public double getOpen() {
+        return open;
+    }
+
+    public double getHigh() {
+        return high;
+    }
+
+    public double getLow() {
+        return low;
+    }
+
+    public double getClose() {
+        return close;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    public double getTurnover() {
+        return turnover;
+    }
+
+    /**
+     * @return копия бара в виде {@link KlineElement}
+     */
+    public KlineElement toKlineElement() {
+        return new KlineElement(timestamp,
+                BigDecimal.valueOf(open),
+                BigDecimal.valueOf(high),
+                BigDecimal.valueOf(low),
+                BigDecimal.valueOf(close),
+                BigDecimal.valueOf(volume),
+                BigDecimal.valueOf(turnover));
+    }
+}
@@ -0,0 +1,10 @@
+package com.trading.crypto.event;
+
+/**
+ * Обработчик событий шины. Вызывается в собственном потоке подписчика, события приходят по порядку публикации.
+ * Событие переиспользуется шиной, поэтому сохранять ссылку на него после возврата из обработчика нельзя.
+ */
+@FunctionalInterface
+public interface MarketEventHandler {
+    void onEvent(MarketEvent event);
+}
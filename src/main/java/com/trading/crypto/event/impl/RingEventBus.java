@@ -0,0 +1,262 @@
+package com.trading.crypto.event.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.event.EventBus;
+import com.trading.crypto.event.MarketEvent;
+import com.trading.crypto.event.MarketEventHandler;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Шина событий на кольцевом буфере с заранее созданными {@link MarketEvent}.
+ * <p>
+ * Производитель захватывает номер слота через {@link AtomicLong}, перезаписывает событие в слоте
+ * и публикует его, записывая номер в массив опубликованных последовательностей. Каждый подписчик
+ * работает в своем потоке и читает слоты по порядку, пока номер слота совпадает с ожидаемым.
+ * Блокировок нет ни у производителя, ни у подписчиков.
+ * <p>
+ * Производитель не перезаписывает слот, пока его не прочитали все подписчики. Если самый медленный
+ * подписчик отстал на всю емкость буфера, закрытый бар ждет его, а незакрытые бары отбрасываются:
+ * следующее обновление все равно их заменит. Поэтому бары нельзя публиковать под блокировками,
+ * которые нужны другим производителям.
+ * <p>
+ * Свободный подписчик недолго крутится, затем уступает процессор и засыпает до публикации
+ * или до продвижения подписчиков, от которых зависит. Простаивающая шина не будит потоки.
+ * <p>
+ * Подписчик может зависеть от других подписчиков: тогда он берет событие только после того,
+ * как его обработали все, от кого он зависит. Так строится конвейер без дополнительных очередей.
+ */
+@Slf4j
+@Component
+public class RingEventBus implements EventBus {
+
+    private static final int CONSUMER_SPINS = 100;
+    private static final int CONSUMER_YIELDS = 10;
+    private static final long PRODUCER_WAIT_NANOS = 10_000;
+
+    private final int mask;
+    private final MarketEvent[] events;
+
+    /**
+     * Номер последовательности, опубликованной в каждом слоте.
+     */
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final List<EventConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final Map<String, EventConsumer> consumersByName = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity емкость буфера, округляется вверх до степени двойки
+     */
+    public RingEventBus(@Value("${stalker.bus.capacity:4096}") int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.events = new MarketEvent[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new MarketEvent();
+            published.set(i, -1);
+        }
+    }
+
+    @Override
+    public void publishBar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                           double close, double volume, double turnover) {
+        long sequence = claim();
+        events[(int) (sequence & mask)].setBar(symbol, interval, timestamp, open, high, low, close, volume, turnover);
+        publish(sequence);
+    }
+
+    @Override
+    public void publishIntrabar(String symbol, MarketInterval interval, long timestamp, double open, double high, double low,
+                                double close, double volume, double turnover) {
+        long sequence = tryClaim();
+        if (sequence < 0) {
+            return;
+        }
+        events[(int) (sequence & mask)].setIntrabar(symbol, interval, timestamp, open, high, low, close, volume, turnover);
+        publish(sequence);
+    }
+
+    @Override
+    public synchronized void subscribe(String name, MarketEventHandler handler, String... dependsOn) {
+        if (consumersByName.containsKey(name)) {
+            throw new IllegalArgumentException("Event consumer " + name + " is already subscribed");
+        }
+        EventConsumer[] dependencies = new EventConsumer[dependsOn.length];
+        for (int i = 0; i < dependsOn.length; i++) {
+            dependencies[i] = consumersByName.get(dependsOn[i]);
+            if (dependencies[i] == null) {
+                throw new IllegalArgumentException("Event consumer " + name + " depends on unknown consumer " + dependsOn[i]);
+            }
+        }
+
+        EventConsumer consumer = new EventConsumer(name, handler, dependencies, claimed.get());
+        for (EventConsumer dependency : dependencies) {
+            dependency.dependents.add(consumer);
+        }
+        consumersByName.put(name, consumer);
+        consumers.add(consumer);
+        consumer.start();
+        log.info("Event consumer {} subscribed", name);
+    }
+
+    private long claim() {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - events.length;
+        if (wrapPoint > minConsumerSequence()) {
+            log.warn("Event bus is full, waiting for consumers");
+            while (wrapPoint > minConsumerSequence()) {
+                LockSupport.parkNanos(PRODUCER_WAIT_NANOS);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Захватывает слот, только если он свободен.
+     *
+     * @return номер слота или -1, если буфер полон и событие отброшено
+     */
+    private long tryClaim() {
+        while (true) {
+            long current = claimed.get();
+            if (current + 1 - events.length > minConsumerSequence()) {
+                long count = dropped.incrementAndGet();
+                if ((count & (count - 1)) == 0) {
+                    // На 1, 2, 4, 8... отброшенном событии, чтобы не засыпать лог
+                    log.warn("Event bus is full, {} intrabar events dropped so far", count);
+                }
+                return -1;
+            }
+            if (claimed.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Публикует захваченный слот и будит уснувших подписчиков.
+     */
+    private void publish(long sequence) {
+        // Полный барьер: подписчик, объявивший сон после этой записи, увидит ее при повторной проверке
+        published.set((int) (sequence & mask), sequence);
+        for (EventConsumer consumer : consumers) {
+            consumer.wakeUp();
+        }
+    }
+
+    private long minConsumerSequence() {
+        long min = Long.MAX_VALUE;
+        for (EventConsumer consumer : consumers) {
+            min = Math.min(min, consumer.sequence);
+        }
+        return min;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        consumers.forEach(EventConsumer::interrupt);
+    }
+
+    /**
+     * Поток подписчика, обрабатывает события по порядку публикации.
+     */
+    private class EventConsumer extends Thread {
+        private final MarketEventHandler handler;
+        private final EventConsumer[] dependencies;
+        private final List<EventConsumer> dependents = new CopyOnWriteArrayList<>();
+
+        /**
+         * Подписчик заснул или собирается заснуть, его нужно разбудить при публикации.
+         */
+        private volatile boolean sleeping;
+
+        /**
+         * Последняя обработанная последовательность.
+         */
+        private volatile long sequence;
+
+        private EventConsumer(String name, MarketEventHandler handler, EventConsumer[] dependencies, long sequence) {
+            super("event-" + name);
+            setDaemon(true);
+            this.handler = handler;
+            this.dependencies = dependencies;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            long next = sequence + 1;
+            int idle = 0;
+            while (!isInterrupted()) {
+                int slot = (int) (next & mask);
+                if (!isAvailable(next)) {
+                    idle = waitFor(next, idle);
+                    continue;
+                }
+                idle = 0;
+                try {
+                    handler.onEvent(events[slot]);
+                } catch (Exception e) {
+                    log.error("Event consumer {} failed to process event", getName(), e);
+                }
+                sequence = next++;
+                for (EventConsumer dependent : dependents) {
+                    dependent.wakeUp();
+                }
+            }
+        }
+
+        private boolean isAvailable(long next) {
+            return published.get((int) (next & mask)) == next && processedByDependencies(next);
+        }
+
+        /**
+         * Ожидание события: сначала активное, затем с уступкой процессора, затем сон до пробуждения.
+         *
+         * @return количество итераций ожидания подряд
+         */
+        private int waitFor(long next, int idle) {
+            if (idle < CONSUMER_SPINS) {
+                Thread.onSpinWait();
+            } else if (idle < CONSUMER_SPINS + CONSUMER_YIELDS) {
+                Thread.yield();
+            } else {
+                sleeping = true;
+                // Повторная проверка после объявления сна: публикация до нее уже видна, после нее - разбудит
+                if (!isAvailable(next)) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+            return idle + 1;
+        }
+
+        private void wakeUp() {
+            if (sleeping) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        private boolean processedByDependencies(long next) {
+            for (EventConsumer dependency : dependencies) {
+                if (dependency.sequence < next) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
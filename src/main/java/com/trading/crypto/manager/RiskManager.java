@@ -17,4 +17,16 @@ public interface RiskManager {
     Map<TradeSignal, RiskEvaluation> evaluateRisk(List<TradeSignal> signals, List<Signal> indicatorsAnalysisResult, BigDecimal balance);
 
     Trade evaluateAndPrepareTrade(TradeSignal signal, RiskEvaluation evaluation, BigDecimal balance);
+
+    /**
+     * Регистрирует сделку непосредственно перед отправкой ордера.
+     *
+     * @return false, если сделку выставлять нельзя
+     */
+    boolean registerTrade(Trade trade);
+
+    /**
+     * Снимает регистрацию сделки, ордер которой не выставился.
+     */
+    void releaseTrade(Trade trade);
 }
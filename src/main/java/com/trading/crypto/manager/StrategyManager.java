@@ -9,4 +9,12 @@ import java.util.List;
 public interface StrategyManager {
 
     List<TradeSignal> analyzeData(List<Signal> indicatorsAnalysisResult, List<PinBarSignal> pinBarAnalysisResult);
+
+    /**
+     * Стратегия, вернувшая true, дополнительно получает предварительные сигналы по незакрытым барам
+     * ({@link Signal#isIntrabar()}), как только индикаторы дошли до крайних значений внутри бара.
+     */
+    default boolean acceptsIntrabarSignals() {
+        return false;
+    }
 }
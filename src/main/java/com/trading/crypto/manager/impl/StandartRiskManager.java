@@ -1,21 +1,29 @@
 package com.trading.crypto.manager.impl;
 
 import com.bybit.api.client.domain.trade.Side;
+import com.trading.crypto.analyzer.MarketCorrelation;
 import com.trading.crypto.client.BybitClient;
 import com.trading.crypto.manager.RiskManager;
 import com.trading.crypto.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * StandartRiskManager - реализация интерфейса RiskManager.
  * Управляет рисками для торговых сигналов, используя баланс с Bybit.
+ * <p>
+ * Сигнал в ту же сторону, что и недавно выставленная сделка по сильно коррелирующему символу, получает
+ * высокий риск: при общем движении рынка это одна и та же ставка, а не несколько независимых.
+ * Сделка учитывается только с момента отправки ордера ({@link #registerTrade(Trade)}) и снимается,
+ * если ордер не выставился ({@link #releaseTrade(Trade)}), поэтому несостоявшиеся сделки ничего не блокируют.
  */
 @Slf4j
 @Component
@@ -24,6 +32,26 @@ public class StandartRiskManager implements RiskManager {
     @Autowired
     private BybitClient bybitClient;
 
+    @Autowired
+    private MarketCorrelation marketCorrelation;
+
+    /**
+     * Корреляция доходностей, начиная с которой символы считаются одной ставкой.
+     */
+    @Value("${stalker.risk.max-correlation:0.8}")
+    private double maxCorrelation;
+
+    /**
+     * Сколько выставленная сделка блокирует сигналы коррелирующих символов в ту же сторону.
+     */
+    @Value("${stalker.risk.correlation-hold-ms:900000}")
+    private long correlationHoldMillis;
+
+    /**
+     * Последние выставленные сделки по символам.
+     */
+    private final Map<String, RegisteredTrade> registeredTrades = new ConcurrentHashMap<>();
+
     /**
      * Оценивает риск для каждого торгового сигнала.
      *
@@ -60,12 +88,59 @@ public class StandartRiskManager implements RiskManager {
                     // Минимальный риск, но торговля не рекомендуется
                         evaluation = RiskEvaluation.LOW;
             }
+            if (evaluation == RiskEvaluation.ACCEPTABLE
+                    && correlatesWithRegisteredTrade(signal.getSymbol(), getSide(signal.getSignalType()))) {
+                evaluation = RiskEvaluation.HIGH;
+            }
             riskEvaluations.put(signal, evaluation);
         }
 
         return riskEvaluations;
     }
 
+    /**
+     * Регистрирует сделку перед отправкой ордера, если за последние {@link #correlationHoldMillis} не было
+     * выставленных сделок в ту же сторону по символам с корреляцией выше {@link #maxCorrelation}.
+     * Проверка и запись атомарны, поэтому из двух сделок по коррелирующим символам выставляется только одна.
+     *
+     * @return true, если сделку можно выставлять
+     */
+    @Override
+    public synchronized boolean registerTrade(Trade trade) {
+        if (correlatesWithRegisteredTrade(trade.getSymbol(), trade.getSide())) {
+            return false;
+        }
+        registeredTrades.put(trade.getSymbol(), new RegisteredTrade(trade, System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Снимает регистрацию сделки, ордер которой не выставился. Более новая сделка по символу не затрагивается.
+     */
+    @Override
+    public void releaseTrade(Trade trade) {
+        registeredTrades.computeIfPresent(trade.getSymbol(), (symbol, registered) -> registered.trade() == trade ? null : registered);
+    }
+
+    private boolean correlatesWithRegisteredTrade(String symbol, Side side) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, RegisteredTrade> entry : registeredTrades.entrySet()) {
+            RegisteredTrade registered = entry.getValue();
+            if (entry.getKey().equals(symbol) || registered.trade().getSide() != side
+                    || now - registered.time() > correlationHoldMillis) {
+                continue;
+            }
+            // NaN, пока по паре мало данных, не блокирует сигнал
+            double correlation = marketCorrelation.getCorrelation(symbol, entry.getKey());
+            if (correlation > maxCorrelation) {
+                log.info("{} {} correlates with {} ({}) traded {} ms ago, risk is high",
+                        side, symbol, entry.getKey(), correlation, now - registered.time());
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Подготавливает торговую сделку на основе торгового сигнала и оценки риска.
      *
@@ -138,4 +213,7 @@ public class StandartRiskManager implements RiskManager {
 
         return amount;
     }
+
+    private record RegisteredTrade(Trade trade, long time) {
+    }
 }
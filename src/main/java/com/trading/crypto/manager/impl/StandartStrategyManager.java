@@ -1,12 +1,13 @@
 package com.trading.crypto.manager.impl;
 
 import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.analyzer.MarketVolume;
 import com.trading.crypto.client.BybitClient;
-import com.trading.crypto.data.impl.HistoricalDataCollector;
 import com.trading.crypto.manager.StrategyManager;
 import com.trading.crypto.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
@@ -21,7 +22,25 @@ public class StandartStrategyManager implements StrategyManager {
     private BybitClient bybitClient;
 
     @Autowired
-    private HistoricalDataCollector dataCollector;
+    private MarketVolume marketVolume;
+
+    /**
+     * Окно в барах, по которому ищется пиковый объем. Должно быть среди {@code stalker.volume.windows}.
+     */
+    @Value("${stalker.strategy.peak-volume-window:500}")
+    private int peakVolumeWindow;
+
+    /**
+     * Входить ли по предварительным сигналам индикаторов внутри бара. Имеет смысл только вместе
+     * с {@code stalker.intrabar.enabled=true}, иначе незакрытые бары не приходят.
+     */
+    @Value("${stalker.strategy.intrabar-signals:false}")
+    private boolean intrabarSignals;
+
+    @Override
+    public boolean acceptsIntrabarSignals() {
+        return intrabarSignals;
+    }
 
     @Override
     public List<TradeSignal> analyzeData(List<Signal> indicatorsAnalysisResult, List<PinBarSignal> pinBarAnalysisResult) {
@@ -30,7 +49,7 @@ public class StandartStrategyManager implements StrategyManager {
         // Обработка сигналов анализа индикаторов
         for (Signal signal : indicatorsAnalysisResult) {
             String symbol = signal.getAsset();
-            double entryPrice = signal.getPrice().doubleValue();
+            double entryPrice = signal.getPrice();
             long timestamp = signal.getTimestamp();
             AnalysisResult result = signal.getAnalysisResult();
 
@@ -88,7 +107,8 @@ public class StandartStrategyManager implements StrategyManager {
     }
 
     /**
-     * Проверяет, превышает ли текущий объем заданный процент от пикового объема за все доступные свечи.
+     * Проверяет, превышает ли текущий объем заданный процент от пикового объема за последние {@link #peakVolumeWindow} свечей.
+     * Пиковый объем берется из {@link MarketVolume} за O(1).
      *
      * @param volume      текущий объем.
      * @param symbol      торговый символ.
@@ -99,23 +119,17 @@ public class StandartStrategyManager implements StrategyManager {
         // коэффициент для уменьшения пикового объема (например, 0.8 для 80% от пикового объема).
         double peakVolumeMultiplier = 0.3;
 
-        List<KlineElement> klines = dataCollector.getKlineCache().get(symbol).get(interval);
+        double peakVolume = marketVolume.getMax(symbol, interval, peakVolumeWindow);
 
-        if (klines == null || klines.isEmpty()) {
+        if (Double.isNaN(peakVolume)) {
             log.warn("Not enough data for symbol: {} and interval: {}", symbol, interval);
             return false; // Если нет данных, возвращаем false
         }
 
-        // Находим максимальный объем
-        BigDecimal peakVolume = klines.stream()
-                .map(KlineElement::getVolume)
-                .max(BigDecimal::compareTo)
-                .orElse(BigDecimal.ZERO);
-
         // Уменьшаем пиковый объем на заданный коэффициент
-        BigDecimal thresholdVolume = peakVolume.multiply(BigDecimal.valueOf(peakVolumeMultiplier));
+        double thresholdVolume = peakVolume * peakVolumeMultiplier;
 
-        boolean isHighVolume = volume.compareTo(thresholdVolume) > 0;
+        boolean isHighVolume = volume.doubleValue() > thresholdVolume;
 
         log.info("Volume check for symbol: {}, interval: {} - Current Volume: {}, Peak Volume: {}, Threshold Volume: {}, High Volume: {}",
                 symbol, interval, volume, peakVolume, thresholdVolume, isHighVolume);
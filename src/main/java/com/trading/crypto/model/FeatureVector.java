@@ -0,0 +1,74 @@
+package com.trading.crypto.model;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Значения всех настроенных индикаторов символа и интервала на закрытии бара.
+ * Признаки адресуются по имени из конфигурации, например "rsi(14)" или "macd(12,26,9).signal".
+ * Значение непрогретого индикатора - NaN.
+ */
+public class FeatureVector {
+
+    private final String symbol;
+    private final MarketInterval interval;
+    private final long timestamp;
+
+    /**
+     * Общая для всех снимков одного графа неизменяемая схема: имя признака - индекс в {@link #values}.
+     */
+    private final Map<String, Integer> index;
+    private final double[] values;
+
+    public FeatureVector(String symbol, MarketInterval interval, long timestamp, Map<String, Integer> index, double[] values) {
+        this.symbol = symbol;
+        this.interval = interval;
+        this.timestamp = timestamp;
+        this.index = index;
+        this.values = values;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public MarketInterval getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return время открытия бара, на закрытии которого сняты значения
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Set<String> getNames() {
+        return index.keySet();
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return значение признака или NaN, если признак не настроен
+     */
+    public double get(String name) {
+        Integer i = index.get(name);
+        return i == null ? Double.NaN : values[i];
+    }
+
+    public boolean has(String name) {
+        return index.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("FeatureVector{").append(symbol).append(' ').append(interval).append(' ').append(timestamp);
+        index.forEach((name, i) -> result.append(", ").append(name).append('=').append(values[i]));
+        return result.append('}').toString();
+    }
+}
@@ -3,14 +3,23 @@ package com.trading.crypto.model;
 import com.bybit.api.client.domain.market.MarketInterval;
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import org.ta4j.core.num.Num;
 
 @Data
 @AllArgsConstructor
 public class Signal {
     private AnalysisResult analysisResult;
     private String asset;
-    private Num price;
+    private double price;
     private long timestamp;
     private MarketInterval interval;
+
+    /**
+     * Значения всех индикаторов, настроенных для символа и интервала, на момент сигнала.
+     */
+    private FeatureVector features;
+
+    /**
+     * Предварительный сигнал по незакрытому бару.
+     */
+    private boolean intrabar;
 }
@@ -2,5 +2,6 @@ package com.trading.crypto.model;
 
 public enum SignalOrigin {
     INDICATORS,
-    PIN_BAR
+    PIN_BAR,
+    AI
 }
\ No newline at end of file
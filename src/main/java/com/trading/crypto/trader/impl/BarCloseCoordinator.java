@@ -0,0 +1,140 @@
+package com.trading.crypto.trader.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.event.EventType;
+import com.trading.crypto.event.MarketEvent;
+import com.trading.crypto.event.MarketEventHandler;
+import com.trading.crypto.util.StalkerUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Запускает анализ символа по закрытию баров.
+ * <p>
+ * На каждой границе баров символа ожидаются закрытые бары всех отслеживаемых интервалов, которые на этой
+ * границе закрываются (на границе часа - и минутный, и часовой). Как только пришел последний из них,
+ * вызывается обработчик символа. Если какой-то бар опаздывает дольше {@code timeoutMillis} после первого,
+ * анализ запускается с теми данными, что есть.
+ * <p>
+ * Бары, после которых уже закрылся следующий бар того же интервала (дозагрузка пропусков),
+ * анализ не запускают.
+ */
+@Slf4j
+class BarCloseCoordinator implements MarketEventHandler {
+
+    private final Set<String> symbols;
+    private final List<MarketInterval> intervals;
+    private final long timeoutMillis;
+    private final Consumer<String> onBarClose;
+    private final Map<String, PendingClose> pendingCloses = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bar-close-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param symbols       отслеживаемые символы
+     * @param intervals     отслеживаемые интервалы
+     * @param timeoutMillis сколько ждать опоздавшие бары после первого бара границы
+     * @param onBarClose    обработчик символа, должен быстро возвращать управление
+     */
+    BarCloseCoordinator(List<String> symbols, List<MarketInterval> intervals, long timeoutMillis, Consumer<String> onBarClose) {
+        this.symbols = new HashSet<>(symbols);
+        this.intervals = intervals;
+        this.timeoutMillis = timeoutMillis;
+        this.onBarClose = onBarClose;
+    }
+
+    @Override
+    public void onEvent(MarketEvent event) {
+        if (event.getType() != EventType.BAR || !symbols.contains(event.getSymbol()) || !intervals.contains(event.getInterval())) {
+            return;
+        }
+        long closeTime = StalkerUtils.getBarCloseTime(event.getInterval(), event.getTimestamp());
+        if (System.currentTimeMillis() >= closeTime + StalkerUtils.getIntervalMillis(event.getInterval())) {
+            // Исторический бар из дозагрузки
+            return;
+        }
+        pendingCloses.computeIfAbsent(event.getSymbol(), PendingClose::new).onBar(event.getInterval(), closeTime);
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Ожидаемые и пришедшие бары текущей границы одного символа.
+     * Обновляется из потока шины событий и из таймера, поэтому методы синхронизированы.
+     */
+    private class PendingClose {
+        private final String symbol;
+        private final Set<MarketInterval> expected = EnumSet.noneOf(MarketInterval.class);
+        private final Set<MarketInterval> received = EnumSet.noneOf(MarketInterval.class);
+        private long closeTime = Long.MIN_VALUE;
+        private boolean fired;
+        private ScheduledFuture<?> timeout;
+
+        private PendingClose(String symbol) {
+            this.symbol = symbol;
+        }
+
+        private synchronized void onBar(MarketInterval interval, long barCloseTime) {
+            if (barCloseTime < closeTime) {
+                return;
+            }
+            if (barCloseTime > closeTime) {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                closeTime = barCloseTime;
+                fired = false;
+                received.clear();
+                expected.clear();
+                for (MarketInterval candidate : intervals) {
+                    if (StalkerUtils.isBarBoundary(candidate, closeTime)) {
+                        expected.add(candidate);
+                    }
+                }
+                timeout = timer.schedule(this::onTimeout, timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+
+            received.add(interval);
+            if (!fired && received.containsAll(expected)) {
+                fire();
+            }
+        }
+
+        private synchronized void onTimeout() {
+            if (!fired) {
+                Set<MarketInterval> missing = EnumSet.copyOf(expected);
+                missing.removeAll(received);
+                log.warn("Bars {} of {} closed at {} are late by {} ms, analyzing without them", missing, symbol, closeTime, timeoutMillis);
+                fire();
+            }
+        }
+
+        private void fire() {
+            fired = true;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            try {
+                onBarClose.accept(symbol);
+            } catch (Exception e) {
+                log.error("Bar close handler failed for {}", symbol, e);
+            }
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package com.trading.crypto.trader.impl;
 
 import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.analyzer.correlation.CorrelationTracker;
 import com.trading.crypto.analyzer.impl.IndicatorAnalyzer;
+import com.trading.crypto.analyzer.indicator.IndicatorRegistry;
+import com.trading.crypto.analyzer.volume.VolumeTracker;
 import com.trading.crypto.analyzer.impl.PinBarDetector;
 import com.trading.crypto.client.BybitClient;
+import com.trading.crypto.data.DataStreamer;
 import com.trading.crypto.data.impl.HistoricalDataCollector;
+import com.trading.crypto.data.impl.KlineBackfillService;
+import com.trading.crypto.data.impl.OrderBookService;
+import com.trading.crypto.data.impl.PriceCache;
+import com.trading.crypto.event.EventBus;
+import com.trading.crypto.event.EventType;
 import com.trading.crypto.manager.RiskManager;
 import com.trading.crypto.manager.StrategyManager;
 import com.trading.crypto.model.*;
@@ -13,14 +22,27 @@ import com.trading.crypto.order.impl.OrderMonitorService;
 import com.trading.crypto.trader.Trader;
 import com.trading.crypto.util.LogUtils;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Component
@@ -30,62 +52,194 @@ public class WaveTrader implements Trader {
     private final List<MarketInterval> intervals = List.of(MarketInterval.ONE_MINUTE);
 
     private final HistoricalDataCollector historicalDataCollector;
+    private final DataStreamer dataStreamer;
+    private final KlineBackfillService klineBackfillService;
+    private final OrderBookService orderBookService;
+    private final PriceCache priceCache;
+    private final EventBus eventBus;
+    private final IndicatorRegistry indicatorRegistry;
+    private final CorrelationTracker correlationTracker;
+    private final VolumeTracker volumeTracker;
     private final OrderMonitorService orderMonitorService;
-    private IndicatorAnalyzer indicatorAnalyzer;
+    private volatile IndicatorAnalyzer indicatorAnalyzer;
     private final OrderExecutor orderExecutor;
     private final RiskManager riskManager;
     private final List<StrategyManager> strategyManagers;
     private final BybitClient bybitClient;
 
+    /**
+     * Пул для параллельного анализа символов, закрывших бар.
+     */
+    private final ExecutorService analysisExecutor;
+
+    /**
+     * Выставление ордеров по результатам анализа, один поток, чтобы ордера шли по очереди.
+     */
+    private final ExecutorService orderSubmitter;
+
+    /**
+     * Сколько ждать анализа символа с момента закрытия бара. Символ, не уложившийся в срок, пропускается до следующего бара.
+     */
+    private final long analysisDeadlineMillis;
+
+    /**
+     * Сколько ждать опоздавшие бары других интервалов символа после первого закрытого бара.
+     */
+    private final long barCloseTimeoutMillis;
+
+    private volatile BarCloseCoordinator barCloseCoordinator;
+
     private static final int REQUEST_INTERVAL = 5; // Запросить баланс каждые 5 проверок
     private int checkCounter = 0; // Счетчик проверок
 
     /**
      * Текущий баланс бота в USDT, обновляется после исполнения ордера или его создания
      */
-    private BigDecimal balance;
+    private final AtomicReference<BigDecimal> balance = new AtomicReference<>();
+
+    /**
+     * Список для хранения активных ордеров, дополняется из колбэков исполнения ордеров
+     */
+    private final List<Trade> activeOrders = new CopyOnWriteArrayList<>();
+
+    /**
+     * Последние сигналы пин-баров по символам, пересчитываются подписчиком шины событий на закрытии бара
+     */
+    private final Map<String, List<PinBarSignal>> pinBarSignals = new ConcurrentHashMap<>();
 
     /**
-     * Список для хранения активных ордеров
+     * Время открытия незакрытого бара, по которому для символа уже запускался предварительный анализ.
+     * Пока бар не закрылся, повторный анализ по нему не запускается.
      */
-    private final List<Trade> activeOrders = new ArrayList<>();
+    private final Map<String, Long> intrabarTriggers = new ConcurrentHashMap<>();
 
     @Autowired
-    public WaveTrader(HistoricalDataCollector hdc, OrderExecutor oe, RiskManager rm, BybitClient bc, List<StrategyManager> sms, OrderMonitorService oms) {
+    public WaveTrader(HistoricalDataCollector hdc, DataStreamer ds, KlineBackfillService kbs, OrderBookService obs, PriceCache pc, EventBus eb, IndicatorRegistry ir, CorrelationTracker ct, VolumeTracker vt, OrderExecutor oe, RiskManager rm, BybitClient bc, List<StrategyManager> sms, OrderMonitorService oms,
+                      @Value("${stalker.trader.analysis-threads:4}") int analysisThreads,
+                      @Value("${stalker.trader.analysis-deadline-ms:10000}") long analysisDeadlineMillis,
+                      @Value("${stalker.trader.bar-close-timeout-ms:3000}") long barCloseTimeoutMillis) {
         this.historicalDataCollector = hdc;
+        this.dataStreamer = ds;
+        this.klineBackfillService = kbs;
+        this.orderBookService = obs;
+        this.priceCache = pc;
+        this.eventBus = eb;
+        this.indicatorRegistry = ir;
+        this.correlationTracker = ct;
+        this.volumeTracker = vt;
         this.orderExecutor = oe;
         this.riskManager = rm;
         this.strategyManagers = sms;
         this.bybitClient = bc;
         this.orderMonitorService = oms;
+        this.analysisDeadlineMillis = analysisDeadlineMillis;
+        this.barCloseTimeoutMillis = barCloseTimeoutMillis;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.analysisExecutor = Executors.newFixedThreadPool(analysisThreads, runnable -> {
+            Thread thread = new Thread(runnable, "analysis-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.orderSubmitter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-submitter");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @PostConstruct
     private void init() {
         if (indicatorAnalyzer == null) {
             log.info("Loading....");
-            historicalDataCollector.init(symbols, intervals);
-
-            TimerTask task = new TimerTask() {
-                @Override
-                public void run() {
-                    log.info("Initialization executed after 1 minute delay");
-                    if (!historicalDataCollector.getKlineCache().isEmpty()) {
-                        indicatorAnalyzer = new IndicatorAnalyzer(historicalDataCollector.getKlineCache(), symbols);
-                        historicalDataCollector.setAnalyser(indicatorAnalyzer);
-                        log.info("IndicatorAnalyzer Initialized!");
-                    }
+            // Бары эталона рынка нужны для беты к нему, торговать по нему не нужно
+            List<String> marketSymbols = Stream.concat(symbols.stream(), Stream.of(correlationTracker.getBenchmark())).distinct().toList();
+            List<MarketInterval> marketIntervals = Stream.concat(intervals.stream(), Stream.of(correlationTracker.getInterval())).distinct().toList();
+            historicalDataCollector.init(marketSymbols, marketIntervals).whenComplete((ignored, ex) -> {
+                if (ex != null) {
+                    log.error("Kline history was not fully loaded, starting with available data", ex);
                 }
-            };
+                if (historicalDataCollector.hasData()) {
+                    indicatorAnalyzer = historicalDataCollector.attachAnalyser(
+                            () -> new IndicatorAnalyzer(historicalDataCollector, indicatorRegistry, symbols, intervals));
+                    log.info("IndicatorAnalyzer Initialized!");
+                    subscribePinBars();
+                    correlationTracker.start(symbols);
+                    volumeTracker.start(symbols, intervals);
+                    subscribeBarClose();
+                    subscribeIntrabar();
+                }
+                // Глубокая история догружается в архив в фоне, торговля ее не ждет
+                klineBackfillService.backfill(symbols, intervals);
+            });
+
+            // Новые бары приходят через WebSocket, REST используется только для дозагрузки пропусков
+            dataStreamer.streamData();
+            orderBookService.subscribe(symbols);
+            priceCache.subscribe(symbols);
+        }
+    }
+
+    /**
+     * Поиск пин-баров выполняется в своем потоке шины событий на каждом закрытом баре отслеживаемых интервалов.
+     */
+    private void subscribePinBars() {
+        for (String symbol : symbols) {
+            pinBarSignals.put(symbol, PinBarDetector.analyze(symbol, intervals, historicalDataCollector));
+        }
+        eventBus.subscribe("pin-bar", event -> {
+            if (event.getType() == EventType.BAR && intervals.contains(event.getInterval()) && symbols.contains(event.getSymbol())) {
+                pinBarSignals.put(event.getSymbol(), PinBarDetector.analyze(event.getSymbol(), intervals, historicalDataCollector));
+            }
+        });
+    }
+
+    /**
+     * Торговый цикл символа запускается закрытием его баров. Подписчик зависит от анализатора индикаторов,
+     * поиска пин-баров, корреляций и объемов, поэтому видит бар только после того, как они его обработали.
+     */
+    private void subscribeBarClose() {
+        barCloseCoordinator = new BarCloseCoordinator(symbols, intervals, barCloseTimeoutMillis, this::onBarClose);
+        eventBus.subscribe("bar-close", barCloseCoordinator, IndicatorAnalyzer.class.getSimpleName(), "pin-bar",
+                CorrelationTracker.CONSUMER_NAME, VolumeTracker.CONSUMER_NAME);
+    }
 
-            // Запуск задачи с задержкой в 1 минуту (60000 миллисекунд)
-            new Timer().schedule(task, 60000);
+    /**
+     * Предварительный анализ по незакрытым барам нужен, только если его принимает хотя бы одна стратегия.
+     * По каждому бару символа он запускается один раз, при первом сигнале индикаторов внутри бара.
+     */
+    private void subscribeIntrabar() {
+        if (strategyManagers.stream().noneMatch(StrategyManager::acceptsIntrabarSignals)) {
+            return;
         }
+        eventBus.subscribe("intrabar", event -> {
+            if (event.getType() != EventType.INTRABAR || !intervals.contains(event.getInterval())
+                    || !symbols.contains(event.getSymbol())) {
+                return;
+            }
+            Long triggered = intrabarTriggers.get(event.getSymbol());
+            if (triggered != null && triggered >= event.getTimestamp()) {
+                return;
+            }
+            if (!indicatorAnalyzer.analyzeIntrabar(event.getSymbol(), intervals).isEmpty()) {
+                intrabarTriggers.put(event.getSymbol(), event.getTimestamp());
+                submitAnalysis(event.getSymbol(), true);
+            }
+        }, IndicatorAnalyzer.class.getSimpleName());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (barCloseCoordinator != null) {
+            barCloseCoordinator.shutdown();
+        }
+        analysisExecutor.shutdownNow();
+        orderSubmitter.shutdownNow();
     }
 
     /**
-     * Основной метод для анализа и торговли.
-     * Выполняется с фиксированным интервалом времени.
+     * Обслуживание по расписанию: обновление баланса и проверка активных ордеров.
+     * Сам анализ запускается закрытием баров, см. {@link #onBarClose(String)}.
      */
     @Override
     @Scheduled(fixedRate = 60000)
@@ -95,63 +249,123 @@ public class WaveTrader implements Trader {
             return;
         }
 
-        // Обновляем баланс перед началом торгового цикла
         refreshBalance();
         orderMonitorService.monitorOrders(activeOrders);
+    }
 
-        // Проходим по каждому торговому символу
-        for (String symbol : symbols) {
-            analyzeSymbol(symbol);
+    /**
+     * Запускает анализ символа, у которого закрылись бары. Анализ выполняется в {@link #analysisExecutor}
+     * со сроком {@link #analysisDeadlineMillis}, ордера по его результатам выставляются в {@link #orderSubmitter},
+     * поэтому медленный REST запрос не задерживает анализ других символов.
+     *
+     * @param symbol торговый символ
+     */
+    private void onBarClose(String symbol) {
+        submitAnalysis(symbol, false);
+    }
+
+    /**
+     * @param symbol   торговый символ
+     * @param intrabar true - анализ предварительных сигналов незакрытого бара стратегиями, которые их принимают
+     */
+    private void submitAnalysis(String symbol, boolean intrabar) {
+        BigDecimal currentBalance = balance.get();
+        if (currentBalance == null) {
+            log.debug("Balance is not loaded yet, skipping analysis of {}", symbol);
+            return;
         }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(analysisDeadlineMillis);
+        CompletableFuture<Map<TradeSignal, RiskEvaluation>> analysis = new CompletableFuture<>();
+        Future<?> task = analysisExecutor.submit(() -> {
+            try {
+                analysis.complete(analyzeSymbol(symbol, currentBalance, intrabar, deadline));
+            } catch (Throwable e) {
+                analysis.completeExceptionally(e);
+            }
+        });
+        // Просроченный анализ прерывается и освобождает поток пула, его результат уже никому не нужен
+        analysis.orTimeout(analysisDeadlineMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, ex) -> {
+                    if (ex != null) {
+                        task.cancel(true);
+                    }
+                });
+        analysis
+                .thenAcceptAsync(riskEvaluations -> {
+                    if (!riskEvaluations.isEmpty()) {
+                        processRiskEvaluations(riskEvaluations);
+                    }
+                }, orderSubmitter)
+                .exceptionally(ex -> {
+                    if (ex.getCause() instanceof TimeoutException) {
+                        log.warn("Analysis of {} missed the {} ms deadline, skipped until next bar", symbol, analysisDeadlineMillis);
+                    } else {
+                        log.error("Failed to analyze symbol {}", symbol, ex);
+                    }
+                    return null;
+                });
     }
 
     /**
-     * Анализирует данные индикаторов и пин-баров для конкретного символа.
+     * Анализирует данные индикаторов и пин-баров для конкретного символа и оценивает риски найденных сигналов.
+     * Выполняется в пуле анализа и не выставляет ордера.
      *
-     * @param symbol торговый символ
+     * @param symbol       торговый символ
+     * @param cycleBalance баланс на момент закрытия бара
+     * @param intrabar     true - анализ предварительных сигналов незакрытого бара
+     * @param deadline     срок анализа по {@link System#nanoTime()}
+     * @return оценки рисков по торговым сигналам, пустая карта, если сигналов нет или срок вышел
      */
-    private void analyzeSymbol(String symbol) {
+    private Map<TradeSignal, RiskEvaluation> analyzeSymbol(String symbol, BigDecimal cycleBalance, boolean intrabar, long deadline) {
         // Анализируем индикаторы
-        List<Signal> indicatorsAnalysisResult = analyzeIndicators(symbol);
-        // Анализируем пин-бары
-        List<PinBarSignal> pinBarAnalysisResult = analyzePinBars(symbol);
+        List<Signal> indicatorsAnalysisResult = analyzeIndicators(symbol, intrabar);
+        // Анализируем пин-бары. Они ищутся только по закрытым барам и уже отработаны на закрытии
+        List<PinBarSignal> pinBarAnalysisResult = intrabar ? List.of() : analyzePinBars(symbol);
         // Анализируем стратегии
-        List<TradeSignal> signals = analyzeStrategy(indicatorsAnalysisResult, pinBarAnalysisResult);
+        List<TradeSignal> signals = analyzeStrategy(indicatorsAnalysisResult, pinBarAnalysisResult, intrabar);
 
         if (signals.isEmpty()) {
-            return;
+            return Map.of();
         }
 
-        log.info("------------------------------- Signals for symbol: " + symbol + " -----------------------------------------------/");
+        // Оценка риска не начинается после срока: ее результат все равно будет отброшен
+        if (System.nanoTime() - deadline > 0 || Thread.currentThread().isInterrupted()) {
+            log.warn("Analysis of {} is past its deadline, risk is not evaluated", symbol);
+            return Map.of();
+        }
+
+        log.info("------------------------------- " + (intrabar ? "Intrabar signals" : "Signals") + " for symbol: " + symbol + " -----------------------------------------------/");
 
         // Оцениваем риски для выставления сделки
-        Map<TradeSignal, RiskEvaluation> riskEvaluations = evaluateRisk(signals, indicatorsAnalysisResult);
+        Map<TradeSignal, RiskEvaluation> riskEvaluations = evaluateRisk(signals, indicatorsAnalysisResult, cycleBalance);
         log.info("Risk Evaluation results for {}: {}", symbol, riskEvaluations);
-
-        // Обрабатываем результаты оценки рисков
-        processRiskEvaluations(riskEvaluations);
+        return riskEvaluations;
     }
 
     /**
      * Выполняет анализ индикаторов для указанного символа.
      *
-     * @param symbol торговый символ
+     * @param symbol   торговый символ
+     * @param intrabar true - предварительные сигналы по незакрытым барам
      * @return список сигналов индикаторов
      */
-    private List<Signal> analyzeIndicators(String symbol) {
-        List<Signal> indicatorsAnalysisResult = indicatorAnalyzer.analyze(symbol, intervals);
+    private List<Signal> analyzeIndicators(String symbol, boolean intrabar) {
+        List<Signal> indicatorsAnalysisResult = intrabar
+                ? indicatorAnalyzer.analyzeIntrabar(symbol, intervals)
+                : indicatorAnalyzer.analyze(symbol, intervals);
         LogUtils.logAnalysis(indicatorsAnalysisResult);
         return indicatorsAnalysisResult;
     }
 
     /**
-     * Выполняет анализ пин-баров для указанного символа.
+     * Возвращает последние сигналы пин-баров для указанного символа.
      *
      * @param symbol торговый символ
      * @return список сигналов пин-баров
      */
     private List<PinBarSignal> analyzePinBars(String symbol) {
-        List<PinBarSignal> pinBarAnalysisResult = PinBarDetector.analyze(symbol, intervals, historicalDataCollector.getKlineCache());
+        List<PinBarSignal> pinBarAnalysisResult = pinBarSignals.getOrDefault(symbol, List.of());
         LogUtils.logPinBarSignals(pinBarAnalysisResult);
         return pinBarAnalysisResult;
     }
@@ -161,10 +375,12 @@ public class WaveTrader implements Trader {
      *
      * @param indicatorsAnalysisResult результаты анализа индикаторов
      * @param pinBarAnalysisResult     результаты анализа пин-баров
+     * @param intrabar                 true - участвуют только стратегии, принимающие предварительные сигналы
      * @return список торговых сигналов
      */
-    private List<TradeSignal> analyzeStrategy(List<Signal> indicatorsAnalysisResult, List<PinBarSignal> pinBarAnalysisResult) {
+    private List<TradeSignal> analyzeStrategy(List<Signal> indicatorsAnalysisResult, List<PinBarSignal> pinBarAnalysisResult, boolean intrabar) {
         return strategyManagers.stream()
+                .filter(manager -> !intrabar || manager.acceptsIntrabarSignals())
                 .map(manager -> manager.analyzeData(indicatorsAnalysisResult, pinBarAnalysisResult))
                 .filter(Objects::nonNull)
                 .flatMap(List::stream)
@@ -177,10 +393,11 @@ public class WaveTrader implements Trader {
      *
      * @param signals                  список торговых сигналов
      * @param indicatorsAnalysisResult результаты анализа индикаторов
+     * @param cycleBalance             баланс на момент закрытия бара
      * @return карта с торговыми сигналами и их оценкой рисков
      */
-    private Map<TradeSignal, RiskEvaluation> evaluateRisk(List<TradeSignal> signals, List<Signal> indicatorsAnalysisResult) {
-        return riskManager.evaluateRisk(signals, indicatorsAnalysisResult, balance);
+    private Map<TradeSignal, RiskEvaluation> evaluateRisk(List<TradeSignal> signals, List<Signal> indicatorsAnalysisResult, BigDecimal cycleBalance) {
+        return riskManager.evaluateRisk(signals, indicatorsAnalysisResult, cycleBalance);
     }
 
     /**
@@ -214,13 +431,14 @@ public class WaveTrader implements Trader {
         LogUtils.logTradeSignalsToFile(list);
 
         // Проверяем баланс перед исполнением сделки
-        if (balance.doubleValue() < 5) {
-            log.info("Balance is less than 5 USDT, current: {}. Return", balance);
+        BigDecimal currentBalance = balance.get();
+        if (currentBalance == null || currentBalance.doubleValue() < 5) {
+            log.info("Balance is less than 5 USDT, current: {}. Return", currentBalance);
             return;
         }
 
         // Оцениваем и подготавливаем сделку
-        Trade trade = riskManager.evaluateAndPrepareTrade(signal, evaluation, balance);
+        Trade trade = riskManager.evaluateAndPrepareTrade(signal, evaluation, currentBalance);
         log.info("RiskManager give trade {}", trade);
 
         if (trade != null) {
@@ -235,36 +453,47 @@ public class WaveTrader implements Trader {
      * @param trade торговая сделка
      */
     private void executeTrade(Trade trade) {
+        // Регистрация и проверка корреляции в потоке выставления ордеров, до отправки ордера
+        if (!riskManager.registerTrade(trade)) {
+            log.info("Trade {} correlates with a recent trade, no trade", trade);
+            return;
+        }
         try {
             orderExecutor.executeOrder(trade).thenAccept(orderId -> {
                 if (orderId != null) {
                     trade.setOrderId(orderId);
                     log.info("Trade executed: {}", trade);
                 } else {
+                    riskManager.releaseTrade(trade);
                     log.error("Order ID is null for trade: {}", trade);
                 }
 
                 // Обновляем баланс и добавляем сделку в список активных ордеров
-                balance = bybitClient.getBalance();
+                balance.set(bybitClient.getBalance());
                 activeOrders.add(trade);
 
                 // Сохранение сделки в файл
                 LogUtils.logTradeToFile(trade);
             }).exceptionally(ex -> {
+                // Ошибка после выставления ордера регистрацию не снимает
+                if (trade.getOrderId() == null) {
+                    riskManager.releaseTrade(trade);
+                }
                 log.error("Failed to execute trade: {}", trade, ex);
                 return null;
             });
         } catch (Exception e) {
+            riskManager.releaseTrade(trade);
             log.error("Failed to execute trade: {}", trade, e);
         }
     }
 
     private void refreshBalance() {
         if (checkCounter == 0 || checkCounter++ >= REQUEST_INTERVAL) {
-            balance = bybitClient.getBalance();
+            balance.set(bybitClient.getBalance());
             checkCounter = 1; // Сброс счетчика после обновления баланса
 
-            log.info("Balance: {}", balance);
+            log.info("Balance: {}", balance.get());
         }
     }
 
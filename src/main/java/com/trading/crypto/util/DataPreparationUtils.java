@@ -1,31 +1,28 @@
 package com.trading.crypto.util;
 
-import com.trading.crypto.model.KlineElement;
-
-import java.util.List;
+import com.trading.crypto.data.KlineSeries;
 
 public class DataPreparationUtils {
-    public static double[][] prepareMarketData(List<KlineElement> klineElements) {
-        int size = klineElements.size();
+    public static double[][] prepareMarketData(KlineSeries klineSeries) {
+        int size = klineSeries.size();
         double[][] marketData = new double[size][5];
         for (int i = 0; i < size; i++) {
-            KlineElement kline = klineElements.get(i);
-            marketData[i][0] = kline.getOpenPrice().doubleValue();
-            marketData[i][1] = kline.getHighPrice().doubleValue();
-            marketData[i][2] = kline.getLowPrice().doubleValue();
-            marketData[i][3] = kline.getClosePrice().doubleValue();
-            marketData[i][4] = kline.getVolume().doubleValue();
+            marketData[i][0] = klineSeries.getOpen(i);
+            marketData[i][1] = klineSeries.getHigh(i);
+            marketData[i][2] = klineSeries.getLow(i);
+            marketData[i][3] = klineSeries.getClose(i);
+            marketData[i][4] = klineSeries.getVolume(i);
         }
         return marketData;
     }
 
-    public static double[] prepareLabels(List<KlineElement> klineElements) {
-        int size = klineElements.size();
+    public static double[] prepareLabels(KlineSeries klineSeries) {
+        int size = klineSeries.size();
         double[] labels = new double[size];
         for (int i = 0; i < size - 1; i++) {
-            labels[i] = klineElements.get(i + 1).getClosePrice().doubleValue();
+            labels[i] = klineSeries.getClose(i + 1);
         }
-        labels[size - 1] = klineElements.get(size - 1).getClosePrice().doubleValue(); // последний элемент
+        labels[size - 1] = klineSeries.getClose(size - 1); // последний элемент
         return labels;
     }
 }
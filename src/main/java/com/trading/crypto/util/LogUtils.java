@@ -6,7 +6,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.trading.crypto.model.*;
 import lombok.extern.slf4j.Slf4j;
-import org.ta4j.core.num.Num;
 
 import java.io.File;
 import java.io.IOException;
@@ -246,7 +245,7 @@ public class LogUtils {
      * @param bearishCciDivergence - есть ли медвежья дивергенция CCI
      */
     public static void logAnalysis(String symbol, MarketInterval interval,
-                                   Num lastPrice, Num lastRSI, Num lastCCI, Num lastSMA, boolean isPriceAboveSMA,
+                                   double lastPrice, double lastRSI, double lastCCI, double lastSMA, boolean isPriceAboveSMA,
                                    Boolean bullishRsiDivergence, Boolean bearishRsiDivergence,
                                    Boolean bullishCciDivergence, Boolean bearishCciDivergence) {
 
@@ -1,17 +1,14 @@
 package com.trading.crypto.util;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.trading.crypto.model.KlineElement;
-import org.ta4j.core.BaseBar;
-import org.ta4j.core.num.PrecisionNum;
+import com.bybit.api.client.domain.market.MarketInterval;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Duration;
 import java.time.Instant;
-import java.time.ZoneId;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.*;
 
 public class StalkerUtils {
@@ -19,29 +16,70 @@ public class StalkerUtils {
     // Список символов, для которых округляем amount до целого числа
     private static final Set<String> WHOLE_NUMBER_SYMBOLS = new HashSet<>(Arrays.asList("FTMUSDT", "GMTUSDT", "ADAUSDT", "1000PEPEUSDT", "NOTUSDT", "PEOPLEUSDT"));
 
-    public static BaseBar convertToBaseBar(KlineElement klineElement) {
-        return new BaseBar(
-                Duration.ofMinutes(1), // Продолжительность бара, например, 1 минута
-                Instant.ofEpochMilli(klineElement.getTimestamp()).atZone(ZoneId.systemDefault()),
-                PrecisionNum.valueOf(klineElement.getOpenPrice().doubleValue()),
-                PrecisionNum.valueOf(klineElement.getHighPrice().doubleValue()),
-                PrecisionNum.valueOf(klineElement.getLowPrice().doubleValue()),
-                PrecisionNum.valueOf(klineElement.getClosePrice().doubleValue()),
-                PrecisionNum.valueOf(klineElement.getVolume().doubleValue()),
-                PrecisionNum.valueOf(klineElement.getTurnover().doubleValue()));
+    /**
+     * Длительность временного интервала в миллисекундах.
+     * Месячный интервал считается равным 30 дням.
+     *
+     * @param interval временной интервал
+     * @return длительность интервала в миллисекундах
+     */
+    public static long getIntervalMillis(MarketInterval interval) {
+        return switch (interval.getIntervalId()) {
+            case "D" -> Duration.ofDays(1).toMillis();
+            case "W" -> Duration.ofDays(7).toMillis();
+            case "M" -> Duration.ofDays(30).toMillis();
+            default -> Duration.ofMinutes(Long.parseLong(interval.getIntervalId())).toMillis();
+        };
+    }
+
+    /**
+     * Время закрытия бара (открытия следующего) в миллисекундах.
+     * В отличие от {@link #getIntervalMillis(MarketInterval)} учитывает реальную длину месяца.
+     *
+     * @param interval временной интервал
+     * @param openTime время открытия бара
+     * @return время закрытия бара
+     */
+    public static long getBarCloseTime(MarketInterval interval, long openTime) {
+        if ("M".equals(interval.getIntervalId())) {
+            return Instant.ofEpochMilli(openTime).atZone(ZoneOffset.UTC).plusMonths(1).toInstant().toEpochMilli();
+        }
+        return openTime + getIntervalMillis(interval);
     }
 
-    public static Map<String, Object> getMapFromResponse(Object response) {
-        // Создаём объект ObjectMapper для разбора JSON
-        ObjectMapper mapper = new ObjectMapper();
-        Map<String, Object> map;
-        try {
-            map = mapper.readValue(mapper.writeValueAsString(response), new TypeReference<LinkedHashMap<String, Object>>() {
-            });
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+    /**
+     * Проверяет, закрывается ли в момент {@code time} бар интервала. Недельные бары Bybit начинаются
+     * в понедельник, месячные - первого числа, все остальные выровнены по эпохе UTC.
+     *
+     * @param interval временной интервал
+     * @param time     время в миллисекундах
+     * @return true, если {@code time} - граница баров интервала
+     */
+    public static boolean isBarBoundary(MarketInterval interval, long time) {
+        return switch (interval.getIntervalId()) {
+            case "M" -> {
+                ZonedDateTime dateTime = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC);
+                yield dateTime.getDayOfMonth() == 1 && dateTime.toLocalTime().equals(LocalTime.MIDNIGHT);
+            }
+            // Эпоха UTC приходится на четверг, до понедельника 4 дня
+            case "W" -> Math.floorMod(time - Duration.ofDays(4).toMillis(), getIntervalMillis(interval)) == 0;
+            default -> time % getIntervalMillis(interval) == 0;
+        };
+    }
+
+    /**
+     * Возвращает {@link MarketInterval} по идентификатору интервала Bybit (например, "1", "60", "D").
+     *
+     * @param intervalId идентификатор интервала из топика или ответа Bybit
+     * @return временной интервал
+     */
+    public static MarketInterval toMarketInterval(String intervalId) {
+        for (MarketInterval interval : MarketInterval.values()) {
+            if (interval.getIntervalId().equals(intervalId)) {
+                return interval;
+            }
         }
-        return map;
+        throw new IllegalArgumentException("Unknown market interval: " + intervalId);
     }
 
     /**
@@ -0,0 +1,114 @@
+package com.trading.crypto.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private static final double[] PERCENTILES = {0, 1, 25, 50, 90, 99, 99.9, 100};
+
+    @Test
+    void returnsNaNWithoutSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(Double.NaN, histogram.getPercentile(50));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(100.5));
+    }
+
+    @Test
+    void keepsSmallLatenciesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 0; micros < 8; micros++) {
+            histogram.record(micros * 1000L + 999);
+        }
+
+        assertEquals(0.0, histogram.getPercentile(0));
+        assertEquals(3.0, histogram.getPercentile(50));
+        assertEquals(7.0, histogram.getPercentile(100));
+        assertEquals(7, histogram.getMax());
+    }
+
+    @Test
+    void boundsPercentileErrorByBucketWidth() {
+        Random random = new Random(11);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] samples = new long[100_000];
+        for (int i = 0; i < samples.length; i++) {
+            // Логнормальное распределение с длинным хвостом, от микросекунд до секунд
+            samples[i] = (long) Math.exp(5 + 2.5 * random.nextGaussian());
+            histogram.record(samples[i] * 1000);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(samples.length, histogram.getCount());
+        assertEquals(samples[samples.length - 1], histogram.getMax());
+        for (double percentile : PERCENTILES) {
+            long exact = samples[Math.max(0, (int) Math.ceil(percentile / 100 * samples.length) - 1)];
+            double estimate = histogram.getPercentile(percentile);
+            // Верхняя граница корзины: не меньше точного значения и не больше чем на 1/8 выше
+            assertTrue(estimate >= exact && estimate <= exact + exact / 8.0 + 1,
+                    "percentile " + percentile + ": exact " + exact + ", estimate " + estimate);
+        }
+    }
+
+    @Test
+    void clampsNegativeAndHugeLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5_000);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0.0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE / 1000, histogram.getMax());
+        assertEquals(Long.MAX_VALUE / 1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    void countsEveryConcurrentSample() throws Exception {
+        int threads = 4;
+        int samples = 50_000;
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            boolean[] numbers = new boolean[threads * samples + 1];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < samples; i++) {
+                        long number = histogram.record(1000);
+                        // Номер замера уникален, поэтому ровно один поток увидит каждое кратное периоду отчета
+                        synchronized (numbers) {
+                            assertFalse(numbers[(int) number], "duplicate sample number " + number);
+                            numbers[(int) number] = true;
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals((long) threads * samples, histogram.getCount());
+        assertEquals(1.0, histogram.getPercentile(100));
+    }
+}
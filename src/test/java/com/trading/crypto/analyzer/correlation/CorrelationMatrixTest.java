@@ -0,0 +1,132 @@
+package com.trading.crypto.analyzer.correlation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorrelationMatrixTest {
+
+    @Test
+    void computesExactStatisticsOfLinearPair() {
+        CorrelationMatrix matrix = new CorrelationMatrix(2, 10, 3);
+        double[] x = {0.01, -0.02, 0.015, 0.003, -0.007};
+        for (int bar = 0; bar < x.length; bar++) {
+            matrix.update(0, bar, x[bar]);
+            matrix.update(1, bar, 2 * x[bar] + 0.001);
+        }
+
+        assertEquals(5, matrix.getObservations(0, 1));
+        assertEquals(1.0, matrix.getCorrelation(0, 1), 1e-12);
+        assertEquals(2.0, matrix.getBeta(1, 0), 1e-12);
+        assertEquals(0.5, matrix.getBeta(0, 1), 1e-12);
+        assertEquals(matrix.getCovariance(0, 1), matrix.getCovariance(1, 0));
+    }
+
+    @Test
+    void returnsNaNWithoutEnoughData() {
+        CorrelationMatrix matrix = new CorrelationMatrix(3, 10, 3);
+        matrix.update(0, 0, 0.01);
+        matrix.update(1, 0, 0.02);
+        matrix.update(0, 1, 0.03);
+        matrix.update(1, 1, 0.01);
+
+        assertEquals(2, matrix.getObservations(0, 1));
+        assertEquals(Double.NaN, matrix.getCovariance(0, 1));
+        assertEquals(Double.NaN, matrix.getCorrelation(0, 1));
+        assertEquals(0, matrix.getObservations(0, 2));
+
+        // Постоянная доходность: дисперсия нулевая, корреляция не определена
+        for (int bar = 0; bar < 5; bar++) {
+            matrix.update(2, bar, 0.005);
+        }
+        matrix.update(0, 2, 0.02);
+        matrix.update(0, 3, -0.01);
+        matrix.update(0, 4, 0.0);
+        assertEquals(5, matrix.getObservations(0, 2));
+        assertEquals(Double.NaN, matrix.getCorrelation(0, 2));
+        assertEquals(Double.NaN, matrix.getBeta(0, 2));
+    }
+
+    @Test
+    void matchesBruteForceReference() {
+        int size = 4;
+        int window = 16;
+        Random random = new Random(42);
+        CorrelationMatrix matrix = new CorrelationMatrix(size, window, 3);
+        // Последний бар и доходность символа в каждом слоте окна, статистики по ним считаются заново
+        long[][] bars = new long[size][window];
+        double[][] values = new double[size][window];
+        for (long[] symbolBars : bars) {
+            Arrays.fill(symbolBars, -1);
+        }
+        long[] nextBar = new long[size];
+
+        for (int step = 0; step < 5000; step++) {
+            // Символы приходят вразнобой, с отставанием друг от друга и пропусками баров
+            int symbol = random.nextInt(size);
+            long bar = nextBar[symbol] + (random.nextInt(10) == 0 ? 1 + random.nextInt(window + 3) : 0);
+            nextBar[symbol] = bar + 1;
+            double value = 0.01 * Math.sin(bar * 0.7) * (symbol + 1) + 0.004 * random.nextGaussian();
+
+            matrix.update(symbol, bar, value);
+            int slot = (int) (bar % window);
+            bars[symbol][slot] = bar;
+            values[symbol][slot] = value;
+
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    assertMatches(matrix, bars, values, i, j, "step " + step + ", pair " + i + "-" + j);
+                }
+            }
+        }
+    }
+
+    private static void assertMatches(CorrelationMatrix matrix, long[][] bars, double[][] values, int i, int j, String pair) {
+        List<double[]> common = new ArrayList<>();
+        for (int slot = 0; slot < bars[i].length; slot++) {
+            if (bars[i][slot] >= 0 && bars[i][slot] == bars[j][slot]) {
+                common.add(new double[]{values[i][slot], values[j][slot]});
+            }
+        }
+
+        assertEquals(common.size(), matrix.getObservations(i, j), pair);
+        if (common.size() < 3) {
+            assertEquals(Double.NaN, matrix.getCovariance(i, j), pair);
+            return;
+        }
+        double meanX = 0;
+        double meanY = 0;
+        for (double[] xy : common) {
+            meanX += xy[0];
+            meanY += xy[1];
+        }
+        meanX /= common.size();
+        meanY /= common.size();
+        double covariance = 0;
+        double varianceX = 0;
+        double varianceY = 0;
+        for (double[] xy : common) {
+            covariance += (xy[0] - meanX) * (xy[1] - meanY);
+            varianceX += (xy[0] - meanX) * (xy[0] - meanX);
+            varianceY += (xy[1] - meanY) * (xy[1] - meanY);
+        }
+        covariance /= common.size() - 1;
+        varianceX /= common.size() - 1;
+        varianceY /= common.size() - 1;
+
+        assertClose(covariance, matrix.getCovariance(i, j), pair);
+        assertClose(covariance / Math.sqrt(varianceX * varianceY), matrix.getCorrelation(i, j), pair);
+        assertClose(covariance / varianceY, matrix.getBeta(i, j), pair);
+    }
+
+    private static void assertClose(double expected, double actual, String message) {
+        assertTrue(Math.abs(expected - actual) <= 1e-9 * Math.max(1e-6, Math.abs(expected)),
+                message + ": expected " + expected + " but was " + actual);
+    }
+}
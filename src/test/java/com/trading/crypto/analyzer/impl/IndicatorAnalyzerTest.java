@@ -0,0 +1,133 @@
+package com.trading.crypto.analyzer.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.analyzer.indicator.IndicatorRegistry;
+import com.trading.crypto.data.DataCollector;
+import com.trading.crypto.data.impl.KlineRingBuffer;
+import com.trading.crypto.model.AnalysisResult;
+import com.trading.crypto.model.FeatureVector;
+import com.trading.crypto.model.Signal;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndicatorAnalyzerTest {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final MarketInterval INTERVAL = MarketInterval.HOURLY;
+    private static final List<MarketInterval> INTERVALS = List.of(INTERVAL);
+    private static final long HOUR = 3_600_000;
+
+    private static final int HISTORY_BARS = 200;
+    private static final int LIVE_BARS = 60;
+    private static final int PREVIEWS_PER_BAR = 4;
+
+    private final IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), "macd(12,26,9),bollinger(20,2),atr(14),vwap(20)");
+
+    @Test
+    void intrabarSignalMatchesClosedBarAndLeavesNoTrace() {
+        Random random = new Random(21);
+        KlineRingBuffer history = new KlineRingBuffer(HISTORY_BARS + LIVE_BARS);
+        double price = 100;
+        for (int n = 0; n < HISTORY_BARS; n++) {
+            price = append(history, n, price, random);
+        }
+        DataCollector dataCollector = (symbol, interval) -> history.view();
+        IndicatorAnalyzer previewed = new IndicatorAnalyzer(dataCollector, registry, List.of(SYMBOL), INTERVALS);
+        IndicatorAnalyzer untouched = new IndicatorAnalyzer(dataCollector, registry, List.of(SYMBOL), INTERVALS);
+
+        int intrabarSignals = 0;
+        for (int n = HISTORY_BARS; n < HISTORY_BARS + LIVE_BARS; n++) {
+            long timestamp = n * HOUR;
+            for (int k = 0; k < PREVIEWS_PER_BAR; k++) {
+                // Обвалы и взлеты, чтобы незакрытый бар давал и сигналы, и HOLD
+                double close = price * (1 + 0.4 * (random.nextDouble() - 0.5));
+                double high = Math.max(price, close) + random.nextDouble();
+                double low = Math.min(price, close) - random.nextDouble();
+                double volume = 1 + random.nextInt(1000);
+                previewed.preview(SYMBOL, INTERVAL, timestamp, price, high, low, close, volume);
+
+                // Эталон: анализатор, которому тот же бар пришел как закрытый
+                IndicatorAnalyzer reference = new IndicatorAnalyzer(dataCollector, registry, List.of(SYMBOL), INTERVALS);
+                reference.update(SYMBOL, INTERVAL, timestamp, price, high, low, close, volume);
+                Signal expected = reference.analyze(SYMBOL, INTERVALS).get(0);
+
+                List<Signal> intrabar = previewed.analyzeIntrabar(SYMBOL, INTERVALS);
+                if (expected.getAnalysisResult() == AnalysisResult.HOLD) {
+                    assertTrue(intrabar.isEmpty(), "HOLD must not leave an intrabar signal at bar " + n);
+                } else {
+                    intrabarSignals++;
+                    assertEquals(1, intrabar.size());
+                    Signal actual = intrabar.get(0);
+                    assertTrue(actual.isIntrabar());
+                    assertEquals(expected.getAnalysisResult(), actual.getAnalysisResult(), "result at bar " + n);
+                    assertEquals(close, actual.getPrice());
+                    assertFeatures(expected.getFeatures(), actual.getFeatures(), 1e-9);
+                }
+            }
+
+            price = append(history, n, price, random);
+            previewed.update(SYMBOL, INTERVAL, history.getTimestamp(0), history.getOpen(0), history.getHigh(0),
+                    history.getLow(0), history.getClose(0), history.getVolume(0));
+            untouched.update(SYMBOL, INTERVAL, history.getTimestamp(0), history.getOpen(0), history.getHigh(0),
+                    history.getLow(0), history.getClose(0), history.getVolume(0));
+
+            // Закрытый бар снимает предварительный сигнал, а состояние совпадает с анализатором без предпросмотров
+            assertTrue(previewed.analyzeIntrabar(SYMBOL, INTERVALS).isEmpty());
+            Signal expected = untouched.analyze(SYMBOL, INTERVALS).get(0);
+            Signal actual = previewed.analyze(SYMBOL, INTERVALS).get(0);
+            assertEquals(expected.getAnalysisResult(), actual.getAnalysisResult(), "result at bar " + n);
+            assertEquals(expected.getPrice(), actual.getPrice());
+            assertFeatures(expected.getFeatures(), actual.getFeatures(), 0);
+        }
+        assertTrue(intrabarSignals > 0, "No intrabar signals were produced");
+    }
+
+    @Test
+    void ignoresPreviewOfClosedBar() {
+        Random random = new Random(22);
+        KlineRingBuffer history = new KlineRingBuffer(HISTORY_BARS);
+        double price = 100;
+        for (int n = 0; n < HISTORY_BARS; n++) {
+            price = append(history, n, price, random);
+        }
+        IndicatorAnalyzer analyzer = new IndicatorAnalyzer((symbol, interval) -> history.view(), registry, List.of(SYMBOL), INTERVALS);
+
+        // Обвал по уже закрытому бару дал бы сигнал, но бар не новее последнего учтенного
+        analyzer.preview(SYMBOL, INTERVAL, history.getTimestamp(0), price, price, price * 0.5, price * 0.5, 1000);
+        assertTrue(analyzer.analyzeIntrabar(SYMBOL, INTERVALS).isEmpty());
+
+        analyzer.preview(SYMBOL, INTERVAL, history.getTimestamp(0) + HOUR, price, price, price * 0.5, price * 0.5, 1000);
+        assertEquals(1, analyzer.analyzeIntrabar(SYMBOL, INTERVALS).size());
+    }
+
+    /**
+     * Добавляет бар {@code n} случайного блуждания, открывающийся по цене {@code open}.
+     *
+     * @return цена закрытия бара
+     */
+    private static double append(KlineRingBuffer history, int n, double open, Random random) {
+        double close = Math.max(1, open + random.nextGaussian());
+        double high = Math.max(open, close) + random.nextDouble();
+        double low = Math.min(open, close) - random.nextDouble();
+        history.append(n * HOUR, open, high, low, close, 1 + random.nextInt(1000), 0);
+        return close;
+    }
+
+    private static void assertFeatures(FeatureVector expected, FeatureVector actual, double tolerance) {
+        assertEquals(expected.getNames(), actual.getNames());
+        for (String name : expected.getNames()) {
+            double value = expected.get(name);
+            if (Double.isNaN(value)) {
+                assertEquals(Double.NaN, actual.get(name), name);
+            } else {
+                assertEquals(value, actual.get(name), tolerance * Math.max(1, Math.abs(value)), name);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.trading.crypto.analyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CciIndicatorTest {
+
+    @Test
+    void staysNaNUntilPeriodIsFull() {
+        CciIndicator cci = new CciIndicator(3);
+
+        assertEquals(Double.NaN, cci.update(11, 9, 10));
+        assertEquals(Double.NaN, cci.preview(12, 10, 11));
+        assertEquals(Double.NaN, cci.update(12, 10, 11));
+        assertFalse(cci.isReady());
+
+        // TP 10, 11, 13: среднее 34/3, среднее отклонение 10/9
+        double expected = (13 - 34.0 / 3) / (0.015 * 10 / 9);
+        assertEquals(expected, cci.preview(14, 12, 13), 1e-9);
+        assertEquals(expected, cci.update(14, 12, 13), 1e-9);
+        assertTrue(cci.isReady());
+    }
+
+    @Test
+    void returnsZeroForFlatPrices() {
+        CciIndicator cci = new CciIndicator(4);
+        for (int i = 0; i < 10; i++) {
+            cci.update(100, 100, 100);
+        }
+        assertEquals(0.0, cci.getValue());
+        assertEquals(0.0, cci.preview(100, 100, 100));
+    }
+
+    @Test
+    void matchesFullWindowRecomputation() {
+        Random random = new Random(6);
+        for (int period : new int[]{1, 7, 20}) {
+            IndicatorRegistryTest.Bars bars = new IndicatorRegistryTest.Bars(500, random);
+            CciIndicator cci = new CciIndicator(period);
+            CciIndicator twin = new CciIndicator(period);
+            for (int n = 1; n <= bars.size(); n++) {
+                int i = n - 1;
+                double preview = twin.preview(bars.high[i], bars.low[i], bars.close[i]);
+                twin.update(bars.high[i], bars.low[i], bars.close[i]);
+
+                double expected = cci(bars, n, period);
+                String message = "period " + period + ", bar " + n;
+                IndicatorRegistryTest.assertClose(expected, cci.update(bars.high[i], bars.low[i], bars.close[i]), message);
+                IndicatorRegistryTest.assertClose(expected, preview, message + " preview");
+            }
+        }
+    }
+
+    @Test
+    void doesNotDriftAfterManyPasses() {
+        Random random = new Random(8);
+        int period = 7;
+        CciIndicator cci = new CciIndicator(period);
+        IndicatorRegistryTest.Bars bars = new IndicatorRegistryTest.Bars(period, random);
+        for (int n = 1; n <= 500_000; n++) {
+            // Высокая цена и малый размах - худший случай для накопленной суммы средней
+            double close = 30_000 + random.nextDouble();
+            int i = (n - 1) % period;
+            bars.high[i] = close + random.nextDouble();
+            bars.low[i] = close - random.nextDouble();
+            bars.close[i] = close;
+            cci.update(bars.high[i], bars.low[i], bars.close[i]);
+            if (n % 50_000 == 0) {
+                // Окно лежит в массивах по кругу, последний бар - i-й
+                assertEquals(cciOfWindow(bars, i), cci.getValue(), 1e-6, "bar " + n);
+            }
+        }
+    }
+
+    private static double cci(IndicatorRegistryTest.Bars bars, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double[] typical = new double[period];
+        for (int t = 0; t < period; t++) {
+            int bar = n - period + t;
+            typical[t] = (bars.high[bar] + bars.low[bar] + bars.close[bar]) / 3;
+        }
+        return cci(typical, typical[period - 1]);
+    }
+
+    private static double cciOfWindow(IndicatorRegistryTest.Bars bars, int last) {
+        double[] typical = new double[bars.size()];
+        for (int t = 0; t < typical.length; t++) {
+            typical[t] = (bars.high[t] + bars.low[t] + bars.close[t]) / 3;
+        }
+        return cci(typical, typical[last]);
+    }
+
+    private static double cci(double[] typical, double current) {
+        double mean = 0;
+        for (double price : typical) {
+            mean += price;
+        }
+        mean /= typical.length;
+        double deviation = 0;
+        for (double price : typical) {
+            deviation += Math.abs(price - mean);
+        }
+        deviation /= typical.length;
+        return deviation == 0 ? 0 : (current - mean) / (0.015 * deviation);
+    }
+}
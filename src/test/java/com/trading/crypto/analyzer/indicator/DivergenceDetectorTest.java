@@ -0,0 +1,110 @@
+package com.trading.crypto.analyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DivergenceDetectorTest {
+
+    @Test
+    void detectsBullishDivergence() {
+        DivergenceDetector detector = filled(new double[]{100, 98, 99}, new double[]{30, 20, 25});
+
+        // Цена ниже минимума окна, осциллятор выше своего минимума
+        assertTrue(detector.previewBullish(97, 22));
+        detector.update(97, 22);
+        assertTrue(detector.isBullish());
+        assertFalse(detector.isBearish());
+    }
+
+    @Test
+    void ignoresLowerLowConfirmedByOscillator() {
+        DivergenceDetector detector = filled(new double[]{100, 98, 99}, new double[]{30, 20, 25});
+
+        detector.update(97, 19);
+        assertFalse(detector.isBullish());
+        // Равный минимум цены - не новый минимум
+        DivergenceDetector equal = filled(new double[]{100, 98, 99}, new double[]{30, 20, 25});
+        equal.update(98, 40);
+        assertFalse(equal.isBullish());
+    }
+
+    @Test
+    void detectsBearishDivergence() {
+        DivergenceDetector detector = filled(new double[]{100, 102, 101}, new double[]{60, 80, 70});
+
+        assertTrue(detector.previewBearish(103, 75));
+        detector.update(103, 75);
+        assertTrue(detector.isBearish());
+        assertFalse(detector.isBullish());
+
+        detector.update(104, 90);
+        assertFalse(detector.isBearish());
+    }
+
+    @Test
+    void waitsForFullWindow() {
+        DivergenceDetector detector = filled(new double[]{100, 98}, new double[]{30, 20});
+
+        assertFalse(detector.previewBullish(97, 25));
+        detector.update(97, 25);
+        assertFalse(detector.isBullish());
+    }
+
+    @Test
+    void skipsBarsWithoutOscillator() {
+        DivergenceDetector detector = filled(new double[]{100, 98, 99}, new double[]{30, 20, 25});
+
+        // Бары без значения осциллятора не попадают в окно и сбрасывают флаги
+        detector.update(97, 22);
+        assertTrue(detector.isBullish());
+        detector.update(50, Double.NaN);
+        assertFalse(detector.isBullish());
+        assertFalse(detector.isBearish());
+
+        // Минимум окна по-прежнему 97, а не 50
+        assertTrue(detector.previewBullish(96, 23));
+        assertFalse(detector.previewBullish(98, 23));
+    }
+
+    @Test
+    void previewDoesNotChangeState() {
+        Random random = new Random(21);
+        DivergenceDetector previewed = new DivergenceDetector(7);
+        DivergenceDetector plain = new DivergenceDetector(7);
+        for (int bar = 0; bar < 2000; bar++) {
+            double price = 100 + random.nextInt(20);
+            double oscillator = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(100);
+
+            boolean bullish = previewed.previewBullish(price, oscillator);
+            boolean bearish = previewed.previewBearish(price, oscillator);
+            for (int i = 0; i < 5; i++) {
+                previewed.previewBullish(random.nextInt(200), random.nextInt(100));
+                previewed.previewBearish(random.nextInt(200), random.nextInt(100));
+            }
+            previewed.update(price, oscillator);
+            plain.update(price, oscillator);
+
+            String message = "bar " + bar;
+            assertEquals(plain.isBullish(), previewed.isBullish(), message);
+            assertEquals(plain.isBearish(), previewed.isBearish(), message);
+            if (!Double.isNaN(oscillator)) {
+                // Предварительная проверка совпадает с результатом обновления тем же баром
+                assertEquals(bullish, previewed.isBullish(), message);
+                assertEquals(bearish, previewed.isBearish(), message);
+            }
+        }
+    }
+
+    private static DivergenceDetector filled(double[] prices, double[] oscillators) {
+        DivergenceDetector detector = new DivergenceDetector(3);
+        for (int i = 0; i < prices.length; i++) {
+            detector.update(prices[i], oscillators[i]);
+        }
+        return detector;
+    }
+}
@@ -0,0 +1,89 @@
+package com.trading.crypto.analyzer.indicator;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.model.FeatureVector;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.trading.crypto.analyzer.indicator.IndicatorRegistryTest.assertClose;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IndicatorGraphTest {
+
+    /**
+     * Индикаторы, вместе покрывающие все типы узлов: цену закрытия, EMA, SMA, стандартное отклонение,
+     * RSI, CCI, ATR, VWAP, разность (MACD) и полосы Боллинджера.
+     */
+    private static final String INDICATORS = "sma(20),ema(12),rsi(14),cci(7),atr(14),vwap(20),macd(12,26,9),bollinger(20,2)";
+
+    private static final int PREVIEWS_PER_BAR = 5;
+
+    @Test
+    void previewDoesNotChangeCommittedState() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), INDICATORS);
+        IndicatorGraph previewed = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        IndicatorGraph untouched = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        Random random = new Random(11);
+        IndicatorRegistryTest.Bars bars = new IndicatorRegistryTest.Bars(300, random);
+
+        // С первого бара, чтобы захватить и прогрев, и момент заполнения окон
+        for (int n = 0; n < bars.size(); n++) {
+            for (int k = 0; k < PREVIEWS_PER_BAR; k++) {
+                double[] candle = candle(bars, n, random);
+                previewed.preview(candle[0], candle[1], candle[2], candle[3], candle[4]);
+            }
+            previewed.update(bars.open[n], bars.high[n], bars.low[n], bars.close[n], bars.volume[n]);
+            untouched.update(bars.open[n], bars.high[n], bars.low[n], bars.close[n], bars.volume[n]);
+
+            FeatureVector expected = untouched.snapshot("BTCUSDT", MarketInterval.HOURLY, n);
+            FeatureVector actual = previewed.snapshot("BTCUSDT", MarketInterval.HOURLY, n);
+            for (String name : expected.getNames()) {
+                // Предпросмотр не должен оставлять следов, поэтому значения совпадают точно
+                assertEquals(expected.get(name), actual.get(name), name + " at bar " + n);
+            }
+        }
+    }
+
+    @Test
+    void previewEqualsUpdateOfSameBar() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), INDICATORS);
+        IndicatorGraph graph = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        Random random = new Random(12);
+        IndicatorRegistryTest.Bars bars = new IndicatorRegistryTest.Bars(120, random);
+
+        for (int n = 0; n < bars.size(); n++) {
+            for (int k = 0; k < PREVIEWS_PER_BAR; k++) {
+                double[] candle = candle(bars, n, random);
+                graph.preview(candle[0], candle[1], candle[2], candle[3], candle[4]);
+                FeatureVector preview = graph.previewSnapshot("BTCUSDT", MarketInterval.HOURLY, n);
+
+                // Эталон: граф, которому тот же бар пришел как закрытый
+                IndicatorGraph reference = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+                for (int t = 0; t < n; t++) {
+                    reference.update(bars.open[t], bars.high[t], bars.low[t], bars.close[t], bars.volume[t]);
+                }
+                reference.update(candle[0], candle[1], candle[2], candle[3], candle[4]);
+                FeatureVector committed = reference.snapshot("BTCUSDT", MarketInterval.HOURLY, n);
+
+                for (String name : committed.getNames()) {
+                    assertClose(committed.get(name), preview.get(name), name + " at bar " + n);
+                }
+            }
+            graph.update(bars.open[n], bars.high[n], bars.low[n], bars.close[n], bars.volume[n]);
+        }
+    }
+
+    /**
+     * Незакрытое состояние бара {@code n}: та же цена открытия, случайные close, high, low и объем.
+     */
+    private static double[] candle(IndicatorRegistryTest.Bars bars, int n, Random random) {
+        double open = bars.open[n];
+        double close = Math.max(1, open + 2 * random.nextGaussian());
+        double high = Math.max(open, close) + random.nextDouble();
+        double low = Math.min(open, close) - random.nextDouble();
+        return new double[]{open, high, low, close, 1 + random.nextInt(1000)};
+    }
+}
@@ -0,0 +1,255 @@
+package com.trading.crypto.analyzer.indicator;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndicatorRegistryTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void looksUpSymbolThenIntervalThenDefault() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("stalker.indicators.5", "ema(5)")
+                .withProperty("stalker.indicators.BTCUSDT.5", "rsi(7)");
+        IndicatorRegistry registry = new IndicatorRegistry(environment, "sma(3)");
+
+        IndicatorGraph symbolGraph = registry.createGraph("BTCUSDT", MarketInterval.FIVE_MINUTES, List.of());
+        assertTrue(symbolGraph.hasFeature("rsi(7)"));
+        assertFalse(symbolGraph.hasFeature("ema(5)"));
+        assertFalse(symbolGraph.hasFeature("sma(3)"));
+
+        IndicatorGraph intervalGraph = registry.createGraph("ETHUSDT", MarketInterval.FIVE_MINUTES, List.of());
+        assertTrue(intervalGraph.hasFeature("ema(5)"));
+        assertFalse(intervalGraph.hasFeature("sma(3)"));
+
+        IndicatorGraph defaultGraph = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        assertTrue(defaultGraph.hasFeature("sma(3)"));
+        assertFalse(defaultGraph.hasFeature("rsi(7)"));
+    }
+
+    @Test
+    void addsRequiredIndicatorsOnce() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), "sma(3), rsi(14)");
+
+        IndicatorGraph graph = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("rsi(14)", "cci(7)"));
+
+        assertEquals(0, graph.indexOf("sma(3)"));
+        assertEquals(1, graph.indexOf("rsi(14)"));
+        assertEquals(2, graph.indexOf("cci(7)"));
+        assertEquals(-1, graph.indexOf("cci(14)"));
+        // close, sma, rsi и cci
+        assertEquals(4, graph.getNodeCount());
+    }
+
+    @Test
+    void sharesCommonSubexpressions() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), "macd(12,26,9)");
+        int macdNodes = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of()).getNodeCount();
+
+        // MACD использует ema(12) и ema(26) как узлы, новых узлов не появляется
+        IndicatorGraph withEma = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("ema(12)", "ema(26)"));
+        assertEquals(macdNodes, withEma.getNodeCount());
+
+        IndicatorRegistry bollinger = new IndicatorRegistry(new MockEnvironment(), "bollinger(20,2)");
+        int bollingerNodes = bollinger.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of()).getNodeCount();
+        IndicatorGraph withSma = bollinger.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("sma(20)"));
+        assertEquals(bollingerNodes, withSma.getNodeCount());
+
+        IndicatorGraph graph = new IndicatorGraph();
+        assertSame(graph.close(), graph.close());
+        IndicatorNode ema = graph.node("ema(close,12)", () -> new IndicatorNodes.Ema(graph.close(), 12));
+        assertSame(ema, graph.node("ema(close,12)", () -> new IndicatorNodes.Ema(graph.close(), 12)));
+        assertEquals(2, graph.getNodeCount());
+    }
+
+    @Test
+    void rejectsInvalidDeclarations() {
+        assertThrows(IllegalArgumentException.class, () -> new IndicatorRegistry(new MockEnvironment(), "")
+                .createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("foo(3)")));
+        assertThrows(IllegalArgumentException.class, () -> new IndicatorRegistry(new MockEnvironment(), "")
+                .createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("sma()")));
+        assertThrows(IllegalArgumentException.class, () -> new IndicatorRegistry(new MockEnvironment(), "")
+                .createGraph("BTCUSDT", MarketInterval.HOURLY, List.of("sma 3")));
+    }
+
+    @Test
+    void matchesBruteForceReference() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(),
+                "sma(20),ema(12),macd(12,26,9),bollinger(20,2),atr(14),vwap(10)");
+        IndicatorGraph graph = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        Bars bars = new Bars(400, new Random(3));
+
+        for (int n = 1; n <= bars.size(); n++) {
+            int i = n - 1;
+            graph.update(bars.open[i], bars.high[i], bars.low[i], bars.close[i], bars.volume[i]);
+            String bar = "bar " + n;
+
+            double[] macd = new double[n];
+            for (int t = 0; t < n; t++) {
+                macd[t] = ema(bars.close, t + 1, 12) - ema(bars.close, t + 1, 26);
+            }
+            double[] macdLine = Arrays.stream(macd).filter(value -> !Double.isNaN(value)).toArray();
+            double signal = ema(macdLine, macdLine.length, 9);
+            double middle = mean(bars.close, n, 20);
+            double deviation = deviation(bars.close, n, 20);
+
+            assertClose(middle, feature(graph, "sma(20)"), bar + " sma");
+            assertClose(ema(bars.close, n, 12), feature(graph, "ema(12)"), bar + " ema");
+            assertClose(macd[i], feature(graph, "macd(12,26,9)"), bar + " macd");
+            assertClose(signal, feature(graph, "macd(12,26,9).signal"), bar + " macd signal");
+            assertClose(macd[i] - signal, feature(graph, "macd(12,26,9).histogram"), bar + " macd histogram");
+            assertClose(middle, feature(graph, "bollinger(20,2).middle"), bar + " bollinger middle");
+            assertClose(middle + 2 * deviation, feature(graph, "bollinger(20,2).upper"), bar + " bollinger upper");
+            assertClose(middle - 2 * deviation, feature(graph, "bollinger(20,2).lower"), bar + " bollinger lower");
+            assertClose(atr(bars, n, 14), feature(graph, "atr(14)"), bar + " atr");
+            assertClose(vwap(bars, n, 10), feature(graph, "vwap(10)"), bar + " vwap");
+        }
+    }
+
+    @Test
+    void keepsValuesNaNUntilWarmedUp() {
+        IndicatorRegistry registry = new IndicatorRegistry(new MockEnvironment(), "sma(5),bollinger(5,2),vwap(5),atr(5)");
+        IndicatorGraph graph = registry.createGraph("BTCUSDT", MarketInterval.HOURLY, List.of());
+        Bars bars = new Bars(5, new Random(5));
+
+        for (int i = 0; i < 4; i++) {
+            graph.update(bars.open[i], bars.high[i], bars.low[i], bars.close[i], bars.volume[i]);
+            for (String feature : List.of("sma(5)", "bollinger(5,2).middle", "bollinger(5,2).upper", "vwap(5)", "atr(5)")) {
+                assertEquals(Double.NaN, feature(graph, feature), feature + " after " + (i + 1) + " bars");
+            }
+        }
+        graph.update(bars.open[4], bars.high[4], bars.low[4], bars.close[4], bars.volume[4]);
+        for (String feature : List.of("sma(5)", "bollinger(5,2).middle", "bollinger(5,2).upper", "vwap(5)", "atr(5)")) {
+            assertFalse(Double.isNaN(feature(graph, feature)), feature + " after 5 bars");
+        }
+    }
+
+    private static double feature(IndicatorGraph graph, String name) {
+        return graph.getFeature(graph.indexOf(name));
+    }
+
+    /**
+     * EMA по первым {@code n} значениям, пересчитанная с начала: затравка - среднее первых {@code period}.
+     */
+    static double ema(double[] values, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double ema = 0;
+        for (int t = 0; t < period; t++) {
+            ema += values[t];
+        }
+        ema /= period;
+        for (int t = period; t < n; t++) {
+            ema += 2.0 / (period + 1) * (values[t] - ema);
+        }
+        return ema;
+    }
+
+    static double mean(double[] values, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int t = n - period; t < n; t++) {
+            sum += values[t];
+        }
+        return sum / period;
+    }
+
+    private static double deviation(double[] values, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double mean = mean(values, n, period);
+        double sum = 0;
+        for (int t = n - period; t < n; t++) {
+            sum += (values[t] - mean) * (values[t] - mean);
+        }
+        return Math.sqrt(sum / period);
+    }
+
+    private static double atr(Bars bars, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double atr = 0;
+        for (int t = 0; t < n; t++) {
+            double range = bars.high[t] - bars.low[t];
+            if (t > 0) {
+                range = Math.max(range, Math.max(Math.abs(bars.high[t] - bars.close[t - 1]), Math.abs(bars.low[t] - bars.close[t - 1])));
+            }
+            if (t < period) {
+                atr += range / period;
+            } else {
+                atr = (atr * (period - 1) + range) / period;
+            }
+        }
+        return atr;
+    }
+
+    private static double vwap(Bars bars, int n, int period) {
+        if (n < period) {
+            return Double.NaN;
+        }
+        double priceVolume = 0;
+        double volume = 0;
+        for (int t = n - period; t < n; t++) {
+            priceVolume += (bars.high[t] + bars.low[t] + bars.close[t]) / 3 * bars.volume[t];
+            volume += bars.volume[t];
+        }
+        return priceVolume / volume;
+    }
+
+    static void assertClose(double expected, double actual, String message) {
+        if (Double.isNaN(expected)) {
+            assertEquals(Double.NaN, actual, message);
+            return;
+        }
+        assertEquals(expected, actual, TOLERANCE * Math.max(1, Math.abs(expected)), message);
+    }
+
+    /**
+     * Случайное блуждание цены со свечами, у которых high и low охватывают open и close.
+     */
+    static class Bars {
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        final double[] volume;
+
+        Bars(int size, Random random) {
+            open = new double[size];
+            high = new double[size];
+            low = new double[size];
+            close = new double[size];
+            volume = new double[size];
+            double price = 100;
+            for (int i = 0; i < size; i++) {
+                open[i] = price;
+                price = Math.max(1, price + random.nextGaussian());
+                close[i] = price;
+                high[i] = Math.max(open[i], close[i]) + random.nextDouble();
+                low[i] = Math.min(open[i], close[i]) - random.nextDouble();
+                volume[i] = 1 + random.nextInt(1000);
+            }
+        }
+
+        int size() {
+            return close.length;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.trading.crypto.analyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingExtremumTest {
+
+    @Test
+    void returnsNaNWhenEmpty() {
+        RollingExtremum extremum = new RollingExtremum(3, true);
+
+        assertEquals(Double.NaN, extremum.getValue());
+        assertFalse(extremum.isReady());
+        assertThrows(IllegalArgumentException.class, () -> new RollingExtremum(0, false));
+    }
+
+    @Test
+    void tracksLatestValueWithPeriodOne() {
+        RollingExtremum minimum = new RollingExtremum(1, false);
+        RollingExtremum maximum = new RollingExtremum(1, true);
+        for (double value : new double[]{5, 3, 3, 8, -1}) {
+            minimum.add(value);
+            maximum.add(value);
+            assertTrue(minimum.isReady());
+            assertEquals(value, minimum.getValue());
+            assertEquals(value, maximum.getValue());
+        }
+    }
+
+    @Test
+    void keepsTiedExtremumUntilLastCopyLeaves() {
+        RollingExtremum maximum = new RollingExtremum(3, true);
+        maximum.add(5);
+        maximum.add(5);
+        maximum.add(1);
+        maximum.add(2);
+        // Первая пятерка ушла из окна, вторая осталась
+        assertEquals(5.0, maximum.getValue());
+        maximum.add(1);
+        assertEquals(2.0, maximum.getValue());
+    }
+
+    @Test
+    void matchesBruteForceReference() {
+        Random random = new Random(12);
+        for (int period : new int[]{1, 2, 3, 7, 30}) {
+            for (boolean isMaximum : new boolean[]{true, false}) {
+                RollingExtremum extremum = new RollingExtremum(period, isMaximum);
+                double[] values = new double[2000];
+                for (int n = 1; n <= values.length; n++) {
+                    // Небольшой набор целых дает много равных значений
+                    values[n - 1] = random.nextInt(10);
+                    extremum.add(values[n - 1]);
+
+                    double expected = values[n - 1];
+                    for (int t = Math.max(0, n - period); t < n; t++) {
+                        expected = isMaximum ? Math.max(expected, values[t]) : Math.min(expected, values[t]);
+                    }
+                    String message = (isMaximum ? "max" : "min") + " period " + period + ", value " + n;
+                    assertEquals(expected, extremum.getValue(), message);
+                    assertEquals(n >= period, extremum.isReady(), message);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.trading.crypto.analyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RsiIndicatorTest {
+
+    /**
+     * Пример RSI(14) из описания индикатора на StockCharts.
+     */
+    private static final double[] CLOSES = {
+            44.34, 44.09, 44.15, 43.61, 44.33, 44.83, 45.10, 45.42, 45.84, 46.08, 45.89, 46.03, 45.61, 46.28,
+            46.28, 46.00, 46.03, 46.41, 46.22, 45.64, 46.21, 46.25, 45.71, 46.45, 45.78, 45.35, 44.03, 44.18,
+            44.22, 44.57, 43.42, 42.66, 43.13
+    };
+    private static final double[] PUBLISHED = {
+            70.53, 66.32, 66.55, 69.41, 66.36, 57.97, 62.93, 63.26, 56.06, 62.38, 54.71, 50.42, 39.99, 41.46,
+            41.87, 45.46, 37.30, 33.08, 37.77
+    };
+
+    @Test
+    void matchesPublishedValues() {
+        RsiIndicator rsi = new RsiIndicator(14);
+        for (int i = 0; i < CLOSES.length; i++) {
+            double value = rsi.update(CLOSES[i]);
+            if (i < 14) {
+                assertEquals(Double.NaN, value, "close " + (i + 1));
+            } else {
+                // Таблица округляет промежуточные средние до сотых, отсюда расхождение до десятых долей
+                assertEquals(PUBLISHED[i - 14], value, 0.1, "close " + (i + 1));
+            }
+        }
+    }
+
+    @Test
+    void seedsWithSimpleAveragesOfFirstChanges() {
+        RsiIndicator rsi = new RsiIndicator(3);
+        rsi.update(10);
+        rsi.update(11);
+        assertEquals(Double.NaN, rsi.preview(13));
+        rsi.update(13);
+        assertFalse(rsi.isReady());
+
+        // Приросты 1, 2, падение 1: средние 1 и 1/3
+        assertEquals(75.0, rsi.preview(12));
+        assertEquals(75.0, rsi.update(12));
+        assertTrue(rsi.isReady());
+    }
+
+    @Test
+    void handlesFlatAndOneSidedPrices() {
+        RsiIndicator flat = new RsiIndicator(2);
+        RsiIndicator rising = new RsiIndicator(2);
+        for (int i = 0; i < 5; i++) {
+            flat.update(100);
+            rising.update(100 + i);
+        }
+        assertEquals(50.0, flat.getValue());
+        assertEquals(100.0, rising.getValue());
+    }
+
+    @Test
+    void matchesFullRecomputation() {
+        Random random = new Random(4);
+        int period = 14;
+        double[] closes = new double[600];
+        RsiIndicator rsi = new RsiIndicator(period);
+        RsiIndicator twin = new RsiIndicator(period);
+        double price = 100;
+        for (int n = 1; n <= closes.length; n++) {
+            price = Math.max(1, price + random.nextGaussian());
+            closes[n - 1] = price;
+            double preview = twin.preview(price);
+            twin.update(price);
+
+            double expected = rsi(closes, n, period);
+            IndicatorRegistryTest.assertClose(expected, rsi.update(price), "close " + n);
+            IndicatorRegistryTest.assertClose(expected, preview, "close " + n + " preview");
+        }
+    }
+
+    /**
+     * RSI Уайлдера по первым {@code n} ценам, пересчитанный с начала.
+     */
+    private static double rsi(double[] closes, int n, int period) {
+        if (n <= period) {
+            return Double.NaN;
+        }
+        double gain = 0;
+        double loss = 0;
+        for (int t = 1; t < n; t++) {
+            double change = closes[t] - closes[t - 1];
+            double up = Math.max(change, 0);
+            double down = Math.max(-change, 0);
+            if (t <= period) {
+                gain += up / period;
+                loss += down / period;
+            } else {
+                gain = (gain * (period - 1) + up) / period;
+                loss = (loss * (period - 1) + down) / period;
+            }
+        }
+        return loss == 0 ? (gain == 0 ? 50 : 100) : 100 - 100 / (1 + gain / loss);
+    }
+}
@@ -0,0 +1,74 @@
+package com.trading.crypto.analyzer.indicator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmaIndicatorTest {
+
+    @Test
+    void staysNaNUntilPeriodIsFull() {
+        SmaIndicator sma = new SmaIndicator(3);
+
+        assertEquals(Double.NaN, sma.getValue());
+        assertEquals(Double.NaN, sma.preview(1));
+        assertEquals(Double.NaN, sma.update(1));
+        assertEquals(Double.NaN, sma.preview(2));
+        assertEquals(Double.NaN, sma.update(2));
+        assertFalse(sma.isReady());
+
+        // Первое значение - среднее первых трех
+        assertEquals(3.0, sma.preview(6));
+        assertEquals(3.0, sma.update(6));
+        assertTrue(sma.isReady());
+        assertEquals(5.0, sma.update(7));
+        assertThrows(IllegalArgumentException.class, () -> new SmaIndicator(0));
+    }
+
+    @Test
+    void matchesFullWindowRecomputation() {
+        Random random = new Random(1);
+        for (int period : new int[]{1, 2, 5, 20}) {
+            SmaIndicator sma = new SmaIndicator(period);
+            SmaIndicator twin = new SmaIndicator(period);
+            double[] values = new double[500];
+            for (int n = 1; n <= values.length; n++) {
+                values[n - 1] = 100 + 10 * random.nextGaussian();
+                // Предварительное значение совпадает с тем, что даст обновление тем же значением
+                double preview = twin.preview(values[n - 1]);
+                twin.update(values[n - 1]);
+
+                double expected = IndicatorRegistryTest.mean(values, n, period);
+                String message = "period " + period + ", value " + n;
+                IndicatorRegistryTest.assertClose(expected, sma.update(values[n - 1]), message);
+                IndicatorRegistryTest.assertClose(expected, preview, message + " preview");
+            }
+        }
+    }
+
+    @Test
+    void doesNotDriftAfterManyPasses() {
+        Random random = new Random(2);
+        int period = 7;
+        SmaIndicator sma = new SmaIndicator(period);
+        double[] window = new double[period];
+        for (int n = 1; n <= 1_000_000; n++) {
+            // Большое смещение и малый разброс - худший случай для накопленной суммы
+            double value = 1e6 + random.nextDouble() * 1e-3;
+            window[n % period] = value;
+            sma.update(value);
+            if (n % 100_000 == 0) {
+                double exact = 0;
+                for (double v : window) {
+                    exact += v;
+                }
+                assertEquals(exact / period, sma.getValue(), 1e-9, "value " + n);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.trading.crypto.analyzer.pattern;
+
+import com.trading.crypto.data.impl.KlineRingBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatternScannerTest {
+
+    @Test
+    void detectsBullishPinBar() {
+        // Медвежья свеча, затем бычья с длинной нижней тенью
+        PatternHits hits = scanPair(new double[]{105, 106, 99, 100}, new double[]{100, 101.2, 96, 101});
+
+        assertEquals(EnumSet.of(CandlestickPattern.BULLISH_PIN_BAR, CandlestickPattern.HAMMER), patterns(hits, 0));
+    }
+
+    @Test
+    void detectsBearishPinBar() {
+        PatternHits hits = scanPair(new double[]{100, 106, 99, 105}, new double[]{105, 109, 103.8, 104});
+
+        assertEquals(EnumSet.of(CandlestickPattern.BEARISH_PIN_BAR), patterns(hits, 0));
+    }
+
+    @Test
+    void detectsEngulfing() {
+        PatternHits bullish = scanPair(new double[]{102, 103, 99, 100}, new double[]{99.5, 104, 99, 103});
+        assertEquals(EnumSet.of(CandlestickPattern.BULLISH_ENGULFING), patterns(bullish, 0));
+
+        PatternHits bearish = scanPair(new double[]{100, 103, 99, 102}, new double[]{102.5, 103, 98, 99});
+        assertEquals(EnumSet.of(CandlestickPattern.BEARISH_ENGULFING), patterns(bearish, 0));
+
+        // Тело не перекрывает предыдущее полностью
+        PatternHits partial = scanPair(new double[]{102, 103, 99, 100}, new double[]{100.5, 104, 99, 103});
+        assertFalse(partial.isHit(CandlestickPattern.BULLISH_ENGULFING, 0));
+    }
+
+    @Test
+    void detectsInsideBar() {
+        PatternHits hits = scanPair(new double[]{95, 110, 90, 105}, new double[]{100, 105, 95, 102});
+        assertEquals(EnumSet.of(CandlestickPattern.INSIDE_BAR), patterns(hits, 0));
+
+        // Равный максимум - уже не внутренний бар
+        PatternHits equalHigh = scanPair(new double[]{95, 110, 90, 105}, new double[]{100, 110, 95, 102});
+        assertFalse(equalHigh.isHit(CandlestickPattern.INSIDE_BAR, 0));
+    }
+
+    @Test
+    void detectsDojiAndHammer() {
+        PatternHits doji = scanPair(new double[]{100, 103, 97, 101}, new double[]{100, 105, 95, 100.5});
+        assertEquals(EnumSet.of(CandlestickPattern.DOJI), patterns(doji, 0));
+
+        PatternHits hammer = scanPair(new double[]{100, 103, 97, 101}, new double[]{100, 101.1, 97, 101});
+        assertEquals(EnumSet.of(CandlestickPattern.HAMMER), patterns(hammer, 0));
+
+        // Свеча без диапазона - не доджи
+        PatternHits flat = scanPair(new double[]{100, 103, 97, 101}, new double[]{100, 100, 100, 100});
+        assertFalse(flat.isHit(CandlestickPattern.DOJI, 0));
+    }
+
+    @Test
+    void skipsTwoCandlePatternsForOldestBar() {
+        PatternHits hits = new PatternHits();
+        // Единственный бар - бычий пин-бар по форме, но предыдущего бара нет
+        PatternScanner.scan(new double[]{100}, new double[]{101.2}, new double[]{96}, new double[]{101}, 1, hits);
+
+        assertEquals(EnumSet.of(CandlestickPattern.HAMMER), patterns(hits, 0));
+        assertFalse(hits.isHit(CandlestickPattern.HAMMER, 1));
+    }
+
+    @Test
+    void mapsBitsToSeriesIndices() {
+        int size = 70;
+        Set<Integer> dojis = Set.of(0, 5, 63, 64, 69);
+        KlineRingBuffer series = new KlineRingBuffer(size);
+        // Бары добавляются от старых к новым, поэтому бар с индексом i добавляется (size - 1 - i)-м
+        for (int i = size - 1; i >= 0; i--) {
+            if (dojis.contains(i)) {
+                series.append(size - i, 100, 105, 95, 100, 1, 1);
+            } else {
+                series.append(size - i, 100, 103, 97, 101, 1, 1);
+            }
+        }
+
+        PatternHits hits = new PatternHits();
+        PatternScanner.scan(series, size, hits);
+
+        assertEquals(size, hits.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(dojis.contains(i), hits.isHit(CandlestickPattern.DOJI, i), "bar " + i);
+        }
+        assertEquals(dojis.size(), hits.count(CandlestickPattern.DOJI));
+        assertEquals(0, hits.latest(CandlestickPattern.DOJI));
+        assertEquals(-1, hits.latest(CandlestickPattern.BEARISH_ENGULFING));
+        assertFalse(hits.isHit(CandlestickPattern.DOJI, size));
+
+        // Повторное сканирование меньшего окна не оставляет старых битов
+        PatternScanner.scan(series, 3, hits);
+        assertEquals(3, hits.size());
+        assertEquals(1, hits.count(CandlestickPattern.DOJI));
+        assertFalse(hits.isHit(CandlestickPattern.DOJI, 5));
+    }
+
+    @Test
+    void matchesRemovedBigDecimalPinBarRules() {
+        Random random = new Random(16);
+        int size = 200;
+        double[] open = new double[size];
+        double[] high = new double[size];
+        double[] low = new double[size];
+        double[] close = new double[size];
+        PatternHits hits = new PatternHits();
+        int bullishHits = 0;
+        int bearishHits = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < size; i++) {
+                // Целые цены в узком диапазоне: тени часто ровно равны границам правил
+                open[i] = 100 + random.nextInt(5);
+                close[i] = 100 + random.nextInt(5);
+                high[i] = Math.max(open[i], close[i]) + random.nextInt(10);
+                low[i] = Math.min(open[i], close[i]) - random.nextInt(10);
+            }
+            PatternScanner.scan(open, high, low, close, size, hits);
+
+            for (int i = 0; i + 1 < size; i++) {
+                boolean bullish = isBullishPinBar(open[i], high[i], low[i], close[i], open[i + 1], close[i + 1]);
+                boolean bearish = isBearishPinBar(open[i], high[i], low[i], close[i], open[i + 1], close[i + 1]);
+                assertEquals(bullish, hits.isHit(CandlestickPattern.BULLISH_PIN_BAR, i), "round " + round + ", bar " + i);
+                assertEquals(bearish, hits.isHit(CandlestickPattern.BEARISH_PIN_BAR, i), "round " + round + ", bar " + i);
+                bullishHits += bullish ? 1 : 0;
+                bearishHits += bearish ? 1 : 0;
+            }
+        }
+        assertTrue(bullishHits > 100 && bearishHits > 100, "random candles produced too few pin bars");
+    }
+
+    private static PatternHits scanPair(double[] previous, double[] current) {
+        PatternHits hits = new PatternHits();
+        PatternScanner.scan(new double[]{current[0], previous[0]}, new double[]{current[1], previous[1]},
+                new double[]{current[2], previous[2]}, new double[]{current[3], previous[3]}, 2, hits);
+        return hits;
+    }
+
+    private static Set<CandlestickPattern> patterns(PatternHits hits, int index) {
+        Set<CandlestickPattern> patterns = EnumSet.noneOf(CandlestickPattern.class);
+        for (CandlestickPattern pattern : CandlestickPattern.values()) {
+            if (hits.isHit(pattern, index)) {
+                patterns.add(pattern);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Правило бычьего пин-бара в том виде, в каком оно было в KlineElement до перехода на сканер.
+     */
+    private static boolean isBullishPinBar(double openValue, double highValue, double lowValue, double closeValue,
+                                           double previousOpen, double previousClose) {
+        BigDecimal openPrice = BigDecimal.valueOf(openValue);
+        BigDecimal highPrice = BigDecimal.valueOf(highValue);
+        BigDecimal lowPrice = BigDecimal.valueOf(lowValue);
+        BigDecimal closePrice = BigDecimal.valueOf(closeValue);
+        BigDecimal body = closePrice.subtract(openPrice).abs();
+        BigDecimal upperShadow = highPrice.subtract(closePrice.max(openPrice));
+        BigDecimal lowerShadow = openPrice.min(closePrice).subtract(lowPrice);
+
+        return BigDecimal.valueOf(previousClose).compareTo(BigDecimal.valueOf(previousOpen)) < 0 &&
+                lowerShadow.compareTo(body.multiply(BigDecimal.valueOf(2))) > 0 &&
+                upperShadow.compareTo(body.multiply(BigDecimal.valueOf(0.5))) < 0 &&
+                closePrice.compareTo(openPrice) > 0;
+    }
+
+    /**
+     * Правило медвежьего пин-бара в том виде, в каком оно было в KlineElement до перехода на сканер.
+     */
+    private static boolean isBearishPinBar(double openValue, double highValue, double lowValue, double closeValue,
+                                           double previousOpen, double previousClose) {
+        BigDecimal openPrice = BigDecimal.valueOf(openValue);
+        BigDecimal highPrice = BigDecimal.valueOf(highValue);
+        BigDecimal lowPrice = BigDecimal.valueOf(lowValue);
+        BigDecimal closePrice = BigDecimal.valueOf(closeValue);
+        BigDecimal body = openPrice.subtract(closePrice).abs();
+        BigDecimal upperShadow = highPrice.subtract(openPrice.max(closePrice));
+        BigDecimal lowerShadow = openPrice.min(closePrice).subtract(lowPrice);
+
+        return BigDecimal.valueOf(previousClose).compareTo(BigDecimal.valueOf(previousOpen)) > 0 &&
+                upperShadow.compareTo(body.multiply(BigDecimal.valueOf(2))) > 0 &&
+                lowerShadow.compareTo(body.multiply(BigDecimal.valueOf(0.5))) < 0 &&
+                closePrice.compareTo(openPrice) < 0;
+    }
+}
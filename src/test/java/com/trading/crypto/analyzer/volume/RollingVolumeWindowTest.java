@@ -0,0 +1,90 @@
+package com.trading.crypto.analyzer.volume;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingVolumeWindowTest {
+
+    private static final double[] PERCENTILES = {0, 1, 10, 25, 50, 75, 90, 99, 100};
+
+    @Test
+    void returnsNaNWhenEmpty() {
+        RollingVolumeWindow window = new RollingVolumeWindow(5);
+
+        assertFalse(window.isReady());
+        assertEquals(Double.NaN, window.getMax());
+        assertEquals(Double.NaN, window.getMean());
+        assertEquals(Double.NaN, window.getStandardDeviation());
+        assertEquals(Double.NaN, window.getPercentile(50));
+        assertEquals(Double.NaN, window.getPercentileRank(1));
+        assertThrows(IllegalArgumentException.class, () -> window.getPercentile(101));
+    }
+
+    @Test
+    void computesNearestRankPercentiles() {
+        RollingVolumeWindow window = new RollingVolumeWindow(5);
+        for (double volume : new double[]{50, 10, 40, 20, 30}) {
+            window.add(volume);
+        }
+
+        assertTrue(window.isReady());
+        assertEquals(10.0, window.getPercentile(0));
+        assertEquals(10.0, window.getPercentile(20));
+        assertEquals(20.0, window.getPercentile(21));
+        assertEquals(30.0, window.getPercentile(50));
+        assertEquals(50.0, window.getPercentile(100));
+        assertEquals(0.0, window.getPercentileRank(5));
+        assertEquals(0.6, window.getPercentileRank(30));
+        assertEquals(1.0, window.getPercentileRank(50));
+    }
+
+    @Test
+    void matchesBruteForceReference() {
+        Random random = new Random(7);
+        for (int period : new int[]{1, 2, 7, 50}) {
+            RollingVolumeWindow window = new RollingVolumeWindow(period);
+            ArrayDeque<Double> reference = new ArrayDeque<>();
+            for (int bar = 0; bar < 2000; bar++) {
+                // Целые объемы дают много одинаковых значений в окне, всплески - большие
+                double volume = random.nextInt(20) == 0 ? 1e6 + random.nextInt(1000) : random.nextInt(50);
+                window.add(volume);
+                reference.addLast(volume);
+                if (reference.size() > period) {
+                    reference.removeFirst();
+                }
+                assertMatches(window, reference, random, "period " + period + ", bar " + bar);
+            }
+        }
+    }
+
+    private static void assertMatches(RollingVolumeWindow window, ArrayDeque<Double> reference, Random random, String message) {
+        double[] sorted = reference.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        int n = sorted.length;
+        double mean = Arrays.stream(sorted).sum() / n;
+        double variance = 0;
+        for (double value : sorted) {
+            variance += (value - mean) * (value - mean);
+        }
+
+        assertEquals(n == window.getPeriod(), window.isReady(), message);
+        assertEquals(sorted[n - 1], window.getMax(), message);
+        assertEquals(mean, window.getMean(), 1e-9 * Math.max(1, mean), message);
+        assertEquals(Math.sqrt(variance / n), window.getStandardDeviation(), 1e-6 * Math.max(1, mean), message);
+        for (double percentile : PERCENTILES) {
+            int rank = Math.max(1, (int) Math.ceil(percentile / 100 * n));
+            assertEquals(sorted[rank - 1], window.getPercentile(percentile), message + ", percentile " + percentile);
+        }
+
+        double probe = random.nextBoolean() ? sorted[random.nextInt(n)] : random.nextInt(60) - 5;
+        long atMost = Arrays.stream(sorted).filter(value -> value <= probe).count();
+        assertEquals((double) atMost / n, window.getPercentileRank(probe), message + ", rank of " + probe);
+    }
+}
@@ -0,0 +1,133 @@
+package com.trading.crypto.data.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarAggregatorTest {
+
+    private static final long MINUTE = 60_000;
+
+    /**
+     * Понедельник 13 ноября 2023 года, 00:00 UTC.
+     */
+    private static final long MONDAY = ZonedDateTime.of(2023, 11, 13, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Test
+    void aggregatesFullBar() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.FIVE_MINUTES);
+        long start = MONDAY + 10 * MINUTE;
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(add(aggregator, start + i * MINUTE, 100 + i));
+        }
+        assertTrue(add(aggregator, start + 4 * MINUTE, 104));
+
+        assertEquals(start, aggregator.getTimestamp());
+        assertEquals(100.0, aggregator.getOpen());
+        assertEquals(105.0, aggregator.getHigh());
+        assertEquals(99.0, aggregator.getLow());
+        assertEquals(104.0, aggregator.getClose());
+        assertEquals(5.0, aggregator.getVolume());
+        assertEquals(50.0, aggregator.getTurnover());
+    }
+
+    @Test
+    void startsWeeklyBarsOnMonday() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.WEEKLY);
+        // Четверг той же недели
+        long thursday = MONDAY + 3 * 24 * 60 * MINUTE;
+
+        add(aggregator, thursday, 100);
+
+        assertEquals(MONDAY, aggregator.getTimestamp());
+        assertEquals(DayOfWeek.MONDAY, Instant.ofEpochMilli(aggregator.getTimestamp()).atZone(ZoneOffset.UTC).getDayOfWeek());
+    }
+
+    @Test
+    void closesWeeklyBarOnSundayLastMinute() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.WEEKLY);
+        long week = 7 * 24 * 60 * MINUTE;
+
+        for (long time = MONDAY; time < MONDAY + week - MINUTE; time += MINUTE) {
+            assertFalse(add(aggregator, time, 100));
+        }
+        assertTrue(add(aggregator, MONDAY + week - MINUTE, 100));
+        assertEquals(MONDAY, aggregator.getTimestamp());
+        assertEquals(7 * 24 * 60, aggregator.getVolume());
+
+        // Следующая минута открывает новую неделю
+        assertFalse(add(aggregator, MONDAY + week, 100));
+        assertEquals(MONDAY + week, aggregator.getTimestamp());
+    }
+
+    @Test
+    void dropsBarStartedMidway() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.FIVE_MINUTES);
+        long start = MONDAY + 10 * MINUTE;
+
+        // Запуск посреди бара: первые две минуты не пришли
+        assertFalse(add(aggregator, start + 2 * MINUTE, 100));
+        assertFalse(add(aggregator, start + 3 * MINUTE, 100));
+        assertFalse(add(aggregator, start + 4 * MINUTE, 100));
+
+        // Следующий бар собирается целиком
+        for (int i = 0; i < 4; i++) {
+            assertFalse(add(aggregator, start + (5 + i) * MINUTE, 100));
+        }
+        assertTrue(add(aggregator, start + 9 * MINUTE, 100));
+        assertEquals(start + 5 * MINUTE, aggregator.getTimestamp());
+        assertEquals(100.0, aggregator.getOpen());
+    }
+
+    @Test
+    void dropsBarWithMissingMinute() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.FIVE_MINUTES);
+        long start = MONDAY + 10 * MINUTE;
+
+        add(aggregator, start, 100);
+        add(aggregator, start + MINUTE, 100);
+        // Третья минута пропущена
+        add(aggregator, start + 3 * MINUTE, 100);
+        assertFalse(add(aggregator, start + 4 * MINUTE, 100));
+    }
+
+    @Test
+    void dropsBarWithoutLastMinute() {
+        BarAggregator aggregator = new BarAggregator(MarketInterval.FIVE_MINUTES);
+        long start = MONDAY + 10 * MINUTE;
+
+        for (int i = 0; i < 4; i++) {
+            assertFalse(add(aggregator, start + i * MINUTE, 100));
+        }
+        // Последняя минута бара не пришла, следующая минута уже из нового бара
+        assertFalse(add(aggregator, start + 5 * MINUTE, 200));
+        assertEquals(start + 5 * MINUTE, aggregator.getTimestamp());
+        assertEquals(200.0, aggregator.getOpen());
+        assertEquals(1.0, aggregator.getVolume());
+    }
+
+    @Test
+    void rejectsUnsupportedIntervals() {
+        assertFalse(BarAggregator.isSupported(MarketInterval.ONE_MINUTE));
+        assertFalse(BarAggregator.isSupported(MarketInterval.MONTHLY));
+        assertTrue(BarAggregator.isSupported(MarketInterval.DAILY));
+        assertThrows(IllegalArgumentException.class, () -> new BarAggregator(MarketInterval.MONTHLY));
+    }
+
+    /**
+     * Минутный бар с размахом 1 вокруг цены, единичным объемом и оборотом 10.
+     */
+    private static boolean add(BarAggregator aggregator, long timestamp, double price) {
+        return aggregator.add(timestamp, price, price + 1, price - 1, price, 1, 10);
+    }
+}
@@ -0,0 +1,41 @@
+package com.trading.crypto.data.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HistoricalDataCollectorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cachesArchiveOpenFailureUntilRetryTime() throws IOException, InterruptedException {
+        // Файл на месте каталога архивов: открыть архив в нем нельзя
+        Path archiveDir = Files.createFile(dir.resolve("klines"));
+        HistoricalDataCollector collector = new HistoricalDataCollector(null, null, null, archiveDir.toString());
+        try {
+            assertNull(collector.getArchive("BTCUSDT", MarketInterval.ONE_MINUTE));
+            assertNull(collector.getArchive("BTCUSDT", MarketInterval.ONE_MINUTE));
+
+            // Причина ошибки устранена, но до срока повторной попытки архив не открывается
+            Files.delete(archiveDir);
+            assertNull(collector.getArchive("BTCUSDT", MarketInterval.ONE_MINUTE));
+
+            Thread.sleep(1100);
+            KlineArchive archive = collector.getArchive("BTCUSDT", MarketInterval.ONE_MINUTE);
+            assertNotNull(archive);
+            assertSame(archive, collector.getArchive("BTCUSDT", MarketInterval.ONE_MINUTE));
+        } finally {
+            collector.closeArchives();
+        }
+    }
+}
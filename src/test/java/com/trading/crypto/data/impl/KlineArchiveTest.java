@@ -0,0 +1,219 @@
+package com.trading.crypto.data.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KlineArchiveTest {
+
+    private static final long MINUTE = 60_000;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 56;
+    private static final int COUNT_OFFSET = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendsOnlyNewerBars() throws IOException {
+        try (KlineArchive archive = KlineArchive.open(dir.resolve("BTCUSDT.bin"), MINUTE)) {
+            assertTrue(archive.isEmpty());
+            assertTrue(append(archive, 1));
+            assertTrue(append(archive, 2));
+            assertFalse(append(archive, 2));
+            assertFalse(append(archive, 1));
+
+            assertEquals(2, archive.size());
+            assertEquals(MINUTE, archive.getFirstTimestamp());
+            assertEquals(2 * MINUTE, archive.getLastTimestamp());
+        }
+    }
+
+    @Test
+    void keepsBarsAfterReopen() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            // Больше одного блока роста файла
+            for (int i = 1; i <= 20_000; i++) {
+                append(archive, i);
+            }
+        }
+
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            assertEquals(20_000, archive.size());
+            assertEquals(MINUTE, archive.getFirstTimestamp());
+            assertEquals(20_000 * MINUTE, archive.getLastTimestamp());
+            assertBars(archive, 19_998, 19_999, 20_000);
+            assertTrue(append(archive, 20_001));
+            assertEquals(20_001, archive.size());
+        }
+    }
+
+    @Test
+    void loadsTailIntoRingBuffer() throws IOException {
+        try (KlineArchive archive = KlineArchive.open(dir.resolve("BTCUSDT.bin"), MINUTE)) {
+            for (int i = 1; i <= 10; i++) {
+                append(archive, i);
+            }
+            KlineRingBuffer buffer = new KlineRingBuffer(8);
+
+            assertEquals(4, archive.loadTail(buffer, 4));
+            assertEquals(4, buffer.size());
+            assertEquals(10 * MINUTE, buffer.getTimestamp(0));
+            assertEquals(7 * MINUTE, buffer.getTimestamp(3));
+            assertEquals(7.0, buffer.getClose(3));
+        }
+    }
+
+    @Test
+    void ignoresRecordWrittenAfterCount() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            append(archive, 1);
+            append(archive, 2);
+        }
+        // Сбой между записью бара и обновлением количества в заголовке
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            record.putLong(0, 3 * MINUTE);
+            record.putDouble(32, 3);
+            channel.write(record, HEADER_SIZE + 2L * RECORD_SIZE);
+        }
+
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            assertEquals(2, archive.size());
+            assertEquals(2 * MINUTE, archive.getLastTimestamp());
+            assertTrue(append(archive, 4));
+            assertBars(archive, 1, 2, 4);
+        }
+        assertFalse(Files.exists(dir.resolve("BTCUSDT.bin.corrupt")));
+    }
+
+    @Test
+    void replacesArchiveWithCorruptHeader() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            append(archive, 1);
+        }
+        // Количество записей больше, чем помещается в файл
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, Long.MAX_VALUE / RECORD_SIZE), COUNT_OFFSET);
+        }
+
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            assertTrue(archive.isEmpty());
+        }
+        assertTrue(Files.exists(dir.resolve("BTCUSDT.bin.corrupt")));
+    }
+
+    @Test
+    void replacesArchiveOfOtherInterval() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            append(archive, 1);
+        }
+
+        try (KlineArchive archive = KlineArchive.open(path, 5 * MINUTE)) {
+            assertTrue(archive.isEmpty());
+        }
+        assertTrue(Files.exists(dir.resolve("BTCUSDT.bin.corrupt")));
+    }
+
+    @Test
+    void prependsOnlyOlderBars() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE);
+             KlineArchive older = KlineArchive.open(dir.resolve("older.bin"), MINUTE)) {
+            for (int i = 5; i <= 7; i++) {
+                append(archive, i);
+            }
+            // Бары 5 и 6 уже есть в архиве и не должны задвоиться
+            for (int i = 1; i <= 6; i++) {
+                append(older, i);
+            }
+
+            assertEquals(4, archive.prepend(older));
+            assertEquals(7, archive.size());
+            assertBars(archive, 1, 2, 3, 4, 5, 6, 7);
+            assertEquals(6, older.size());
+
+            // Архив после замены файла продолжает принимать бары
+            assertTrue(append(archive, 8));
+        }
+
+        assertFalse(Files.exists(dir.resolve("BTCUSDT.bin.tmp")));
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE)) {
+            assertBars(archive, 1, 2, 3, 4, 5, 6, 7, 8);
+        }
+    }
+
+    @Test
+    void prependsIntoEmptyArchive() throws IOException {
+        try (KlineArchive archive = KlineArchive.open(dir.resolve("BTCUSDT.bin"), MINUTE);
+             KlineArchive older = KlineArchive.open(dir.resolve("older.bin"), MINUTE)) {
+            append(older, 1);
+            append(older, 2);
+
+            assertEquals(2, archive.prepend(older));
+            assertBars(archive, 1, 2);
+        }
+    }
+
+    @Test
+    void leavesFileUntouchedWhenNothingToPrepend() throws IOException {
+        Path path = dir.resolve("BTCUSDT.bin");
+        try (KlineArchive archive = KlineArchive.open(path, MINUTE);
+             KlineArchive older = KlineArchive.open(dir.resolve("older.bin"), MINUTE)) {
+            append(archive, 1);
+            append(archive, 2);
+            append(older, 2);
+            append(older, 3);
+            Object fileKey = Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class).fileKey();
+
+            assertEquals(0, archive.prepend(older));
+            assertBars(archive, 1, 2);
+            assertEquals(fileKey, Files.readAttributes(path, java.nio.file.attribute.BasicFileAttributes.class).fileKey());
+        }
+        assertFalse(Files.exists(dir.resolve("BTCUSDT.bin.tmp")));
+    }
+
+    private static boolean append(KlineArchive archive, long minute) throws IOException {
+        return archive.append(minute * MINUTE, minute, minute + 0.5, minute - 0.5, minute, minute * 10, minute * 100);
+    }
+
+    /**
+     * Проверяет, что архив содержит ровно эти бары, от старых к новым.
+     */
+    private static void assertBars(KlineArchive archive, long... minutes) {
+        int bars = minutes.length;
+        double[] open = new double[bars];
+        double[] high = new double[bars];
+        double[] low = new double[bars];
+        double[] close = new double[bars];
+        double[] volume = new double[bars];
+        long from = archive.size() - bars;
+        assertEquals(bars, archive.read(from, bars, open, high, low, close, volume));
+
+        double[] expected = new double[bars];
+        for (int i = 0; i < bars; i++) {
+            expected[i] = minutes[i];
+        }
+        assertArrayEquals(expected, open);
+        assertArrayEquals(expected, close);
+        if (from == 0) {
+            assertEquals(minutes[0] * MINUTE, archive.getFirstTimestamp());
+        }
+        assertEquals(minutes[bars - 1] * MINUTE, archive.getLastTimestamp());
+    }
+}
@@ -0,0 +1,160 @@
+package com.trading.crypto.data.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KlineDecoderTest {
+
+    @Test
+    void parsesPlainDecimals() {
+        assertParsed("0");
+        assertParsed("42");
+        assertParsed("42.5");
+        assertParsed("0.0001");
+        assertParsed("65000.10");
+        assertParsed(".5");
+        assertParsed("5.");
+    }
+
+    @Test
+    void parsesNegativeDecimals() {
+        assertParsed("-1");
+        assertParsed("-0.000123");
+        assertParsed("-65000.25");
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parse("-0.0")));
+    }
+
+    @Test
+    void parsesLongMantissas() {
+        // Мантисса от 2^53 уже не точна в double, такие числа разбирает Double.parseDouble
+        assertParsed("9007199254740991");
+        assertParsed("9007199254740993");
+        assertParsed("1234567890123456.7");
+        assertParsed("0.12345678901234567");
+        assertParsed("-98765432109876543210.123");
+    }
+
+    @Test
+    void parsesLongFractions() {
+        assertParsed("0.0000000000000000000001");
+        assertParsed("0.00000000000000000000001");
+        assertParsed("1.000000000000000000000000001");
+    }
+
+    @Test
+    void parsesExponents() {
+        assertParsed("1e-5");
+        assertParsed("1.5E3");
+        assertParsed("-2.5e-7");
+    }
+
+    @Test
+    void rejectsMalformedNumbers() {
+        assertThrows(NumberFormatException.class, () -> parse("-"));
+        assertThrows(NumberFormatException.class, () -> parse(""));
+        assertThrows(NumberFormatException.class, () -> parse("."));
+        assertThrows(NumberFormatException.class, () -> parse("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> parse("abc"));
+    }
+
+    @Test
+    void parsesOnlyGivenRangeOfBuffer() {
+        char[] chars = "[\"123.45\",\"-6\"]".toCharArray();
+        assertEquals(123.45, KlineDecoder.parseDouble(chars, 2, 6));
+        assertEquals(-6.0, KlineDecoder.parseDouble(chars, 11, 2));
+    }
+
+    @Test
+    void decodesStreamBar() throws Exception {
+        KlineBatch batch = new KlineBatch();
+        KlineDecoder.decodeStreamKlines("{\"topic\":\"kline.1.BTCUSDT\",\"data\":[{\"start\":1700000000000,"
+                + "\"end\":1700000059999,\"interval\":\"1\",\"open\":\"36500.5\",\"close\":\"36510\",\"high\":\"36520.1\","
+                + "\"low\":\"36490\",\"volume\":\"12.345\",\"turnover\":\"450000.75\",\"confirm\":true,"
+                + "\"timestamp\":1700000059999}],\"ts\":1700000059999,\"type\":\"snapshot\"}", batch);
+
+        assertEquals("kline.1.BTCUSDT", batch.getTopic());
+        assertEquals(1, batch.size());
+        assertEquals(1700000000000L, batch.getTimestamp(0));
+        assertEquals(36500.5, batch.getOpen(0));
+        assertEquals(36520.1, batch.getHigh(0));
+        assertEquals(36490.0, batch.getLow(0));
+        assertEquals(36510.0, batch.getClose(0));
+        assertEquals(12.345, batch.getVolume(0));
+        assertEquals(450000.75, batch.getTurnover(0));
+        assertTrue(batch.isConfirmed(0));
+    }
+
+    @Test
+    void decodesServiceMessageAsEmptyBatch() throws Exception {
+        KlineBatch batch = new KlineBatch();
+        KlineDecoder.decodeStreamKlines("{\"success\":true,\"ret_msg\":\"pong\",\"op\":\"ping\"}", batch);
+
+        assertNull(batch.getTopic());
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    void decodesRestKlinesNewestFirst() throws Exception {
+        KlineBatch batch = new KlineBatch();
+        KlineDecoder.decodeRestKlines(rest("[\"1700000060000\",\"2\",\"3\",\"1\",\"2.5\",\"10\",\"25\"],"
+                + "[\"1700000000000\",\"1\",\"2\",\"0.5\",\"2\",\"0\",\"0\"]"), batch);
+
+        assertEquals(2, batch.size());
+        assertEquals(1700000060000L, batch.getTimestamp(0));
+        assertEquals(2.5, batch.getClose(0));
+        assertEquals(1700000000000L, batch.getTimestamp(1));
+        assertEquals(0.5, batch.getLow(1));
+    }
+
+    @Test
+    void parsesTimestampsUpToLongRange() throws Exception {
+        KlineBatch batch = new KlineBatch();
+        KlineDecoder.decodeRestKlines(rest("[\"9223372036854775807\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch);
+        assertEquals(Long.MAX_VALUE, batch.getTimestamp(0));
+
+        KlineDecoder.decodeRestKlines(rest("[\"-1700000000000\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch);
+        assertEquals(-1700000000000L, batch.getTimestamp(0));
+    }
+
+    @Test
+    void rejectsOverflowingTimestamps() {
+        KlineBatch batch = new KlineBatch();
+        // 20 цифр не помещаются в long и не должны молча переполниться
+        assertThrows(NumberFormatException.class, () -> KlineDecoder.decodeRestKlines(
+                rest("[\"17000000000000000000\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch));
+        assertThrows(NumberFormatException.class, () -> KlineDecoder.decodeRestKlines(
+                rest("[\"9223372036854775808\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch));
+        assertThrows(NumberFormatException.class, () -> KlineDecoder.decodeRestKlines(
+                rest("[\"\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch));
+        assertThrows(NumberFormatException.class, () -> KlineDecoder.decodeRestKlines(
+                rest("[\"-\",\"1\",\"1\",\"1\",\"1\",\"1\",\"1\"]"), batch));
+    }
+
+    @Test
+    void failsOnErrorResponse() {
+        KlineBatch batch = new KlineBatch();
+        byte[] body = "{\"retCode\":10001,\"retMsg\":\"params error\",\"result\":{}}".getBytes(StandardCharsets.UTF_8);
+        assertThrows(java.io.IOException.class, () -> KlineDecoder.decodeRestKlines(new ByteArrayInputStream(body), batch));
+    }
+
+    private static ByteArrayInputStream rest(String bars) {
+        String body = "{\"retCode\":0,\"retMsg\":\"OK\",\"result\":{\"symbol\":\"BTCUSDT\",\"category\":\"linear\",\"list\":["
+                + bars + "]},\"time\":1700000100000}";
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static double parse(String text) {
+        return KlineDecoder.parseDouble(text.toCharArray(), 0, text.length());
+    }
+
+    private static void assertParsed(String text) {
+        assertEquals(Double.parseDouble(text), parse(text), text);
+    }
+}
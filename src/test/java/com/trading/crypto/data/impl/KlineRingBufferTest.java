@@ -0,0 +1,126 @@
+package com.trading.crypto.data.impl;
+
+import com.trading.crypto.data.KlineSeries;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KlineRingBufferTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void reportsSizeAndCapacityBeforeAndAfterFilling() {
+        KlineRingBuffer buffer = new KlineRingBuffer(5);
+        assertEquals(0, buffer.size());
+        assertEquals(5, buffer.capacity());
+        assertTrue(buffer.isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getClose(0));
+
+        for (int n = 0; n < 5; n++) {
+            append(buffer, n);
+            assertEquals(n + 1, buffer.size());
+            assertEquals(5, buffer.capacity());
+        }
+        for (int n = 5; n < 12; n++) {
+            append(buffer, n);
+            assertEquals(5, buffer.size());
+            assertEquals(5, buffer.capacity());
+        }
+        assertEquals(12, buffer.getAppendedCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getClose(5));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getClose(-1));
+    }
+
+    @Test
+    void keepsNewestBarsAcrossWraparound() {
+        KlineRingBuffer buffer = new KlineRingBuffer(7);
+        // Несколько полных проходов по слотам, включая границы кольца
+        for (int n = 0; n < 100; n++) {
+            append(buffer, n);
+            int size = Math.min(n + 1, 7);
+            assertEquals(size, buffer.size());
+            for (int i = 0; i < size; i++) {
+                assertBar(buffer, i, n - i);
+            }
+            assertEquals(n * MINUTE, buffer.getLastTimestamp());
+        }
+    }
+
+    @Test
+    void pinnedViewSurvivesAppendsUpToDocumentedBound() {
+        int capacity = 6;
+        for (int filled = 1; filled <= 3 * capacity; filled++) {
+            KlineRingBuffer buffer = new KlineRingBuffer(capacity);
+            for (int n = 0; n < filled; n++) {
+                append(buffer, n);
+            }
+            KlineSeries view = buffer.view();
+            int size = view.size();
+            assertEquals(Math.min(filled, capacity), size);
+            int newest = filled - 1;
+
+            for (int appended = 0; appended <= capacity + 1; appended++) {
+                if (appended > 0) {
+                    append(buffer, filled + appended - 1);
+                }
+                // Представление не сдвигается вместе с буфером
+                assertEquals(size, view.size());
+                assertEquals(capacity, view.capacity());
+                if (appended <= capacity) {
+                    assertEquals(newest * MINUTE, view.getLastTimestamp());
+                }
+                // Бар с индексом i корректен, пока добавлено не больше capacity - i баров
+                for (int i = 0; i < size && appended <= capacity - i; i++) {
+                    assertBar(view, i, newest - i);
+                }
+                // Граница точная: следующее добавление перезаписывает слот бара
+                int overwritten = capacity + 1 - appended;
+                if (appended > 0 && overwritten < size) {
+                    assertBar(view, overwritten, newest + appended);
+                }
+            }
+            assertEquals(filled + capacity, buffer.getLastTimestamp() / MINUTE);
+        }
+    }
+
+    @Test
+    void pinnedViewOfFullWindowIsIntactAfterOneAppend() {
+        KlineRingBuffer buffer = new KlineRingBuffer(4);
+        for (int n = 0; n < 10; n++) {
+            append(buffer, n);
+        }
+        KlineSeries view = buffer.view();
+        append(buffer, 10);
+        for (int i = 0; i < 4; i++) {
+            assertBar(view, i, 9 - i);
+            assertBar(buffer, i, 10 - i);
+        }
+        assertEquals(9 * MINUTE, view.getLastTimestamp());
+        assertEquals(10 * MINUTE, buffer.getLastTimestamp());
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new KlineRingBuffer(0));
+    }
+
+    /**
+     * Добавляет бар, все поля которого однозначно выводятся из его номера.
+     */
+    private static void append(KlineRingBuffer buffer, int n) {
+        buffer.append(n * MINUTE, n, n + 1, n - 1, n + 0.5, 2.0 * n, 3.0 * n);
+    }
+
+    private static void assertBar(KlineSeries series, int index, int n) {
+        assertEquals(n * MINUTE, series.getTimestamp(index), "timestamp at " + index);
+        assertEquals(n, series.getOpen(index), "open at " + index);
+        assertEquals(n + 1, series.getHigh(index), "high at " + index);
+        assertEquals(n - 1, series.getLow(index), "low at " + index);
+        assertEquals(n + 0.5, series.getClose(index), "close at " + index);
+        assertEquals(2.0 * n, series.getVolume(index), "volume at " + index);
+        assertEquals(3.0 * n, series.getTurnover(index), "turnover at " + index);
+    }
+}
@@ -0,0 +1,134 @@
+package com.trading.crypto.data.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderBookTest {
+
+    @Test
+    void appliesSnapshot() {
+        OrderBook book = new OrderBook("BTCUSDT", 50);
+        assertFalse(book.isValid());
+        assertEquals(Double.NaN, book.getBestBid());
+
+        // Уровни в сообщении не обязаны быть отсортированы
+        book.applySnapshot(update(true, 10, new double[]{99, 1, 100, 2, 98, 3}, new double[]{102, 4, 101, 5}));
+
+        assertTrue(book.isValid());
+        assertEquals(100.0, book.getBestBid());
+        assertEquals(101.0, book.getBestAsk());
+        assertEquals(3.0, book.getDepth(true, 2));
+        assertEquals(6.0, book.getDepth(true, 10));
+        assertEquals(9.0, book.getDepth(false, 10));
+        assertEquals((6.0 - 9.0) / 15.0, book.getImbalance(10));
+        assertEquals(1000L + 10, book.getUpdateTime());
+    }
+
+    @Test
+    void insertsUpdatesAndDeletesLevels() {
+        OrderBook book = new OrderBook("BTCUSDT", 50);
+        book.applySnapshot(update(true, 10, new double[]{100, 1, 99, 2}, new double[]{101, 1, 102, 2}));
+
+        // Новый лучший бид, изменение второго аска, удаление лучшего аска
+        assertTrue(book.applyDelta(update(false, 11, new double[]{100.5, 3}, new double[]{102, 7, 101, 0})));
+
+        assertEquals(100.5, book.getBestBid());
+        assertEquals(6.0, book.getDepth(true, 10));
+        assertEquals(102.0, book.getBestAsk());
+        assertEquals(7.0, book.getDepth(false, 10));
+
+        // Удаление уровня посередине и отсутствующего уровня
+        assertTrue(book.applyDelta(update(false, 12, new double[]{100, 0, 95, 0}, new double[0])));
+        assertEquals(100.5, book.getBestBid());
+        assertEquals(3.0, book.getDepth(true, 1));
+        assertEquals(5.0, book.getDepth(true, 10));
+
+        // Удаление всех асков
+        assertTrue(book.applyDelta(update(false, 13, new double[0], new double[]{102, 0})));
+        assertEquals(Double.NaN, book.getBestAsk());
+        assertEquals(0.0, book.getDepth(false, 10));
+    }
+
+    @Test
+    void trimsLevelsBeyondDepth() {
+        OrderBook book = new OrderBook("BTCUSDT", 2);
+        // Больше уровней, чем начальная емкость массивов стороны
+        book.applySnapshot(update(true, 10, new double[]{95, 1, 96, 1, 97, 1, 98, 10, 99, 100}, new double[]{101, 1}));
+
+        assertEquals(99.0, book.getBestBid());
+        assertEquals(110.0, book.getDepth(true, 10));
+
+        // Уровень хуже глубины отбрасывается, лучший вытесняет худший
+        assertTrue(book.applyDelta(update(false, 11, new double[]{90, 1000}, new double[0])));
+        assertEquals(110.0, book.getDepth(true, 10));
+        assertTrue(book.applyDelta(update(false, 12, new double[]{99.5, 1000}, new double[0])));
+        assertEquals(1100.0, book.getDepth(true, 10));
+        assertEquals(99.5, book.getBestBid());
+    }
+
+    @Test
+    void invalidatesOnUpdateIdGap() {
+        OrderBook book = new OrderBook("BTCUSDT", 50);
+        book.applySnapshot(update(true, 10, new double[]{100, 1}, new double[]{101, 1}));
+
+        assertFalse(book.applyDelta(update(false, 12, new double[]{100, 5}, new double[0])));
+        assertFalse(book.isValid());
+        assertEquals(Double.NaN, book.getBestBid());
+        assertEquals(Double.NaN, book.getDepth(false, 10));
+        assertEquals(Double.NaN, book.getImbalance(10));
+
+        // Пока не пришел снимок, даже следующая по номеру дельта не применяется
+        assertFalse(book.applyDelta(update(false, 11, new double[]{100, 5}, new double[0])));
+        assertFalse(book.isValid());
+
+        book.applySnapshot(update(true, 20, new double[]{100, 2}, new double[]{101, 1}));
+        assertTrue(book.isValid());
+        assertEquals(2.0, book.getDepth(true, 10));
+        assertTrue(book.applyDelta(update(false, 21, new double[]{100, 5}, new double[0])));
+        assertEquals(5.0, book.getDepth(true, 10));
+    }
+
+    @Test
+    void rejectsRepeatedDelta() {
+        OrderBook book = new OrderBook("BTCUSDT", 50);
+        book.applySnapshot(update(true, 10, new double[]{100, 1}, new double[]{101, 1}));
+        assertTrue(book.applyDelta(update(false, 11, new double[]{100, 2}, new double[0])));
+
+        assertFalse(book.applyDelta(update(false, 11, new double[]{100, 3}, new double[0])));
+        assertFalse(book.isValid());
+    }
+
+    @Test
+    void replacesLevelsWithSnapshot() {
+        OrderBook book = new OrderBook("BTCUSDT", 50);
+        book.applySnapshot(update(true, 10, new double[]{100, 1, 99, 1}, new double[]{101, 1}));
+        book.applySnapshot(update(true, 30, new double[]{90, 4}, new double[]{91, 6}));
+
+        assertEquals(90.0, book.getBestBid());
+        assertEquals(4.0, book.getDepth(true, 10));
+        assertEquals(91.0, book.getBestAsk());
+        assertTrue(book.applyDelta(update(false, 31, new double[0], new double[]{91, 0})));
+    }
+
+    /**
+     * @param bids пары цена, объем
+     * @param asks пары цена, объем
+     */
+    private static OrderBookUpdate update(boolean snapshot, long updateId, double[] bids, double[] asks) {
+        OrderBookUpdate update = new OrderBookUpdate();
+        update.setSymbol("BTCUSDT");
+        update.setSnapshot(snapshot);
+        update.setUpdateId(updateId);
+        update.setTimestamp(1000 + updateId);
+        for (int i = 0; i < bids.length; i += 2) {
+            update.addBid(bids[i], bids[i + 1]);
+        }
+        for (int i = 0; i < asks.length; i += 2) {
+            update.addAsk(asks[i], asks[i + 1]);
+        }
+        return update;
+    }
+}
@@ -0,0 +1,167 @@
+package com.trading.crypto.event.impl;
+
+import com.bybit.api.client.domain.market.MarketInterval;
+import com.trading.crypto.event.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingEventBusTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int BARS_PER_PRODUCER = 20_000;
+
+    @Test
+    void everyConsumerSeesEveryBarOnceInOrder() throws Exception {
+        // Маленький буфер, чтобы производители многократно обгоняли подписчиков и ждали их
+        RingEventBus bus = new RingEventBus(64);
+        int total = PRODUCERS * BARS_PER_PRODUCER;
+        List<List<Long>> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        try {
+            for (int c = 0; c < 3; c++) {
+                List<Long> events = new ArrayList<>(total);
+                received.add(events);
+                bus.subscribe("consumer-" + c, event -> {
+                    assertEquals(EventType.BAR, event.getType());
+                    // Производитель и номер его бара, упакованные в одно число
+                    events.add(Long.parseLong(event.getSymbol()) * BARS_PER_PRODUCER + event.getTimestamp());
+                    if (events.size() == total) {
+                        done.countDown();
+                    }
+                });
+            }
+
+            Thread[] producers = new Thread[PRODUCERS];
+            for (int p = 0; p < PRODUCERS; p++) {
+                String symbol = Integer.toString(p);
+                producers[p] = new Thread(() -> {
+                    for (int i = 0; i < BARS_PER_PRODUCER; i++) {
+                        bus.publishBar(symbol, MarketInterval.ONE_MINUTE, i, i, i, i, i, i, i);
+                    }
+                });
+                producers[p].setDaemon(true);
+                producers[p].start();
+            }
+            for (Thread producer : producers) {
+                // Без таймаута потерянное пробуждение подписчика подвесило бы тест на ожидании производителя
+                producer.join(TimeUnit.SECONDS.toMillis(30));
+                assertFalse(producer.isAlive(), "Producer is stuck waiting for consumers");
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS), "Consumers did not receive all bars");
+        } finally {
+            bus.shutdown();
+        }
+
+        for (List<Long> events : received) {
+            assertEquals(total, events.size());
+            // Порядок публикации один для всех подписчиков
+            assertEquals(received.get(0), events);
+            int[] next = new int[PRODUCERS];
+            for (long packed : events) {
+                int producer = (int) (packed / BARS_PER_PRODUCER);
+                assertEquals(next[producer]++, packed % BARS_PER_PRODUCER, "Bars of producer " + producer + " out of order");
+            }
+            for (int p = 0; p < PRODUCERS; p++) {
+                assertEquals(BARS_PER_PRODUCER, next[p]);
+            }
+        }
+    }
+
+    @Test
+    void dependentConsumerNeverOvertakesUpstream() throws Exception {
+        RingEventBus bus = new RingEventBus(128);
+        int total = 50_000;
+        AtomicLong first = new AtomicLong();
+        AtomicLong second = new AtomicLong();
+        AtomicLong dependent = new AtomicLong();
+        AtomicReference<String> violation = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            bus.subscribe("first", event -> first.incrementAndGet());
+            bus.subscribe("second", event -> {
+                // Медленный подписчик, чтобы зависимый поток чаще упирался в него
+                if ((event.getTimestamp() & 7) == 0) {
+                    Thread.yield();
+                }
+                second.incrementAndGet();
+            });
+            bus.subscribe("dependent", event -> {
+                long count = dependent.incrementAndGet();
+                if (first.get() < count || second.get() < count) {
+                    violation.compareAndSet(null, "Dependent processed " + count + " events, upstream "
+                            + first.get() + " and " + second.get());
+                }
+                if (count == total) {
+                    done.countDown();
+                }
+            }, "first", "second");
+
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < total; i++) {
+                    bus.publishBar("BTCUSDT", MarketInterval.ONE_MINUTE, i, i, i, i, i, i, i);
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+            assertTrue(done.await(30, TimeUnit.SECONDS), "Dependent consumer did not receive all bars");
+        } finally {
+            bus.shutdown();
+        }
+        assertNull(violation.get());
+        assertEquals(total, dependent.get());
+    }
+
+    @Test
+    void idleConsumerWakesUpOnPublish() throws Exception {
+        RingEventBus bus = new RingEventBus(16);
+        AtomicLong upstream = new AtomicLong();
+        AtomicLong dependent = new AtomicLong();
+        try {
+            bus.subscribe("idle", event -> upstream.incrementAndGet());
+            bus.subscribe("idle-dependent", event -> dependent.incrementAndGet(), "idle");
+
+            for (int i = 1; i <= 5; i++) {
+                // Оба подписчика должны успеть уснуть, иначе проверяется только активное ожидание
+                awaitParked("event-idle");
+                awaitParked("event-idle-dependent");
+                bus.publishBar("BTCUSDT", MarketInterval.ONE_MINUTE, i, i, i, i, i, i, i);
+                awaitCount(upstream, i);
+                awaitCount(dependent, i);
+            }
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    private static void awaitParked(String threadName) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals(threadName) && thread.getState() == Thread.State.WAITING) {
+                    return;
+                }
+            }
+            Thread.sleep(1);
+        }
+        fail("Consumer " + threadName + " did not go to sleep");
+    }
+
+    private static void awaitCount(AtomicLong counter, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (counter.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                fail("Sleeping consumer was not woken up: processed " + counter.get() + " of " + expected);
+            }
+            Thread.sleep(1);
+        }
+        assertEquals(expected, counter.get());
+    }
+}